@@ -459,6 +459,27 @@ public interface AdminFacade {
 	String getTailByServiceName(String serviceName, String applicationName,
 			int numLines) throws CLIException;
 
+	/**
+	 * Returns the log lines of all service instances logged since the previous call with the same follow id.
+	 *
+	 * @param serviceName
+	 *            The service name.
+	 * @param applicationName
+	 *            The application name.
+	 * @param followId
+	 *            The follow id returned by the previous call, or null to start following.
+	 * @param numLines
+	 *            The number of lines to return from each instance when starting to follow.
+	 * @param grep
+	 *            A regular expression the returned lines must contain, or null for all lines.
+	 * @return A map holding the follow id to use in the next call and the new log lines, each prefixed with its
+	 *         instance id.
+	 * @throws CLIException
+	 *             a CLI exception is thrown if an error occurred on the remote server.
+	 */
+	Map<String, Object> followTailByServiceName(String serviceName, String applicationName,
+			String followId, int numLines, String grep) throws CLIException;
+
 	/**
 	 * Update the attribute store with the correct scope.
 	 *
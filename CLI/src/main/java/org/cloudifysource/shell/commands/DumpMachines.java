@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.shell.commands;
+
+import java.io.File;
+
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.cloudifysource.restclient.RestClient;
+import org.cloudifysource.shell.rest.RestAdminFacade;
+import org.fusesource.jansi.Ansi.Color;
+
+/**
+ * Downloads the dumps of all machines in the cloud as a single zip file, with an entry for each machine. The dumps are
+ * generated concurrently by the REST server and written to the target file as they are received.
+ *
+ * Optional arguments:
+ * 			processors - comma separated list of dump processors.
+ * 			file-size-limit - the maximum total size of the dumps, in bytes.
+ * 			output - the file to save the dump to.
+ *
+ * Command syntax:
+ * 			dump-machines [-processors processors] [-file-size-limit limit] [-output file]
+ *
+ * @since 2.7.0
+ *
+ */
+@Command(scope = "cloudify", name = "dump-machines",
+		description = "Downloads the dumps of all machines in the cloud to a single zip file")
+public class DumpMachines extends AdminAwareCommand implements NewRestClientCommand {
+
+	private static final String DEFAULT_PROCESSORS = "summary, network, thread, log";
+	private static final long DEFAULT_FILE_SIZE_LIMIT = 5 * 1024 * 1024;
+
+	@Option(required = false, name = "-processors",
+			description = "Comma separated list of dump processors. Defaults to: " + DEFAULT_PROCESSORS)
+	private String processors = DEFAULT_PROCESSORS;
+
+	@Option(required = false, name = "-file-size-limit",
+			description = "The maximum total size of the dumps, in bytes. Dumps that do not fit are skipped.")
+	private long fileSizeLimit = DEFAULT_FILE_SIZE_LIMIT;
+
+	@Option(required = false, name = "-output", description = "The file to save the dump to")
+	private File output = new File("machines-dump.zip");
+
+	@Override
+	protected Object doExecute() throws Exception {
+		return doExecuteNewRestClient();
+	}
+
+	@Override
+	public Object doExecuteNewRestClient() throws Exception {
+		final RestClient newRestClient = ((RestAdminFacade) getRestAdminFacade()).getNewRestClient();
+		final long size = newRestClient.downloadMachinesDump(processors, fileSizeLimit, output);
+		return getFormattedMessage("machines_dump_downloaded", Color.GREEN, output.getAbsolutePath(), size);
+	}
+
+}
@@ -17,13 +17,17 @@ package org.cloudifysource.shell.commands;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.felix.gogo.commands.Option;
+import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.shell.ShellUtils;
+import org.cloudifysource.shell.exceptions.CLIException;
 import org.cloudifysource.shell.exceptions.CLIStatusException;
 import org.fusesource.jansi.Ansi.Color;
 
@@ -32,11 +36,16 @@ import org.fusesource.jansi.Ansi.Color;
  * The tail command can either accept the service name and instance number of a certain instance,
  * or it can get the service name and host address of the instance. The log output can also be 
  * directed to a file using the -file option.
+ * With the -follow option, the command keeps printing the new lines of all of the service instances until it is
+ * interrupted. Only lines matching the -grep pattern are returned by the server.
  * @author adaml
  *
  */
 @Command(scope = "cloudify", name = "tail", description = "retrieve the last N lines of a specific service log")
 public class Tail extends AdminAwareCommand {
+	private static final int DEFAULT_FOLLOW_INTERVAL_SECONDS = 2;
+	private static final long MILLIS_IN_SECOND = 1000;
+	
 	@Argument(index = 0, required = true, description = "The service name who's log to tail")
 	private String serviceName;
 	
@@ -52,12 +61,34 @@ public class Tail extends AdminAwareCommand {
 	@Option(required = false, description = "the service instance number", name = "-instanceId")
 	private Integer instanceId;
 	
+	@Option(required = false, description = "keep printing new log lines of all service instances",
+			name = "-follow", aliases = {"-f" })
+	private boolean follow;
+	
+	@Option(required = false, description = "a regular expression the followed lines must contain", name = "-grep")
+	private String grep;
+	
+	@Option(required = false, description = "the time, in seconds, between polls for new lines when following",
+			name = "-interval")
+	private int intervalSeconds = DEFAULT_FOLLOW_INTERVAL_SECONDS;
+	
 	@Override
 	protected Object doExecute() throws Exception {
 		
 		String applicationName = getCurrentApplicationName();
 		String logTail = "";
 		
+		if (follow) {
+			if (StringUtils.isNotBlank(hostAddress) || instanceId != null || file != null) {
+				throw new CLIStatusException("tail_follow_options_not_supported");
+			}
+			followLogTail(applicationName);
+			return "";
+		}
+		if (grep != null) {
+			throw new CLIStatusException("tail_grep_requires_follow");
+		}
+		
 		boolean twoTailOptionsEntered = (StringUtils.isNotBlank(hostAddress)) && (instanceId != null);
 		boolean noTailOptionsEntered = (!StringUtils.isNotBlank(hostAddress)) && (instanceId == null);
 		boolean oneTailOtionEntered = ((!twoTailOptionsEntered) && (!noTailOptionsEntered));
@@ -95,6 +126,33 @@ public class Tail extends AdminAwareCommand {
 		return coloredLogTail;
 	}
 
+	/**
+	 * Prints the new log lines of all service instances until interrupted. The server keeps the position in each
+	 * instance log, so every poll transfers only the lines logged since the previous one.
+	 */
+	@SuppressWarnings("unchecked")
+	private void followLogTail(final String applicationName) throws CLIException {
+		final String effectiveGrep = StringUtils.isBlank(grep) ? null : grep;
+		String followId = null;
+		while (!Thread.currentThread().isInterrupted()) {
+			final Map<String, Object> response =
+					adminFacade.followTailByServiceName(serviceName, applicationName, followId, numLines, effectiveGrep);
+			followId = (String) response.get(CloudifyConstants.TAIL_FOLLOW_ID);
+			final List<String> lines = (List<String>) response.get(CloudifyConstants.TAIL_LINES);
+			if (lines != null) {
+				for (final String line : lines) {
+					session.getConsole().println(getColoredLogTail(line));
+				}
+				session.getConsole().flush();
+			}
+			try {
+				Thread.sleep(intervalSeconds * MILLIS_IN_SECOND);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	private void writeLogToFile(final String logTail) 
 								throws CLIStatusException {
 		try {
@@ -13,8 +13,10 @@
 package org.cloudifysource.shell.rest;
 
 import java.io.File;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -846,6 +848,33 @@ public class RestAdminFacade extends AbstractAdminFacade {
 		}
 	}
 
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> followTailByServiceName(final String serviceName,
+			final String applicationName, final String followId,
+			final int numLines, final String grep) throws CLIException {
+		final StringBuilder url = new StringBuilder(SERVICE_CONTROLLER_URL).append("applications/")
+				.append(applicationName).append("/services/").append(serviceName).append("/tail/follow")
+				.append("?numLines=").append(numLines);
+		try {
+			if (followId != null) {
+				url.append('&').append(CloudifyConstants.TAIL_FOLLOW_ID).append('=')
+						.append(URLEncoder.encode(followId, "UTF-8"));
+			}
+			if (grep != null) {
+				url.append('&').append(CloudifyConstants.TAIL_GREP_PARAM_NAME).append('=')
+						.append(URLEncoder.encode(grep, "UTF-8"));
+			}
+		} catch (final UnsupportedEncodingException e) {
+			throw new CLIException(e);
+		}
+		try {
+			return (Map<String, Object>) client.get(url.toString());
+		} catch (final ErrorStatusException e) {
+			throw new CLIStatusException(e, e.getReasonCode(), e.getArgs());
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
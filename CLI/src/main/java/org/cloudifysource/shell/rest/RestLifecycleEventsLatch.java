@@ -33,6 +33,7 @@ import org.cloudifysource.shell.installer.CLIEventsDisplayer;
 /**
  * The RestLifecycleEventsLatch will poll the rest for installation lifecycle events 
  * and print the new events to the CLI console. 
+ * While there are no new events, each poll is held by the rest for a few seconds until events arrive.
  * The polling latch will stop polling the rest for three reasons:
  * 				* The timeout period expired.
  * 				* Installation on the remote rest gateway ended.
@@ -46,6 +47,8 @@ public class RestLifecycleEventsLatch {
 	private static final Logger logger = Logger.getLogger(RestLifecycleEventsLatch.class.getName());
 	private static final long MIN_POLLING_INTERVAL = 2000;
 	private static final String DEFAULT_TIMEOUT_MESSAGE = "installation timed out";
+	// the time the server may hold a request for events while there are none.
+	private static final int EVENTS_WAIT_SECONDS = 10;
 
 	private long pollingInterval = MIN_POLLING_INTERVAL;
 	private String timeoutMessage = DEFAULT_TIMEOUT_MESSAGE;
@@ -83,7 +86,7 @@ public class RestLifecycleEventsLatch {
 			@Override
 			public boolean isDone() throws CLIException, InterruptedException {
 				url = "/service/lifecycleEventContainerID/" + pollingID
-						+ "/cursor/" + cursor;
+						+ "/cursor/" + cursor + "?timeout=" + EVENTS_WAIT_SECONDS;
 				try {
 					lifecycleEventLogs = (Map<String, Object>) client.get(url);
 				} catch (final ErrorStatusException e) {
@@ -23,6 +23,7 @@ import org.cloudifysource.dsl.rest.response.DeploymentEvents;
 import org.cloudifysource.restclient.RestClient;
 import org.cloudifysource.restclient.exceptions.RestClientException;
 import org.cloudifysource.shell.ConditionLatch;
+import org.cloudifysource.shell.ShellUtils;
 import org.cloudifysource.shell.exceptions.CLIException;
 import org.cloudifysource.shell.installer.CLIEventsDisplayer;
 
@@ -36,6 +37,10 @@ import org.cloudifysource.shell.installer.CLIEventsDisplayer;
 public abstract class InstallationProcessInspector {
 
 	private static final int POLLING_INTERVAL_MILLI_SECONDS = 500;
+	// the time the server may hold a request for events while there are none.
+	private static final int EVENTS_WAIT_SECONDS = 10;
+	// the running instances are counted when events arrive, and otherwise at this interval.
+	private static final long INSTANCES_CHECK_INTERVAL_MILLI_SECONDS = 30 * 1000;
 	protected static final int RESOURCE_NOT_FOUND_EXCEPTION_CODE = 404;
 
 	protected RestClient restClient;
@@ -77,14 +82,15 @@ public abstract class InstallationProcessInspector {
 
 		conditionLatch.waitFor(new ConditionLatch.Predicate() {
 
+			private long lastInstancesCheck = 0;
 
 			@Override
 			public boolean isDone() throws CLIException, InterruptedException {
 				try {
-					printInstalledInstances();
 					boolean ended = lifeCycleEnded();
 
-					List<String> latestEvents = getLatestEvents();
+					// once the life cycle ended, just collect the remaining events.
+					List<String> latestEvents = ended ? getLatestEvents() : waitForLatestEvents();
 					if (!latestEvents.isEmpty()) {
 						displayer.printEvents(latestEvents);
 					} else {
@@ -93,8 +99,11 @@ public abstract class InstallationProcessInspector {
 						}
 					}
 
-					if (ended) {
+					final long now = System.currentTimeMillis();
+					if (ended || !latestEvents.isEmpty()
+							|| now - lastInstancesCheck >= INSTANCES_CHECK_INTERVAL_MILLI_SECONDS) {
 						printInstalledInstances();
+						lastInstancesCheck = now;
 					}
 					return ended;
 				} catch (final RestClientException e) {
@@ -151,10 +160,37 @@ public abstract class InstallationProcessInspector {
 	 *             Indicates a failure to get events from the server.
 	 */
 	public List<String> getLatestEvents() throws RestClientException {
+		return getLatestEvents(0);
+	}
+
+	/**
+	 * Gets the latest events of this deployment id, like {@link #getLatestEvents()}. If there are no new events, the
+	 * server holds the request for a few seconds until new events arrive, instead of returning an empty list at once.
+	 *
+	 * @return A list of events, empty if no new events arrived while waiting.
+	 * @throws RestClientException
+	 *             Indicates a failure to get events from the server.
+	 */
+	public List<String> waitForLatestEvents() throws RestClientException {
+		return getLatestEvents(EVENTS_WAIT_SECONDS);
+	}
+
+	private List<String> getLatestEvents(final int waitSeconds) throws RestClientException {
 
 		List<String> eventsStrings = new ArrayList<String>();
 
-		DeploymentEvents events = restClient.getDeploymentEvents(deploymentId, lastEventIndex, -1);
+		DeploymentEvents events;
+		if (waitSeconds > 0) {
+			events = restClient.waitForDeploymentEvents(deploymentId, lastEventIndex, -1, waitSeconds);
+		} else {
+			events = restClient.getDeploymentEvents(deploymentId, lastEventIndex, -1);
+		}
+		if (events != null && events.getTruncatedBeforeIndex() > lastEventIndex) {
+			// the server no longer keeps the older events, continue from the oldest event it has.
+			eventsStrings.add(ShellUtils.getFormattedMessage("events_truncated",
+					events.getTruncatedBeforeIndex() - lastEventIndex));
+			lastEventIndex = events.getTruncatedBeforeIndex();
+		}
 		if (events == null || events.getEvents().isEmpty()) {
 			return eventsStrings;
 		}
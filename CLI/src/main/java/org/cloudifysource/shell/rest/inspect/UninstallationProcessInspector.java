@@ -61,7 +61,7 @@ public abstract class UninstallationProcessInspector extends InstallationProcess
         	public boolean isDone() throws CLIException, InterruptedException {
         		try {
         			boolean ended = false;
-        			final List<String> latestEvents = getLatestEvents();
+        			final List<String> latestEvents = waitForLatestEvents();
         			if (!latestEvents.isEmpty()) {
         				if (latestEvents.contains(CloudifyConstants.UNDEPLOYED_SUCCESSFULLY_EVENT)) {
         					ended = true;
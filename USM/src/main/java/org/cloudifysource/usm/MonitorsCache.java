@@ -20,27 +20,46 @@ import groovy.lang.Closure;
 import groovy.lang.GString;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
 import org.cloudifysource.usm.details.Details;
 import org.cloudifysource.usm.monitors.Monitor;
+import org.cloudifysource.usm.tail.RollingFileAppenderTailer;
 import org.openspaces.pu.service.CustomServiceDetails;
 import org.openspaces.pu.service.CustomServiceMonitors;
 import org.openspaces.pu.service.ServiceDetails;
 import org.openspaces.pu.service.ServiceMonitors;
 
 /*****************
- * A synchronized wrapper to the monitors functionality. The last monitors
- * results are cached for a set time. Note: this class also contains the code to
- * create the service details. The code for services and details is very
- * similar, even though service details is called exactly once.
+ * A background sampler for the monitors functionality. Each monitor runs on
+ * its own schedule, every 'cache expiration timeout' milliseconds, and is
+ * abandoned if it does not return within its execution timeout, keeping its
+ * previous values. Readers never run monitors and never block: they get the
+ * latest values of every monitor, together with the execution time and failure
+ * count of each monitor. Note: this class also contains the code to create the
+ * service details. The code for services and details is very similar, even
+ * though service details is called exactly once.
  * 
  * 
  * @author barakme
@@ -51,42 +70,250 @@ public class MonitorsCache {
 
 	private final USMLifecycleBean lifecycleBean;
 
-	private ServiceMonitors[] lastResult;
 	private final UniversalServiceManagerBean usm;
 
 	private final long cacheExpirationTimeout;
-	private long cacheExpirationTime = 0;
+	private final long executionTimeout;
 
 	private final String serviceSubType = "USM";
 	private final String serviceDescription = "USM";
 	private final String serviceLongDescription = "USM";
 
+	private volatile List<MonitorSampler> samplers;
+	private ScheduledExecutorService scheduler;
+	private ExecutorService workers;
+	private boolean closed = false;
+
 	public MonitorsCache(final UniversalServiceManagerBean usm,
 			final USMLifecycleBean lifecycleBean,
 			final long cacheExpirationTimeout) {
+		this(usm, lifecycleBean, cacheExpirationTimeout, cacheExpirationTimeout);
+	}
+
+	public MonitorsCache(final UniversalServiceManagerBean usm,
+			final USMLifecycleBean lifecycleBean,
+			final long cacheExpirationTimeout, final long executionTimeout) {
 		this.usm = usm;
 		this.cacheExpirationTimeout = cacheExpirationTimeout;
+		this.executionTimeout = executionTimeout;
 		this.lifecycleBean = lifecycleBean;
 	}
 
 	/***********
-	 * Returns the monitors from the cache if the cache expiration time has not
-	 * been exceeded, or reads the new monitor values and caches them, returning
-	 * the result.
+	 * Returns the latest monitor values. The first call made while the
+	 * service is running starts the background sampling.
 	 * 
 	 * @return the monitors.
 	 */
-	public synchronized ServiceMonitors[] getMonitors() {
-		final long now = System.currentTimeMillis();
+	public ServiceMonitors[] getMonitors() {
+		final CustomServiceMonitors csm = new CustomServiceMonitors(
+				CloudifyConstants.USM_MONITORS_SERVICE_ID);
+
+		final ServiceMonitors[] res = new ServiceMonitors[] { csm };
+
+		final USMState currentState = usm.getState();
+		// If the underlying service is not running
+		if (currentState != USMState.RUNNING) {
+			csm.getMonitors().put(CloudifyConstants.USM_MONITORS_STATE_ID,
+					currentState.ordinal());
+			return res;
+		}
+
+		final Map<String, Object> map = csm.getMonitors();
+		// default monitors
+		putDefaultMonitorsInMap(map);
+
+		for (final MonitorSampler sampler : getSamplers()) {
+			map.putAll(sampler.lastValues);
+			map.put(CloudifyConstants.USM_MONITORS_EXECUTION_TIME_PREFIX + sampler.name,
+					sampler.lastExecutionTime);
+			map.put(CloudifyConstants.USM_MONITORS_FAILURES_PREFIX + sampler.name,
+					sampler.failures.get());
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Monitors are: " + Arrays.toString(res));
+		}
+
+		return res;
+
+	}
+
+	/************
+	 * Discards the values, execution times and failure counts of all
+	 * monitors, which describe a process that is no longer running. Called
+	 * when the process is restarted; sampling goes on, and the monitors report
+	 * values of the new process once it runs.
+	 */
+	public void clear() {
+		final List<MonitorSampler> current = this.samplers;
+		if (current == null) {
+			return;
+		}
+		for (final MonitorSampler sampler : current) {
+			sampler.clear();
+		}
+	}
+
+	/************
+	 * Stops the background sampling.
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.workers.shutdownNow();
+		}
+	}
+
+	private List<MonitorSampler> getSamplers() {
+		List<MonitorSampler> current = this.samplers;
+		if (current == null) {
+			current = startSampling();
+		}
+		return current;
+	}
+
+	private synchronized List<MonitorSampler> startSampling() {
+		if (this.samplers != null) {
+			return this.samplers;
+		}
+		if (this.closed) {
+			return Collections.emptyList();
+		}
+
+		final Monitor[] monitors = lifecycleBean.getMonitors();
+		final MonitorSampler[] created = new MonitorSampler[monitors.length];
+		for (int i = 0; i < monitors.length; i++) {
+			created[i] = new MonitorSampler(monitors[i], i);
+		}
+
+		if (monitors.length > 0) {
+			this.scheduler = Executors.newScheduledThreadPool(monitors.length,
+					createThreadFactory("MonitorsScheduler"));
+			this.workers = Executors.newCachedThreadPool(createThreadFactory("MonitorsWorker"));
+			for (final MonitorSampler sampler : created) {
+				this.scheduler.scheduleWithFixedDelay(sampler, 0,
+						cacheExpirationTimeout, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		this.samplers = Arrays.asList(created);
+		return this.samplers;
+	}
+
+	private static ThreadFactory createThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, name + "-"
+						+ threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/************
+	 * Periodically executes a single monitor and keeps its last values.
+	 */
+	private class MonitorSampler implements Runnable {
+
+		private final Monitor monitor;
+		// the monitor class name and its index, or "DSL Monitor" and its index for the recipe monitors. It is set
+		// once, so the execution time and failures of a monitor are always published under the same keys.
+		private final String name;
+		private volatile Map<String, Number> lastValues = Collections.emptyMap();
+		private volatile long lastExecutionTime = 0;
+		private final AtomicLong failures = new AtomicLong();
+		// set while an execution runs on a worker thread, cleared by the execution itself when it returns. A
+		// cancelled execution may still be stuck in the monitor, so the future can not tell.
+		private final AtomicBoolean executing = new AtomicBoolean(false);
+		// incremented when the values are cleared, so an execution that began before is not recorded.
+		private final AtomicInteger generation = new AtomicInteger();
+
+		MonitorSampler(final Monitor monitor, final int index) {
+			this.monitor = monitor;
+			final String className = monitor.getClass().getSimpleName();
+			this.name = (className.length() == 0 ? "DSL Monitor" : className) + " " + index;
+		}
 
-		if (now >= cacheExpirationTime) {
-			logger.fine("Reloading monitors at: " + now);
-			this.lastResult = createMonitors();
-			this.cacheExpirationTime = now + cacheExpirationTimeout;
+		void clear() {
+			this.generation.incrementAndGet();
+			this.lastValues = Collections.emptyMap();
+			this.lastExecutionTime = 0;
+			this.failures.set(0);
 		}
 
-		return this.lastResult;
+		@Override
+		public void run() {
+			if (usm.getState() != USMState.RUNNING) {
+				return;
+			}
+			if (!executing.compareAndSet(false, true)) {
+				// previous execution is still stuck - do not pile up more.
+				return;
+			}
 
+			logger.fine("Executing monitor: " + monitor);
+			final int executionGeneration = generation.get();
+			final long start = System.currentTimeMillis();
+			final AtomicBoolean started = new AtomicBoolean(false);
+			final Future<Map<String, Number>> pending;
+			try {
+				pending = workers.submit(new Callable<Map<String, Number>>() {
+
+					@Override
+					public Map<String, Number> call() throws Exception {
+						started.set(true);
+						try {
+							return monitor.getMonitorValues(usm, lifecycleBean.getConfiguration());
+						} finally {
+							executing.set(false);
+						}
+					}
+				});
+			} catch (final RuntimeException e) {
+				// the workers were shut down.
+				executing.set(false);
+				throw e;
+			}
+
+			try {
+				final Map<String, Number> values = pending.get(executionTimeout, TimeUnit.MILLISECONDS);
+				final Map<String, Number> copy = values == null
+						? new HashMap<String, Number>() : new HashMap<String, Number>(values);
+				removeNonSerializableObjectsFromMap(copy, "monitors");
+				if (generation.get() == executionGeneration) {
+					this.lastValues = copy;
+				}
+			} catch (final TimeoutException e) {
+				if (generation.get() == executionGeneration) {
+					failures.incrementAndGet();
+				}
+				pending.cancel(true);
+				if (!started.get()) {
+					// cancelled before it ran, so it never will.
+					executing.set(false);
+				}
+				logger.warning("USM service monitor " + name + " did not return within "
+						+ executionTimeout + " ms, keeping its previous values");
+			} catch (final ExecutionException e) {
+				if (generation.get() == executionGeneration) {
+					failures.incrementAndGet();
+				}
+				logger.log(Level.SEVERE,
+						"Failed to execute a USM service monitor", e.getCause());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (generation.get() == executionGeneration) {
+					this.lastExecutionTime = System.currentTimeMillis() - start;
+				}
+			}
+		}
 	}
 
 	private static final java.util.logging.Logger logger = java.util.logging.Logger
@@ -119,46 +346,6 @@ public class MonitorsCache {
 		}
 	}
 
-	private ServiceMonitors[] createMonitors() {
-		final CustomServiceMonitors csm = new CustomServiceMonitors(
-				CloudifyConstants.USM_MONITORS_SERVICE_ID);
-
-		final ServiceMonitors[] res = new ServiceMonitors[] { csm };
-
-		final USMState currentState = usm.getState();
-		// If the underlying service is not running
-		if (currentState != USMState.RUNNING) {
-			csm.getMonitors().put(CloudifyConstants.USM_MONITORS_STATE_ID,
-					currentState.ordinal());
-			return res;
-		}
-
-		final Map<String, Object> map = csm.getMonitors();
-		// default monitors
-		putDefaultMonitorsInMap(map);
-
-		for (final Monitor monitor : lifecycleBean.getMonitors()) {
-			try {
-				logger.fine("Executing monitor: " + monitor);
-				final Map<String, Number> monitorValues = monitor
-						.getMonitorValues(usm, lifecycleBean.getConfiguration());
-				removeNonSerializableObjectsFromMap(monitorValues, "monitors");
-				// add monitor values to Monitors map
-				map.putAll(monitorValues);
-			} catch (final Exception e) {
-				logger.log(Level.SEVERE,
-						"Failed to execute a USM service monitor", e);
-			}
-		}
-
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("Monitors are: " + Arrays.toString(res));
-		}
-
-		return res;
-
-	}
-
 	private void putDefaultMonitorsInMap(final Map<String, Object> map) {
 		map.put(CloudifyConstants.USM_MONITORS_CHILD_PROCESS_ID,
 				usm.getChildProcessID());
@@ -174,6 +361,17 @@ public class MonitorsCache {
 		}
 		map.put(CloudifyConstants.USM_MONITORS_STATE_ID, usm.getState()
 				.ordinal());
+		final RollingFileAppenderTailer tailer = usm.getTailer();
+		if (tailer != null) {
+			map.put(CloudifyConstants.USM_MONITORS_TAILER_BYTES_PER_SECOND,
+					tailer.getBytesPerSecond());
+			map.put(CloudifyConstants.USM_MONITORS_TAILER_LAG_BYTES,
+					tailer.getLagBytes());
+		}
+		final long timeToReady = lifecycleBean.getTimeToReadyMillis();
+		if (timeToReady >= 0) {
+			map.put(CloudifyConstants.USM_MONITORS_TIME_TO_READY, timeToReady);
+		}
 	}
 
 	/**************
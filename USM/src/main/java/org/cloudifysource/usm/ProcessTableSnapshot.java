@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperic.sigar.ProcState;
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SigarException;
+
+/**
+ * A snapshot of the process table of the host, shared by all the USMs running in the same container.
+ *
+ * The snapshot is refreshed at most once per interval, however many USMs query it. Each refresh lists the process IDs
+ * and reads the parent, state and start time only of processes that were not in the previous snapshot, of processes
+ * whose parent is gone (they were moved to a new parent), and of processes whose liveness is being checked. The
+ * process tree is kept in primitive arrays: the sorted process IDs, their parents, states and start times, and the
+ * children of each process.
+ *
+ * A process is identified by its ID and start time, so a process ID reused by a new process is not taken for the
+ * process that used it before. A periodic refresh does not read processes it already knows, so until one of them is
+ * read again, a reused process ID keeps the parent of the process that used it before. Callers that need an exact
+ * subtree, like the default process locator, read the processes under their root again with
+ * {@link #refreshDescendants(long)} before reading it.
+ *
+ * @since 2.7.0
+ */
+public final class ProcessTableSnapshot {
+
+	/**
+	 * System property used to set the minimal time, in milliseconds, between refreshes of the snapshot.
+	 */
+	public static final String REFRESH_INTERVAL_PROPERTY_NAME = "org.cloudifysource.usm.process-table-refresh-interval";
+
+	/**
+	 * Default minimal time, in milliseconds, between refreshes of the snapshot.
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 5 * 1000;
+
+	private static final Logger logger = Logger.getLogger(ProcessTableSnapshot.class.getName());
+
+	private static final ProcessTableSnapshot INSTANCE = new ProcessTableSnapshot(new SigarProcessSource(),
+			Long.getLong(REFRESH_INTERVAL_PROPERTY_NAME, DEFAULT_REFRESH_INTERVAL_MILLIS));
+
+	private final ProcessSource source;
+	private final long refreshIntervalMillis;
+
+	private volatile Table table = new Table(0, new long[0], new long[0], new char[0], new long[0]);
+	private long lastRefreshTime;
+
+	// processes whose liveness was checked, with the generation of the snapshot they were first checked with and
+	// their start time. their state is read on every refresh.
+	private final Map<Long, WatchedProcess> watchedPids = new HashMap<Long, WatchedProcess>();
+
+	ProcessTableSnapshot(final ProcessSource source, final long refreshIntervalMillis) {
+		this.source = source;
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+
+	/**
+	 * @return the snapshot shared by the USMs of this container.
+	 */
+	public static ProcessTableSnapshot getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Refreshes the snapshot now, regardless of the refresh interval.
+	 *
+	 * @throws USMException
+	 *             if the process list could not be read.
+	 */
+	public synchronized void refresh()
+			throws USMException {
+		final long[] currentPids;
+		try {
+			currentPids = source.getPids().clone();
+		} catch (final SigarException e) {
+			throw new USMException("Failed to look up process IDs. Error was: " + e.getMessage(), e);
+		}
+		Arrays.sort(currentPids);
+
+		final Table previous = this.table;
+		final long[] pids = new long[currentPids.length];
+		final long[] ppids = new long[currentPids.length];
+		final char[] states = new char[currentPids.length];
+		final long[] startTimes = new long[currentPids.length];
+		int count = 0;
+		int added = 0;
+		for (final long pid : currentPids) {
+			if (count > 0 && pids[count - 1] == pid) {
+				continue;
+			}
+			final int index = previous.indexOf(pid);
+			final boolean known = index >= 0
+					&& (previous.ppids[index] == 0 || Arrays.binarySearch(currentPids, previous.ppids[index]) >= 0);
+			if (known && !watchedPids.containsKey(pid)) {
+				pids[count] = pid;
+				ppids[count] = previous.ppids[index];
+				states[count] = previous.states[index];
+				startTimes[count] = previous.startTimes[index];
+				++count;
+				continue;
+			}
+
+			final ProcessInfo info = readProcess(pid);
+			if (info != null) {
+				pids[count] = pid;
+				ppids[count] = info.ppid;
+				states[count] = info.state;
+				startTimes[count] = info.startTime;
+				++count;
+				if (index < 0 || previous.startTimes[index] != info.startTime) {
+					++added;
+				}
+			}
+		}
+
+		final Table current = new Table(previous.generation + 1, Arrays.copyOf(pids, count),
+				Arrays.copyOf(ppids, count), Arrays.copyOf(states, count), Arrays.copyOf(startTimes, count));
+		this.table = current;
+		this.lastRefreshTime = System.currentTimeMillis();
+
+		// forget processes that are gone and were not checked since the previous refresh.
+		final Iterator<Map.Entry<Long, WatchedProcess>> iterator = watchedPids.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<Long, WatchedProcess> entry = iterator.next();
+			if (entry.getValue().generation < previous.generation && current.indexOf(entry.getKey()) < 0) {
+				iterator.remove();
+			}
+		}
+
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Process table refreshed: " + count + " processes, " + added + " new, "
+					+ (previous.pids.length + added - count) + " removed");
+		}
+	}
+
+	/**
+	 * Refreshes the snapshot now, and reads the parent and start time of the processes under a process again, so the
+	 * subtree does not keep a process whose ID was reused by a process elsewhere in the tree. Processes outside the
+	 * subtree are read only if the refresh reads them.
+	 *
+	 * @param pid
+	 *            the root of the subtree.
+	 * @throws USMException
+	 *             if the process list could not be read.
+	 */
+	public synchronized void refreshDescendants(final long pid)
+			throws USMException {
+		refresh();
+		final Table current = this.table;
+		final long[] ppids = current.ppids.clone();
+		final char[] states = current.states.clone();
+		final long[] startTimes = current.startTimes.clone();
+		final boolean[] gone = new boolean[current.pids.length];
+		boolean changed = false;
+
+		final LinkedList<Long> pending = new LinkedList<Long>();
+		pending.add(pid);
+		while (!pending.isEmpty()) {
+			for (final long child : current.getChildren(pending.removeFirst())) {
+				pending.add(child);
+				final int index = current.indexOf(child);
+				final ProcessInfo info = readProcess(child);
+				if (info == null) {
+					gone[index] = true;
+					changed = true;
+				} else if (info.ppid != ppids[index] || info.startTime != startTimes[index]) {
+					ppids[index] = info.ppid;
+					states[index] = info.state;
+					startTimes[index] = info.startTime;
+					changed = true;
+				}
+			}
+		}
+		if (!changed) {
+			return;
+		}
+
+		final long[] keptPids = new long[current.pids.length];
+		int count = 0;
+		for (int i = 0; i < current.pids.length; i++) {
+			if (!gone[i]) {
+				keptPids[count] = current.pids[i];
+				ppids[count] = ppids[i];
+				states[count] = states[i];
+				startTimes[count] = startTimes[i];
+				++count;
+			}
+		}
+		this.table = new Table(current.generation, Arrays.copyOf(keptPids, count), Arrays.copyOf(ppids, count),
+				Arrays.copyOf(states, count), Arrays.copyOf(startTimes, count));
+	}
+
+	/**
+	 * Returns the child processes of a process.
+	 *
+	 * @param pid
+	 *            the process ID.
+	 * @return the IDs of the child processes.
+	 * @throws USMException
+	 *             if the process list could not be read.
+	 */
+	public long[] getChildren(final long pid)
+			throws USMException {
+		return getTable().getChildren(pid);
+	}
+
+	/**
+	 * Returns the processes under a process that have no child processes. If the process has no child processes, it is
+	 * returned itself.
+	 *
+	 * @param pid
+	 *            the process ID.
+	 * @return the IDs of the leaf processes.
+	 * @throws USMException
+	 *             if the process list could not be read.
+	 */
+	public List<Long> getLeafDescendants(final long pid)
+			throws USMException {
+		final Table current = getTable();
+		final List<Long> leaves = new LinkedList<Long>();
+		final LinkedList<Long> pending = new LinkedList<Long>();
+		pending.add(pid);
+		while (!pending.isEmpty()) {
+			final long next = pending.removeFirst();
+			final long[] children = current.getChildren(next);
+			if (children.length == 0) {
+				leaves.add(next);
+			}
+			for (final long child : children) {
+				pending.add(child);
+			}
+		}
+		return leaves;
+	}
+
+	/**
+	 * Checks if a process is alive, i.e. it exists and is not stopped or a zombie. The state is read from the snapshot,
+	 * so a process that died after the last refresh may be reported alive until the next refresh.
+	 *
+	 * @param pid
+	 *            the process ID.
+	 * @return true if the process is alive.
+	 * @throws USMException
+	 *             if the process could not be read.
+	 */
+	public synchronized boolean isAlive(final long pid)
+			throws USMException {
+		final Table current = getTable();
+		final WatchedProcess watched = watchedPids.get(pid);
+		final char state;
+		if (watched != null && watched.generation < current.generation) {
+			if (!current.contains(watched)) {
+				watchedPids.remove(pid);
+				// it was alive in a previous refresh, and it is gone, or its ID is used by another process.
+				return false;
+			}
+			state = current.states[current.indexOf(pid)];
+		} else {
+			// the process may be newer than the snapshot, or its state may be stale.
+			final ProcessInfo info;
+			try {
+				info = source.getProcess(pid);
+			} catch (final SigarException e) {
+				throw new USMException("Failed to check if process with PID: " + pid + " is alive. Error was: "
+						+ e.getMessage(), e);
+			}
+			if (info == null || watched != null && watched.startTime != info.startTime) {
+				return false;
+			}
+			state = info.state;
+			if (watched == null) {
+				watchedPids.put(pid, new WatchedProcess(pid, current.generation, info.startTime));
+			}
+		}
+		return state != ProcState.STOP && state != ProcState.ZOMBIE;
+	}
+
+	/**
+	 * Returns true if a process was listed by the last refresh of the snapshot.
+	 *
+	 * @param pid
+	 *            the process ID.
+	 * @return true if the process exists.
+	 * @throws USMException
+	 *             if the process list could not be read.
+	 */
+	public boolean contains(final long pid)
+			throws USMException {
+		return getTable().indexOf(pid) >= 0;
+	}
+
+	private Table getTable()
+			throws USMException {
+		synchronized (this) {
+			if (lastRefreshTime == 0 || System.currentTimeMillis() - lastRefreshTime >= refreshIntervalMillis) {
+				refresh();
+			}
+		}
+		return this.table;
+	}
+
+	private ProcessInfo readProcess(final long pid) {
+		try {
+			return source.getProcess(pid);
+		} catch (final SigarException e) {
+			logger.log(Level.FINE, "Failed to read process state of process: " + pid + ". Ignoring.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * The process table at the time of a refresh.
+	 */
+	private static final class Table {
+
+		private final int generation;
+		private final long[] pids;
+		private final long[] ppids;
+		private final char[] states;
+		private final long[] startTimes;
+
+		// the children of pids[i] are children[childOffsets[i]] to children[childOffsets[i + 1] - 1].
+		private final int[] childOffsets;
+		private final long[] children;
+
+		private Table(final int generation, final long[] pids, final long[] ppids, final char[] states,
+				final long[] startTimes) {
+			this.generation = generation;
+			this.pids = pids;
+			this.ppids = ppids;
+			this.states = states;
+			this.startTimes = startTimes;
+
+			final int[] parentIndexes = new int[pids.length];
+			final int[] childCounts = new int[pids.length];
+			for (int i = 0; i < pids.length; i++) {
+				parentIndexes[i] = ppids[i] == pids[i] ? -1 : Arrays.binarySearch(pids, ppids[i]);
+				if (parentIndexes[i] >= 0) {
+					++childCounts[parentIndexes[i]];
+				}
+			}
+			this.childOffsets = new int[pids.length + 1];
+			for (int i = 0; i < pids.length; i++) {
+				childOffsets[i + 1] = childOffsets[i] + childCounts[i];
+			}
+			this.children = new long[childOffsets[pids.length]];
+			final int[] filled = new int[pids.length];
+			for (int i = 0; i < pids.length; i++) {
+				final int parent = parentIndexes[i];
+				if (parent >= 0) {
+					children[childOffsets[parent] + filled[parent]++] = pids[i];
+				}
+			}
+		}
+
+		private int indexOf(final long pid) {
+			return Arrays.binarySearch(pids, pid);
+		}
+
+		private boolean contains(final WatchedProcess watched) {
+			final int index = indexOf(watched.pid);
+			return index >= 0 && startTimes[index] == watched.startTime;
+		}
+
+		private long[] getChildren(final long pid) {
+			final int index = indexOf(pid);
+			if (index < 0) {
+				return new long[0];
+			}
+			return Arrays.copyOfRange(children, childOffsets[index], childOffsets[index + 1]);
+		}
+	}
+
+	/**
+	 * The parent, state and start time of a process.
+	 */
+	static final class ProcessInfo {
+
+		private final long ppid;
+		private final char state;
+		private final long startTime;
+
+		ProcessInfo(final long ppid, final char state, final long startTime) {
+			this.ppid = ppid;
+			this.state = state;
+			this.startTime = startTime;
+		}
+	}
+
+	/**
+	 * A process whose liveness is checked.
+	 */
+	private static final class WatchedProcess {
+
+		private final long pid;
+		private final int generation;
+		private final long startTime;
+
+		private WatchedProcess(final long pid, final int generation, final long startTime) {
+			this.pid = pid;
+			this.generation = generation;
+			this.startTime = startTime;
+		}
+	}
+
+	/**
+	 * Reads the process table of the host.
+	 */
+	interface ProcessSource {
+
+		long[] getPids()
+				throws SigarException;
+
+		/**
+		 * @return the process parent, state and start time, or null if there is no such process.
+		 */
+		ProcessInfo getProcess(long pid)
+				throws SigarException;
+	}
+
+	/**
+	 * Reads the process table with Sigar.
+	 *
+	 * The sigar based process detection is problematic. When a process dies, sigar sometimes does not detect the
+	 * death. We solve this by creating a new sigar instance every predetermined time interval.
+	 */
+	private static final class SigarProcessSource implements ProcessSource {
+
+		private static final long SIGAR_RECREATION_INTERVAL = 60 * 1000;
+
+		private Sigar sigar;
+		private long sigarCreationTime;
+
+		@Override
+		public long[] getPids()
+				throws SigarException {
+			return getSigar().getProcList();
+		}
+
+		@Override
+		public ProcessInfo getProcess(final long pid)
+				throws SigarException {
+			final ProcState procState;
+			final long startTime;
+			try {
+				procState = getSigar().getProcState(pid);
+				startTime = getSigar().getProcTime(pid).getStartTime();
+			} catch (final SigarException e) {
+				if ("No such process".equals(e.getMessage())) {
+					return null;
+				}
+				throw e;
+			}
+			return new ProcessInfo(procState.getPpid(), procState.getState(), startTime);
+		}
+
+		private Sigar getSigar() {
+			if (sigar != null && sigarCreationTime + SIGAR_RECREATION_INTERVAL < System.currentTimeMillis()) {
+				logger.log(Level.FINE, "recycling Sigar instance");
+				sigar.close();
+				sigar = null;
+			}
+			if (sigar == null) {
+				sigar = new Sigar();
+				sigarCreationTime = System.currentTimeMillis();
+			}
+			return sigar;
+		}
+	}
+}
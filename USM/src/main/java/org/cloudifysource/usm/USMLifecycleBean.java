@@ -15,12 +15,22 @@ package org.cloudifysource.usm;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import javax.annotation.PostConstruct;
@@ -71,6 +81,7 @@ import org.springframework.stereotype.Component;
 public class USMLifecycleBean implements ClusterInfoAware {
 
 	private static final int DEFAULT_PIDS_SIZE_LIMIT = 10;
+	private static final long MIN_START_DETECTION_BACKOFF_MILLIS = 100;
 	@Autowired(required = true)
 	private ServiceConfiguration configuration;
 	@Autowired(required = true)
@@ -97,6 +108,8 @@ public class USMLifecycleBean implements ClusterInfoAware {
 	private String puName;
 	private Integer instanceId;
 
+	private volatile long timeToReadyMillis = -1;
+
 	// ////////////////////////
 	// Lifecycle Events //////
 	// ////////////////////////
@@ -567,6 +580,10 @@ public class USMLifecycleBean implements ClusterInfoAware {
 		return this.configuration;
 	}
 
+	public void setConfiguration(final ServiceConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
 	public ShutdownListener[] getPreUndeployListeners() {
 		return this.shutdownListeners;
 	}
@@ -685,8 +702,10 @@ public class USMLifecycleBean implements ClusterInfoAware {
 	}
 
 	/********
-	 * Executes all start detection implementations, until all have passed or a timeout is reached. Once a start
-	 * detector passes, it is not executed again.
+	 * Executes all start detection implementations concurrently, until all have passed or a timeout is reached. Once a
+	 * start detector passes, it is not executed again. A start detector that did not pass is executed again right away,
+	 * and then with an exponential backoff up to the start detection interval, so a service that is ready shortly after
+	 * it was launched does not wait for a full interval.
 	 *
 	 * @param launchedProcess
 	 *            the process launched by the service's 'start' implementation.
@@ -704,72 +723,141 @@ public class USMLifecycleBean implements ClusterInfoAware {
 			return true;
 		}
 
+		// a relaunched service is not ready until this run passes.
+		this.timeToReadyMillis = -1;
 		final long startTime = System.currentTimeMillis();
 		final long endTime =
 				startTime
 						+ TimeUnit.SECONDS.toMillis(configuration.getService().getLifecycle()
 								.getStartDetectionTimeoutSecs());
-		int currentTestIndex = 0;
-
-		// indicates if the process launched by START (if it exitst) is still running
-		boolean processIsRunning = (launchedProcess != null);
-		while (System.currentTimeMillis() < endTime && currentTestIndex < this.livenessDetectors.length) {
+		final long maxInterval = Math.max(MIN_START_DETECTION_BACKOFF_MILLIS, TimeUnit.SECONDS.toMillis(
+				configuration.getService().getLifecycle().getStartDetectionIntervalSecs()));
+
+		final LivenessDetector[] detectors = this.livenessDetectors;
+		final boolean[] passed = new boolean[detectors.length];
+		final long[] nextExecutionTimes = new long[detectors.length];
+		final long[] backoffs = new long[detectors.length];
+		final Map<Future<Boolean>, Integer> running = new HashMap<Future<Boolean>, Integer>();
+		int remaining = detectors.length;
+
+		final ExecutorService executor = Executors.newCachedThreadPool(createStartDetectionThreadFactory());
+		final CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+		try {
+			// indicates if the process launched by START (if it exitst) is still running
+			boolean processIsRunning = (launchedProcess != null);
+			while (System.currentTimeMillis() < endTime) {
 
-			// first check if process ended
-			if (processIsRunning) {
-				processIsRunning = checkProcessIsRunning(launchedProcess);
-			}
+				// first check if process ended
+				if (processIsRunning) {
+					processIsRunning = checkProcessIsRunning(launchedProcess);
+				}
 
-			int index = currentTestIndex;
-			if (logger.isLoggable(Level.FINE)) {
-				logger.fine("Executing iteration of liveness detection test");
-				logger.fine("Executing liveness detectors from index: " + index);
-				logger.fine("Liveness detectors: " + Arrays.toString(this.livenessDetectors));
-				logger.fine("detectors length: " + this.livenessDetectors.length);
-			}
-			while (index < this.livenessDetectors.length) {
-				logger.fine("getting detector at index: " + index);
-				final LivenessDetector detector = this.livenessDetectors[index];
+				final long now = System.currentTimeMillis();
+				long nextWakeup = Math.min(endTime, now + maxInterval);
+				for (int i = 0; i < detectors.length; i++) {
+					if (passed[i] || running.containsValue(i)) {
+						continue;
+					}
+					if (nextExecutionTimes[i] <= now) {
+						if (logger.isLoggable(Level.FINE)) {
+							logger.fine("Executing liveness detector at index: " + i);
+						}
+						running.put(completionService.submit(createLivenessTask(detectors[i])), i);
+					} else {
+						nextWakeup = Math.min(nextWakeup, nextExecutionTimes[i]);
+					}
+				}
 
-				boolean testResult = false;
-				try {
-					testResult = detector.isProcessAlive();
+				Future<Boolean> completed =
+						completionService.poll(Math.max(0, nextWakeup - now), TimeUnit.MILLISECONDS);
+				while (completed != null) {
+					final int index = running.remove(completed);
+					final boolean testResult = getLivenessTestResult(completed);
 					logger.fine("Detection Test results are: " + testResult);
-				} catch (final USMException e) {
-					// may indicate that the underlying process has terminated
-					if (e.getCause() instanceof InterruptedException) {
-						// ignore
-						logger.info("A start detector failed due to an InterruptedException");
+					if (testResult) {
+						// this liveness detector has succeeded.
+						passed[index] = true;
+						--remaining;
 					} else {
-						throw e;
+						backoffs[index] = backoffs[index] == 0 ? MIN_START_DETECTION_BACKOFF_MILLIS
+								: Math.min(backoffs[index] * 2, maxInterval);
+						nextExecutionTimes[index] = System.currentTimeMillis() + backoffs[index];
 					}
+					completed = completionService.poll();
 				}
 
-				if (testResult) {
-					// this liveness detector has succeeded.
-					++index;
-				} else {
-					break;
+				if (remaining == 0) {
+					// all tests passed
+					this.timeToReadyMillis = System.currentTimeMillis() - startTime;
+					logger.info("Start detection passed after " + this.timeToReadyMillis + " ms");
+					return true;
 				}
-
 			}
+		} catch (final InterruptedException e) {
+			throw new USMException("Interruped while waiting for start detection", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return false;
 
-			if (index == this.livenessDetectors.length) {
-				// all tests passed
-				return true;
-			} else {
-				currentTestIndex = index;
+	}
+
+	private Callable<Boolean> createLivenessTask(final LivenessDetector detector) {
+		return new Callable<Boolean>() {
+
+			@Override
+			public Boolean call()
+					throws Exception {
+				return detector.isProcessAlive();
 			}
+		};
+	}
 
-			try {
-				Thread.sleep(TimeUnit.SECONDS.toMillis(configuration.getService().getLifecycle()
-						.getStartDetectionIntervalSecs()));
-			} catch (final InterruptedException e) {
-				throw new USMException("Interruped while waiting for start detection", e);
+	private boolean getLivenessTestResult(final Future<Boolean> completed)
+			throws USMException, TimeoutException, InterruptedException {
+		try {
+			return completed.get();
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof USMException) {
+				// may indicate that the underlying process has terminated
+				if (cause.getCause() instanceof InterruptedException) {
+					// ignore
+					logger.info("A start detector failed due to an InterruptedException");
+					return false;
+				}
+				throw (USMException) cause;
+			} else if (cause instanceof TimeoutException) {
+				throw (TimeoutException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
 			}
+			throw new USMException("A start detector failed: " + cause.getMessage(), cause);
 		}
-		return false;
+	}
 
+	private static ThreadFactory createStartDetectionThreadFactory() {
+		return new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "StartDetection-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**********
+	 * Returns the time, in milliseconds, it took the start detectors to pass after the service was launched.
+	 *
+	 * @return the time to ready, or -1 if the start detectors have not passed yet.
+	 */
+	public long getTimeToReadyMillis() {
+		return timeToReadyMillis;
 	}
 
 	private boolean checkProcessIsRunning(final Process launchedProcess)
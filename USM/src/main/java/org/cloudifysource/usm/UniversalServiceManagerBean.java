@@ -44,6 +44,7 @@ import org.cloudifysource.domain.Service;
 import org.cloudifysource.domain.cloud.storage.StorageTemplate;
 import org.cloudifysource.domain.context.ServiceContext;
 import org.cloudifysource.domain.context.blockstorage.StorageFacade;
+import org.cloudifysource.domain.context.kvstorage.AttributesFacade;
 import org.cloudifysource.domain.entry.ExecutableDSLEntry;
 import org.cloudifysource.dsl.entry.JavaExecutableEntry;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
@@ -51,6 +52,7 @@ import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
 import org.cloudifysource.dsl.utils.ServiceUtils;
 import org.cloudifysource.dsl.utils.ServiceUtils.FullServiceName;
 import org.cloudifysource.usm.commands.USMBuiltInCommand;
+import org.cloudifysource.usm.dependency.ServiceDependencyWaiter;
 import org.cloudifysource.usm.dsl.DSLEntryExecutor;
 import org.cloudifysource.usm.events.EventResult;
 import org.cloudifysource.usm.events.StartReason;
@@ -113,7 +115,6 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 	private static final int PRE_SHUTDOWN_TIMEOUT_MILLIS = 10000;
 	private static final String ERROR_FILE_NAME_SUFFFIX = ".err";
 	private static final String OUTPUT_FILE_NAME_SUFFIX = ".out";
-	private static final int WAIT_FOR_DEPENDENCIES_INTERVAL_MILLIS = 5000;
 	private static final int WAIT_FOR_DEPENDENCIES_TIMEOUT_MILLIS = 1000 * 60 * 30;
 	private static final String ASYNC_INSTALL_DEFAULT_VALUE = "true";
 	private static final int FILE_TAILER_INTERVAL_SECS_DEFAULT = 5;
@@ -171,7 +172,7 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 	private boolean asyncInstall = true;
 	private List<Long> serviceProcessPIDs;
 
-	// monitors accessor and thread-safe cache.
+	// monitors accessor and background sampler.
 	private MonitorsCache monitorsCache;
 
 	private GigaSpace managementSpace;
@@ -306,6 +307,14 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 				executors.shutdown();
 			}
 
+			if (tailer != null) {
+				tailer.close();
+			}
+
+			if (monitorsCache != null) {
+				monitorsCache.close();
+			}
+
 			try {
 				getUsmLifecycleBean().fireShutdown();
 			} catch (final USMException e) {
@@ -313,6 +322,12 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 						+ e.getMessage(), e);
 			}
 
+			final AttributesFacade attributes =
+					getUsmLifecycleBean().getConfiguration().getServiceContext().getAttributes();
+			if (attributes instanceof AttributesFacadeImpl) {
+				((AttributesFacadeImpl) attributes).close();
+			}
+
 			// after shutdown, no further events are expected to be
 			// executed.
 			// So we delete the service folder contents. This is just in
@@ -623,17 +638,24 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 	}
 
 	private void initMonitorsCache() {
-		final String tmp = this.usmLifecycleBean
+		final Map<String, String> customProperties = this.usmLifecycleBean
 				.getConfiguration()
 				.getService()
-				.getCustomProperties()
+				.getCustomProperties();
+		final String tmp = customProperties
 				.get(CloudifyConstants.CUSTOM_PROPERTY_MONITORS_CACHE_EXPIRATION_TIMEOUT);
 		long cacheExpirationTimeout = DEFAULT_MONITORS_CACHE_EXPIRATION_TIMEOUT;
 		if (tmp != null) {
 			cacheExpirationTimeout = Long.parseLong(tmp);
 		}
+		final String executionTimeoutString = customProperties
+				.get(CloudifyConstants.CUSTOM_PROPERTY_MONITORS_EXECUTION_TIMEOUT);
+		long executionTimeout = cacheExpirationTimeout;
+		if (executionTimeoutString != null) {
+			executionTimeout = Long.parseLong(executionTimeoutString);
+		}
 		this.monitorsCache = new MonitorsCache(this, this.usmLifecycleBean,
-				cacheExpirationTimeout);
+				cacheExpirationTimeout, executionTimeout);
 	}
 
 	private void initCustomProperties() {
@@ -882,105 +904,18 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 	}
 
 	private void waitForDependencies() {
-		logger.info("Waiting for dependencies");
-		final long startTime = System.currentTimeMillis();
-		final long endTime = startTime + WAIT_FOR_DEPENDENCIES_TIMEOUT_MILLIS;
-		final Admin admin = USMUtils.getAdmin();
-		for (final String dependantService : this.dependencies) {
-
-			logger.info("Waiting for dependency: " + dependantService);
-			final ProcessingUnit pu = waitForPU(endTime, admin,
-					dependantService);
-
-			waitForPUI(endTime, dependantService, pu);
-			logger.info("Dependency " + dependantService + " is available");
-
+		logger.info("Waiting for dependencies: " + Arrays.toString(this.dependencies));
+		final ServiceDependencyWaiter waiter = new ServiceDependencyWaiter(USMUtils.getAdmin(), this.dependencies);
+		try {
+			waiter.waitForDependencies(WAIT_FOR_DEPENDENCIES_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for dependencies", e);
 		}
 
 		logger.info("All dependencies are available");
 	}
 
-	private void waitForPUI(final long endTime, final String dependantService,
-			final ProcessingUnit pu) {
-		while (true) {
-			final long waitForPUIPeriod = endTime - System.currentTimeMillis();
-			if (waitForPUIPeriod <= 0) {
-				throw new IllegalStateException("Could not find dependency "
-						+ dependantService + " required for this service");
-			}
-
-			logger.info("Waiting for PUI of service: " + dependantService
-					+ " for " + waitForPUIPeriod + " Milliseconds");
-			// TODO: Switch to waitFor using waitForPUPeriod. this admin
-			// sampling routine is a workaround for a
-			// possible bug in the admin api where the admin does not recognize
-			// the PUI.
-			final boolean found = pu.waitFor(1, 2, TimeUnit.MILLISECONDS);
-
-			logger.info("Timeout ended. processing unit " + dependantService
-					+ " found result is " + found);
-			if (found) {
-				final ProcessingUnitInstance[] puis = pu.getInstances();
-				logger.info("Found " + puis.length + " instances");
-				for (final ProcessingUnitInstance pui : puis) {
-					final ServiceMonitors sm = pui.getStatistics()
-							.getMonitors()
-							.get(CloudifyConstants.USM_MONITORS_SERVICE_ID);
-					if (sm != null) {
-						final Object stateObject = sm.getMonitors().get(
-								CloudifyConstants.USM_MONITORS_STATE_ID);
-						logger.info("USM state is: " + stateObject);
-						if (stateObject == null) {
-							logger.warning("Could not find the instance state in the PUI monitors");
-						} else {
-							final int stateIndex = (Integer) stateObject;
-							final USMState usmState = USMState.values()[stateIndex];
-							logger.info("PUI is in state: " + usmState);
-							if (usmState == USMState.RUNNING) {
-								logger.info("Found a running instance of dependant service: "
-										+ dependantService);
-								return;
-							}
-						}
-
-					}
-				}
-			} else {
-				logger.info("Could not find a running instance of service: "
-						+ dependantService + ". Sleeping before trying again");
-			}
-			try {
-				Thread.sleep(WAIT_FOR_DEPENDENCIES_INTERVAL_MILLIS);
-			} catch (final InterruptedException e) {
-				// ignore.
-			}
-
-		}
-	}
-
-	private ProcessingUnit waitForPU(final long endTime, final Admin admin,
-			final String dependantService) {
-		ProcessingUnit pu = null;
-		while (true) {
-			final long waitForPUPeriod = endTime - System.currentTimeMillis();
-			if (waitForPUPeriod <= 0) {
-				throw new IllegalStateException("Could not find dependency "
-						+ dependantService + " required for this service");
-			}
-
-			logger.info("Waiting for PU: " + dependantService);
-			// TODO: Switch to waitFor using waitForPUPeriod. this admin
-			// sampling routine is a workaround for a
-			// possible bug in the admin api where the admin does not recognize
-			// the PU.
-			pu = admin.getProcessingUnits().waitFor(dependantService, 2,
-					TimeUnit.MILLISECONDS);
-			if (pu != null) {
-				return pu;
-			}
-		}
-	}
-
 	/**********
 	 * Checks if a PID file exists from a previous execution of this service and instance on this host.
 	 * 
@@ -1305,6 +1240,13 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 				TimeUnit.SECONDS);
 	}
 
+	/**
+	 * @return the tailer of the service output files, or null if it was not created yet.
+	 */
+	public RollingFileAppenderTailer getTailer() {
+		return tailer;
+	}
+
 	private RollingFileAppenderTailer createFileTailerTask() {
 		final String filePattern = createUniqueFileName() + "("
 				+ OUTPUT_FILE_NAME_SUFFIX + "|" + ERROR_FILE_NAME_SUFFFIX + ")";
@@ -1454,6 +1396,10 @@ public class UniversalServiceManagerBean implements ApplicationContextAware,
 
 			this.state = USMState.LAUNCHING;
 			this.executors = Executors.newScheduledThreadPool(THREAD_POOL_SIZE);
+			// the monitor values describe the dead process.
+			if (this.monitorsCache != null) {
+				this.monitorsCache.clear();
+			}
 
 			// Restart USM
 			new Thread(new Runnable() {
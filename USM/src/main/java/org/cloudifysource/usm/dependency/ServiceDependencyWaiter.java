@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.dependency;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.admin.pu.events.ProcessingUnitAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEvent;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventListener;
+import org.openspaces.pu.service.ServiceMonitors;
+
+/**************
+ * Waits until each of a set of services has at least one instance whose USM is in the RUNNING state. All dependencies
+ * are waited for in parallel, and the waiting thread is parked until the Admin API reports a matching processing unit,
+ * processing unit instance or statistics change. Instances that are already running when the wait starts are found by
+ * reading their statistics once. As a safety net against missed events, the statistics of the dependencies that are
+ * not available yet are also read again at a low frequency.
+ *
+ * The statistics monitor of a dependency's processing unit is started only if it is not running yet, and is stopped
+ * only by the waiter that started it, as the Admin is shared with other consumers of the same processing units.
+ *
+ * @since 2.7.0
+ *
+ */
+public class ServiceDependencyWaiter {
+
+	/**
+	 * Default interval of reading the statistics of dependencies that are not available yet, if no event arrived.
+	 */
+	public static final long DEFAULT_FALLBACK_POLL_INTERVAL_MILLIS = 30 * 1000;
+
+	private static final Logger logger = Logger.getLogger(ServiceDependencyWaiter.class.getName());
+
+	private final Admin admin;
+	private final long fallbackPollIntervalMillis;
+	private final Map<String, Dependency> dependencies = new LinkedHashMap<String, Dependency>();
+	private final CountDownLatch latch;
+
+	/**********
+	 * Constructor.
+	 *
+	 * @param admin the admin used to receive processing unit events.
+	 * @param dependencyNames the full names of the services to wait for.
+	 */
+	public ServiceDependencyWaiter(final Admin admin, final String[] dependencyNames) {
+		this(admin, dependencyNames, DEFAULT_FALLBACK_POLL_INTERVAL_MILLIS);
+	}
+
+	/**********
+	 * Constructor.
+	 *
+	 * @param admin the admin used to receive processing unit events.
+	 * @param dependencyNames the full names of the services to wait for.
+	 * @param fallbackPollIntervalMillis the interval of reading the statistics of dependencies that are not available
+	 *        yet, in case an event was missed.
+	 */
+	public ServiceDependencyWaiter(final Admin admin, final String[] dependencyNames,
+			final long fallbackPollIntervalMillis) {
+		this.admin = admin;
+		this.fallbackPollIntervalMillis = fallbackPollIntervalMillis;
+		for (final String name : dependencyNames) {
+			this.dependencies.put(name, new Dependency(name));
+		}
+		this.latch = new CountDownLatch(this.dependencies.size());
+	}
+
+	/***********
+	 * Blocks until all dependencies have a running instance.
+	 *
+	 * @param timeout the maximum time to wait.
+	 * @param unit the time unit of the timeout.
+	 * @throws InterruptedException if the waiting thread was interrupted.
+	 * @throws IllegalStateException if one or more dependencies were not available in time.
+	 */
+	public void waitForDependencies(final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (this.dependencies.isEmpty()) {
+			return;
+		}
+
+		final ProcessingUnitAddedEventListener puAddedListener = new ProcessingUnitAddedEventListener() {
+
+			@Override
+			public void processingUnitAdded(final ProcessingUnit processingUnit) {
+				final Dependency dependency = dependencies.get(processingUnit.getName());
+				if (dependency != null) {
+					dependency.attach(processingUnit);
+				}
+			}
+		};
+
+		// adding the listener also raises events for processing units that already exist.
+		admin.getProcessingUnits().getProcessingUnitAdded().add(puAddedListener);
+		try {
+			checkRunningInstances();
+			if (!awaitDependencies(unit.toMillis(timeout))) {
+				final List<String> missing = new ArrayList<String>();
+				for (final Dependency dependency : dependencies.values()) {
+					if (!dependency.isAvailable()) {
+						missing.add(dependency.name);
+					}
+				}
+				throw new IllegalStateException("Could not find dependency " + missing
+						+ " required for this service");
+			}
+		} finally {
+			admin.getProcessingUnits().getProcessingUnitAdded().remove(puAddedListener);
+			for (final Dependency dependency : dependencies.values()) {
+				dependency.detach();
+			}
+		}
+	}
+
+	private boolean awaitDependencies(final long timeoutMillis) throws InterruptedException {
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			final long remaining = end - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return latch.getCount() == 0;
+			}
+			if (latch.await(Math.min(remaining, fallbackPollIntervalMillis), TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+			checkRunningInstances();
+		}
+	}
+
+	// instances that are already running raise no statistics change before the next monitoring interval.
+	private void checkRunningInstances() {
+		for (final Dependency dependency : dependencies.values()) {
+			if (dependency.isAvailable()) {
+				continue;
+			}
+			final ProcessingUnit pu = admin.getProcessingUnits().getProcessingUnit(dependency.name);
+			if (pu == null) {
+				continue;
+			}
+			for (final ProcessingUnitInstance instance : pu.getInstances()) {
+				if (dependency.isAvailable()) {
+					break;
+				}
+				try {
+					if (isRunning(instance.getStatistics())) {
+						dependency.markAvailable();
+					}
+				} catch (final Exception e) {
+					logger.log(Level.FINE, "Failed to read the statistics of instance " + instance.getInstanceId()
+							+ " of dependency " + dependency.name, e);
+				}
+			}
+		}
+	}
+
+	private static boolean isRunning(final ProcessingUnitInstanceStatistics statistics) {
+		if (statistics == null) {
+			return false;
+		}
+		final ServiceMonitors sm = statistics.getMonitors().get(CloudifyConstants.USM_MONITORS_SERVICE_ID);
+		if (sm == null) {
+			return false;
+		}
+		final Object stateObject = sm.getMonitors().get(CloudifyConstants.USM_MONITORS_STATE_ID);
+		if (stateObject == null) {
+			logger.warning("Could not find the instance state in the PUI monitors");
+			return false;
+		}
+		final int stateIndex = (Integer) stateObject;
+		return USMState.values()[stateIndex] == USMState.RUNNING;
+	}
+
+	/*********
+	 * The wait state of a single dependency.
+	 */
+	private final class Dependency implements ProcessingUnitInstanceAddedEventListener,
+			ProcessingUnitInstanceStatisticsChangedEventListener {
+
+		private final String name;
+		private final AtomicBoolean available = new AtomicBoolean(false);
+		private ProcessingUnit processingUnit;
+		private boolean startedStatisticsMonitor;
+
+		Dependency(final String name) {
+			this.name = name;
+		}
+
+		boolean isAvailable() {
+			return available.get();
+		}
+
+		synchronized void attach(final ProcessingUnit pu) {
+			if (this.processingUnit != null) {
+				return;
+			}
+			logger.info("Found processing unit of dependency: " + name + ". Waiting for a running instance");
+			this.processingUnit = pu;
+			pu.getProcessingUnitInstanceAdded().add(this);
+			pu.getProcessingUnitInstanceStatisticsChanged().add(this);
+			if (!pu.isMonitoring()) {
+				pu.startStatisticsMonitor();
+				this.startedStatisticsMonitor = true;
+			}
+		}
+
+		synchronized void detach() {
+			if (this.processingUnit == null) {
+				return;
+			}
+			try {
+				this.processingUnit.getProcessingUnitInstanceStatisticsChanged().remove(this);
+				this.processingUnit.getProcessingUnitInstanceAdded().remove(this);
+				if (this.startedStatisticsMonitor) {
+					this.processingUnit.stopStatisticsMonitor();
+				}
+			} catch (final Exception e) {
+				logger.log(Level.FINE, "Failed to remove listeners of dependency " + name, e);
+			}
+			this.processingUnit = null;
+			this.startedStatisticsMonitor = false;
+		}
+
+		void markAvailable() {
+			if (available.compareAndSet(false, true)) {
+				logger.info("Dependency " + name + " is available");
+				latch.countDown();
+			}
+		}
+
+		@Override
+		public void processingUnitInstanceAdded(final ProcessingUnitInstance processingUnitInstance) {
+			logger.info("Found instance " + processingUnitInstance.getInstanceId() + " of dependency: " + name
+					+ ". Waiting for it to reach the RUNNING state");
+		}
+
+		@Override
+		public void processingUnitInstanceStatisticsChanged(final ProcessingUnitInstanceStatisticsChangedEvent event) {
+			if (available.get()) {
+				return;
+			}
+			if (isRunning(event.getStatistics())) {
+				markAvailable();
+			}
+		}
+	}
+}
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.cloudifysource.usm.jmx;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -29,12 +30,20 @@ import org.cloudifysource.usm.Plugin;
 /***************
  * A base class for plugins that read JMX data.
  * 
+ * Every configuration entry whose value is a list is a target, keyed by its display name. Plugin options that are not
+ * connection settings are set in a map under the 'options' key, so they never clash with a display name. The
+ * 'enabledAttributes' option lists the display names of the targets to read, e.g.
+ * <code>options: [enabledAttributes: ["Current Http Threads"]]</code>.
+ * 
  * @author barakme
  * 
  */
 
 public abstract class AbstractJmxPlugin implements Plugin {
 
+	private static final String OPTIONS_KEY = "options";
+	private static final String ENABLED_ATTRIBUTES_OPTION = "enabledAttributes";
+
 	private static java.util.logging.Logger logger =
 			java.util.logging.Logger.getLogger(AbstractJmxPlugin.class.getName());
 
@@ -48,6 +57,9 @@ public abstract class AbstractJmxPlugin implements Plugin {
 	protected String username;
 	protected String password;
 
+	// display names of the targets to read. If null, all targets are read.
+	protected Set<String> enabledAttributes;
+
 	public int getPort() {
 		return port;
 	}
@@ -79,6 +91,8 @@ public abstract class AbstractJmxPlugin implements Plugin {
 					this.username = (String) entry.getValue();
 				} else if (entry.getKey().equalsIgnoreCase("password")) {
 					this.password = (String) entry.getValue();
+				} else if (entry.getKey().equalsIgnoreCase(OPTIONS_KEY) && entry.getValue() instanceof Map) {
+					setOptions((Map<?, ?>) entry.getValue());
 				} else {
 
 					final List<?> list = (List<?>) entry.getValue();
@@ -97,7 +111,22 @@ public abstract class AbstractJmxPlugin implements Plugin {
 
 			}
 		}
+		// the client is created with the target list on the next read.
+		this.client = null;
+	}
 
+	private void setOptions(final Map<?, ?> options) {
+		for (final Entry<?, ?> option : options.entrySet()) {
+			if (ENABLED_ATTRIBUTES_OPTION.equalsIgnoreCase(option.getKey().toString())) {
+				final List<?> list = (List<?>) option.getValue();
+				this.enabledAttributes = new HashSet<String>();
+				for (final Object name : list) {
+					this.enabledAttributes.add(name.toString());
+				}
+			} else {
+				logger.warning("Unknown JMX plugin option: " + option.getKey());
+			}
+		}
 	}
 
 	public List<JmxAttribute> getTargets() {
@@ -106,23 +135,41 @@ public abstract class AbstractJmxPlugin implements Plugin {
 
 	public void setTargets(final List<JmxAttribute> targets) {
 		this.targets = targets;
+		this.client = null;
 	}
 
 	/**********
-	 * Collects and returns the JMX data.
+	 * Collects and returns the JMX data. The target list is built once, on the first call, and only includes the
+	 * attributes named in the 'enabledAttributes' option, if one was set.
 	 * @return the JMX data.
 	 */
 	protected Map<String, Object> getJmxAttributes() {
 		if (this.client == null) {
-			client = new JmxGenericClient();
-			client.setHost(this.host);
-			client.setPort(this.port);
-			client.setTargets(this.targets);
+			final JmxGenericClient newClient = new JmxGenericClient();
+			newClient.setHost(this.host);
+			newClient.setPort(this.port);
+			newClient.setUsername(this.username);
+			newClient.setPassword(this.password);
+			newClient.setTargets(selectTargets());
+			this.client = newClient;
 		}
 
 		return client.getAttributes();
 	}
 
+	private List<JmxAttribute> selectTargets() {
+		if (this.enabledAttributes == null) {
+			return new LinkedList<JmxAttribute>(this.targets);
+		}
+		final List<JmxAttribute> selected = new LinkedList<JmxAttribute>();
+		for (final JmxAttribute target : this.targets) {
+			if (this.enabledAttributes.contains(target.getDisplayName())) {
+				selected.add(target);
+			}
+		}
+		return selected;
+	}
+
 	@Override
 	public void setServiceContext(final ServiceContext context) {
 		// ignore
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.jmx;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/************
+ * Keeps one open JMX connection per target (URL and credentials), shared by all of the JMX plugins in this process. A
+ * background task closes connections that were not used for a while and health-checks the others, so that a broken
+ * connection is replaced on the next use instead of failing a monitor sample.
+ *
+ * @since 2.7.0
+ *
+ */
+public final class JmxConnectionManager {
+
+	private static final java.util.logging.Logger logger =
+			java.util.logging.Logger.getLogger(JmxConnectionManager.class.getName());
+
+	private static final long HEALTH_CHECK_INTERVAL_SECONDS = 30;
+	private static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+	private static final int READER_THREADS = 4;
+
+	private static final JmxConnectionManager INSTANCE = new JmxConnectionManager();
+
+	private final ConcurrentHashMap<ConnectionKey, PooledConnection> connections =
+			new ConcurrentHashMap<ConnectionKey, PooledConnection>();
+	// connecting is serialized per target, so that an unreachable target does not hold up the others.
+	private final ConcurrentHashMap<ConnectionKey, Object> connectLocks =
+			new ConcurrentHashMap<ConnectionKey, Object>();
+
+	private final ScheduledExecutorService healthChecker;
+	private final ExecutorService readers;
+
+	private JmxConnectionManager() {
+		this.healthChecker = Executors.newSingleThreadScheduledExecutor(createThreadFactory("JmxHealthChecker"));
+		this.healthChecker.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				checkConnections();
+			}
+		}, HEALTH_CHECK_INTERVAL_SECONDS, HEALTH_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+		this.readers = Executors.newFixedThreadPool(READER_THREADS, createThreadFactory("JmxReader"));
+	}
+
+	public static JmxConnectionManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**********
+	 * Returns the executor used to read several beans of the same target concurrently.
+	 *
+	 * @return the executor.
+	 */
+	ExecutorService getReaders() {
+		return readers;
+	}
+
+	/*********
+	 * Returns an open connection to the given target, connecting if required.
+	 *
+	 * @param url the JMX service URL.
+	 * @param env the connection environment. Connections opened with different credentials are not shared.
+	 * @return the connection.
+	 * @throws IOException if a new connection could not be opened.
+	 */
+	public MBeanServerConnection getConnection(final JMXServiceURL url, final Map<String, ?> env)
+			throws IOException {
+		final ConnectionKey key = new ConnectionKey(url, env);
+		PooledConnection connection = connections.get(key);
+		if (connection == null || connection.broken) {
+			synchronized (getConnectLock(key)) {
+				connection = connections.get(key);
+				if (connection == null || connection.broken) {
+					if (connection != null) {
+						connection.close();
+					}
+					connection = new PooledConnection(key, url, env);
+					connections.put(key, connection);
+				}
+			}
+		}
+		connection.lastUsed = System.currentTimeMillis();
+		return connection.mbsc;
+	}
+
+	/*********
+	 * Closes a connection that failed, so that the next call to getConnection opens a new one. Nothing is done if the
+	 * connection was already replaced, as another caller may be using the new one.
+	 *
+	 * @param url the JMX service URL.
+	 * @param env the connection environment the connection was opened with.
+	 * @param failed the connection that failed, as returned by getConnection.
+	 */
+	public void invalidate(final JMXServiceURL url, final Map<String, ?> env, final MBeanServerConnection failed) {
+		final ConnectionKey key = new ConnectionKey(url, env);
+		final PooledConnection connection = connections.get(key);
+		if (connection != null && connection.mbsc == failed && connections.remove(key, connection)) {
+			connection.close();
+		}
+	}
+
+	/*********
+	 * Returns the number of open connections.
+	 *
+	 * @return the number of open connections.
+	 */
+	public int getConnectionsCount() {
+		return connections.size();
+	}
+
+	private Object getConnectLock(final ConnectionKey key) {
+		final Object lock = new Object();
+		final Object existing = connectLocks.putIfAbsent(key, lock);
+		return existing == null ? lock : existing;
+	}
+
+	private void checkConnections() {
+		final long now = System.currentTimeMillis();
+		final Iterator<PooledConnection> iterator = connections.values().iterator();
+		while (iterator.hasNext()) {
+			final PooledConnection connection = iterator.next();
+			if (connection.broken || now - connection.lastUsed > IDLE_TIMEOUT_MILLIS) {
+				iterator.remove();
+				connection.close();
+				continue;
+			}
+			try {
+				connection.mbsc.getMBeanCount();
+			} catch (final Exception e) {
+				logger.fine("JMX connection to " + connection.key + " failed health check: " + e.getMessage());
+				iterator.remove();
+				connection.close();
+			}
+		}
+	}
+
+	private static ThreadFactory createThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, name + "-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/*********
+	 * Identifies a target by its URL and credentials. The credentials are compared, but never printed.
+	 */
+	private static final class ConnectionKey {
+
+		private final String url;
+		private final Object credentials;
+
+		ConnectionKey(final JMXServiceURL url, final Map<String, ?> env) {
+			this.url = url.toString();
+			this.credentials = env == null ? null : env.get(JMXConnector.CREDENTIALS);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof ConnectionKey)) {
+				return false;
+			}
+			final ConnectionKey other = (ConnectionKey) obj;
+			return url.equals(other.url)
+					&& Arrays.deepEquals(new Object[] { credentials }, new Object[] { other.credentials });
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * url.hashCode() + Arrays.deepHashCode(new Object[] { credentials });
+		}
+
+		@Override
+		public String toString() {
+			return url;
+		}
+	}
+
+	/*********
+	 * An open connection to a single target.
+	 */
+	private static final class PooledConnection implements NotificationListener {
+
+		private final ConnectionKey key;
+		private final JMXConnector connector;
+		private final MBeanServerConnection mbsc;
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile boolean broken = false;
+
+		PooledConnection(final ConnectionKey key, final JMXServiceURL url, final Map<String, ?> env)
+				throws IOException {
+			this.key = key;
+			this.connector = JMXConnectorFactory.connect(url, env);
+			this.connector.addConnectionNotificationListener(this, null, null);
+			this.mbsc = this.connector.getMBeanServerConnection();
+		}
+
+		@Override
+		public void handleNotification(final Notification notification, final Object handback) {
+			final String type = notification.getType();
+			if (JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type)) {
+				this.broken = true;
+			}
+		}
+
+		void close() {
+			this.broken = true;
+			try {
+				this.connector.close();
+			} catch (final Exception e) {
+				logger.log(Level.FINE, "Failed to close JMX connection to " + key, e);
+			}
+		}
+	}
+}
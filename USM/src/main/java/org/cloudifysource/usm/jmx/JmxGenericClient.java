@@ -23,6 +23,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import javax.management.Attribute;
@@ -30,8 +33,6 @@ import javax.management.AttributeList;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
-import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import org.cloudifysource.dsl.utils.IPUtils;
@@ -63,13 +64,16 @@ public class JmxGenericClient {
 
 	private int numOfTargets;
 
+	private JMXServiceURL jmxUrl;
+
 	public void setHost(final String host) {
 		this.host = host.trim();
+		this.jmxUrl = null;
 	}
 
 	public void setPort(final int port) {
 		this.port = port;
-
+		this.jmxUrl = null;
 	}
 
 	/********
@@ -82,6 +86,8 @@ public class JmxGenericClient {
 		private String objectName = "";
 		private final List<JmxAttribute> attributes = new LinkedList<JmxAttribute>();
 		private final Map<String, JmxAttribute> attributesByName = new HashMap<String, JmxAttribute>();
+		private ObjectName parsedObjectName;
+		private String[] attributeNames;
 
 		public JmxBeanAttributes(final String objectName) {
 			this.objectName = objectName;
@@ -94,17 +100,27 @@ public class JmxGenericClient {
 		public void add(final JmxAttribute att) {
 			this.attributes.add(att);
 			this.attributesByName.put(att.getAttributeName(), att);
+			this.attributeNames = null;
+		}
 
+		public ObjectName getParsedObjectName() throws MalformedObjectNameException {
+			if (this.parsedObjectName == null) {
+				this.parsedObjectName = new ObjectName(this.objectName);
+			}
+			return this.parsedObjectName;
 		}
 
 		public String[] getAttributeNames() {
-			final String[] arr = new String[this.attributes.size()];
-			int i = 0;
-			for (final JmxAttribute att : this.attributes) {
-				arr[i] = att.getAttributeName();
-				++i;
+			if (this.attributeNames == null) {
+				final String[] arr = new String[this.attributes.size()];
+				int i = 0;
+				for (final JmxAttribute att : this.attributes) {
+					arr[i] = att.getAttributeName();
+					++i;
+				}
+				this.attributeNames = arr;
 			}
-			return arr;
+			return this.attributeNames;
 
 		}
 
@@ -149,48 +165,106 @@ public class JmxGenericClient {
 	}
 	
 
+	/**********
+	 * Reads all of the target attributes. The connection to the JMX server is kept open between calls, and when the
+	 * targets span several beans, the beans are read concurrently.
+	 * 
+	 * @return the attributes with their values, or null if the JMX server could not be reached.
+	 */
 	public ArrayList<JmxAttribute> getData() {
 
-		final JMXServiceURL jmxUrl = createJMXServiceURL();
-
-		JMXConnector jmxc = null;
+		if (this.jmxUrl == null) {
+			this.jmxUrl = createJMXServiceURL();
+		}
 
+		final JmxConnectionManager manager = JmxConnectionManager.getInstance();
 		final Map<String, Object> env = createEnvironment();
-
-		final ArrayList<JmxAttribute> resultList = new ArrayList<JmxAttribute>(this.numOfTargets);
-
+		MBeanServerConnection mbsc = null;
 		try {
-			jmxc = JMXConnectorFactory.connect(jmxUrl, env);
-			final MBeanServerConnection mbsc = jmxc.getMBeanServerConnection();
-
-			for (final JmxBeanAttributes t : targetList) {
-
-				handleJMXBean(resultList, mbsc, t);
-
+			try {
+				mbsc = manager.getConnection(jmxUrl, env);
+				return readTargets(mbsc);
+			} catch (final IOException e) {
+				// the pooled connection may have gone stale - reconnect once.
+				logger.fine("JMX connection to " + IPUtils.getSafeIpAddress(host) + ":" + port
+						+ " failed, reconnecting. Error: " + e);
+				if (mbsc != null) {
+					manager.invalidate(jmxUrl, env, mbsc);
+					mbsc = null;
+				}
+				mbsc = manager.getConnection(jmxUrl, env);
+				return readTargets(mbsc);
 			}
-
-			return resultList;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.fine("Interrupted while fetching JMX values for " + IPUtils.getSafeIpAddress(host) + ":" + port);
 		} catch (final Exception e) {
+			if (mbsc != null) {
+				manager.invalidate(jmxUrl, env, mbsc);
+			}
 			final String msg = "Failed to fetch JMX values for " + IPUtils.getSafeIpAddress(host) + ":" + port 
 					+ ". Error: " + e;
 			logger.severe(msg);
-		} finally {
-			if (jmxc != null) {
+		}
+		return null;
+	}
+
+	private ArrayList<JmxAttribute> readTargets(final MBeanServerConnection mbsc)
+			throws IOException, MalformedObjectNameException, InterruptedException {
+		final ArrayList<JmxAttribute> resultList = new ArrayList<JmxAttribute>(this.numOfTargets);
+		if (targetList.size() <= 1) {
+			for (final JmxBeanAttributes t : targetList) {
+				handleJMXBean(resultList, mbsc, t);
+			}
+			return resultList;
+		}
+
+		final List<Future<ArrayList<JmxAttribute>>> futures =
+				new ArrayList<Future<ArrayList<JmxAttribute>>>(targetList.size());
+		for (final JmxBeanAttributes t : targetList) {
+			futures.add(JmxConnectionManager.getInstance().getReaders().submit(
+					new Callable<ArrayList<JmxAttribute>>() {
+
+						@Override
+						public ArrayList<JmxAttribute> call() throws Exception {
+							final ArrayList<JmxAttribute> beanResults = new ArrayList<JmxAttribute>();
+							handleJMXBean(beanResults, mbsc, t);
+							return beanResults;
+						}
+					}));
+		}
+
+		// results are collected in target order, regardless of completion order.
+		try {
+			for (final Future<ArrayList<JmxAttribute>> future : futures) {
 				try {
-					jmxc.close();
-				} catch (final IOException e) {
+					resultList.addAll(future.get());
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if (cause instanceof MalformedObjectNameException) {
+						throw (MalformedObjectNameException) cause;
+					}
+					throw new IllegalStateException(cause);
 				}
 			}
+		} finally {
+			// reads that are not needed any more, after a failure or an interrupt, are not left running.
+			for (final Future<ArrayList<JmxAttribute>> future : futures) {
+				future.cancel(true);
+			}
 		}
-		return null;
+		return resultList;
 	}
 
 	
 	protected void handleJMXBean(final ArrayList<JmxAttribute> resultList, final MBeanServerConnection mbsc,
 			final JmxBeanAttributes t)
-			throws MalformedObjectNameException {
+			throws MalformedObjectNameException, IOException {
 
-		final ObjectName beanName = new ObjectName(t.getObjectName());
+		final ObjectName beanName = t.getParsedObjectName();
 		final String[] attributeNames = t.getAttributeNames();
 
 		try {
@@ -208,6 +282,9 @@ public class JmxGenericClient {
                 }
             }
 
+		} catch (final IOException e) {
+			// connection level failure - let the caller reconnect.
+			throw e;
 		} catch (final Exception e) {
 			if (logger.isLoggable(Level.WARNING)) {
 				logger.warning("Failed to read Attributes for JMX Bean: " + t + ": " + e.getMessage());
@@ -22,6 +22,8 @@ import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -36,10 +38,13 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import javax.annotation.PreDestroy;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.cloudifysource.domain.LifecycleEvents;
@@ -53,6 +58,7 @@ import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.debug.DebugModes;
 import org.cloudifysource.dsl.utils.ServiceUtils;
 import org.cloudifysource.dsl.utils.ServiceUtils.FullServiceName;
+import org.cloudifysource.usm.ExternalProcessResult;
 import org.cloudifysource.usm.USMException;
 import org.cloudifysource.usm.USMUtils;
 import org.cloudifysource.usm.commands.USMBuiltInCommand;
@@ -78,6 +84,10 @@ import com.j_spaces.kernel.PlatformVersion;
 public class DefaultProcessLauncher implements ProcessLauncher, ClusterInfoAware, BeanLevelPropertiesAware {
 
 	private static final int POST_SYNC_PROCESS_SLEEP_INTERVAL = 200;
+	// a groovy script that includes this marker is always executed in a new process.
+	private static final String GROOVY_WORKER_FORK_MARKER = "cloudify:fork";
+	// like a forked process, a script on a groovy worker has no time limit unless one is configured.
+	private static final long DEFAULT_GROOVY_WORKER_SCRIPT_TIMEOUT_MILLIS = 0;
 	private static final String LINUX_EXECUTE_PREFIX = "./";
 	private static final String[] WINDOWS_BATCH_FILE_PREFIX_PARAMS = { "cmd.exe", "/c " };
 	private List<String> groovyCommandLinePrefixParams;
@@ -92,6 +102,7 @@ public class DefaultProcessLauncher implements ProcessLauncher, ClusterInfoAware
 	private boolean debugAllEvents;
 	private Set<LifecycleEvents> debugEvents = Collections.emptySet();
 	private DebugModes debugMode = DebugModes.INSTEAD;
+	private final Map<File, GroovyWorkerPool> groovyWorkerPools = new ConcurrentHashMap<File, GroovyWorkerPool>();
 
 	private static java.util.logging.Logger logger = java.util.logging.Logger.getLogger(DefaultProcessLauncher.class
 			.getName());
@@ -301,20 +312,7 @@ public class DefaultProcessLauncher implements ProcessLauncher, ClusterInfoAware
 
 		final ArrayList<String> groovyCommandParams = new ArrayList<String>();
 		groovyCommandParams.add(groovyPath);
-
-		// pass values as system props to the jvm, as required by XAP
-		final List<String> envVarsList = new ArrayList<String>();
-		envVarsList.add("LOOKUP_LOCATORS_PROP");
-		envVarsList.add("LOOKUP_GROUPS_PROP");
-		envVarsList.add("RMI_OPTIONS");
-
-		// The GS logging configuration uses a custom JDK logger
-		// JDK logging expects loggers to be available in the system classloader, but groovy loads
-		// classpath entries into the GroovyClassLoader whoe parent is the System class loader.
-		// See more details at CLOUDIFY-1694
-		// envVarsList.add("GS_LOGGING_CONFIG_FILE_PROP");
-
-		groovyCommandParams.addAll(convertEnvVarsToSysPropsList(envVarsList));
+		groovyCommandParams.addAll(createChildJvmSystemProperties());
 
 		if (ServiceUtils.isWindows()) {
 			modifyWindowsCommandLine(groovyCommandParams, workingDir);
@@ -340,6 +338,22 @@ public class DefaultProcessLauncher implements ProcessLauncher, ClusterInfoAware
 		this.groovyCommandLinePrefixParams = groovyCommandParams;
 	}
 
+	private List<String> createChildJvmSystemProperties() {
+		// pass values as system props to the jvm, as required by XAP
+		final List<String> envVarsList = new ArrayList<String>();
+		envVarsList.add("LOOKUP_LOCATORS_PROP");
+		envVarsList.add("LOOKUP_GROUPS_PROP");
+		envVarsList.add("RMI_OPTIONS");
+
+		// The GS logging configuration uses a custom JDK logger
+		// JDK logging expects loggers to be available in the system classloader, but groovy loads
+		// classpath entries into the GroovyClassLoader whoe parent is the System class loader.
+		// See more details at CLOUDIFY-1694
+		// envVarsList.add("GS_LOGGING_CONFIG_FILE_PROP");
+
+		return convertEnvVarsToSysPropsList(envVarsList);
+	}
+
 	private String createGroovyPath(final File homeDir)
 			throws FileNotFoundException, USMException {
 		final File toolsDir = new File(homeDir, "tools");
@@ -687,6 +701,13 @@ public class DefaultProcessLauncher implements ProcessLauncher, ClusterInfoAware
 			}
 		}
 
+		if (!isDebugEvent(event)) {
+			final ExternalProcessResult workerResult = executeInGroovyWorker(arg, workingDir, retries, paramsList);
+			if (workerResult != null) {
+				return handleGroovyWorkerResult(workerResult);
+			}
+		}
+
 		final Process proc = launchProcessAsync(arg,
 				workingDir,
 				retries,
@@ -754,6 +775,215 @@ public class DefaultProcessLauncher implements ProcessLauncher, ClusterInfoAware
 
 	}
 
+	/**********
+	 * Executes a groovy script entry on a pre-warmed worker JVM, if a worker pool is enabled for this service. As
+	 * when starting a process, a script that could not be sent to a worker is retried the given number of times.
+	 *
+	 * @return the script result, or null if the entry should be executed in a new process.
+	 */
+	private ExternalProcessResult executeInGroovyWorker(final ExecutableDSLEntry arg, final File workingDir,
+			final int retries, final List<String> paramsList) throws USMException {
+		final int poolSize = getGroovyWorkerPoolSize();
+		if (poolSize <= 0) {
+			return null;
+		}
+
+		final List<String> scriptCommandLine = getCommandLineFromArgument(arg,
+				workingDir,
+				paramsList);
+		if (scriptCommandLine.isEmpty() || !scriptCommandLine.get(0).endsWith(".groovy")) {
+			return null;
+		}
+		final File scriptFile = getFileFromRelativeOrAbsolutePath(workingDir,
+				scriptCommandLine.get(0));
+		if (scriptFile == null) {
+			return null;
+		}
+
+		try {
+			if (requestsNewProcess(scriptFile)) {
+				logger.fine("Script " + scriptFile + " requested a new process, it will not run in a groovy worker");
+				return null;
+			}
+
+			final List<String> scriptArgs = new ArrayList<String>(scriptCommandLine.subList(1,
+					scriptCommandLine.size()));
+			final long timeoutMillis = getGroovyWorkerScriptTimeout();
+			int attempt = 1;
+			while (true) {
+				try {
+					final GroovyWorkerPool pool = getGroovyWorkerPool(workingDir, poolSize);
+					logger.info("Executing script " + scriptFile + " in a groovy worker with arguments: "
+							+ scriptArgs);
+					logger.info("Command Output:");
+					return pool.execute(scriptFile, scriptArgs, createEnvironment(), timeoutMillis,
+							new GroovyWorkerPool.OutputHandler() {
+
+								@Override
+								public void onOutputLine(final String line) {
+									logger.info(line);
+								}
+							});
+				} catch (final IOException e) {
+					// the script did not reach a worker, so it is safe to try again, or to run it in a new process.
+					if (attempt > retries) {
+						logger.log(Level.WARNING, "Failed to execute script " + scriptFile
+								+ " in a groovy worker, a new process will be used instead: " + e.getMessage(), e);
+						return null;
+					}
+					logger.log(Level.WARNING, "Groovy worker attempt number " + attempt + " to execute script "
+							+ scriptFile + " failed: " + e.getMessage(), e);
+					++attempt;
+				}
+			}
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "Failed to read script " + scriptFile
+					+ ", a new process will be used instead: " + e.getMessage(), e);
+			return null;
+		} catch (final GroovyWorkerPool.ScriptAbortedException e) {
+			// the script may have done part of its work, running it again is not safe.
+			throw new USMException(e.getMessage(), e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new USMException("Interrupted while waiting for a groovy worker to execute " + scriptFile, e);
+		}
+	}
+
+	/**********
+	 * Checks if a groovy script must run in a new process rather than on a groovy worker, because it includes the
+	 * {@value #GROOVY_WORKER_FORK_MARKER} marker, usually in a comment.
+	 *
+	 * @param scriptFile the script file.
+	 * @return true if the script must run in a new process.
+	 * @throws IOException if the script could not be read.
+	 */
+	static boolean requestsNewProcess(final File scriptFile) throws IOException {
+		return FileUtils.readFileToString(scriptFile).contains(GROOVY_WORKER_FORK_MARKER);
+	}
+
+	private Object handleGroovyWorkerResult(final ExternalProcessResult result)
+			throws USMException {
+		// the output was logged while the script ran.
+		final String output = result.getOutput();
+		final int exitValue = result.getExitValue();
+		logger.info("Command exited with value: " + exitValue);
+		if (exitValue != 0) {
+			logger.severe("Event lifecycle external process exited with abnormal status code: " + exitValue);
+
+			final String exceptionReason = GroovyExceptionHandler.getExceptionString(output);
+
+			logger.log(Level.SEVERE,
+					"Event lifecycle external process failed: " + output);
+
+			throw new USMException("Event lifecycle external process exited with abnormal status code: "
+					+ exitValue + " " + exceptionReason);
+		}
+		return output;
+	}
+
+	private int getGroovyWorkerPoolSize() {
+		if (this.configutaion == null || this.configutaion.getService() == null) {
+			return 0;
+		}
+		final String sizeString = this.configutaion.getService().getCustomProperties()
+				.get(CloudifyConstants.CUSTOM_PROPERTY_GROOVY_WORKER_POOL_SIZE);
+		if (sizeString == null) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(sizeString.trim());
+		} catch (final NumberFormatException e) {
+			logger.warning("Invalid value for custom property "
+					+ CloudifyConstants.CUSTOM_PROPERTY_GROOVY_WORKER_POOL_SIZE + ": " + sizeString
+					+ ". Groovy workers will not be used");
+			return 0;
+		}
+	}
+
+	private long getGroovyWorkerScriptTimeout() {
+		final String timeoutString = this.configutaion.getService().getCustomProperties()
+				.get(CloudifyConstants.CUSTOM_PROPERTY_GROOVY_WORKER_SCRIPT_TIMEOUT);
+		if (timeoutString == null) {
+			return DEFAULT_GROOVY_WORKER_SCRIPT_TIMEOUT_MILLIS;
+		}
+		try {
+			return Long.parseLong(timeoutString.trim());
+		} catch (final NumberFormatException e) {
+			logger.warning("Invalid value for custom property "
+					+ CloudifyConstants.CUSTOM_PROPERTY_GROOVY_WORKER_SCRIPT_TIMEOUT + ": " + timeoutString
+					+ ". Using the default of " + DEFAULT_GROOVY_WORKER_SCRIPT_TIMEOUT_MILLIS + " ms");
+			return DEFAULT_GROOVY_WORKER_SCRIPT_TIMEOUT_MILLIS;
+		}
+	}
+
+	private synchronized GroovyWorkerPool getGroovyWorkerPool(final File workingDir, final int poolSize)
+			throws IOException {
+		GroovyWorkerPool pool = this.groovyWorkerPools.get(workingDir);
+		if (pool != null) {
+			return pool;
+		}
+
+		try {
+			initGroovyCommandLine(workingDir);
+		} catch (final USMException e) {
+			throw new IOException("Failed to set up groovy class path: " + e.getMessage(), e);
+		}
+
+		final String javaPath = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+		final List<String> command = new ArrayList<String>();
+		command.add(javaPath);
+		command.addAll(createChildJvmSystemProperties());
+		command.add(GroovyWorker.class.getName());
+
+		// the class path is passed in the environment, as in the forked groovy command line. Scripts run with the
+		// groovy jars of the groovy command line, rather than those of the service container.
+		final StringBuilder classPath = new StringBuilder(this.groovyEnvironmentClassPath);
+		for (final File jar : getGroovyLibJars(new File(Environment.getHomeDirectory()))) {
+			classPath.append(File.pathSeparator).append(jar.getAbsolutePath());
+		}
+		classPath.append(File.pathSeparator).append(getCodeSourcePath(GroovyWorker.class));
+		final Map<String, String> env = new HashMap<String, String>();
+		env.put("CLASSPATH", classPath.toString());
+
+		logger.info("Starting " + poolSize + " groovy workers in " + workingDir + " with command: " + command);
+		pool = new GroovyWorkerPool(command, workingDir, env, poolSize);
+		// the environment is given again with each script, in case it changed since.
+		pool.prestart(createEnvironment());
+		this.groovyWorkerPools.put(workingDir, pool);
+		return pool;
+	}
+
+	// the jars the groovy command line loads, from its lib directory.
+	private List<File> getGroovyLibJars(final File homeDir) throws IOException {
+		final File libDir = new File(new File(new File(homeDir, "tools"), "groovy"), "lib");
+		final File[] jars = getJarFilesFromDir(libDir);
+		if (jars == null || jars.length == 0) {
+			throw new FileNotFoundException("Could not find groovy jars in: " + libDir.getAbsolutePath());
+		}
+		Arrays.sort(jars);
+		return Arrays.asList(jars);
+	}
+
+	private static String getCodeSourcePath(final Class<?> clazz) {
+		final URL location = clazz.getProtectionDomain().getCodeSource().getLocation();
+		try {
+			return new File(location.toURI()).getAbsolutePath();
+		} catch (final URISyntaxException e) {
+			return new File(location.getPath()).getAbsolutePath();
+		}
+	}
+
+	/**********
+	 * Stops the groovy workers started by this launcher.
+	 */
+	@PreDestroy
+	public void close() {
+		for (final GroovyWorkerPool pool : this.groovyWorkerPools.values()) {
+			pool.close();
+		}
+		this.groovyWorkerPools.clear();
+	}
+
 	private List<String> getParamsListFromMap(final Map<String, Object> params) {
 		final List<String> paramsList = new ArrayList<String>();
 		int index = 0;
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.launcher;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.Permission;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+/*************
+ * Entry point of a pre-warmed Groovy worker JVM, used by {@link GroovyWorkerPool}. The worker starts and warms up the
+ * groovy runtime ahead of time, then reads a single script execution request from its standard input, runs the script
+ * in-process and streams the script output and exit code back on its standard output. The script gets its own class
+ * loader, with the script's directory on its class path, as the groovy command line does. As with the groovy command
+ * line, the script ends once its body returned and the non-daemon threads it started ended, and a call to
+ * System.exit() from the script or one of its threads ends the script and reports its exit code.
+ *
+ * The worker exits once the script ended, so static state, system properties and threads of one script are never
+ * seen by another script. Daemon threads of the script, and threads still running when it calls System.exit(), are
+ * ended with the worker, as they are with the groovy command line. It also exits when its standard input is closed before a request arrives.
+ *
+ * @since 2.7.0
+ *
+ */
+public final class GroovyWorker {
+
+	/**
+	 * Frame type sent once the worker is ready for requests.
+	 */
+	static final byte FRAME_READY = 'R';
+	/**
+	 * Frame type of a chunk of script output, followed by its length and bytes.
+	 */
+	static final byte FRAME_OUTPUT = 'O';
+	/**
+	 * Frame type sent when a script ends, followed by its exit code.
+	 */
+	static final byte FRAME_EXIT = 'X';
+
+	private static final int GENERAL_ERROR_EXIT_CODE = 1;
+	// how often a wait for the threads of the script checks if one of them called System.exit().
+	private static final long EXIT_CHECK_INTERVAL_MILLIS = 100;
+
+	private final ClassLoader parentLoader = GroovyWorker.class.getClassLoader();
+
+	private static volatile boolean trapExit = false;
+	// the status of the first System.exit() call trapped while the script ran, or null.
+	private static volatile Integer trappedExitStatus = null;
+
+	private GroovyWorker() {
+		// created by main.
+	}
+
+	/**********
+	 * Worker entry point.
+	 *
+	 * @param args ignored.
+	 * @throws IOException if the communication with the parent process failed.
+	 */
+	public static void main(final String[] args) throws IOException {
+		final DataOutputStream out =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+
+		final PrintStream capture = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out)), true);
+		System.setOut(capture);
+		System.setErr(capture);
+		System.setSecurityManager(new ExitTrappingSecurityManager());
+		Thread.setDefaultUncaughtExceptionHandler(new ExitIgnoringExceptionHandler());
+
+		// warm up the groovy runtime before reporting ready.
+		new GroovyShell().evaluate("return 1");
+
+		final GroovyWorker worker = new GroovyWorker();
+		synchronized (out) {
+			out.writeByte(FRAME_READY);
+			out.flush();
+		}
+
+		final String scriptPath;
+		try {
+			scriptPath = in.readUTF();
+		} catch (final EOFException e) {
+			// parent closed the channel without sending a script.
+			System.exit(0);
+			return;
+		}
+		final int argc = in.readInt();
+		final String[] scriptArgs = new String[argc];
+		for (int i = 0; i < argc; i++) {
+			scriptArgs[i] = in.readUTF();
+		}
+
+		final int exitCode = worker.run(new File(scriptPath), scriptArgs);
+		capture.flush();
+		synchronized (out) {
+			out.writeByte(FRAME_EXIT);
+			out.writeInt(exitCode);
+			out.flush();
+		}
+		System.exit(0);
+	}
+
+	private int run(final File scriptFile, final String[] args) {
+		try {
+			final Class<?> scriptClass = loadScript(scriptFile);
+			final Script script = InvokerHelper.createScript(scriptClass, new Binding(args));
+			final Set<Thread> workerThreads = getNonDaemonThreads();
+			trapExit = true;
+			try {
+				script.run();
+				return waitForScriptThreads(workerThreads);
+			} finally {
+				trapExit = false;
+			}
+		} catch (final Throwable t) {
+			final ExitTrappedException exit = findExit(t);
+			if (exit != null) {
+				return exit.status;
+			}
+			// same output as the groovy command line.
+			if (t instanceof CompilationFailedException) {
+				System.err.println(t.getMessage());
+			} else {
+				System.err.println("Caught: " + t);
+				t.printStackTrace();
+			}
+			return GENERAL_ERROR_EXIT_CODE;
+		}
+	}
+
+	// the JVM of the groovy command line exits once all non-daemon threads ended, or one of them exits.
+	private static int waitForScriptThreads(final Set<Thread> workerThreads) throws InterruptedException {
+		while (true) {
+			final Integer exitStatus = trappedExitStatus;
+			if (exitStatus != null) {
+				return exitStatus;
+			}
+			Thread scriptThread = null;
+			for (final Thread thread : getNonDaemonThreads()) {
+				if (thread != Thread.currentThread() && !workerThreads.contains(thread)) {
+					scriptThread = thread;
+					break;
+				}
+			}
+			if (scriptThread == null) {
+				return 0;
+			}
+			scriptThread.join(EXIT_CHECK_INTERVAL_MILLIS);
+		}
+	}
+
+	private static Set<Thread> getNonDaemonThreads() {
+		final Set<Thread> threads = new HashSet<Thread>();
+		for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && !thread.isDaemon()) {
+				threads.add(thread);
+			}
+		}
+		return threads;
+	}
+
+	private Class<?> loadScript(final File scriptFile) throws IOException {
+		final GroovyClassLoader loader = new GroovyClassLoader(parentLoader);
+		final File parentDir = scriptFile.getAbsoluteFile().getParentFile();
+		if (parentDir != null) {
+			loader.addClasspath(parentDir.getAbsolutePath());
+		}
+		return loader.parseClass(scriptFile);
+	}
+
+	private static ExitTrappedException findExit(final Throwable t) {
+		Throwable current = t;
+		while (current != null) {
+			if (current instanceof ExitTrappedException) {
+				return (ExitTrappedException) current;
+			}
+			current = current.getCause();
+		}
+		return null;
+	}
+
+	/**********
+	 * Thrown in place of exiting the JVM when a script calls System.exit().
+	 */
+	private static class ExitTrappedException extends SecurityException {
+
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		ExitTrappedException(final int status) {
+			super("System.exit(" + status + ") called by script");
+			this.status = status;
+		}
+	}
+
+	/**********
+	 * Allows everything, except for exiting the JVM while a script is running.
+	 */
+	private static class ExitTrappingSecurityManager extends SecurityManager {
+
+		@Override
+		public void checkPermission(final Permission perm) {
+			// allow
+		}
+
+		@Override
+		public void checkPermission(final Permission perm, final Object context) {
+			// allow
+		}
+
+		@Override
+		public void checkExit(final int status) {
+			if (trapExit) {
+				synchronized (GroovyWorker.class) {
+					if (trappedExitStatus == null) {
+						trappedExitStatus = status;
+					}
+				}
+				throw new ExitTrappedException(status);
+			}
+		}
+	}
+
+	/**********
+	 * Ends a script thread that called System.exit() quietly, and reports other uncaught exceptions as the JVM does.
+	 */
+	private static class ExitIgnoringExceptionHandler implements Thread.UncaughtExceptionHandler {
+
+		@Override
+		public void uncaughtException(final Thread thread, final Throwable e) {
+			if (findExit(e) != null) {
+				return;
+			}
+			System.err.print("Exception in thread \"" + thread.getName() + "\" ");
+			e.printStackTrace();
+		}
+	}
+
+	/**********
+	 * Writes output as length-prefixed frames on the channel to the parent process.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+
+		FrameOutputStream(final DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			synchronized (out) {
+				out.writeByte(FRAME_OUTPUT);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.launcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.usm.ExternalProcessResult;
+
+/*************
+ * A small pool of pre-warmed {@link GroovyWorker} JVMs that execute groovy scripts for a single USM. Each worker runs
+ * a single script and then exits, so scripts are isolated from each other as in forked processes: static state,
+ * system properties and threads a script started never reach another script. A replacement worker is started in the
+ * background as soon as a worker is taken, so the next script does not pay for JVM startup.
+ *
+ * Workers are started with the environment variables given with the last script, in addition to the fixed
+ * environment of the pool. A script that asks for other environment variables than those of the idle workers gets a
+ * new worker started with its own environment. Script output is passed to the caller line by line while the script
+ * runs.
+ *
+ * A script that does not end by its deadline, if one is given, has its worker killed. Failures are reported in two
+ * ways, as a script must not run twice: an {@link IOException} means the script never reached a worker and may be run
+ * elsewhere, while a {@link ScriptAbortedException} means a worker received the script and died or was killed while
+ * running it.
+ *
+ * @since 2.7.0
+ *
+ */
+public class GroovyWorkerPool {
+
+	private static final Logger logger = Logger.getLogger(GroovyWorkerPool.class.getName());
+	private static final long ACQUIRE_RETRY_INTERVAL_MILLIS = 1000;
+
+	private final List<String> command;
+	private final File workingDir;
+	private final Map<String, String> environment;
+	private final int size;
+
+	private final BlockingQueue<WorkerProcess> idleWorkers = new LinkedBlockingQueue<WorkerProcess>();
+	private int createdWorkers = 0;
+	private volatile boolean closed = false;
+	// the environment new workers are started with, the one of the last script.
+	private volatile Map<String, String> scriptEnvironment = Collections.emptyMap();
+	private ScheduledExecutorService watchdog;
+	private ExecutorService starter;
+
+	/***********
+	 * Constructor. Workers are started in the background.
+	 *
+	 * @param command the command line that starts a worker JVM.
+	 * @param workingDir the working directory of the workers.
+	 * @param environment environment variables of all workers, in addition to those given with each script.
+	 * @param size the maximum number of workers.
+	 */
+	public GroovyWorkerPool(final List<String> command, final File workingDir, final Map<String, String> environment,
+			final int size) {
+		this.command = command;
+		this.workingDir = workingDir;
+		this.environment = environment;
+		this.size = size;
+	}
+
+	/**********
+	 * Starts all of the pool's workers in a background thread, so that the first scripts do not pay for JVM startup.
+	 *
+	 * @param scriptEnvironment the environment variables the first scripts are expected to use.
+	 */
+	public void prestart(final Map<String, String> scriptEnvironment) {
+		this.scriptEnvironment = new HashMap<String, String>(scriptEnvironment);
+		startWorkersInBackground();
+	}
+
+	/**********
+	 * Runs a script on one of the workers, waiting for a free worker if all of them are busy. The worker exits when
+	 * the script ends.
+	 *
+	 * @param scriptFile the script file.
+	 * @param args the script arguments.
+	 * @param scriptEnvironment the environment variables the script runs with.
+	 * @param timeoutMillis the time the script may run, after which its worker is killed. Zero or less for no limit.
+	 * @param outputHandler receives each line of the script's combined output and error streams as it is written.
+	 * @return the script exit code and its combined output and error streams.
+	 * @throws IOException if a worker could not be started, or the script could not be sent to it. The script did
+	 *         not run.
+	 * @throws ScriptAbortedException if the worker died, or was killed on timeout, while running the script.
+	 * @throws InterruptedException if interrupted while waiting for a worker.
+	 */
+	public ExternalProcessResult execute(final File scriptFile, final List<String> args,
+			final Map<String, String> scriptEnvironment, final long timeoutMillis, final OutputHandler outputHandler)
+			throws IOException, ScriptAbortedException, InterruptedException {
+		final WorkerProcess worker = acquire(new HashMap<String, String>(scriptEnvironment));
+		try {
+			return worker.execute(scriptFile, args, timeoutMillis, outputHandler);
+		} finally {
+			retire(worker);
+		}
+	}
+
+	/**********
+	 * Stops all workers.
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		final List<WorkerProcess> workers = new ArrayList<WorkerProcess>();
+		idleWorkers.drainTo(workers);
+		for (final WorkerProcess worker : workers) {
+			worker.destroy();
+		}
+		if (this.watchdog != null) {
+			this.watchdog.shutdownNow();
+			this.watchdog = null;
+		}
+		if (this.starter != null) {
+			this.starter.shutdownNow();
+			this.starter = null;
+		}
+	}
+
+	private synchronized ScheduledExecutorService getWatchdog() {
+		if (this.watchdog == null) {
+			this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "GroovyWorkerWatchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.watchdog;
+	}
+
+	private synchronized ExecutorService getStarter() {
+		if (this.starter == null) {
+			this.starter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "GroovyWorkerStarter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.starter;
+	}
+
+	// starts workers until the pool is full.
+	private void startWorkersInBackground() {
+		if (closed) {
+			return;
+		}
+		getStarter().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (!closed) {
+						final WorkerProcess worker = createWorkerIfAllowed(scriptEnvironment);
+						if (worker == null) {
+							return;
+						}
+						if (closed) {
+							worker.destroy();
+							return;
+						}
+						idleWorkers.add(worker);
+					}
+				} catch (final IOException e) {
+					logger.log(Level.WARNING, "Failed to start groovy worker: " + e.getMessage(), e);
+				}
+			}
+		});
+	}
+
+	private WorkerProcess acquire(final Map<String, String> environmentOfScript) throws IOException,
+			InterruptedException {
+		this.scriptEnvironment = environmentOfScript;
+		while (true) {
+			if (closed) {
+				throw new IllegalStateException("Groovy worker pool is closed");
+			}
+			WorkerProcess worker = idleWorkers.poll();
+			if (worker == null) {
+				worker = createWorkerIfAllowed(environmentOfScript);
+			}
+			if (worker == null) {
+				// a busy worker is replaced in the background when it ends, check again from time to time in case
+				// starting the replacement failed.
+				worker = idleWorkers.poll(ACQUIRE_RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			if (worker == null) {
+				continue;
+			}
+			if (worker.environment.equals(environmentOfScript) && worker.isAlive()) {
+				// start its replacement while the script runs.
+				startWorkersInBackground();
+				return worker;
+			}
+			// started with an older environment, or died while idle.
+			retire(worker);
+		}
+	}
+
+	private void retire(final WorkerProcess worker) {
+		worker.destroy();
+		synchronized (this) {
+			--createdWorkers;
+		}
+		startWorkersInBackground();
+	}
+
+	private WorkerProcess createWorkerIfAllowed(final Map<String, String> environmentOfScript) throws IOException {
+		synchronized (this) {
+			if (createdWorkers >= size) {
+				return null;
+			}
+			++createdWorkers;
+		}
+		try {
+			return new WorkerProcess(environmentOfScript);
+		} catch (final IOException e) {
+			synchronized (this) {
+				--createdWorkers;
+			}
+			throw e;
+		}
+	}
+
+	/*********
+	 * A single worker JVM and its communication channel.
+	 */
+	private final class WorkerProcess {
+
+		private final Map<String, String> environment;
+		private final Process process;
+		private final DataOutputStream requests;
+		private final DataInputStream responses;
+		private volatile boolean destroyed = false;
+
+		WorkerProcess(final Map<String, String> environmentOfScript) throws IOException {
+			this.environment = environmentOfScript;
+			final ProcessBuilder pb = new ProcessBuilder(command);
+			pb.directory(workingDir);
+			pb.environment().putAll(environmentOfScript);
+			pb.environment().putAll(GroovyWorkerPool.this.environment);
+			this.process = pb.start();
+			this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			drainErrorStream();
+
+			final byte ready = responses.readByte();
+			if (ready != GroovyWorker.FRAME_READY) {
+				destroy();
+				throw new IOException("Groovy worker sent unexpected frame while starting: " + ready);
+			}
+			logger.fine("Groovy worker is ready in " + workingDir);
+		}
+
+		ExternalProcessResult execute(final File scriptFile, final List<String> args, final long timeoutMillis,
+				final OutputHandler outputHandler) throws IOException, ScriptAbortedException {
+			// the worker reads the whole request before running the script, so if sending fails, it did not run.
+			requests.writeUTF(scriptFile.getAbsolutePath());
+			requests.writeInt(args.size());
+			for (final String arg : args) {
+				requests.writeUTF(arg);
+			}
+			requests.flush();
+
+			final AtomicBoolean timedOut = new AtomicBoolean(false);
+			ScheduledFuture<?> deadline = null;
+			if (timeoutMillis > 0) {
+				deadline = getWatchdog().schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						timedOut.set(true);
+						logger.warning("Script " + scriptFile + " did not end within " + timeoutMillis
+								+ " ms, killing its groovy worker");
+						destroy();
+					}
+				}, timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			try {
+				return readResult(outputHandler);
+			} catch (final IOException e) {
+				if (timedOut.get()) {
+					throw new ScriptAbortedException("Script " + scriptFile + " did not end within " + timeoutMillis
+							+ " ms and its groovy worker was killed", e);
+				}
+				throw new ScriptAbortedException("Groovy worker failed while running script " + scriptFile + ": "
+						+ e.getMessage(), e);
+			} finally {
+				if (deadline != null) {
+					deadline.cancel(false);
+				}
+			}
+		}
+
+		private ExternalProcessResult readResult(final OutputHandler outputHandler) throws IOException {
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			final ByteArrayOutputStream line = new ByteArrayOutputStream();
+			while (true) {
+				final byte frame = responses.readByte();
+				if (frame == GroovyWorker.FRAME_OUTPUT) {
+					final byte[] chunk = new byte[responses.readInt()];
+					responses.readFully(chunk);
+					output.write(chunk);
+					for (final byte b : chunk) {
+						if (b == '\n') {
+							outputHandler.onOutputLine(toLine(line));
+							line.reset();
+						} else {
+							line.write(b);
+						}
+					}
+				} else if (frame == GroovyWorker.FRAME_EXIT) {
+					final int exitCode = responses.readInt();
+					if (line.size() > 0) {
+						outputHandler.onOutputLine(toLine(line));
+					}
+					// same decoding as the output of a forked process.
+					return new ExternalProcessResult(exitCode, new String(output.toByteArray()));
+				} else {
+					throw new IOException("Groovy worker sent unexpected frame: " + frame);
+				}
+			}
+		}
+
+		private String toLine(final ByteArrayOutputStream line) {
+			final String text = new String(line.toByteArray());
+			return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+		}
+
+		boolean isAlive() {
+			if (destroyed) {
+				return false;
+			}
+			try {
+				process.exitValue();
+				return false;
+			} catch (final IllegalThreadStateException e) {
+				return true;
+			}
+		}
+
+		void destroy() {
+			destroyed = true;
+			try {
+				requests.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+			process.destroy();
+		}
+
+		// scripts write to the protocol channel - only JVM level errors reach the real error stream.
+		private void drainErrorStream() {
+			final Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+					try {
+						String line = reader.readLine();
+						while (line != null) {
+							logger.warning("Groovy worker: " + line);
+							line = reader.readLine();
+						}
+					} catch (final IOException e) {
+						// worker is gone.
+					}
+				}
+			}, "GroovyWorkerErrorStream");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/*********
+	 * Receives the output of a script while it runs.
+	 */
+	public interface OutputHandler {
+
+		/**********
+		 * Called for each line of output, in the order the script wrote them.
+		 *
+		 * @param line the line, without its line separator.
+		 */
+		void onOutputLine(String line);
+	}
+
+	/*********
+	 * Thrown when a script reached a worker, but the worker died or was killed before the script ended. The script may
+	 * have had side effects, so it must not be run again.
+	 */
+	public static class ScriptAbortedException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		ScriptAbortedException(final String message, final Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
@@ -16,15 +16,23 @@
 package org.cloudifysource.usm.liveness;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
-import org.apache.commons.io.input.Tailer;
 import org.cloudifysource.domain.context.ServiceContext;
 import org.cloudifysource.usm.Plugin;
 import org.cloudifysource.usm.USMException;
 import org.cloudifysource.usm.events.AbstractUSMEventListener;
+import org.cloudifysource.usm.events.EventResult;
+import org.cloudifysource.usm.events.PreStartListener;
+import org.cloudifysource.usm.events.StartReason;
+import org.cloudifysource.usm.tail.IncrementalFileReader;
+import org.cloudifysource.usm.tail.RollingFileAppenderTailer.LineHandler;
 
 /**
  * FileLivenessDetector class is responsible for verifying that the process has finished loading by checking whether the
@@ -33,14 +41,19 @@ import org.cloudifysource.usm.events.AbstractUSMEventListener;
  * 
  * Using the FileLivenessDetector requires adding a plugin to the DSL file as following: plugins ([ plugin { name
  * "fileLiveness" className "org.cloudifysource.usm.liveness.FileLivenessDetector" config ([ "FilePath" :
- * System.getProperty("java.io.tmpdir") + "/groovyLog.log", "TimeoutInSeconds" : 30, "regularExpression" : "Hello_World"
+ * System.getProperty("java.io.tmpdir") + "/groovyLog.log", "regularExpression" : "Hello_World"
  * ]) }, plugin {...
  * 
  * @author adaml
  * 
  */
-public class FileLivenessDetector extends AbstractUSMEventListener implements LivenessDetector, Plugin {
+public class FileLivenessDetector extends AbstractUSMEventListener implements LivenessDetector, Plugin,
+		PreStartListener {
 
+	/**
+	 * The time the process has to log the regex after it was launched, after which the detector fails. When not set,
+	 * only the start detection timeout of the service applies.
+	 */
 	public static final String TIMEOUT_IN_SECONDS_KEY = "TimeoutInSeconds";
 	public static final String REGULAR_EXPRESSION_KEY = "regularExpression";
 	public static final String FILE_PATH_KEY = "FilePath";
@@ -49,11 +62,19 @@ public class FileLivenessDetector extends AbstractUSMEventListener implements Li
 
 	private String filePath = "";
 	private String regex = "";
-	private int timeoutInSeconds = 60;
+	// zero or less when not set.
+	private int timeoutInSeconds = 0;
 
-	private static final int TIMEOUT_BETWEEN_FILE_QUERYING = 1000;
+	// the file is read in bounded chunks, so a huge log does not hold start detection for long.
+	private static final long MAX_BYTES_PER_CHECK = 16 * 1024 * 1024;
 	private String serviceDirectory;
 
+	private File file;
+	private IncrementalFileReader reader;
+	private boolean found;
+	// when the current start detection run started, 0 until the first check of the run.
+	private long detectionStartTime;
+
 	@Override
 	public void setConfig(final Map<String, Object> config) {
 		final String filePath = (String) config.get(FILE_PATH_KEY);
@@ -61,7 +82,7 @@ public class FileLivenessDetector extends AbstractUSMEventListener implements Li
 			this.filePath = filePath;
 		}
 
-		final Integer timeout = (Integer)config.get(TIMEOUT_IN_SECONDS_KEY);
+		final Integer timeout = (Integer) config.get(TIMEOUT_IN_SECONDS_KEY);
 		if (timeout != null) {
 			this.timeoutInSeconds = timeout;
 		}
@@ -72,52 +93,96 @@ public class FileLivenessDetector extends AbstractUSMEventListener implements Li
 	}
 
 	/**
-	 * isProcessAlive will sample the file defined in the groovy configuration file every second for the specified
-	 * timeout period looking for a regex in the log that confirms the process has loaded successfully and return true
-	 * if the regex was found.
+	 * isProcessAlive reads the lines written to the file defined in the groovy configuration file since the previous
+	 * call, looking for a regex in the log that confirms the process has loaded successfully, and returns true if the
+	 * regex was found. The file is read from its beginning when the service is first launched, and from its end at the
+	 * time of each relaunch, so a relaunched process must log the regex again.
 	 * 
-	 * @throws USMException .
+	 * @throws USMException
+	 *             if the regex was not found within the time set by {@value #TIMEOUT_IN_SECONDS_KEY}.
 	 * 
 	 */
 	@Override
-	public boolean isProcessAlive()
+	public synchronized boolean isProcessAlive()
 			throws USMException {
 		if (this.regex.isEmpty() || this.filePath.isEmpty()) {
 			throw new USMException(
 					"When using the FileLivnessDetector, both the file path and regex should be defined.");
 		}
-		File file = new File(this.filePath);
-		if (!file.isAbsolute()) {
-			file = new File(serviceDirectory, this.filePath);
+		if (this.found) {
+			return true;
+		}
+		if (this.detectionStartTime == 0) {
+			this.detectionStartTime = System.currentTimeMillis();
+		}
+		if (this.reader == null) {
+			this.file = new File(this.filePath);
+			if (!this.file.isAbsolute()) {
+				this.file = new File(serviceDirectory, this.filePath);
+			}
+			this.reader = new IncrementalFileReader(this.file, Charset.defaultCharset(), false);
+		}
+		if (!this.file.exists()) {
+			logger.fine("The file " + this.file + " does not exist yet");
+			checkTimeout();
+			return false;
 		}
-		final FileTailerListener listener = new FileTailerListener(this.regex);
-		Tailer tailer = null;
+
+		final Pattern pattern = Pattern.compile(this.regex);
 		try {
-			final long startTime = System.currentTimeMillis();
-			while (System.currentTimeMillis() < startTime + TimeUnit.SECONDS.toMillis(timeoutInSeconds)) {
-				if (file.exists()) {
-					if (tailer == null) {
-						tailer = Tailer.create(file, listener, TIMEOUT_BETWEEN_FILE_QUERYING, false);
-					}
-					if (listener.isProcessUp()) {
-						logger.info("The regular expression " + this.regex + " was found in the process log");
-						return true;
+			this.reader.read(new LineHandler() {
+
+				@Override
+				public void handleLine(final String fileName, final String line) {
+					if (!found && pattern.matcher(line).find()) {
+						found = true;
 					}
 				}
-				try {
-					Thread.sleep(TIMEOUT_BETWEEN_FILE_QUERYING);
-				} catch (final InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-		} finally {
-			if (tailer != null) {
-				tailer.stop();
-			}
+			}, this.file.getName(), MAX_BYTES_PER_CHECK);
+		} catch (final IOException e) {
+			throw new USMException("Failed to read " + this.file + ": " + e.getMessage(), e);
 		}
-		logger.info("The regular expression " + this.regex + " was NOT found in the process log");
-		return false;
 
+		if (this.found) {
+			logger.info("The regular expression " + this.regex + " was found in the process log");
+		} else {
+			logger.fine("The regular expression " + this.regex + " was NOT found in the process log");
+			checkTimeout();
+		}
+		return this.found;
+
+	}
+
+	private void checkTimeout() throws USMException {
+		if (this.timeoutInSeconds > 0
+				&& System.currentTimeMillis() - this.detectionStartTime > TimeUnit.SECONDS.toMillis(timeoutInSeconds)) {
+			throw new USMException("The regular expression " + this.regex + " was not found in " + this.file
+					+ " within " + this.timeoutInSeconds + " seconds");
+		}
+	}
+
+	/**
+	 * Starts a new start detection run. A process relaunched after it died appends to the log of the process that ran
+	 * before, so the lines already in the file are skipped.
+	 * 
+	 * @param reason
+	 *            the start reason.
+	 * @return the event result.
+	 */
+	@Override
+	public synchronized EventResult onPreStart(final StartReason reason) {
+		this.found = false;
+		this.detectionStartTime = 0;
+		if (this.reader != null) {
+			try {
+				this.reader.skipToEnd();
+			} catch (final IOException e) {
+				logger.log(Level.WARNING, "Failed to skip the lines already in " + this.file
+						+ ", the file will be read from its beginning: " + e.getMessage(), e);
+				this.reader = null;
+			}
+		}
+		return EventResult.SUCCESS;
 	}
 
 	@Override
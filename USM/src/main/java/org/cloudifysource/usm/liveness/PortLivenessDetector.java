@@ -15,8 +15,18 @@
  *******************************************************************************/
 package org.cloudifysource.usm.liveness;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
 
 import org.cloudifysource.domain.context.ServiceContext;
 import org.cloudifysource.dsl.utils.ServiceUtils;
@@ -55,8 +65,12 @@ public class PortLivenessDetector extends AbstractUSMEventListener implements Li
 	private static final java.util.logging.Logger logger = java.util.logging.Logger
 			.getLogger(PortLivenessDetector.class.getName());
 	private static final String PORT_KEY = "Port";
+	private static final String HOST_KEY = "Host";
+	private static final String DEFAULT_HOST = "127.0.0.1";
+	private static final long CONNECT_TIMEOUT_MILLIS = 1000;
 	// Injected values
 	private List<Integer> portList;
+	private String host = DEFAULT_HOST;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -66,17 +80,86 @@ public class PortLivenessDetector extends AbstractUSMEventListener implements Li
 			throw new IllegalArgumentException("Parameter portList of Plugin " + this.getClass().getName()
 					+ " is mandatory");
 		}
+		final String configuredHost = (String) config.get(HOST_KEY);
+		if (configuredHost != null) {
+			this.host = configuredHost;
+		}
 	}
 
 	/**
-	 * Checks if a set of ports is open (i.e. you can connect to them).
+	 * Checks if a set of ports is open (i.e. you can connect to them). All the ports are probed at once, with
+	 * non-blocking connects multiplexed on a single selector.
 	 * 
 	 * @return true if all ports in the list are open, false if any one of them is not. 
 	 */
 	@Override
 	public boolean isProcessAlive() {
-		logger.info("Testing if the following ports are open: " + this.portList.toString());
-		return ServiceUtils.arePortsOccupied(this.portList);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Testing if the following ports are open: " + this.portList.toString());
+		}
+		try {
+			return getOpenPorts(this.portList).containsAll(this.portList);
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "Failed to probe ports " + this.portList + ": " + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	private Set<Integer> getOpenPorts(final List<Integer> ports)
+			throws IOException {
+		final Set<Integer> openPorts = new HashSet<Integer>();
+		final Selector selector = Selector.open();
+		final List<SocketChannel> channels = new ArrayList<SocketChannel>(ports.size());
+		try {
+			int pending = 0;
+			for (final Integer port : ports) {
+				final SocketChannel channel = SocketChannel.open();
+				channels.add(channel);
+				channel.configureBlocking(false);
+				try {
+					if (channel.connect(new InetSocketAddress(this.host, port))) {
+						openPorts.add(port);
+					} else {
+						channel.register(selector, SelectionKey.OP_CONNECT, port);
+						++pending;
+					}
+				} catch (final IOException e) {
+					logger.finest("Port " + port + " is closed: " + e.getMessage());
+				}
+			}
+
+			final long endTime = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+			while (pending > 0) {
+				final long remaining = endTime - System.currentTimeMillis();
+				if (remaining <= 0 || selector.select(remaining) == 0 && System.currentTimeMillis() >= endTime) {
+					break;
+				}
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					key.cancel();
+					--pending;
+					try {
+						if (((SocketChannel) key.channel()).finishConnect()) {
+							openPorts.add((Integer) key.attachment());
+						}
+					} catch (final IOException e) {
+						logger.finest("Port " + key.attachment() + " is closed: " + e.getMessage());
+					}
+				}
+			}
+		} finally {
+			for (final SocketChannel channel : channels) {
+				try {
+					channel.close();
+				} catch (final IOException e) {
+					// ignore
+				}
+			}
+			selector.close();
+		}
+		return openPorts;
 	}
 
 	@Override
@@ -100,7 +183,7 @@ public class PortLivenessDetector extends AbstractUSMEventListener implements Li
 	public EventResult onPreStart(final StartReason reason) {
 		for (final Integer port : this.portList) {
 
-			if (ServiceUtils.isPortOccupied(port)) {
+			if (ServiceUtils.isPortOccupied(this.host, port)) {
 				throw new IllegalStateException("The Port Liveness Detector found that port " + port
 						+ " is IN USE before the process was launched!");
 
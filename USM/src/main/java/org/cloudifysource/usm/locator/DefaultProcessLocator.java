@@ -15,14 +15,12 @@ package org.cloudifysource.usm.locator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
+import org.cloudifysource.usm.ProcessTableSnapshot;
 import org.cloudifysource.usm.USMException;
 import org.cloudifysource.usm.UniversalServiceManagerBean;
 import org.cloudifysource.usm.events.AbstractUSMEventListener;
@@ -59,6 +57,7 @@ public class DefaultProcessLocator extends AbstractUSMEventListener implements P
 	private static final String[] SHELL_PROCESS_NAMES = { "cmd.exe", "bash", "/bin/sh" };
 
 	private Sigar sigar;
+	private final ProcessTableSnapshot processTable = ProcessTableSnapshot.getInstance();
 	private long myPid;
 
 	private Set<Long> childrenBeforeStart;
@@ -78,6 +77,7 @@ public class DefaultProcessLocator extends AbstractUSMEventListener implements P
 		this.myPid = this.sigar.getPid();
 
 		try {
+			processTable.refreshDescendants(this.myPid);
 			this.childrenBeforeStart = getChildProcesses(this.myPid);
 		} catch (final USMException e) {
 			throw new IllegalStateException("Failed to read child processes", e);
@@ -87,43 +87,10 @@ public class DefaultProcessLocator extends AbstractUSMEventListener implements P
 
 	}
 
-	/**********
-	 * Creates a process tree of the given Process IDs. Each entry in the map maps a PID to the set of its child PIDs.
-	 *
-	 * @param pids
-	 * @return
-	 */
-	private Map<Long, Set<Long>> createProcessTree(final long[] pids) {
-
-		final HashMap<Long, Set<Long>> map = new HashMap<Long, Set<Long>>();
-		for (final long pid : pids) {
-			final Set<Long> childSet = map.get(pid);
-			if (childSet == null) {
-				map.put(pid, new HashSet<Long>());
-			}
-
-			try {
-				final long ppid = this.sigar.getProcState(pid).getPpid();
-
-				Set<Long> set = map.get(ppid);
-				if (set == null) {
-					set = new HashSet<Long>();
-					map.put(ppid, set);
-				}
-				set.add(pid);
-			} catch (final SigarException e) {
-				logger.log(Level.WARNING, "Failed to get Parent Process for process: " + pid, e);
-			}
-		}
-
-		return map;
-
-	}
-
-	private long findNewChildProcessID(final Set<Long> childrenBefore, final Map<Long, Set<Long>> procTree)
+	private long findNewChildProcessID(final Set<Long> childrenBefore)
 			throws USMException {
-		final Set<Long> childrenAfter = procTree.get(this.myPid);
-		if (childrenAfter == null) {
+		final Set<Long> childrenAfter = getChildProcesses(this.myPid);
+		if (!processTable.contains(this.myPid)) {
 			throw new USMException("Could not find container process (" + this.myPid + ") in generated process tree");
 		}
 		childrenAfter.removeAll(childrenBefore);
@@ -143,41 +110,13 @@ public class DefaultProcessLocator extends AbstractUSMEventListener implements P
 		return newChildProcessID;
 	}
 
-	/**********
-	 * Recursive function that scans the given process tree, rooted at the given parent PID, and add all leaf pids to
-	 * the result list.
-	 *
-	 * @param parentProcessID
-	 *            the root of the tree.
-	 * @param procTree
-	 *            the full process tree.
-	 * @param leafPids
-	 *            the result leaf pids list.
-	 */
-	private void findLeafProcessIDs(final long parentProcessID, final Map<Long, Set<Long>> procTree,
-			final List<Long> leafPids) {
-
-		final Set<Long> pids = procTree.get(parentProcessID);
-
-		if (pids == null || pids.isEmpty()) {
-			leafPids.add(parentProcessID);
-			return;
-		}
-
-		for (final Long pid : pids) {
-			// Recursive call
-			findLeafProcessIDs(pid, procTree, leafPids);
-
-		}
-
-	}
-
 	private void findProcessIDs()
 			throws USMException {
 
-		final long[] allPids = getAllPids();
-		final Map<Long, Set<Long>> procTree = createProcessTree(allPids);
-		this.childProcessID = findNewChildProcessID(childrenBeforeStart, procTree);
+		// the tree must include the processes started since the last refresh, and not processes under this one whose
+		// IDs were reused since.
+		processTable.refreshDescendants(this.myPid);
+		this.childProcessID = findNewChildProcessID(childrenBeforeStart);
 		if (this.childProcessID == 0) {
 			logger.warning("Default foreground process locator was unable to locate a new child process. "
 					+ "The default implementation can only locate foreground processes. "
@@ -187,8 +126,7 @@ public class DefaultProcessLocator extends AbstractUSMEventListener implements P
 		} else {
 
 			logger.info("Looking for actual process ID in process tree");
-			final List<Long> resultList = new LinkedList<Long>();
-			findLeafProcessIDs(this.childProcessID, procTree, resultList);
+			final List<Long> resultList = processTable.getLeafDescendants(this.childProcessID);
 
 			if (resultList.isEmpty()) {
 				logger.warning("Default process locator was unable to locate service processes. "
@@ -239,38 +177,11 @@ public class DefaultProcessLocator extends AbstractUSMEventListener implements P
 
 	private Set<Long> getChildProcesses(final long ppid)
 			throws USMException {
-		final long[] pids = getAllPids();
-		return getChildProcesses(ppid, pids);
-	}
-
-	private long[] getAllPids()
-			throws USMException {
-		long[] pids;
-		try {
-			pids = this.sigar.getProcList();
-		} catch (final SigarException se) {
-			throw new USMException("Failed to look up process IDs. Error was: " + se.getMessage(), se);
-		}
-		return pids;
-	}
-
-	private Set<Long> getChildProcesses(final long ppid, final long[] pids) {
-
 		final Set<Long> children = new HashSet<Long>();
-		for (final long pid : pids) {
-			try {
-				if (ppid == this.sigar.getProcState(pid).getPpid()) {
-					children.add(pid);
-				}
-			} catch (final SigarException e) {
-				logger.log(Level.WARNING, "While scanning for child processes of process " + ppid
-						+ ", could not read process state of Process: " + pid + ". Ignoring.", e);
-
-			}
-
+		for (final long pid : processTable.getChildren(ppid)) {
+			children.add(pid);
 		}
 		return children;
-
 	}
 
 	@Override
@@ -15,12 +15,15 @@
  *******************************************************************************/
 package org.cloudifysource.usm.monitors.process;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.cloudifysource.usm.ProcessTableSnapshot;
+import org.cloudifysource.usm.USMException;
 import org.cloudifysource.usm.UniversalServiceManagerBean;
 import org.cloudifysource.usm.dsl.ServiceConfiguration;
 import org.cloudifysource.usm.monitors.Monitor;
@@ -39,13 +42,14 @@ import com.gigaspaces.internal.sigar.SigarHolder;
 public class ProcessMonitor implements Monitor {
 
 	private final Sigar sigar = SigarHolder.getSigar();
+	private final ProcessTableSnapshot processTable = ProcessTableSnapshot.getInstance();
 
 	@Override
 	public Map<String, Number> getMonitorValues(final UniversalServiceManagerBean usm,
 			final ServiceConfiguration config)
 			throws MonitorException {
 
-		final List<Long> pids = usm.getServiceProcessesList();
+		final List<Long> pids = getLivePids(usm.getServiceProcessesList());
 
 		if (pids.isEmpty()) {
 			return new HashMap<String, Number>();
@@ -73,4 +77,20 @@ public class ProcessMonitor implements Monitor {
 
 	}
 
+	// processes that are gone are skipped, rather than failing every Sigar call for them.
+	private List<Long> getLivePids(final List<Long> pids)
+			throws MonitorException {
+		final List<Long> livePids = new ArrayList<Long>(pids.size());
+		for (final Long pid : pids) {
+			try {
+				if (processTable.contains(pid)) {
+					livePids.add(pid);
+				}
+			} catch (final USMException e) {
+				throw new MonitorException("Failed to read the process table: " + e.getMessage(), e);
+			}
+		}
+		return livePids;
+	}
+
 }
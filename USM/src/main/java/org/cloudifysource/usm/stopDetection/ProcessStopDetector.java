@@ -16,16 +16,14 @@ import java.util.List;
 import java.util.logging.Level;
 
 import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.usm.ProcessTableSnapshot;
 import org.cloudifysource.usm.USMException;
 import org.cloudifysource.usm.UniversalServiceManagerBean;
 import org.cloudifysource.usm.events.AbstractUSMEventListener;
-import org.hyperic.sigar.ProcState;
-import org.hyperic.sigar.Sigar;
-import org.hyperic.sigar.SigarException;
 
 /***************
- * A stop detection implementation that checks if the monitored processes are still alive by checking their state using
- * the SIGAR library, using their PIDs.
+ * A stop detection implementation that checks if the monitored processes are still alive by checking their state in
+ * the process table snapshot shared by the USMs of the container, using their PIDs.
  *
  * @author barakme
  *
@@ -33,9 +31,6 @@ import org.hyperic.sigar.SigarException;
 public class ProcessStopDetector extends AbstractUSMEventListener implements StopDetector {
 
 	private boolean stopOnAllProcessesDead = true;
-	private Sigar sigarInstance = null;
-	private long sigarCreationTime = System.currentTimeMillis();
-	private static final long SIGAR_RECREATION_INTERVAL = 60 * 1000;
 
 	@Override
 	public void init(final UniversalServiceManagerBean usm) {
@@ -73,44 +68,8 @@ public class ProcessStopDetector extends AbstractUSMEventListener implements Sto
 
 	}
 
-	private ProcState getProcState(final long pid)
-			throws USMException {
-
-		if (sigarInstance == null) {
-			sigarInstance = new Sigar();
-			sigarCreationTime = System.currentTimeMillis();
-		} else {
-
-			if (sigarCreationTime + SIGAR_RECREATION_INTERVAL < System.currentTimeMillis()) {
-				logger.log(Level.FINE, "recycling Sigar instance");
-				sigarInstance.close();
-				sigarInstance = null;
-
-				sigarInstance = new Sigar();
-				sigarCreationTime = System.currentTimeMillis();
-				logger.log(Level.FINE, "a new sigar instance was created successfully");
-			}
-		}
-
-		ProcState procState = null;
-		try {
-			procState = sigarInstance.getProcState(pid);
-		} catch (final SigarException e) {
-			if ("No such process".equals(e.getMessage())) {
-				return null;
-			}
-
-			throw new USMException("Failed to check if process with PID: " + pid + " is alive. Error was: "
-					+ e.getMessage(), e);
-		}
-
-		return procState;
-	}
-
-	// The sigar based process detection is problematic. When a process dies, sigar sometimes does not detect the death.
-	// We solve this by creating a new sigar instance every predetermined time interval.
 	/*********
-	 * Checks, using Sigar, is a given process is alive.
+	 * Checks, using the shared process table snapshot, is a given process is alive.
 	 *
 	 * @param pid
 	 *            the process pid.
@@ -120,10 +79,7 @@ public class ProcessStopDetector extends AbstractUSMEventListener implements Sto
 	 */
 	public boolean isProcessAlive(final long pid)
 			throws USMException {
-
-		final ProcState procState = getProcState(pid);
-		return (procState != null && procState.getState() != ProcState.STOP
-				&& procState.getState() != ProcState.ZOMBIE);
+		return ProcessTableSnapshot.getInstance().isAlive(pid);
 	}
 
 	private boolean checkForOneProcessDead(final List<Long> pids)
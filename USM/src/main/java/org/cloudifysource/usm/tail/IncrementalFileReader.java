@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.tail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.usm.tail.RollingFileAppenderTailer.LineHandler;
+
+/**
+ * Reads the lines appended to a file, in fixed size chunks, and passes them to a line handler.
+ *
+ * Memory use is bounded by the chunk size and the maximum line length, regardless of how much was written since the
+ * previous read. A line split between reads is kept until its end is read. A line without an end is passed on only
+ * when the file is rotated or closed, or once the line did not grow for a grace period, since processes that buffer
+ * their output often write part of a line. Lines longer than the maximum length are split between characters. Each
+ * read is limited to a number of bytes, so a file that grows faster than the handler can handle its lines is read
+ * over several reads rather than at once.
+ *
+ * The file may be kept open between reads. Rotation is detected when the file is shorter than the read position, or
+ * when its first bytes differ from those read before. The rest of a rotated file that is still open is read before
+ * moving on to the new file, so lines written just before the rotation are not lost. On Windows the file must be
+ * closed between reads, so the process writing it can rename it.
+ *
+ * @since 2.7.0
+ */
+public class IncrementalFileReader {
+
+	/**
+	 * Default size of the chunks the file is read in, in bytes.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Longer lines are split.
+	 */
+	public static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	/**
+	 * Default time a line without an end may stay unchanged before it is passed on, in milliseconds.
+	 */
+	public static final long DEFAULT_PARTIAL_LINE_GRACE_MILLIS = 2000;
+
+	// the first bytes of the file, used to tell a new file with the same name from the one that was read.
+	private static final int FINGERPRINT_SIZE = 256;
+	private static final int DEFAULT_NUMBER_OF_RETRIES = 5;
+
+	private static final Logger logger = Logger.getLogger(IncrementalFileReader.class.getName());
+
+	private final File file;
+	private final Charset charset;
+	private final boolean keepOpen;
+	private final ByteBuffer buffer;
+	private final long partialLineGraceMillis;
+
+	private final byte[] line = new byte[MAX_LINE_LENGTH];
+	private int lineLength;
+	// when the line without an end last grew.
+	private long lineUpdateTime;
+
+	private final byte[] fingerprint = new byte[FINGERPRINT_SIZE];
+	private int fingerprintLength;
+
+	private RandomAccessFile openFile;
+	private FileChannel channel;
+	private long position;
+
+	private int missingCounter;
+	private boolean exists = true;
+	private long bytesRead;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @param charset
+	 *            the charset the file is written in.
+	 * @param keepOpen
+	 *            true to keep the file open between reads.
+	 */
+	public IncrementalFileReader(final File file, final Charset charset, final boolean keepOpen) {
+		this(file, charset, keepOpen, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @param charset
+	 *            the charset the file is written in.
+	 * @param keepOpen
+	 *            true to keep the file open between reads.
+	 * @param chunkSize
+	 *            the size of the chunks the file is read in, in bytes.
+	 */
+	public IncrementalFileReader(final File file, final Charset charset, final boolean keepOpen,
+			final int chunkSize) {
+		this(file, charset, keepOpen, chunkSize, DEFAULT_PARTIAL_LINE_GRACE_MILLIS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @param charset
+	 *            the charset the file is written in.
+	 * @param keepOpen
+	 *            true to keep the file open between reads.
+	 * @param chunkSize
+	 *            the size of the chunks the file is read in, in bytes.
+	 * @param partialLineGraceMillis
+	 *            the time a line without an end may stay unchanged before it is passed on, in milliseconds.
+	 */
+	public IncrementalFileReader(final File file, final Charset charset, final boolean keepOpen,
+			final int chunkSize, final long partialLineGraceMillis) {
+		this.file = file;
+		this.charset = charset;
+		this.keepOpen = keepOpen;
+		this.buffer = ByteBuffer.allocate(chunkSize);
+		this.partialLineGraceMillis = partialLineGraceMillis;
+	}
+
+	/**
+	 * Reads the lines appended to the file since the previous read, and passes them to the handler. Empty lines are
+	 * skipped.
+	 *
+	 * @param handler
+	 *            the line handler.
+	 * @param fileName
+	 *            the file name passed to the handler.
+	 * @param maxBytes
+	 *            the maximum number of bytes to read.
+	 * @return the number of bytes read.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public long read(final LineHandler handler, final String fileName, final long maxBytes)
+			throws IOException {
+		if (!file.exists()) {
+			return readMissingFile(handler, fileName, maxBytes);
+		}
+		missingCounter = 0;
+
+		long total = 0;
+		final long length = file.length();
+		if (length != position && position > 0 && isRotated(length)) {
+			if (channel != null) {
+				// the rotated file is still open, read what was written to it before it was rotated.
+				total += readAvailable(handler, fileName, maxBytes);
+				if (channel.size() > position) {
+					bytesRead += total;
+					return total;
+				}
+			}
+			logger.fine("File " + file + " was rotated, reading the new file from its start");
+			flushLine(handler, fileName);
+			close();
+			position = 0;
+			fingerprintLength = 0;
+		}
+
+		if (length > position) {
+			if (channel == null) {
+				open();
+			}
+			try {
+				total += readAvailable(handler, fileName, maxBytes - total);
+			} finally {
+				if (!keepOpen) {
+					close();
+				}
+			}
+		}
+
+		final long now = System.currentTimeMillis();
+		if (total > 0) {
+			lineUpdateTime = now;
+		} else if (lineLength > 0 && now - lineUpdateTime >= partialLineGraceMillis) {
+			// the file stopped growing a while ago, pass on a last line that has no line separator.
+			flushLine(handler, fileName);
+		}
+		bytesRead += total;
+		return total;
+	}
+
+	/**
+	 * Skips the content written to the file so far, so the next read returns only the lines appended after this call.
+	 *
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public void skipToEnd()
+			throws IOException {
+		close();
+		lineLength = 0;
+		position = 0;
+		fingerprintLength = 0;
+		if (!file.exists()) {
+			return;
+		}
+		final RandomAccessFile current = new RandomAccessFile(file, "r");
+		try {
+			final long length = current.length();
+			final int headLength = (int) Math.min(FINGERPRINT_SIZE, length);
+			current.readFully(fingerprint, 0, headLength);
+			fingerprintLength = headLength;
+			position = length;
+		} finally {
+			current.close();
+		}
+	}
+
+	/**
+	 * @return the number of bytes written to the file and not read yet.
+	 */
+	public long getUnreadBytes() {
+		return Math.max(0, file.length() - position);
+	}
+
+	/**
+	 * @return the total number of bytes read.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * returns false if the file has been removed from the system and was not recreated after a certain number of
+	 * reads.
+	 *
+	 * @return returns false if the file has been removed.
+	 */
+	public boolean exists() {
+		return exists;
+	}
+
+	/**
+	 * Passes on a last line that has no line separator, and closes the file.
+	 *
+	 * @param handler
+	 *            the line handler.
+	 * @param fileName
+	 *            the file name passed to the handler.
+	 */
+	public void close(final LineHandler handler, final String fileName) {
+		flushLine(handler, fileName);
+		close();
+	}
+
+	/**
+	 * Closes the file, if it is open. A line without a line separator is kept.
+	 */
+	public void close() {
+		if (openFile != null) {
+			try {
+				openFile.close();
+			} catch (final IOException e) {
+				logger.log(Level.FINE, "Failed to close " + file, e);
+			}
+			openFile = null;
+			channel = null;
+		}
+	}
+
+	private long readMissingFile(final LineHandler handler, final String fileName, final long maxBytes)
+			throws IOException {
+		long total = 0;
+		if (channel != null) {
+			// the file was removed while open, its content can still be read.
+			total = readAvailable(handler, fileName, maxBytes);
+			bytesRead += total;
+			if (channel.size() > position) {
+				return total;
+			}
+		}
+		flushLine(handler, fileName);
+		close();
+		position = 0;
+		fingerprintLength = 0;
+
+		// in-case we try to access the file at the exact time it is being rolled.
+		missingCounter++;
+		if (missingCounter > DEFAULT_NUMBER_OF_RETRIES) {
+			logger.warning("File " + file + " was not found in " + DEFAULT_NUMBER_OF_RETRIES + " retries");
+			exists = false;
+		}
+		return total;
+	}
+
+	private void open() throws IOException {
+		openFile = new RandomAccessFile(file, "r");
+		channel = openFile.getChannel();
+	}
+
+	private boolean isRotated(final long length) throws IOException {
+		if (length < position) {
+			return true;
+		}
+		if (fingerprintLength == 0) {
+			return false;
+		}
+		// compare the first bytes of the file found under the name to those read before.
+		final RandomAccessFile current = new RandomAccessFile(file, "r");
+		try {
+			final byte[] head = new byte[fingerprintLength];
+			current.readFully(head);
+			for (int i = 0; i < fingerprintLength; i++) {
+				if (head[i] != fingerprint[i]) {
+					return true;
+				}
+			}
+			return false;
+		} catch (final IOException e) {
+			// shorter than the part already read.
+			return true;
+		} finally {
+			current.close();
+		}
+	}
+
+	private long readAvailable(final LineHandler handler, final String fileName, final long maxBytes)
+			throws IOException {
+		long total = 0;
+		while (total < maxBytes) {
+			buffer.clear();
+			if (maxBytes - total < buffer.capacity()) {
+				buffer.limit((int) (maxBytes - total));
+			}
+			final int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			buffer.flip();
+			updateFingerprint();
+			position += read;
+			total += read;
+			handleChunk(handler, fileName);
+		}
+		return total;
+	}
+
+	private void updateFingerprint() {
+		if (position >= FINGERPRINT_SIZE) {
+			return;
+		}
+		final int count = Math.min(FINGERPRINT_SIZE - (int) position, buffer.remaining());
+		for (int i = 0; i < count; i++) {
+			fingerprint[(int) position + i] = buffer.get(buffer.position() + i);
+		}
+		fingerprintLength = (int) position + count;
+	}
+
+	private void handleChunk(final LineHandler handler, final String fileName) {
+		while (buffer.hasRemaining()) {
+			final byte b = buffer.get();
+			if (b == '\n') {
+				if (lineLength > 0 && line[lineLength - 1] == '\r') {
+					lineLength--;
+				}
+				flushLine(handler, fileName);
+			} else {
+				line[lineLength++] = b;
+				if (lineLength == MAX_LINE_LENGTH) {
+					splitLine(handler, fileName);
+				}
+			}
+		}
+	}
+
+	// passes on the complete characters of a line that is too long, and keeps the bytes of a character cut at its end.
+	private void splitLine(final LineHandler handler, final String fileName) {
+		final ByteBuffer bytes = ByteBuffer.wrap(line, 0, lineLength);
+		final CharBuffer chars = CharBuffer.allocate(lineLength);
+		charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(bytes, chars, false);
+		if (bytes.position() == 0) {
+			flushLine(handler, fileName);
+			return;
+		}
+		chars.flip();
+		final int remaining = bytes.remaining();
+		System.arraycopy(line, bytes.position(), line, 0, remaining);
+		lineLength = remaining;
+		handler.handleLine(fileName, chars.toString());
+	}
+
+	private void flushLine(final LineHandler handler, final String fileName) {
+		if (lineLength > 0) {
+			final String text = new String(line, 0, lineLength, charset);
+			lineLength = 0;
+			handler.handleLine(fileName, text);
+		}
+	}
+}
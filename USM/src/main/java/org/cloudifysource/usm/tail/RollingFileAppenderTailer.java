@@ -14,19 +14,24 @@ package org.cloudifysource.usm.tail;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.logging.Level;
+
+import org.cloudifysource.dsl.utils.ServiceUtils;
 
 /**
- * tail a RollingFileAppender logs folder without interfering with the RFA rolling action. in-order to avoid locking the
- * file and by that preventing the RFA from rolling the file, this tailer will sample all files periodically without
- * opening the files and when finding that a file has been modified, only then open the file, "grab" the newly added
- * lines and close the file when done.
+ * tail a RollingFileAppender logs folder without interfering with the RFA rolling action. The tailer samples all files
+ * periodically and reads the lines added to each file since the previous sample, see {@link IncrementalFileReader}.
+ * Files are kept open between samples, except on Windows where an open file can not be renamed by the RFA.
+ *
+ * Lines are passed to the handler on the sampling thread, so a slow handler slows down reading. Each sample reads a
+ * bounded number of bytes from each file, and the bytes left unread are reported as the tailer lag.
  *
  * @author adaml
  *
@@ -68,13 +73,25 @@ public class RollingFileAppenderTailer implements Runnable {
 
 	}
 
-	private static final String BREAK_BY_LINES_NO_EMPTY_LINES_REGEX = "\\r?\\n+";
+	/**
+	 * Default maximum number of bytes read from a single file in each sample.
+	 */
+	public static final long DEFAULT_MAX_BYTES_PER_SAMPLE = 16 * 1024 * 1024;
+
 	private static final int DEFAULT_SAMPLING_DELAY = 2000;
+	private static final long MILLIS_IN_SECOND = 1000;
 	private final String logsDirectory;
 	private final String regex;
-	private final Pattern lineSplitPattern = Pattern.compile(BREAK_BY_LINES_NO_EMPTY_LINES_REGEX);
+	// the tailed files are the output of the service process, written in the platform charset.
+	private final Charset charset = Charset.defaultCharset();
+	private final boolean keepFilesOpen = !ServiceUtils.isWindows();
+	private long maxBytesPerSample = DEFAULT_MAX_BYTES_PER_SAMPLE;
+
+	private final Map<String, IncrementalFileReader> logFileMap = new HashMap<String, IncrementalFileReader>();
 
-	private final Map<String, RollingFileReader> logFileMap = new HashMap<String, RollingFileReader>();
+	private long lastSampleTime;
+	private volatile long bytesPerSecond;
+	private volatile long lagBytes;
 
 	private static java.util.logging.Logger logger = java.util.logging.Logger
 			.getLogger(RollingFileAppenderTailer.class.getName());
@@ -170,21 +187,63 @@ public class RollingFileAppenderTailer implements Runnable {
 
 		try {
 			getLogFilesMap(logFileMap);
-			for (final String key : logFileMap.keySet()) {
-				if (logFileMap.get(key).wasModified()) {
-					final String lines = logFileMap.get(key).readLines();
-					final String[] seporatedLines = lineSplitPattern.split(lines);
-					for (final String line : seporatedLines) {
-						handler.handleLine(key, line);
-						// logger.info(line);
-					}
-				}
-			}
-
 		} catch (final Exception e) {
 			logger.warning("Exception thrown: " + e.getMessage());
+			return;
 		}
 
+		long bytesRead = 0;
+		long unreadBytes = 0;
+		for (final Map.Entry<String, IncrementalFileReader> entry : logFileMap.entrySet()) {
+			final IncrementalFileReader reader = entry.getValue();
+			try {
+				bytesRead += reader.read(handler, entry.getKey(), maxBytesPerSample);
+				unreadBytes += reader.getUnreadBytes();
+			} catch (final Exception e) {
+				logger.log(Level.WARNING, "Failed to read file " + entry.getKey() + ": " + e.getMessage(), e);
+			}
+		}
+
+		final long now = System.currentTimeMillis();
+		if (lastSampleTime > 0 && now > lastSampleTime) {
+			bytesPerSecond = bytesRead * MILLIS_IN_SECOND / (now - lastSampleTime);
+		}
+		lastSampleTime = now;
+		lagBytes = unreadBytes;
+	}
+
+	/**
+	 * @return the number of bytes read per second, measured over the last sample.
+	 */
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * @return the number of bytes written to the tailed files and not read yet, as of the last sample.
+	 */
+	public long getLagBytes() {
+		return lagBytes;
+	}
+
+	/**
+	 * Sets the maximum number of bytes read from a single file in each sample.
+	 *
+	 * @param maxBytesPerSample
+	 *            the maximum number of bytes.
+	 */
+	public void setMaxBytesPerSample(final long maxBytesPerSample) {
+		this.maxBytesPerSample = maxBytesPerSample;
+	}
+
+	/**
+	 * Closes all tailed files, passing on their last lines even if they have no line separator.
+	 */
+	public synchronized void close() {
+		for (final Map.Entry<String, IncrementalFileReader> entry : logFileMap.entrySet()) {
+			entry.getValue().close(handler, entry.getKey());
+		}
+		logFileMap.clear();
 	}
 
 	/**
@@ -193,7 +252,7 @@ public class RollingFileAppenderTailer implements Runnable {
 	 *
 	 * @param logFileList
 	 */
-	private void getLogFilesMap(final Map<String, RollingFileReader> logFileMap) {
+	private void getLogFilesMap(final Map<String, IncrementalFileReader> logFileMap) {
 
 		final File folder = new File(logsDirectory);
 		// Get list of files according to regex.
@@ -208,15 +267,16 @@ public class RollingFileAppenderTailer implements Runnable {
 		// add newly created files if exist.
 		for (final File file : files) {
 			if (!logFileMap.containsKey(file.getName())) {
-				logFileMap.put(file.getName(), new RollingFileReader(file));
+				logFileMap.put(file.getName(), new IncrementalFileReader(file, charset, keepFilesOpen));
 			}
 		}
 
 		// remove files that no longer exist.
-		final Iterator<RollingFileReader> iterator = logFileMap.values().iterator();
+		final Iterator<IncrementalFileReader> iterator = logFileMap.values().iterator();
 		while (iterator.hasNext()) {
-			final RollingFileReader next = iterator.next();
+			final IncrementalFileReader next = iterator.next();
 			if (!next.exists()) {
+				next.close();
 				iterator.remove();
 			}
 		}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
+import org.cloudifysource.usm.dsl.ServiceConfiguration;
+import org.cloudifysource.usm.monitors.Monitor;
+import org.cloudifysource.usm.monitors.MonitorException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the background sampling of {@link MonitorsCache}.
+ *
+ * @since 2.7.0
+ */
+public class MonitorsCacheTest {
+
+	private static final long WAIT_MILLIS = 10000;
+
+	private final CountDownLatch released = new CountDownLatch(1);
+	private UniversalServiceManagerBean usm;
+	private USMLifecycleBean lifecycleBean;
+	private MonitorsCache cache;
+
+	@Before
+	public void before() {
+		usm = Mockito.mock(UniversalServiceManagerBean.class);
+		Mockito.when(usm.getState()).thenReturn(USMState.RUNNING);
+		lifecycleBean = Mockito.mock(USMLifecycleBean.class);
+	}
+
+	@After
+	public void after() {
+		released.countDown();
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testMonitorsAreSampledInBackground() throws Exception {
+		final CountingMonitor monitor = new CountingMonitor();
+		cache = createCache(monitor, 50, 5000);
+
+		// the first read starts the sampling, the following samples are taken without reads.
+		cache.getMonitors();
+		waitForExecutions(monitor, 3);
+		Assert.assertTrue(((Number) waitForValue("executions")).intValue() >= 1);
+		Assert.assertEquals(0L, cache.getMonitors()[0].getMonitors().get(getFailuresKey(monitor)));
+	}
+
+	@Test
+	public void testMonitorsAreNotSampledWhileNotRunning() throws Exception {
+		Mockito.when(usm.getState()).thenReturn(USMState.LAUNCHING);
+		final CountingMonitor monitor = new CountingMonitor();
+		cache = createCache(monitor, 50, 5000);
+
+		final Map<String, Object> values = cache.getMonitors()[0].getMonitors();
+		Assert.assertEquals(USMState.LAUNCHING.ordinal(), values.get(CloudifyConstants.USM_MONITORS_STATE_ID));
+		Thread.sleep(300);
+		Assert.assertEquals(0, monitor.executions.get());
+	}
+
+	@Test
+	public void testStuckMonitorIsNotExecutedAgain() throws Exception {
+		final CountingMonitor monitor = new StuckMonitor(released);
+		cache = createCache(monitor, 50, 100);
+
+		cache.getMonitors();
+		Assert.assertEquals(1L, waitForValue(getFailuresKey(monitor)));
+		// the stuck execution is not repeated, nor counted again as a failure.
+		Thread.sleep(500);
+		Assert.assertEquals(1, monitor.executions.get());
+		Assert.assertEquals(1L, cache.getMonitors()[0].getMonitors().get(getFailuresKey(monitor)));
+		Assert.assertNull(cache.getMonitors()[0].getMonitors().get("executions"));
+
+		// once the stuck execution returns, the monitor is executed again.
+		released.countDown();
+		waitForExecutions(monitor, 2);
+	}
+
+	@Test
+	public void testFailuresAreCountedAndPreviousValuesKept() throws Exception {
+		final CountingMonitor monitor = new FailingMonitor();
+		cache = createCache(monitor, 50, 5000);
+
+		cache.getMonitors();
+		while (((Number) waitForValue(getFailuresKey(monitor))).longValue() < 2) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals(1, cache.getMonitors()[0].getMonitors().get("executions"));
+	}
+
+	@Test
+	public void testClearDiscardsValuesAndFailures() throws Exception {
+		final CountingMonitor monitor = new CountingMonitor();
+		cache = createCache(monitor, 60 * 1000, 5000);
+
+		cache.getMonitors();
+		waitForValue("executions");
+		cache.clear();
+		final Map<String, Object> values = cache.getMonitors()[0].getMonitors();
+		Assert.assertNull(values.get("executions"));
+		Assert.assertEquals(0L, values.get(getFailuresKey(monitor)));
+	}
+
+	@Test
+	public void testMonitorNameDoesNotChange() throws Exception {
+		final CountingMonitor monitor = new RecoveringMonitor();
+		cache = createCache(monitor, 50, 5000);
+
+		cache.getMonitors();
+		waitForValue("executions");
+		// the failure counted before the first values is still published under the same key.
+		final Map<String, Object> values = cache.getMonitors()[0].getMonitors();
+		Assert.assertEquals(1L, values.get(getFailuresKey(monitor)));
+		Assert.assertNotNull(values.get(CloudifyConstants.USM_MONITORS_EXECUTION_TIME_PREFIX
+				+ monitor.getClass().getSimpleName() + " 0"));
+	}
+
+	private MonitorsCache createCache(final Monitor monitor, final long interval, final long executionTimeout) {
+		Mockito.when(lifecycleBean.getMonitors()).thenReturn(new Monitor[] { monitor });
+		return new MonitorsCache(usm, lifecycleBean, interval, executionTimeout);
+	}
+
+	private static String getFailuresKey(final Monitor monitor) {
+		return CloudifyConstants.USM_MONITORS_FAILURES_PREFIX + monitor.getClass().getSimpleName() + " 0";
+	}
+
+	private Object waitForValue(final String key) throws InterruptedException {
+		final long end = System.currentTimeMillis() + WAIT_MILLIS;
+		while (System.currentTimeMillis() < end) {
+			final Object value = cache.getMonitors()[0].getMonitors().get(key);
+			if (value != null) {
+				return value;
+			}
+			Thread.sleep(20);
+		}
+		Assert.fail("No value for " + key + " within " + WAIT_MILLIS + " ms");
+		return null;
+	}
+
+	private static void waitForExecutions(final CountingMonitor monitor, final int executions)
+			throws InterruptedException {
+		final long end = System.currentTimeMillis() + WAIT_MILLIS;
+		while (monitor.executions.get() < executions) {
+			Assert.assertTrue("Monitor was executed " + monitor.executions.get() + " times",
+					System.currentTimeMillis() < end);
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * Reports the number of times it was executed.
+	 */
+	private static class CountingMonitor implements Monitor {
+
+		private final AtomicInteger executions = new AtomicInteger();
+
+		@Override
+		public Map<String, Number> getMonitorValues(final UniversalServiceManagerBean usm,
+				final ServiceConfiguration config) throws MonitorException {
+			final Map<String, Number> values = new HashMap<String, Number>();
+			values.put("executions", executions.incrementAndGet());
+			return values;
+		}
+	}
+
+	/**
+	 * Does not return, ignoring interrupts, until released.
+	 */
+	private static class StuckMonitor extends CountingMonitor {
+
+		private final CountDownLatch released;
+
+		StuckMonitor(final CountDownLatch released) {
+			this.released = released;
+		}
+
+		@Override
+		public Map<String, Number> getMonitorValues(final UniversalServiceManagerBean usm,
+				final ServiceConfiguration config) throws MonitorException {
+			final Map<String, Number> values = super.getMonitorValues(usm, config);
+			while (released.getCount() > 0) {
+				try {
+					released.await();
+				} catch (final InterruptedException e) {
+					// keep waiting.
+				}
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * Fails on every execution but the first one.
+	 */
+	private static class FailingMonitor extends CountingMonitor {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public Map<String, Number> getMonitorValues(final UniversalServiceManagerBean usm,
+				final ServiceConfiguration config) throws MonitorException {
+			if (calls.incrementAndGet() > 1) {
+				throw new MonitorException("failed");
+			}
+			return super.getMonitorValues(usm, config);
+		}
+	}
+
+	/**
+	 * Fails on the first execution only.
+	 */
+	private static class RecoveringMonitor extends CountingMonitor {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public Map<String, Number> getMonitorValues(final UniversalServiceManagerBean usm,
+				final ServiceConfiguration config) throws MonitorException {
+			if (calls.incrementAndGet() == 1) {
+				throw new MonitorException("failed");
+			}
+			return super.getMonitorValues(usm, config);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudifysource.usm.ProcessTableSnapshot.ProcessInfo;
+import org.cloudifysource.usm.ProcessTableSnapshot.ProcessSource;
+import org.hyperic.sigar.ProcState;
+import org.hyperic.sigar.SigarException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProcessTableSnapshot}.
+ *
+ * @since 2.7.0
+ */
+public class ProcessTableSnapshotTest {
+
+	private final FakeProcessSource source = new FakeProcessSource();
+	private final ProcessTableSnapshot snapshot = new ProcessTableSnapshot(source, Long.MAX_VALUE);
+
+	@Test
+	public void testBuildsTree() throws USMException {
+		source.put(1, 0);
+		source.put(10, 1);
+		source.put(11, 10);
+		source.put(12, 10);
+		source.put(13, 12);
+		snapshot.refresh();
+
+		Assert.assertArrayEquals(new long[] { 11, 12 }, snapshot.getChildren(10));
+		Assert.assertArrayEquals(new long[0], snapshot.getChildren(11));
+		Assert.assertEquals(Arrays.asList(11L, 13L), snapshot.getLeafDescendants(10));
+		Assert.assertEquals(Arrays.asList(11L), snapshot.getLeafDescendants(11));
+	}
+
+	@Test
+	public void testReadsOnlyNewProcesses() throws USMException {
+		source.put(1, 0);
+		source.put(10, 1);
+		snapshot.refresh();
+		source.reads.clear();
+
+		source.put(20, 10);
+		snapshot.refresh();
+
+		Assert.assertEquals(new HashSet<Long>(Arrays.asList(20L)), source.reads);
+		Assert.assertArrayEquals(new long[] { 20 }, snapshot.getChildren(10));
+	}
+
+	@Test
+	public void testRereadsOrphans() throws USMException {
+		source.put(1, 0);
+		source.put(10, 1);
+		source.put(20, 10);
+		snapshot.refresh();
+
+		// the parent died, and its child was moved to init.
+		source.remove(10);
+		source.put(20, 1);
+		snapshot.refresh();
+
+		Assert.assertFalse(snapshot.contains(10));
+		Assert.assertArrayEquals(new long[] { 20 }, snapshot.getChildren(1));
+	}
+
+	@Test
+	public void testIsAlive() throws USMException {
+		source.put(1, 0);
+		source.put(10, 1);
+		snapshot.refresh();
+
+		Assert.assertTrue(snapshot.isAlive(10));
+		// a process newer than the snapshot is read directly.
+		source.put(20, 1);
+		Assert.assertTrue(snapshot.isAlive(20));
+
+		source.put(10, 1, ProcState.ZOMBIE);
+		source.remove(20);
+		snapshot.refresh();
+		source.reads.clear();
+
+		Assert.assertFalse(snapshot.isAlive(10));
+		Assert.assertFalse(snapshot.isAlive(20));
+		Assert.assertTrue(source.reads.isEmpty());
+	}
+
+	@Test
+	public void testReusedPidIsNotTakenForTheProcessThatUsedIt() throws USMException {
+		source.put(1, 0);
+		source.put(10, 1);
+		source.put(20, 10);
+		source.put(30, 1);
+		snapshot.refresh();
+		Assert.assertTrue(snapshot.isAlive(20));
+
+		// 20 died, and its ID was reused by a new child of 30 before the next refresh.
+		source.put(20, 30, ProcState.RUN, 2);
+		snapshot.refresh();
+		Assert.assertFalse(snapshot.isAlive(20));
+
+		// a periodic refresh does not read known processes again, a refresh of their subtree does.
+		source.put(40, 10);
+		source.put(41, 40);
+		snapshot.refresh();
+		source.put(40, 30, ProcState.RUN, 2);
+		source.put(41, 1);
+		snapshot.refresh();
+		Assert.assertArrayEquals(new long[] { 40 }, snapshot.getChildren(10));
+		source.reads.clear();
+		snapshot.refreshDescendants(10);
+		Assert.assertArrayEquals(new long[0], snapshot.getChildren(10));
+		Assert.assertArrayEquals(new long[] { 20, 40 }, snapshot.getChildren(30));
+		Assert.assertArrayEquals(new long[] { 10, 30, 41 }, snapshot.getChildren(1));
+		// processes outside the subtree are not read.
+		Assert.assertEquals(new HashSet<Long>(Arrays.asList(40L, 41L)), source.reads);
+	}
+
+	@Test
+	public void testRefreshDescendantsDropsProcessesThatAreGone() throws USMException {
+		source.put(1, 0);
+		source.put(10, 1);
+		source.put(20, 10);
+		snapshot.refresh();
+
+		source.remove(20);
+		snapshot.refreshDescendants(10);
+		Assert.assertFalse(snapshot.contains(20));
+		Assert.assertEquals(Arrays.asList(10L), snapshot.getLeafDescendants(10));
+	}
+
+	/**
+	 * A process table held in memory, recording the processes that were read.
+	 */
+	private static final class FakeProcessSource implements ProcessSource {
+
+		private final Map<Long, ProcessInfo> processes = new LinkedHashMap<Long, ProcessInfo>();
+		private final Set<Long> reads = new HashSet<Long>();
+
+		private void put(final long pid, final long ppid) {
+			put(pid, ppid, ProcState.RUN);
+		}
+
+		private void put(final long pid, final long ppid, final char state) {
+			put(pid, ppid, state, 1);
+		}
+
+		private void put(final long pid, final long ppid, final char state, final long startTime) {
+			processes.put(pid, new ProcessInfo(ppid, state, startTime));
+		}
+
+		private void remove(final long pid) {
+			processes.remove(pid);
+		}
+
+		@Override
+		public long[] getPids()
+				throws SigarException {
+			final long[] pids = new long[processes.size()];
+			int i = 0;
+			for (final Long pid : processes.keySet()) {
+				pids[i++] = pid;
+			}
+			return pids;
+		}
+
+		@Override
+		public ProcessInfo getProcess(final long pid)
+				throws SigarException {
+			reads.add(pid);
+			return processes.get(pid);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.cloudifysource.domain.Service;
+import org.cloudifysource.domain.ServiceLifecycle;
+import org.cloudifysource.usm.liveness.LivenessDetector;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the start detection of {@link USMLifecycleBean}.
+ *
+ * @since 2.7.0
+ */
+public class USMLifecycleBeanTest {
+
+	private static final int START_DETECTION_INTERVAL_SECS = 5;
+
+	private final ServiceLifecycle lifecycle = new ServiceLifecycle();
+	private USMLifecycleBean lifecycleBean;
+
+	@Before
+	public void before() {
+		lifecycle.setStartDetectionTimeoutSecs(10);
+		lifecycle.setStartDetectionIntervalSecs(START_DETECTION_INTERVAL_SECS);
+		final Service service = new Service();
+		service.setName("service");
+		service.setLifecycle(lifecycle);
+		lifecycleBean = new USMLifecycleBean();
+		lifecycleBean.setConfiguration(new ServiceConfiguration(service, null, null, null, null));
+	}
+
+	@Test
+	public void testDetectorsRunConcurrently() throws Exception {
+		// each detector passes only once the other one runs too.
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final CountingDetector first = new CountingDetector(1) {
+
+			@Override
+			protected void beforeCheck() throws Exception {
+				barrier.await(START_DETECTION_INTERVAL_SECS, TimeUnit.SECONDS);
+			}
+		};
+		final CountingDetector second = new CountingDetector(1) {
+
+			@Override
+			protected void beforeCheck() throws Exception {
+				barrier.await(START_DETECTION_INTERVAL_SECS, TimeUnit.SECONDS);
+			}
+		};
+		lifecycleBean.setLivenessDetectors(new LivenessDetector[] { first, second });
+
+		Assert.assertTrue(lifecycleBean.isProcessLivenessTestPassed(null));
+		Assert.assertTrue(lifecycleBean.getTimeToReadyMillis() >= 0);
+	}
+
+	@Test
+	public void testFailedDetectorIsRetriedWithBackoff() throws Exception {
+		final CountingDetector passesAtOnce = new CountingDetector(1);
+		final CountingDetector passesLater = new CountingDetector(4);
+		lifecycleBean.setLivenessDetectors(new LivenessDetector[] { passesAtOnce, passesLater });
+
+		final long start = System.currentTimeMillis();
+		Assert.assertTrue(lifecycleBean.isProcessLivenessTestPassed(null));
+		// retries do not wait for the start detection interval.
+		final long elapsed = System.currentTimeMillis() - start;
+		Assert.assertTrue(elapsed < TimeUnit.SECONDS.toMillis(START_DETECTION_INTERVAL_SECS));
+
+		// a detector that passed is not run again.
+		Assert.assertEquals(1, passesAtOnce.getCheckTimes().size());
+		final List<Long> checkTimes = passesLater.getCheckTimes();
+		Assert.assertEquals(4, checkTimes.size());
+		final long firstDelay = checkTimes.get(1) - checkTimes.get(0);
+		final long lastDelay = checkTimes.get(3) - checkTimes.get(2);
+		Assert.assertTrue("first retry after " + firstDelay + " ms", firstDelay >= 90);
+		Assert.assertTrue("delays " + firstDelay + " and " + lastDelay + " ms", lastDelay > firstDelay);
+	}
+
+	@Test
+	public void testTimeToReadyIsResetOnEachRun() throws Exception {
+		lifecycleBean.setLivenessDetectors(new LivenessDetector[] { new CountingDetector(1) });
+		Assert.assertTrue(lifecycleBean.isProcessLivenessTestPassed(null));
+		Assert.assertTrue(lifecycleBean.getTimeToReadyMillis() >= 0);
+
+		// the service is relaunched, and does not become ready in time.
+		lifecycle.setStartDetectionTimeoutSecs(1);
+		lifecycleBean.setLivenessDetectors(new LivenessDetector[] { new CountingDetector(Integer.MAX_VALUE) });
+		Assert.assertFalse(lifecycleBean.isProcessLivenessTestPassed(null));
+		Assert.assertEquals(-1, lifecycleBean.getTimeToReadyMillis());
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testDetectorTimeoutFailsStartDetection() throws Exception {
+		lifecycleBean.setLivenessDetectors(new LivenessDetector[] { new CountingDetector(1) {
+
+			@Override
+			protected void beforeCheck() throws Exception {
+				throw new TimeoutException("timed out");
+			}
+		} });
+		lifecycleBean.isProcessLivenessTestPassed(null);
+	}
+
+	/**
+	 * A start detector that passes on a given check, recording the time of each check.
+	 */
+	private static class CountingDetector implements LivenessDetector {
+
+		private final int passingCheck;
+		private final List<Long> checkTimes = new ArrayList<Long>();
+
+		CountingDetector(final int passingCheck) {
+			this.passingCheck = passingCheck;
+		}
+
+		@Override
+		public void init(final UniversalServiceManagerBean usm) {
+
+		}
+
+		@Override
+		public int getOrder() {
+			return 5;
+		}
+
+		@Override
+		public boolean isProcessAlive()
+				throws USMException, TimeoutException {
+			try {
+				beforeCheck();
+			} catch (final TimeoutException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new USMException(e);
+			}
+			synchronized (checkTimes) {
+				checkTimes.add(System.currentTimeMillis());
+				return checkTimes.size() >= passingCheck;
+			}
+		}
+
+		protected void beforeCheck() throws Exception {
+		}
+
+		List<Long> getCheckTimes() {
+			synchronized (checkTimes) {
+				return new ArrayList<Long>(checkTimes);
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.dependency;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.admin.pu.ProcessingUnits;
+import org.openspaces.admin.pu.events.ProcessingUnitAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitAddedEventManager;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceAddedEventManager;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEvent;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventManager;
+import org.openspaces.pu.service.ServiceMonitors;
+
+/**
+ * Tests for {@link ServiceDependencyWaiter}.
+ *
+ * @since 2.7.0
+ */
+public class ServiceDependencyWaiterTest {
+
+	private static final String DEPENDENCY_NAME = "default.db";
+	private static final long LONG_POLL_INTERVAL_MILLIS = 60 * 1000;
+
+	private Admin admin;
+	private ProcessingUnits processingUnits;
+	private ProcessingUnitAddedEventManager processingUnitAdded;
+
+	@Before
+	public void before() {
+		admin = Mockito.mock(Admin.class);
+		processingUnits = Mockito.mock(ProcessingUnits.class);
+		processingUnitAdded = Mockito.mock(ProcessingUnitAddedEventManager.class);
+		Mockito.when(admin.getProcessingUnits()).thenReturn(processingUnits);
+		Mockito.when(processingUnits.getProcessingUnitAdded()).thenReturn(processingUnitAdded);
+	}
+
+	@Test
+	public void testDependencyAlreadyRunning() throws Exception {
+		final ProcessingUnit pu = createProcessingUnit(createInstance(createStatistics(USMState.RUNNING)));
+		Mockito.when(processingUnits.getProcessingUnit(DEPENDENCY_NAME)).thenReturn(pu);
+
+		final long start = System.currentTimeMillis();
+		createWaiter(LONG_POLL_INTERVAL_MILLIS).waitForDependencies(30, TimeUnit.SECONDS);
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+
+	@Test
+	public void testDependencyStartsRunningOnEvent() throws Exception {
+		final ProcessingUnit pu = createProcessingUnit();
+		final ProcessingUnitInstanceStatisticsChangedEventManager statisticsChanged =
+				pu.getProcessingUnitInstanceStatisticsChanged();
+		final AtomicReference<ProcessingUnitInstanceStatisticsChangedEventListener> statisticsListener =
+				new AtomicReference<ProcessingUnitInstanceStatisticsChangedEventListener>();
+		Mockito.doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				statisticsListener.set((ProcessingUnitInstanceStatisticsChangedEventListener)
+						invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(statisticsChanged).add(
+				Mockito.any(ProcessingUnitInstanceStatisticsChangedEventListener.class));
+		// the admin raises the added event for processing units that already exist.
+		raiseProcessingUnitAddedOnListen(pu);
+
+		final ProcessingUnitInstanceStatisticsChangedEvent event =
+				Mockito.mock(ProcessingUnitInstanceStatisticsChangedEvent.class);
+		final ProcessingUnitInstanceStatistics running = createStatistics(USMState.RUNNING);
+		Mockito.when(event.getStatistics()).thenReturn(running);
+		final Thread eventThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (statisticsListener.get() == null) {
+						Thread.sleep(10);
+					}
+					Thread.sleep(100);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				statisticsListener.get().processingUnitInstanceStatisticsChanged(event);
+			}
+		});
+		eventThread.start();
+
+		final long start = System.currentTimeMillis();
+		createWaiter(LONG_POLL_INTERVAL_MILLIS).waitForDependencies(30, TimeUnit.SECONDS);
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		eventThread.join();
+
+		// the listeners are removed once the wait ends.
+		Mockito.verify(statisticsChanged).remove(statisticsListener.get());
+		Mockito.verify(processingUnitAdded).remove(Mockito.any(ProcessingUnitAddedEventListener.class));
+	}
+
+	@Test
+	public void testMissedEventIsFoundByFallbackPoll() throws Exception {
+		final ProcessingUnitInstanceStatistics initializing = createStatistics(USMState.INITIALIZING);
+		final ProcessingUnitInstanceStatistics running = createStatistics(USMState.RUNNING);
+		final ProcessingUnitInstance instance = createInstance(initializing);
+		// no statistics change event is raised when the instance starts running.
+		Mockito.when(instance.getStatistics()).thenReturn(initializing, running);
+		final ProcessingUnit pu = createProcessingUnit(instance);
+		Mockito.when(processingUnits.getProcessingUnit(DEPENDENCY_NAME)).thenReturn(pu);
+
+		final long start = System.currentTimeMillis();
+		createWaiter(100).waitForDependencies(30, TimeUnit.SECONDS);
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final long start = System.currentTimeMillis();
+		try {
+			createWaiter(100).waitForDependencies(500, TimeUnit.MILLISECONDS);
+			Assert.fail("The dependency should not be available");
+		} catch (final IllegalStateException e) {
+			Assert.assertTrue(e.getMessage().contains(DEPENDENCY_NAME));
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start >= 500);
+	}
+
+	private ServiceDependencyWaiter createWaiter(final long pollIntervalMillis) {
+		return new ServiceDependencyWaiter(admin, new String[] { DEPENDENCY_NAME }, pollIntervalMillis);
+	}
+
+	private void raiseProcessingUnitAddedOnListen(final ProcessingUnit pu) {
+		Mockito.doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				((ProcessingUnitAddedEventListener) invocation.getArguments()[0]).processingUnitAdded(pu);
+				return null;
+			}
+		}).when(processingUnitAdded).add(Mockito.any(ProcessingUnitAddedEventListener.class));
+	}
+
+	private static ProcessingUnit createProcessingUnit(final ProcessingUnitInstance... instances) {
+		final ProcessingUnit pu = Mockito.mock(ProcessingUnit.class);
+		Mockito.when(pu.getName()).thenReturn(DEPENDENCY_NAME);
+		Mockito.when(pu.getInstances()).thenReturn(instances);
+		Mockito.when(pu.getProcessingUnitInstanceAdded())
+				.thenReturn(Mockito.mock(ProcessingUnitInstanceAddedEventManager.class));
+		Mockito.when(pu.getProcessingUnitInstanceStatisticsChanged())
+				.thenReturn(Mockito.mock(ProcessingUnitInstanceStatisticsChangedEventManager.class));
+		return pu;
+	}
+
+	private static ProcessingUnitInstance createInstance(final ProcessingUnitInstanceStatistics statistics) {
+		final ProcessingUnitInstance instance = Mockito.mock(ProcessingUnitInstance.class);
+		Mockito.when(instance.getInstanceId()).thenReturn(1);
+		Mockito.when(instance.getStatistics()).thenReturn(statistics);
+		return instance;
+	}
+
+	private static ProcessingUnitInstanceStatistics createStatistics(final USMState state) {
+		final Map<String, Object> usmMonitors = new HashMap<String, Object>();
+		usmMonitors.put(CloudifyConstants.USM_MONITORS_STATE_ID, state.ordinal());
+		final ServiceMonitors serviceMonitors = Mockito.mock(ServiceMonitors.class);
+		Mockito.when(serviceMonitors.getMonitors()).thenReturn(usmMonitors);
+		final Map<String, ServiceMonitors> monitors = new HashMap<String, ServiceMonitors>();
+		monitors.put(CloudifyConstants.USM_MONITORS_SERVICE_ID, serviceMonitors);
+		final ProcessingUnitInstanceStatistics statistics = Mockito.mock(ProcessingUnitInstanceStatistics.class);
+		Mockito.when(statistics.getMonitors()).thenReturn(monitors);
+		return statistics;
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXAuthenticator;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXPrincipal;
+import javax.management.remote.JMXServiceURL;
+import javax.security.auth.Subject;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JmxConnectionManager}, with a JMX connector server in this process.
+ *
+ * @since 2.7.0
+ */
+public class JmxConnectionManagerTest {
+
+	private static final List<String> PASSWORDS = Arrays.asList("first", "second");
+
+	private final JmxConnectionManager manager = JmxConnectionManager.getInstance();
+	private JMXConnectorServer server;
+	private JMXServiceURL url;
+
+	@Before
+	public void before() throws Exception {
+		final Map<String, Object> env = new HashMap<String, Object>();
+		env.put(JMXConnectorServer.AUTHENTICATOR, new JMXAuthenticator() {
+
+			@Override
+			public Subject authenticate(final Object credentials) {
+				final String[] userAndPassword = (String[]) credentials;
+				if (!PASSWORDS.contains(userAndPassword[1])) {
+					throw new SecurityException("Wrong password");
+				}
+				final Subject subject = new Subject();
+				subject.getPrincipals().add(new JMXPrincipal(userAndPassword[0]));
+				return subject;
+			}
+		});
+		server = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://"), env,
+				ManagementFactory.getPlatformMBeanServer());
+		server.start();
+		url = server.getAddress();
+	}
+
+	@After
+	public void after() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void testSameTargetSharesConnection() throws Exception {
+		final MBeanServerConnection first = manager.getConnection(url, createEnvironment("first"));
+		try {
+			Assert.assertSame(first, manager.getConnection(url, createEnvironment("first")));
+			Assert.assertTrue(first.getMBeanCount() > 0);
+		} finally {
+			manager.invalidate(url, createEnvironment("first"), first);
+		}
+	}
+
+	@Test
+	public void testDifferentPasswordsDoNotShareConnection() throws Exception {
+		final MBeanServerConnection first = manager.getConnection(url, createEnvironment("first"));
+		final MBeanServerConnection second = manager.getConnection(url, createEnvironment("second"));
+		try {
+			Assert.assertNotSame(first, second);
+		} finally {
+			manager.invalidate(url, createEnvironment("first"), first);
+			manager.invalidate(url, createEnvironment("second"), second);
+		}
+	}
+
+	@Test
+	public void testInvalidateClosesOnlyTheFailedConnection() throws Exception {
+		final MBeanServerConnection failed = manager.getConnection(url, createEnvironment("first"));
+		manager.invalidate(url, createEnvironment("first"), failed);
+
+		final MBeanServerConnection replacement = manager.getConnection(url, createEnvironment("first"));
+		try {
+			Assert.assertNotSame(failed, replacement);
+			// a late report of the old failure leaves the replacement open.
+			manager.invalidate(url, createEnvironment("first"), failed);
+			Assert.assertSame(replacement, manager.getConnection(url, createEnvironment("first")));
+			Assert.assertTrue(replacement.getMBeanCount() > 0);
+		} finally {
+			manager.invalidate(url, createEnvironment("first"), replacement);
+		}
+	}
+
+	private static Map<String, Object> createEnvironment(final String password) {
+		final Map<String, Object> env = new HashMap<String, Object>();
+		env.put(JMXConnector.CREDENTIALS, new String[] { "user", password });
+		return env;
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.usm.ExternalProcessResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GroovyWorkerPool}, with real worker JVMs, and for the choice of running a script in a new process
+ * made by {@link DefaultProcessLauncher}.
+ *
+ * @since 2.7.0
+ */
+public class GroovyWorkerPoolTest {
+
+	// prints the name of the JVM that runs the script, which includes its process id.
+	private static final String PRINT_JVM_SCRIPT =
+			"print java.lang.management.ManagementFactory.getRuntimeMXBean().getName()";
+
+	private File workDir;
+	private GroovyWorkerPool pool;
+	private final Map<String, String> environment = new HashMap<String, String>();
+	private final CollectingOutputHandler lines = new CollectingOutputHandler();
+
+	@Before
+	public void before() throws IOException {
+		workDir = File.createTempFile("groovyWorkerPoolTest", "");
+		FileUtils.forceDelete(workDir);
+		FileUtils.forceMkdir(workDir);
+
+		final List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+		command.add("-cp");
+		command.add(getAbsoluteClassPath());
+		command.add(GroovyWorker.class.getName());
+		pool = new GroovyWorkerPool(command, workDir, new HashMap<String, String>(), 1);
+	}
+
+	@After
+	public void after() {
+		pool.close();
+		FileUtils.deleteQuietly(workDir);
+	}
+
+	@Test
+	public void testEachScriptRunsInItsOwnWorker() throws Exception {
+		final File script = createScript("jvm.groovy", PRINT_JVM_SCRIPT);
+
+		final ExternalProcessResult first = execute(script);
+		Assert.assertEquals(0, first.getExitValue());
+		final ExternalProcessResult second = execute(script);
+		Assert.assertEquals(0, second.getExitValue());
+		Assert.assertFalse(first.getOutput().equals(second.getOutput()));
+	}
+
+	@Test
+	public void testScriptsDoNotShareJvmState() throws Exception {
+		execute(createScript("set.groovy", "System.setProperty('groovyWorkerPoolTest', 'set')"));
+
+		final ExternalProcessResult result = execute(createScript("get.groovy",
+				"print System.getProperty('groovyWorkerPoolTest')"));
+		Assert.assertEquals("null", result.getOutput());
+	}
+
+	@Test
+	public void testExitCodeAndArguments() throws Exception {
+		final File script = createScript("exit.groovy", "print args.join(','); System.exit(3)");
+
+		final ExternalProcessResult result = pool.execute(script, Arrays.asList("a", "b"), environment, 0, lines);
+		Assert.assertEquals(3, result.getExitValue());
+		Assert.assertEquals("a,b", result.getOutput());
+	}
+
+	@Test
+	public void testScriptEndsWhenItsThreadsEnd() throws Exception {
+		final ExternalProcessResult result = execute(createScript("thread.groovy",
+				"Thread.start { Thread.sleep(500); print 'thread' }\nprint 'main,'"));
+		Assert.assertEquals(0, result.getExitValue());
+		Assert.assertEquals("main,thread", result.getOutput());
+
+		// a thread that exits ends the script, and the threads still running.
+		final ExternalProcessResult exited = execute(createScript("threadExit.groovy",
+				"Thread.start { Thread.sleep(60000); print 'late' }\n"
+						+ "Thread.start { Thread.sleep(500); System.exit(4) }"));
+		Assert.assertEquals(4, exited.getExitValue());
+		Assert.assertEquals("", exited.getOutput());
+	}
+
+	@Test
+	public void testEnvironmentIsGivenWithEachScript() throws Exception {
+		final File script = createScript("env.groovy", "print System.getenv('GROOVY_WORKER_POOL_TEST')");
+
+		environment.put("GROOVY_WORKER_POOL_TEST", "first");
+		Assert.assertEquals("first", execute(script).getOutput());
+		environment.put("GROOVY_WORKER_POOL_TEST", "second");
+		Assert.assertEquals("second", execute(script).getOutput());
+	}
+
+	@Test
+	public void testChangedHelperClassIsUsed() throws Exception {
+		final File script = createScript("helper.groovy", "print new Helper().value()");
+
+		createScript("Helper.groovy", "class Helper { String value() { 'first' } }");
+		Assert.assertEquals("first", execute(script).getOutput());
+		createScript("Helper.groovy", "class Helper { String value() { 'second' } }");
+		Assert.assertEquals("second", execute(script).getOutput());
+	}
+
+	@Test
+	public void testOutputIsStreamedWhileTheScriptRuns() throws Exception {
+		// the script only ends once the test saw its first line.
+		final File marker = new File(workDir, "marker");
+		final File script = createScript("stream.groovy", "println 'first'\n"
+				+ "def marker = new File('" + marker.getAbsolutePath().replace("\\", "/") + "')\n"
+				+ "while (!marker.exists()) { Thread.sleep(10) }\n"
+				+ "print 'second'");
+
+		final ExternalProcessResult result = pool.execute(script, Collections.<String>emptyList(), environment,
+				30000, new GroovyWorkerPool.OutputHandler() {
+
+					@Override
+					public void onOutputLine(final String line) {
+						lines.onOutputLine(line);
+						try {
+							FileUtils.touch(marker);
+						} catch (final IOException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				});
+		Assert.assertEquals(0, result.getExitValue());
+		Assert.assertEquals(Arrays.asList("first", "second"), lines.lines);
+	}
+
+	@Test
+	public void testTimedOutScriptKillsItsWorker() throws Exception {
+		final File sleepScript = createScript("sleep.groovy", "Thread.sleep(60000)");
+		final long start = System.currentTimeMillis();
+		try {
+			pool.execute(sleepScript, Collections.<String>emptyList(), environment, 500, lines);
+			Assert.fail("Script should have timed out");
+		} catch (final GroovyWorkerPool.ScriptAbortedException e) {
+			// expected.
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 30000);
+
+		// the killed worker is replaced.
+		final ExternalProcessResult result = execute(createScript("jvm.groovy", PRINT_JVM_SCRIPT));
+		Assert.assertEquals(0, result.getExitValue());
+	}
+
+	@Test
+	public void testForkMarkerRequestsNewProcess() throws Exception {
+		Assert.assertTrue(DefaultProcessLauncher.requestsNewProcess(createScript("fork.groovy",
+				"// cloudify:fork\nprintln 'hello'")));
+		Assert.assertFalse(DefaultProcessLauncher.requestsNewProcess(createScript("worker.groovy",
+				"println 'hello'")));
+	}
+
+	// the workers run in another directory.
+	private static String getAbsoluteClassPath() {
+		final StringBuilder sb = new StringBuilder();
+		for (final String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (sb.length() > 0) {
+				sb.append(File.pathSeparator);
+			}
+			sb.append(new File(entry).getAbsolutePath());
+		}
+		return sb.toString();
+	}
+
+	private ExternalProcessResult execute(final File script) throws Exception {
+		return pool.execute(script, Collections.<String>emptyList(), environment, 0, lines);
+	}
+
+	private File createScript(final String name, final String text) throws IOException {
+		final File script = new File(workDir, name);
+		FileUtils.writeStringToFile(script, text);
+		return script;
+	}
+
+	/**
+	 * Keeps the lines of output.
+	 */
+	private static class CollectingOutputHandler implements GroovyWorkerPool.OutputHandler {
+
+		private final List<String> lines = new ArrayList<String>();
+
+		@Override
+		public synchronized void onOutputLine(final String line) {
+			lines.add(line);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.liveness;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.usm.USMException;
+import org.cloudifysource.usm.events.StartReason;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FileLivenessDetector}.
+ *
+ * @since 2.7.0
+ */
+public class FileLivenessDetectorTest {
+
+	private File file;
+	private FileLivenessDetector detector;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("fileLivenessDetector", ".log");
+		final Map<String, Object> config = new HashMap<String, Object>();
+		config.put(FileLivenessDetector.FILE_PATH_KEY, file.getAbsolutePath());
+		config.put(FileLivenessDetector.REGULAR_EXPRESSION_KEY, "Server started");
+		detector = new FileLivenessDetector();
+		detector.setConfig(config);
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void testFindsRegexInNewLines() throws IOException, USMException {
+		append("Starting server\n");
+		Assert.assertFalse(detector.isProcessAlive());
+		append("Server started in 10 ms\n");
+		Assert.assertTrue(detector.isProcessAlive());
+	}
+
+	@Test
+	public void testRelaunchMustLogRegexAgain() throws IOException, USMException {
+		detector.onPreStart(StartReason.DEPLOY);
+		append("Server started in 10 ms\n");
+		Assert.assertTrue(detector.isProcessAlive());
+
+		// the process died and is launched again, appending to the same log.
+		detector.onPreStart(StartReason.DEPLOY);
+		Assert.assertFalse(detector.isProcessAlive());
+		append("Starting server\n");
+		Assert.assertFalse(detector.isProcessAlive());
+		append("Server started in 12 ms\n");
+		Assert.assertTrue(detector.isProcessAlive());
+	}
+
+	@Test
+	public void testFailsWhenRegexIsNotFoundWithinTimeout() throws Exception {
+		final Map<String, Object> config = new HashMap<String, Object>();
+		config.put(FileLivenessDetector.FILE_PATH_KEY, file.getAbsolutePath());
+		config.put(FileLivenessDetector.REGULAR_EXPRESSION_KEY, "Server started");
+		config.put(FileLivenessDetector.TIMEOUT_IN_SECONDS_KEY, 1);
+		detector.setConfig(config);
+
+		append("Starting server\n");
+		Assert.assertFalse(detector.isProcessAlive());
+		Thread.sleep(1500);
+		try {
+			detector.isProcessAlive();
+			Assert.fail("The detector should have timed out");
+		} catch (final USMException e) {
+			// expected.
+		}
+
+		// a relaunch starts a new timeout.
+		detector.onPreStart(StartReason.DEPLOY);
+		append("Server started in 10 ms\n");
+		Assert.assertTrue(detector.isProcessAlive());
+	}
+
+	private void append(final String text) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.liveness;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PortLivenessDetector}.
+ *
+ * @since 2.7.0
+ */
+public class PortLivenessDetectorTest {
+
+	private static final String HOST = "127.0.0.1";
+
+	private final List<ServerSocket> serverSockets = new ArrayList<ServerSocket>();
+
+	@After
+	public void after() throws IOException {
+		for (final ServerSocket serverSocket : serverSockets) {
+			serverSocket.close();
+		}
+	}
+
+	@Test
+	public void testAllPortsOpen() throws IOException {
+		Assert.assertTrue(createDetector(listen(), listen(), listen()).isProcessAlive());
+	}
+
+	@Test
+	public void testOnePortClosed() throws IOException {
+		final int closedPort = getFreePort();
+		final long start = System.currentTimeMillis();
+		Assert.assertFalse(createDetector(listen(), closedPort, listen()).isProcessAlive());
+		// the ports are probed together, a closed port does not hold the others.
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testPortOpenedLater() throws IOException {
+		final int port = getFreePort();
+		final PortLivenessDetector detector = createDetector(port);
+		Assert.assertFalse(detector.isProcessAlive());
+		serverSockets.add(new ServerSocket(port, 50, InetAddress.getByName(HOST)));
+		Assert.assertTrue(detector.isProcessAlive());
+	}
+
+	private int listen() throws IOException {
+		final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName(HOST));
+		serverSockets.add(serverSocket);
+		return serverSocket.getLocalPort();
+	}
+
+	private static int getFreePort() throws IOException {
+		final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName(HOST));
+		try {
+			return serverSocket.getLocalPort();
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	private static PortLivenessDetector createDetector(final Integer... ports) {
+		final Map<String, Object> config = new HashMap<String, Object>();
+		config.put("Port", new ArrayList<Integer>(Arrays.asList(ports)));
+		config.put("Host", HOST);
+		final PortLivenessDetector detector = new PortLivenessDetector();
+		detector.setConfig(config);
+		return detector;
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.usm.tail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.usm.tail.RollingFileAppenderTailer.LineHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link IncrementalFileReader}.
+ *
+ * @since 2.7.0
+ */
+public class IncrementalFileReaderTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int SMALL_CHUNK_SIZE = 4;
+
+	private File file;
+	private final List<String> lines = new ArrayList<String>();
+	private final LineHandler handler = new LineHandler() {
+
+		@Override
+		public void handleLine(final String fileName, final String line) {
+			lines.add(line);
+		}
+	};
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("incrementalFileReader", ".out");
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void testReadsOnlyNewLines() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, true, SMALL_CHUNK_SIZE);
+		append("first line\nsecond line\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		append("third line\r\n\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		reader.close();
+
+		Assert.assertEquals(Arrays.asList("first line", "second line", "third line"), lines);
+	}
+
+	@Test
+	public void testKeepsPartialLineUntilComplete() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, false, SMALL_CHUNK_SIZE);
+		append("partial");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		Assert.assertTrue(lines.isEmpty());
+
+		append(" line\nnext");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		Assert.assertEquals(Arrays.asList("partial line"), lines);
+
+		// a process that buffers its output may still write the rest of the line.
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		Assert.assertEquals(Arrays.asList("partial line"), lines);
+
+		reader.close(handler, file.getName());
+		Assert.assertEquals(Arrays.asList("partial line", "next"), lines);
+	}
+
+	@Test
+	public void testPassesOnPartialLineAfterGracePeriod() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, false, SMALL_CHUNK_SIZE, 0);
+		append("last");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		Assert.assertTrue(lines.isEmpty());
+
+		// the file did not grow since the previous read.
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		Assert.assertEquals(Arrays.asList("last"), lines);
+	}
+
+	@Test
+	public void testSplitsLongLineBetweenCharacters() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, true);
+		final StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < IncrementalFileReader.MAX_LINE_LENGTH - 1; i++) {
+			longLine.append('a');
+		}
+		// a two byte character that does not fit in the line.
+		append(longLine + "\u00e9\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		reader.close();
+
+		Assert.assertEquals(Arrays.asList(longLine.toString(), "\u00e9"), lines);
+	}
+
+	@Test
+	public void testLimitsBytesPerRead() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, true, SMALL_CHUNK_SIZE);
+		append("aaaa\nbbbb\ncccc\n");
+
+		Assert.assertEquals(5, reader.read(handler, file.getName(), 5));
+		Assert.assertEquals(Arrays.asList("aaaa"), lines);
+		Assert.assertEquals(10, reader.getUnreadBytes());
+
+		Assert.assertEquals(10, reader.read(handler, file.getName(), Long.MAX_VALUE));
+		Assert.assertEquals(Arrays.asList("aaaa", "bbbb", "cccc"), lines);
+		Assert.assertEquals(0, reader.getUnreadBytes());
+		reader.close();
+	}
+
+	@Test
+	public void testDetectsRotation() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, false);
+		append("old file line\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+
+		// replaced by a longer file, the size alone does not tell it was rotated.
+		FileUtils.writeStringToFile(file, "new file line, longer than the old one\n", "UTF-8");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+
+		Assert.assertEquals(Arrays.asList("old file line", "new file line, longer than the old one"), lines);
+	}
+
+	@Test
+	public void testDetectsTruncation() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, true);
+		append("a line that is rather long\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+
+		FileUtils.writeStringToFile(file, "short\n", "UTF-8");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		reader.close();
+
+		Assert.assertEquals(Arrays.asList("a line that is rather long", "short"), lines);
+	}
+
+	@Test
+	public void testSkipsToEnd() throws IOException {
+		final IncrementalFileReader reader = new IncrementalFileReader(file, UTF8, false);
+		append("old line\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		append("skipped line\n");
+		reader.skipToEnd();
+		append("new line\n");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+
+		Assert.assertEquals(Arrays.asList("old line", "new line"), lines);
+		// the file read from is still told from a rotated one.
+		FileUtils.writeStringToFile(file, "rotated line, longer than the lines before\n", "UTF-8");
+		reader.read(handler, file.getName(), Long.MAX_VALUE);
+		Assert.assertEquals(Arrays.asList("old line", "new line", "rotated line, longer than the lines before"), lines);
+	}
+
+	private void append(final String text) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(text.getBytes(UTF8));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.context.kvstorage;
 
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * 
@@ -81,5 +83,42 @@ public interface AttributesAccessor {
 	 * @return true if the an element with this key exists, false otherwise.
 	 */
 	boolean containsKey(final String key);
+
+	/**************
+	 * Atomically sets the value of an attribute, if its current value equals the expected value.
+	 * @param key the element key.
+	 * @param expectedValue the expected current value, or null if the element is expected not to exist.
+	 * @param newValue the new value.
+	 * @return true if the value was set, false if the current value did not match.
+	 */
+	boolean compareAndSet(final String key, final Object expectedValue, final Object newValue);
+
+	/**************
+	 * Atomically adds to the numeric value of an attribute. A missing element is created with the delta as its value.
+	 * @param key the element key.
+	 * @param delta the amount to add.
+	 * @return the new value.
+	 */
+	Number increment(final String key, final Number delta);
+
+	/**************
+	 * Reads several attributes at once.
+	 * @param keys the element keys.
+	 * @return the values of the elements that exist, by key.
+	 */
+	Map<String, Object> getAll(final Collection<String> keys);
+
+	/**************
+	 * Sets several attributes at once.
+	 * @param attributes the element values, by key.
+	 */
+	void putAll(final Map<String, Object> attributes);
+
+	/**************
+	 * Removes several attributes at once.
+	 * @param keys the element keys.
+	 * @return the previous values of the elements that existed, by key.
+	 */
+	Map<String, Object> removeAll(final Collection<String> keys);
 	
 }
@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.internal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.DeclarationExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.TupleExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.syntax.Types;
+
+/*******
+ * Reads the services of an application concurrently. The application recipe still drives the order in which services
+ * are added to the application: when the first service block is evaluated, all of the service directories referenced
+ * by the recipe are submitted to a bounded thread pool, and each service block then waits for its own service. Errors
+ * are reported by the service block that references the failed service, so ordering and error reporting are the same as
+ * when the services are read one after the other.
+ *
+ * @since 2.7.0
+ *
+ */
+public class ApplicationServiceLoader {
+
+	/*******
+	 * System property used to set the maximum number of services read concurrently.
+	 */
+	public static final String LOADING_THREADS_PROPERTY_NAME = "org.cloudifysource.dsl.service-loading-threads";
+
+	private static final Logger logger = Logger.getLogger(ApplicationServiceLoader.class.getName());
+
+	private final File applicationDir;
+	private final File applicationFile;
+	private final int maxThreads;
+
+	private final Map<String, Future<DSLServiceCompilationResult>> services =
+			new HashMap<String, Future<DSLServiceCompilationResult>>();
+	private Map<String, Object> loadedProperties;
+	private ExecutorService executor;
+	private boolean started = false;
+
+	/*******
+	 * Constructor.
+	 *
+	 * @param applicationDir
+	 *            the application directory.
+	 * @param applicationFile
+	 *            the application recipe, used to find the services it references.
+	 */
+	public ApplicationServiceLoader(final File applicationDir, final File applicationFile) {
+		this(applicationDir, applicationFile, Integer.getInteger(LOADING_THREADS_PROPERTY_NAME,
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+	/*******
+	 * Constructor.
+	 *
+	 * @param applicationDir
+	 *            the application directory.
+	 * @param applicationFile
+	 *            the application recipe, used to find the services it references.
+	 * @param maxThreads
+	 *            the maximum number of services read concurrently.
+	 */
+	public ApplicationServiceLoader(final File applicationDir, final File applicationFile, final int maxThreads) {
+		this.applicationDir = applicationDir;
+		this.applicationFile = applicationFile;
+		this.maxThreads = maxThreads;
+	}
+
+	/*******
+	 * Returns the service in the given directory, waiting for it to be read if required.
+	 *
+	 * @param serviceDir
+	 *            the service directory.
+	 * @param applicationProperties
+	 *            the application properties passed to the service.
+	 * @return the service.
+	 * @throws DSLException
+	 *             if the service could not be read.
+	 */
+	public DSLServiceCompilationResult getService(final File serviceDir,
+			final Map<String, Object> applicationProperties) throws DSLException {
+		final Future<DSLServiceCompilationResult> future;
+		synchronized (this) {
+			if (!started) {
+				started = true;
+				start(applicationProperties);
+			}
+			final Future<DSLServiceCompilationResult> loaded = services.remove(getKey(serviceDir));
+			// services read ahead of time were given the properties seen by the first service block.
+			future = isLoadedWith(applicationProperties) ? loaded : null;
+		}
+
+		if (future == null) {
+			return readService(serviceDir, applicationProperties);
+		}
+
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DSLException("Interrupted while reading service: " + serviceDir, e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof DSLException) {
+				throw (DSLException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new DSLException("Failed to read service: " + serviceDir + ": " + cause.getMessage(), cause);
+		}
+	}
+
+	/*******
+	 * Reads a service. Called by the reading threads, and by the recipe thread for services that were not read ahead.
+	 *
+	 * @param serviceDir
+	 *            the service directory.
+	 * @param applicationProperties
+	 *            the application properties passed to the service.
+	 * @return the service.
+	 * @throws DSLException
+	 *             if the service could not be read.
+	 */
+	protected DSLServiceCompilationResult readService(final File serviceDir,
+			final Map<String, Object> applicationProperties) throws DSLException {
+		return ServiceReader.getApplicationServiceFromDirectory(serviceDir, applicationProperties);
+	}
+
+	// the recipe may pass an equal map that is not the same instance, e.g. a copy made for each service block.
+	private boolean isLoadedWith(final Map<String, Object> applicationProperties) {
+		if (loadedProperties == null || applicationProperties == null) {
+			return loadedProperties == applicationProperties;
+		}
+		return loadedProperties.equals(applicationProperties);
+	}
+
+	/*******
+	 * Stops reading services that were not requested by the recipe.
+	 */
+	public synchronized void close() {
+		for (final Future<DSLServiceCompilationResult> future : services.values()) {
+			future.cancel(true);
+		}
+		services.clear();
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private void start(final Map<String, Object> applicationProperties) {
+		final File[] serviceDirs = findReferencedServiceDirs();
+		if (serviceDirs.length < 2 || maxThreads < 2) {
+			return;
+		}
+
+		// a snapshot, so later changes to the recipe's map are seen as different properties.
+		this.loadedProperties = applicationProperties == null ? null
+				: new LinkedHashMap<String, Object>(applicationProperties);
+		this.executor = Executors.newFixedThreadPool(Math.min(maxThreads, serviceDirs.length),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "ApplicationServiceLoader-"
+								+ threadNumber.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		logger.fine("Reading " + serviceDirs.length + " services of application " + applicationFile
+				+ " concurrently");
+		for (final File serviceDir : serviceDirs) {
+			services.put(getKey(serviceDir), executor.submit(new Callable<DSLServiceCompilationResult>() {
+
+				@Override
+				public DSLServiceCompilationResult call() throws Exception {
+					return readService(serviceDir, loadedProperties);
+				}
+			}));
+		}
+	}
+
+	// only directories of services named in the recipe are read ahead, so services the recipe does not use are never
+	// evaluated.
+	private File[] findReferencedServiceDirs() {
+		final Set<String> serviceNames;
+		try {
+			serviceNames = findServiceNames(applicationFile);
+		} catch (final CompilationFailedException e) {
+			logger.log(Level.FINE, "Failed to parse application file " + applicationFile
+					+ ", services will be read one after the other", e);
+			return new File[0];
+		}
+
+		final File[] dirs = applicationDir.listFiles(new FileFilter() {
+
+			@Override
+			public boolean accept(final File file) {
+				if (!file.isDirectory() || !serviceNames.contains(file.getName())) {
+					return false;
+				}
+				final File[] dslFiles = DSLReader.findDefaultDSLFiles(DSLUtils.SERVICE_DSL_FILE_NAME_SUFFIX, file);
+				return dslFiles != null && dslFiles.length == 1;
+			}
+		});
+		return dirs == null ? new File[0] : dirs;
+	}
+
+	/*******
+	 * Finds the names of the services an application recipe references, without evaluating it. Only service blocks
+	 * whose name is a constant string, set with either 'name = "..."' or 'name "..."', are found; a service whose name
+	 * is computed is read when the recipe reaches its service block.
+	 *
+	 * @param applicationFile
+	 *            the application recipe.
+	 * @return the service names.
+	 * @throws CompilationFailedException
+	 *             if the recipe could not be parsed.
+	 */
+	static Set<String> findServiceNames(final File applicationFile) throws CompilationFailedException {
+		final CompilationUnit unit = new CompilationUnit();
+		unit.addSource(applicationFile);
+		unit.compile(Phases.CONVERSION);
+
+		final Set<String> names = new HashSet<String>();
+		final CodeVisitorSupport visitor = new CodeVisitorSupport() {
+
+			@Override
+			public void visitMethodCallExpression(final MethodCallExpression call) {
+				if (call.isImplicitThis() && "service".equals(call.getMethodAsString())) {
+					final List<Expression> arguments = getArguments(call);
+					if (arguments.size() == 1 && arguments.get(0) instanceof ClosureExpression) {
+						final String name = findServiceName((ClosureExpression) arguments.get(0));
+						if (name != null) {
+							names.add(name);
+						}
+					}
+				}
+				super.visitMethodCallExpression(call);
+			}
+		};
+		for (final ModuleNode module : unit.getAST().getModules()) {
+			module.getStatementBlock().visit(visitor);
+		}
+		return names;
+	}
+
+	private static String findServiceName(final ClosureExpression closure) {
+		if (!(closure.getCode() instanceof BlockStatement)) {
+			return null;
+		}
+		for (final Statement statement : ((BlockStatement) closure.getCode()).getStatements()) {
+			if (!(statement instanceof ExpressionStatement)) {
+				continue;
+			}
+			final Expression expression = ((ExpressionStatement) statement).getExpression();
+			Expression value = null;
+			if (expression instanceof MethodCallExpression) {
+				// name "service"
+				final MethodCallExpression call = (MethodCallExpression) expression;
+				final List<Expression> arguments = getArguments(call);
+				if (call.isImplicitThis() && "name".equals(call.getMethodAsString()) && arguments.size() == 1) {
+					value = arguments.get(0);
+				}
+			} else if (expression instanceof BinaryExpression && !(expression instanceof DeclarationExpression)) {
+				// name = "service"
+				final BinaryExpression assignment = (BinaryExpression) expression;
+				if (assignment.getOperation().getType() == Types.ASSIGN
+						&& assignment.getLeftExpression() instanceof VariableExpression
+						&& "name".equals(((VariableExpression) assignment.getLeftExpression()).getName())) {
+					value = assignment.getRightExpression();
+				}
+			}
+			if (value != null) {
+				if (value instanceof ConstantExpression && ((ConstantExpression) value).getValue() instanceof String) {
+					return (String) ((ConstantExpression) value).getValue();
+				}
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static List<Expression> getArguments(final MethodCallExpression call) {
+		if (call.getArguments() instanceof TupleExpression) {
+			return ((TupleExpression) call.getArguments()).getExpressions();
+		}
+		return Collections.emptyList();
+	}
+
+	private static String getKey(final File dir) {
+		try {
+			return dir.getCanonicalPath();
+		} catch (final IOException e) {
+			return dir.getAbsolutePath();
+		}
+	}
+}
@@ -114,6 +114,10 @@ public abstract class BaseDslScript extends Script {
 	// used by the 'print' groovy method. Entries are buffered until a println is called.
 	private final StringBuilder printBuilder = new StringBuilder();
 
+	// the scripts that receive the print methods added to all objects by the DSL reader.
+	private static final ThreadLocal<BaseDslScript> PRINT_TARGET = new ThreadLocal<BaseDslScript>();
+	private static volatile BaseDslScript lastPrintTarget;
+
 	/********
 	 * syntactic sigar for an empty list that process locator implementations can use to specify an empty process IDs
 	 * list.
@@ -778,6 +782,67 @@ public abstract class BaseDslScript extends Script {
 		}
 	}
 
+	/*******
+	 * Sends the output of print methods called by the current thread on any object to the given script. Called by the
+	 * script itself when it starts running.
+	 *
+	 * @param script
+	 *            the script being read by the current thread.
+	 */
+	public static void bindPrintTarget(final BaseDslScript script) {
+		PRINT_TARGET.set(script);
+		lastPrintTarget = script;
+	}
+
+	/*******
+	 * Stops sending the output of print methods called by the current thread to the script it read.
+	 */
+	public static void unbindPrintTarget() {
+		PRINT_TARGET.remove();
+	}
+
+	/*******
+	 * Returns the script that receives the output of print methods called by the current thread. Closures of a recipe
+	 * that run after it was read, in other threads, print to the script read last, as they did before scripts were
+	 * read concurrently.
+	 *
+	 * @return the script, or null if no script was read yet.
+	 */
+	public static BaseDslScript getPrintTarget() {
+		final BaseDslScript script = PRINT_TARGET.get();
+		return script != null ? script : lastPrintTarget;
+	}
+
+	/*******
+	 * Prints a line to the script returned by {@link #getPrintTarget()}, or to the standard output if there is none.
+	 *
+	 * @param obj
+	 *            the object to print.
+	 */
+	public static void printlnToTarget(final Object obj) {
+		final BaseDslScript script = getPrintTarget();
+		if (script != null) {
+			script.println(obj);
+		} else {
+			System.out.println(obj);
+		}
+	}
+
+	/*******
+	 * Prints to the script returned by {@link #getPrintTarget()}, or to the standard output if there is none.
+	 *
+	 * @param obj
+	 *            the object to print.
+	 */
+	public static void printToTarget(final Object obj) {
+		final BaseDslScript script = getPrintTarget();
+		if (script != null) {
+			script.print(obj);
+		} else {
+			System.out.print(obj);
+		}
+	}
+
 	private void swapActiveObject(final Closure<Object> closure, final Object obj) {
 		final Object prevObject = this.activeObject;
 		final Set<String> prevSet = this.usedProperties;
@@ -848,7 +913,12 @@ public abstract class BaseDslScript extends Script {
 					throw new DSLException("applicationProperties must be a map.");
 				}
 			}
-			result = ServiceReader.getApplicationServiceFromDirectory(serviceDir, applicationPropertiesMap);
+			final Object serviceLoader = getBinding().getVariables().get(DSLUtils.APPLICATION_SERVICE_LOADER);
+			if (serviceLoader instanceof ApplicationServiceLoader) {
+				result = ((ApplicationServiceLoader) serviceLoader).getService(serviceDir, applicationPropertiesMap);
+			} else {
+				result = ServiceReader.getApplicationServiceFromDirectory(serviceDir, applicationPropertiesMap);
+			}
 
 		} catch (final DSLException e) {
 			throw new IllegalArgumentException("Failed to load service: " + serviceName
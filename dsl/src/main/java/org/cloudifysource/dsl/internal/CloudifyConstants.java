@@ -102,6 +102,11 @@ public final class CloudifyConstants {
     public static final String USM_MONITORS_STATE_ID = "USM_State";
     public static final String USM_MONITORS_CHILD_PROCESS_ID = "USM_Child Process ID";
     public static final String USM_MONITORS_ACTUAL_PROCESS_ID = "USM_Actual Process ID";
+    public static final String USM_MONITORS_EXECUTION_TIME_PREFIX = "USM_Monitor Execution Time - ";
+    public static final String USM_MONITORS_FAILURES_PREFIX = "USM_Monitor Failures - ";
+    public static final String USM_MONITORS_TAILER_BYTES_PER_SECOND = "USM_Log Tailer Bytes Per Second";
+    public static final String USM_MONITORS_TAILER_LAG_BYTES = "USM_Log Tailer Lag Bytes";
+    public static final String USM_MONITORS_TIME_TO_READY = "USM_Time To Ready";
 
     /****************
      * Key names for USM Details
@@ -208,7 +213,11 @@ public final class CloudifyConstants {
     public static final String CUSTOM_PROPERTY_ENABLE_START_PROCESS_MONITOR = "org.cloudifysource.enable-start-process-monitor";
     public static final String CUSTOM_PROPERTY_STOP_DETECTION_ON_ALL_PROCESSES = "org.cloudifysource.stop-detection-on-all-processes";
     public static final String CUSTOM_PROPERTY_MONITORS_CACHE_EXPIRATION_TIMEOUT = "org.cloudifysource.monitors-cache-timeout";
+    public static final String CUSTOM_PROPERTY_MONITORS_EXECUTION_TIMEOUT = "org.cloudifysource.monitors-execution-timeout";
     public static final String CUSTOM_PROPERTY_PIDS_SIZE_LIMIT = "org.cloudifysource.pids-size-limit";
+    public static final String CUSTOM_PROPERTY_GROOVY_WORKER_POOL_SIZE = "org.cloudifysource.groovy-worker-pool-size";
+    public static final String CUSTOM_PROPERTY_GROOVY_WORKER_SCRIPT_TIMEOUT =
+    		"org.cloudifysource.groovy-worker-script-timeout";
     public static final String CUSTOM_CLOUD_PROPERTY_UNICAST_DISCOVERY_PORT = "org.cloudifysource.unicast-discovery-port";
     public static final String CUSTOM_PROPERTY_CLEAN_REMOTE_DIR_ON_START = "org.cloudifysource.clearRemoteDirectoryOnStart";
 	public static final String NEW_REST_CLIENT_ENABLE_PROPERTY = "org.cloudifysource.rest-client.enable-new-rest-client";
@@ -403,6 +412,15 @@ public final class CloudifyConstants {
     public static final String UPLOADS_FOLDER_NAME = "restUploads";
     public static final int DEFAULT_UPLOAD_TIMEOUT_MILLIS = 5 * 60 * 1000;
     public static final int DEFAULT_UPLOAD_SIZE_LIMIT_BYTES = 100 * 1000 * 1000;
+    // content addressed uploads are keyed by the hex encoded digest of the file.
+    public static final String UPLOAD_CONTENT_HASH_ALGORITHM = "SHA-256";
+    public static final String UPLOAD_OFFSET_PARAM_NAME = "offset";
+    public static final int UPLOAD_CHUNK_SIZE_BYTES = 4 * 1000 * 1000;
+
+    // following a service log returns the new lines of all instances, and the id of the cursor to continue with.
+    public static final String TAIL_FOLLOW_ID = "followId";
+    public static final String TAIL_LINES = "lines";
+    public static final String TAIL_GREP_PARAM_NAME = "grep";
 
     // install-service validators
     public static final long SERVICE_OVERRIDES_FILE_LENGTH_LIMIT_BYTES = 20 * FileUtils.ONE_KB;
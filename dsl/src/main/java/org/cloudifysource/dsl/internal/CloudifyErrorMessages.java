@@ -339,7 +339,12 @@ public enum CloudifyErrorMessages {
 	/**
 	 * Indicates deployment ID is missing.
 	 */
-	MISSING_DEPLOYMENT_ID("deployment_id_missing", 1)
+	MISSING_DEPLOYMENT_ID("deployment_id_missing", 1),
+
+	/**
+	 * Indicates the index of the first requested deployment event is negative.
+	 */
+	INVALID_EVENTS_INDEX("events_index_invalid", 1)
 
 	// CHECKSTYLE:OFF
 	;
@@ -22,6 +22,12 @@ public enum CloudifyMessageKeys {
 
     UPLOAD_FAILED("failed_to_upload_file"),
 
+    UPLOAD_INVALID_CONTENT_HASH("invalid_upload_content_hash"),
+
+    UPLOAD_CHUNK_OFFSET_MISMATCH("upload_chunk_offset_mismatch"),
+
+    UPLOAD_CONTENT_HASH_MISMATCH("upload_content_hash_mismatch"),
+
     WRONG_SERVICE_FOLDER_UPLOAD_KEY("wrong_service_upload_key"),
 
     WRONG_SERVICE_OVERRIDES_UPLOAD_KEY("wrong_service_overrides_upload_key"),
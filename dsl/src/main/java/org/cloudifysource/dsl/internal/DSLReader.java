@@ -17,6 +17,7 @@ import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
 import groovy.lang.MissingMethodException;
 import groovy.lang.MissingPropertyException;
+import groovy.lang.Script;
 import groovy.util.ConfigObject;
 import groovy.util.ConfigSlurper;
 
@@ -37,6 +38,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FileUtils;
 import org.cloudifysource.domain.Service;
 import org.cloudifysource.domain.cloud.FileTransferModes;
 import org.cloudifysource.domain.cloud.RemoteExecutionModes;
@@ -44,8 +46,12 @@ import org.cloudifysource.domain.cloud.ScriptLanguages;
 import org.cloudifysource.domain.context.BaseServiceContext;
 import org.cloudifysource.domain.context.ServiceContext;
 import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
 
 /*******
  * Generic Cloudify DSL Reader.
@@ -60,8 +66,14 @@ public class DSLReader {
 		
 	}
 	// Groovy DSL prefix, used for handling print and println correctly
-	private static final String GROOVY_SERVICE_PREFIX =
-			"Object.metaClass.println = {x->this.println(x)}; Object.metaClass.print =  {x->this.print(x)};";
+	// binds the print methods of all objects to the script, for the reading thread. See installPrintMethods().
+	private static final String GROOVY_SERVICE_PREFIX = BaseDslScript.class.getName() + ".bindPrintTarget(this);";
+	// the name of the script, and of the class it is compiled to.
+	private static final String SCRIPT_CLASS_NAME = "dslEntity";
+	private static final String PRINT_METHODS_SCRIPT = "Object.metaClass.println = {x->"
+			+ BaseDslScript.class.getName() + ".printlnToTarget(x)}; Object.metaClass.print = {x->"
+			+ BaseDslScript.class.getName() + ".printToTarget(x)};";
+	private static boolean printMethodsInstalled = false;
 	/*****
 	 * Name of the logger used to process dsl print/println statements.
 	 */
@@ -109,6 +121,8 @@ public class DSLReader {
 
 	private GroovyClassLoader dslClassLoader;
 
+	private DSLScriptCache scriptCache;
+
 	private static final String[] STAR_IMPORTS = new String[] {
 			org.cloudifysource.domain.Service.class.getPackage().getName(), 
 			FileTransferModes.class.getName(),
@@ -362,9 +376,28 @@ public class DSLReader {
 			}
 		}
 
-		// create the groovy shell, loaded with our settings
-		final GroovyShell gs = createGroovyShell(properties);
-		final Object result = evaluateGroovyScript(gs);
+		final List<String> classpath = createClasspathList();
+		final Binding binding = createGroovyBinding(properties);
+		final Object result;
+		final GroovyClassLoader classLoader;
+		installPrintMethods();
+		try {
+			if (this.scriptCache != null && this.dslContents == null) {
+				final String scriptText = readScriptText();
+				final DSLScriptCache.CompiledScript compiledScript = getCompiledScript(scriptText, classpath);
+				// each directory the recipe is read from gets its own class loader.
+				classLoader = compiledScript.getClassLoader(classpath,
+						createCompilerConfiguration(BaseDslScript.class.getName(), classpath));
+				result = runCompiledScript(compiledScript.getScriptClass(classLoader), binding);
+			} else {
+				// create the groovy shell, loaded with our settings
+				final GroovyShell gs = createGroovyShell(classpath, binding);
+				classLoader = gs.getClassLoader();
+				result = evaluateGroovyScript(gs);
+			}
+		} finally {
+			BaseDslScript.unbindPrintTarget();
+		}
 
 		if (result == null) {
 			throw new DSLException("The DSL evaluated to a null - check your syntax and try again");
@@ -380,7 +413,7 @@ public class DSLReader {
 			((BaseServiceContext)this.context).init((Service) result);
 		}
 
-		this.dslClassLoader = gs.getClassLoader();
+		this.dslClassLoader = classLoader;
 		return result;
 
 	}
@@ -434,7 +467,7 @@ public class DSLReader {
 				//reader = new FileReader(dslFile);
 				// using a deprecated method here as we do not have a multireader in the dependencies
 				// and not really worth another jar just for this.
-				result = gs.evaluate(sis, "dslEntity");
+				result = gs.evaluate(sis, SCRIPT_CLASS_NAME);
 			} catch (final IOException e) {
 				throw new IllegalStateException("The file " + dslFile + " could not be read", e);
 			} catch (final MissingMethodException e) {
@@ -454,7 +487,7 @@ public class DSLReader {
 			}
 		} else {
 			try {
-				result = gs.evaluate(this.dslContents, "dslEntity");
+				result = gs.evaluate(this.dslContents, SCRIPT_CLASS_NAME);
 			} catch (final CompilationFailedException e) {
 				throw new IllegalArgumentException("The file " + dslFile + " could not be compiled", e);
 			}
@@ -463,6 +496,62 @@ public class DSLReader {
 		return result;
 	}
 
+	/*******
+	 * Adds print methods to all objects, sending their output to the DSL script read by the calling thread. Services
+	 * may be read concurrently, so the methods are added once, rather than by each script binding them to itself.
+	 */
+	private static synchronized void installPrintMethods() {
+		if (!printMethodsInstalled) {
+			new GroovyShell(ServiceReader.class.getClassLoader()).evaluate(PRINT_METHODS_SCRIPT);
+			printMethodsInstalled = true;
+		}
+	}
+
+	private String readScriptText() {
+		try {
+			return GROOVY_SERVICE_PREFIX + FileUtils.readFileToString(dslFile);
+		} catch (final IOException e) {
+			throw new IllegalStateException("The file " + dslFile + " could not be read", e);
+		}
+	}
+
+	private DSLScriptCache.CompiledScript getCompiledScript(final String scriptText, final List<String> classpath) {
+		final String key = DSLScriptCache.createKey(scriptText, workDir);
+		DSLScriptCache.CompiledScript compiledScript = scriptCache.get(key);
+		if (compiledScript == null) {
+			logger.fine("Compiling DSL file: " + dslFile);
+			final CompilerConfiguration cc = createCompilerConfiguration(BaseDslScript.class.getName(), classpath);
+			// classes of the recipe the script refers to are compiled by this class loader, not stored in the cache.
+			final GroovyClassLoader classLoader = new GroovyClassLoader(ServiceReader.class.getClassLoader(), cc);
+			final CompilationUnit unit = new CompilationUnit(cc, null, classLoader);
+			unit.addSource(SCRIPT_CLASS_NAME, scriptText);
+			unit.compile(Phases.CLASS_GENERATION);
+			final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+			for (final Object compiledClass : unit.getClasses()) {
+				classes.put(((GroovyClass) compiledClass).getName(), ((GroovyClass) compiledClass).getBytes());
+			}
+			compiledScript = new DSLScriptCache.CompiledScript(SCRIPT_CLASS_NAME, classes);
+			scriptCache.put(key, compiledScript);
+		} else {
+			logger.fine("Using cached compilation of DSL file: " + dslFile);
+		}
+		return compiledScript;
+	}
+
+	private Object runCompiledScript(final Class<?> scriptClass, final Binding binding)
+			throws DSLValidationException {
+		try {
+			final Script script = InvokerHelper.createScript(scriptClass, binding);
+			return script.run();
+		} catch (final MissingMethodException e) {
+			throw new IllegalArgumentException("Could not resolve DSL entry with name: " + e.getMethod(), e);
+		} catch (final MissingPropertyException e) {
+			throw new IllegalArgumentException("Could not resolve DSL entry with name: " + e.getProperty(), e);
+		} catch (final DSLValidationRuntimeException e) {
+			throw e.getDSLValidationException();
+		}
+	}
+
 	private void initPropertiesFile()
 			throws IOException {
 		if (this.propertiesFileName != null) {
@@ -555,10 +644,7 @@ public class DSLReader {
 
 	}
 
-	private GroovyShell createGroovyShell(final LinkedHashMap<Object, Object> properties) {
-
-		final String baseClassName = BaseDslScript.class.getName();
-
+	private List<String> createClasspathList() {
 		final List<String> serviceJarFiles = createJarFileListForService();
 		String classpathDir = null;
 		if (this.getWorkDir() != null) {
@@ -572,10 +658,14 @@ public class DSLReader {
 		if (classpathDir != null) {
 			serviceJarFiles.add(classpathDir);
 		}
+		return serviceJarFiles;
+	}
 
-		final CompilerConfiguration cc = createCompilerConfiguration(baseClassName, serviceJarFiles);
+	private GroovyShell createGroovyShell(final List<String> classpath, final Binding binding) {
 
-		final Binding binding = createGroovyBinding(properties);
+		final String baseClassName = BaseDslScript.class.getName();
+
+		final CompilerConfiguration cc = createCompilerConfiguration(baseClassName, classpath);
 
 		final GroovyShell gs = new GroovyShell(ServiceReader.class.getClassLoader(), binding, cc);
 
@@ -820,4 +910,19 @@ public class DSLReader {
 		this.applicationProperties = applicationProperties;
 	}
 
+	public DSLScriptCache getScriptCache() {
+		return scriptCache;
+	}
+
+	/**********
+	 * Sets a cache of compiled scripts, used when the DSL is read from a file. If not set, the DSL file is compiled on
+	 * every read.
+	 *
+	 * @param scriptCache
+	 *            the cache.
+	 */
+	public void setScriptCache(final DSLScriptCache scriptCache) {
+		this.scriptCache = scriptCache;
+	}
+
 }
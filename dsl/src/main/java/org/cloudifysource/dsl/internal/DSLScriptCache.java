@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.internal;
+
+import groovy.lang.GroovyClassLoader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+/*******
+ * A bounded, least-recently-used cache of compiled DSL script classes. A DSL file is compiled once per distinct content
+ * of the script and the sources and jars it is compiled with; later reads of the same recipe, also from another
+ * directory, only run the compiled script against a new binding, so properties, overrides and the service context are
+ * still applied on every read.
+ *
+ * @since 2.7.0
+ *
+ */
+public class DSLScriptCache {
+
+	/*******
+	 * Default maximum number of compiled scripts kept in the cache.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 64;
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final String LIB_DIR = "lib";
+
+	private final int maxSize;
+	private final Map<String, CompiledScript> scripts;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/*******
+	 * Constructor.
+	 *
+	 * @param maxSize
+	 *            the maximum number of compiled scripts to keep. The least recently used script is evicted when the
+	 *            cache is full.
+	 */
+	public DSLScriptCache(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Script cache size must be positive, got: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.scripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CompiledScript> eldest) {
+				if (size() > DSLScriptCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/*******
+	 * Returns the compiled script stored under the given key.
+	 *
+	 * @param key
+	 *            the cache key, created by {@link #createKey(String, File)}.
+	 * @return the compiled script, or null if it is not cached.
+	 */
+	public CompiledScript get(final String key) {
+		CompiledScript script;
+		synchronized (scripts) {
+			script = scripts.get(key);
+			if (script != null) {
+				script.releaseUnavailableClassLoaders();
+			}
+		}
+		if (script == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return script;
+	}
+
+	/*******
+	 * Stores a compiled script.
+	 *
+	 * @param key
+	 *            the cache key, created by {@link #createKey(String, File)}.
+	 * @param script
+	 *            the compiled script.
+	 */
+	public void put(final String key, final CompiledScript script) {
+		synchronized (scripts) {
+			scripts.put(key, script);
+		}
+	}
+
+	/*******
+	 * Removes all compiled scripts from the cache.
+	 */
+	public void clear() {
+		synchronized (scripts) {
+			scripts.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (scripts) {
+			return scripts.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/*******
+	 * Creates the cache key of a script. The key covers the script text and the content of the files under the work
+	 * directory that the compilation depends on: groovy and class files, and the jars under usmlib and lib. Files are
+	 * named by their path relative to the work directory, so a recipe extracted to another directory has the same key.
+	 * Other files, like installers bundled with the recipe, are not read.
+	 *
+	 * @param scriptText
+	 *            the full text of the script, as it is compiled.
+	 * @param workDir
+	 *            the work directory of the recipe, or null if it has none.
+	 * @return the key.
+	 */
+	public static String createKey(final String scriptText, final File workDir) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(scriptText.getBytes("UTF-8"));
+			if (workDir != null) {
+				updateDigestWithDirectory(digest, workDir, "");
+			}
+			return toHex(digest.digest());
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		}
+	}
+
+	private static void updateDigestWithDirectory(final MessageDigest digest, final File dir, final String prefix)
+			throws UnsupportedEncodingException {
+		final File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (final File child : files) {
+			final String name = prefix + child.getName();
+			if (child.isDirectory()) {
+				updateDigestWithDirectory(digest, child, name + "/");
+			} else if (child.isFile() && isCompileDependency(name)) {
+				digest.update((byte) 0);
+				digest.update(name.getBytes("UTF-8"));
+				updateDigestWithContent(digest, child);
+			}
+		}
+	}
+
+	private static boolean isCompileDependency(final String relativePath) {
+		if (relativePath.endsWith(".groovy") || relativePath.endsWith(".class")) {
+			return true;
+		}
+		return relativePath.endsWith(".jar")
+				&& (relativePath.startsWith(CloudifyConstants.USM_LIB_DIR + "/") || relativePath.startsWith(LIB_DIR + "/"));
+	}
+
+	private static void updateDigestWithContent(final MessageDigest digest, final File file) {
+		if (!file.isFile()) {
+			return;
+		}
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} catch (final IOException e) {
+			throw new IllegalStateException("Failed to read class path entry " + file, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/*******
+	 * The classes of a compiled DSL script. The compiled classes do not depend on the location of the recipe, so they are
+	 * shared by all directories with the same key. Each class path gets its own class loader, which defines the compiled
+	 * classes and loads other classes of the recipe from that class path.
+	 *
+	 */
+	public static class CompiledScript {
+
+		private final String scriptClassName;
+		private final Map<String, byte[]> classes;
+		private final Map<List<String>, ScriptClassLoader> classLoaders = new HashMap<List<String>, ScriptClassLoader>();
+
+		/*******
+		 * Constructor.
+		 *
+		 * @param scriptClassName
+		 *            the name of the script class.
+		 * @param classes
+		 *            the byte code of the compiled classes, by class name.
+		 */
+		public CompiledScript(final String scriptClassName, final Map<String, byte[]> classes) {
+			this.scriptClassName = scriptClassName;
+			this.classes = classes;
+		}
+
+		/*******
+		 * Returns the class loader of the script for a class path, creating it on first use.
+		 *
+		 * @param classpath
+		 *            the class path the recipe is read with.
+		 * @param config
+		 *            the compiler configuration for classes of the recipe the class loader compiles.
+		 * @return the class loader.
+		 */
+		public synchronized GroovyClassLoader getClassLoader(final List<String> classpath,
+				final CompilerConfiguration config) {
+			ScriptClassLoader classLoader = classLoaders.get(classpath);
+			if (classLoader == null) {
+				classLoader = new ScriptClassLoader(ServiceReader.class.getClassLoader(), config, classes);
+				classLoaders.put(new ArrayList<String>(classpath), classLoader);
+			}
+			return classLoader;
+		}
+
+		/*******
+		 * Returns the script class, as defined by a class loader of this script.
+		 *
+		 * @param classLoader
+		 *            a class loader returned by {@link #getClassLoader(List, CompilerConfiguration)}.
+		 * @return the script class.
+		 */
+		public Class<?> getScriptClass(final GroovyClassLoader classLoader) {
+			return ((ScriptClassLoader) classLoader).getScriptClass(scriptClassName);
+		}
+
+		/*******
+		 * Drops the class loaders whose class path no longer exists, so classes they load lazily are not looked up in a
+		 * deleted directory, and the class loaders can be released.
+		 */
+		public synchronized void releaseUnavailableClassLoaders() {
+			final Iterator<List<String>> iterator = classLoaders.keySet().iterator();
+			while (iterator.hasNext()) {
+				for (final String entry : iterator.next()) {
+					if (!new File(entry).exists()) {
+						iterator.remove();
+						break;
+					}
+				}
+			}
+		}
+
+		public synchronized int getClassLoaderCount() {
+			return classLoaders.size();
+		}
+	}
+
+	/*******
+	 * A class loader that defines the compiled classes of a script when they are first loaded.
+	 *
+	 */
+	private static class ScriptClassLoader extends GroovyClassLoader {
+
+		private final Map<String, byte[]> classes;
+
+		ScriptClassLoader(final ClassLoader parent, final CompilerConfiguration config,
+				final Map<String, byte[]> classes) {
+			super(parent, config);
+			this.classes = classes;
+		}
+
+		Class<?> getScriptClass(final String name) {
+			try {
+				return loadClass(name, false, true);
+			} catch (final ClassNotFoundException e) {
+				throw new IllegalStateException("The compiled script class " + name + " could not be loaded", e);
+			}
+		}
+
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			final byte[] bytes = classes.get(name);
+			if (bytes != null) {
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+			return super.findClass(name);
+		}
+	}
+}
@@ -31,6 +31,10 @@ public final class DSLUtils {
 	 * The binding variable name of the DSL object properties.
 	 */
 	public static final String DSL_PROPERTIES = "dsl_properties";
+	/**
+	 * The binding variable name of the loader used to read the services of an application concurrently.
+	 */
+	public static final String APPLICATION_SERVICE_LOADER = "applicationServiceLoader";
 	/**
 	 * The binding variable name of the DSL file path - the path where the DSL file itself can be found.
 	 */
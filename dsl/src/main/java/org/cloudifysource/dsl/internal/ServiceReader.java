@@ -42,6 +42,15 @@ public final class ServiceReader {
 	 */
 	public static final String DSL_FILE_PATH_PROPERTY_NAME = "dslFilePath";
 
+	/*******
+	 * System property used to set the number of compiled service and application recipes kept in memory.
+	 */
+	public static final String SCRIPT_CACHE_SIZE_PROPERTY_NAME = "org.cloudifysource.dsl.script-cache-size";
+
+	// compiled recipes, shared by all service and application reads in this process.
+	private static final DSLScriptCache SCRIPT_CACHE = new DSLScriptCache(Integer.getInteger(
+			SCRIPT_CACHE_SIZE_PROPERTY_NAME, DSLScriptCache.DEFAULT_MAX_SIZE));
+
 	/*****
 	 * Private Constructor to prevent instantiation.
 	 *
@@ -50,6 +59,15 @@ public final class ServiceReader {
 
 	}
 
+	/**********
+	 * Returns the cache of compiled service and application recipes.
+	 *
+	 * @return the cache.
+	 */
+	public static DSLScriptCache getScriptCache() {
+		return SCRIPT_CACHE;
+	}
+
 	/**
 	 *
 	 * @param projectZipFile
@@ -191,6 +209,7 @@ public final class ServiceReader {
 		dslReader.setDslFileNameSuffix(DSLUtils.SERVICE_DSL_FILE_NAME_SUFFIX);
 		dslReader.setOverridesFile(null);
 		dslReader.setApplicationProperties(applicationProperties);
+		dslReader.setScriptCache(SCRIPT_CACHE);
 
 		final Service service = dslReader.readDslEntity(Service.class);
 
@@ -227,6 +246,7 @@ public final class ServiceReader {
 		dslReader.setWorkDir(workDir);
 		dslReader.setDslFileNameSuffix(DSLUtils.SERVICE_DSL_FILE_NAME_SUFFIX);
 		dslReader.setOverridesFile(overridesFile);
+		dslReader.setScriptCache(SCRIPT_CACHE);
 
 		final Service service = dslReader.readDslEntity(Service.class);
 
@@ -349,8 +369,17 @@ public final class ServiceReader {
 		dslReader.setCreateServiceContext(false);
 		dslReader.addProperty(DSLUtils.APPLICATION_DIR, workDir.getAbsolutePath());
 		dslReader.setOverridesFile(overridesFile);
+		dslReader.setScriptCache(SCRIPT_CACHE);
+
+		final ApplicationServiceLoader serviceLoader = new ApplicationServiceLoader(workDir, actualApplicationDslFile);
+		dslReader.addProperty(DSLUtils.APPLICATION_SERVICE_LOADER, serviceLoader);
 
-		final Application application = dslReader.readDslEntity(Application.class);
+		final Application application;
+		try {
+			application = dslReader.readDslEntity(Application.class);
+		} finally {
+			serviceLoader.close();
+		}
 
 		return new DSLApplicationCompilatioResult(application, actualApplicationDslFile.getParentFile(),
 				actualApplicationDslFile);
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.internal;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The content hash used to key content addressed uploads to the REST server: the hex encoded SHA-256 digest of the
+ * uploaded file.
+ *
+ * @since 2.7.0
+ */
+public final class UploadContentHash {
+
+	private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private UploadContentHash() {
+		// private constructor to prevent initialization.
+	}
+
+	/**
+	 * Computes the content hash of a file.
+	 *
+	 * @param file
+	 *            the file.
+	 * @return the hex encoded SHA-256 digest of the file.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public static String compute(final File file)
+			throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(CloudifyConstants.UPLOAD_CONTENT_HASH_ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		final InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read = in.read(buffer);
+			while (read >= 0) {
+				digest.update(buffer, 0, read);
+				read = in.read(buffer);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	/**
+	 * Checks whether a string is a valid content hash. As content hashes are used as file names, anything else must
+	 * be rejected.
+	 *
+	 * @param contentHash
+	 *            the string to check.
+	 * @return true if the string is a hex encoded SHA-256 digest.
+	 */
+	public static boolean isValid(final String contentHash) {
+		return contentHash != null && CONTENT_HASH_PATTERN.matcher(contentHash).matches();
+	}
+}
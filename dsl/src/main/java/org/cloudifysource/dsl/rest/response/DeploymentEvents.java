@@ -13,10 +13,9 @@
 
 package org.cloudifysource.dsl.rest.response;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import org.cloudifysource.domain.MaxSizeList;
-
 /**
  * Created with IntelliJ IDEA.
  * User: elip
@@ -28,7 +27,8 @@ import org.cloudifysource.domain.MaxSizeList;
  */
 public class DeploymentEvents {
 
-    private List<DeploymentEvent> events = new MaxSizeList<DeploymentEvent>(100);
+    private List<DeploymentEvent> events = new ArrayList<DeploymentEvent>();
+    private int truncatedBeforeIndex = -1;
 
     public List<DeploymentEvent> getEvents() {
         return events;
@@ -37,4 +37,16 @@ public class DeploymentEvents {
     public void setEvents(final List<DeploymentEvent> events) {
         this.events = events;
     }
+
+    /**
+     * @return -1 if all requested events were returned. Otherwise, the server no longer keeps the requested events
+     *          with an index lower than the returned value.
+     */
+    public int getTruncatedBeforeIndex() {
+        return truncatedBeforeIndex;
+    }
+
+    public void setTruncatedBeforeIndex(final int truncatedBeforeIndex) {
+        this.truncatedBeforeIndex = truncatedBeforeIndex;
+    }
 }
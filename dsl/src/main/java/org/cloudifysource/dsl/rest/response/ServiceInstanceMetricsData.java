@@ -25,6 +25,7 @@ public class ServiceInstanceMetricsData {
 
 	private int instanceId;
 	private Map<String, Object> metrics;
+	private ServiceInstanceMetricsStatus status;
 
 	public ServiceInstanceMetricsData() {
 	}
@@ -35,6 +36,13 @@ public class ServiceInstanceMetricsData {
 		this.metrics = metrics;
 	}
 
+	public ServiceInstanceMetricsData(int instanceId,
+			Map<String, Object> metrics, ServiceInstanceMetricsStatus status) {
+		this.instanceId = instanceId;
+		this.metrics = metrics;
+		this.status = status;
+	}
+
 	public int getInstanceId() {
 		return instanceId;
 	}
@@ -51,4 +59,12 @@ public class ServiceInstanceMetricsData {
 		this.metrics = metrics;
 	}
 
+	public ServiceInstanceMetricsStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(ServiceInstanceMetricsStatus status) {
+		this.status = status;
+	}
+
 }
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.rest.response;
+
+/**
+ * Describes whether the metrics of a service instance were retrieved.
+ *
+ * @since 2.7.0
+ */
+public enum ServiceInstanceMetricsStatus {
+
+	/**
+	 * The metrics were retrieved.
+	 */
+	OK,
+
+	/**
+	 * The instance did not report USM metrics yet.
+	 */
+	NO_METRICS,
+
+	/**
+	 * The metrics were not retrieved before the request deadline.
+	 */
+	TIMED_OUT,
+
+	/**
+	 * Retrieving the metrics failed.
+	 */
+	FAILED
+}
@@ -17,13 +17,15 @@ package org.cloudifysource.dsl.rest.response;
 
 /**
  * A POJO representing a response to UploadController's upload command via the REST Gateway.
- * Contains the key of the uploaded file.
+ * Contains the key of the uploaded file, and for a content addressed upload that was not completed yet,
+ * the number of bytes received so far.
  * @author yael
  *
  */
 public class UploadResponse {
 	
 	private String uploadKey;
+	private long uploadedBytes;
 
 	public String getUploadKey() {
 		return uploadKey;
@@ -32,5 +34,13 @@ public class UploadResponse {
 	public void setUploadKey(final String uploadKey) {
 		this.uploadKey = uploadKey;
 	}
+
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
+	public void setUploadedBytes(final long uploadedBytes) {
+		this.uploadedBytes = uploadedBytes;
+	}
 	
 }
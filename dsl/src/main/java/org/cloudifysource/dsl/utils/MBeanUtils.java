@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**********
+ * Publishes statistics of Cloudify components as MBeans on the platform MBean server, where JConsole and other JMX
+ * clients can read them. Failing to register an MBean is logged and otherwise ignored, as statistics are never
+ * essential to the component that publishes them.
+ *
+ * @since 2.7.0
+ *
+ */
+public final class MBeanUtils {
+
+	/**
+	 * The JMX domain of all Cloudify MBeans.
+	 */
+	public static final String DOMAIN = "org.cloudifysource";
+
+	private static final Logger logger = Logger.getLogger(MBeanUtils.class.getName());
+
+	private MBeanUtils() {
+		// private constructor to prevent initialization.
+	}
+
+	/***********
+	 * Registers an MBean named "org.cloudifysource:type=[type],name=[name]". If the name is taken, for example by
+	 * another instance of the same component, a sequence number is added to it.
+	 *
+	 * @param <T> the MBean interface type.
+	 * @param type the component type.
+	 * @param name the component name.
+	 * @param implementation the MBean.
+	 * @param mbeanInterface the interface whose getters are published as attributes.
+	 * @return the name the MBean was registered with, or null if it could not be registered.
+	 */
+	public static <T> ObjectName register(final String type, final String name, final T implementation,
+			final Class<T> mbeanInterface) {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			final StandardMBean mbean = new StandardMBean(implementation, mbeanInterface);
+			String uniqueName = name;
+			for (int sequence = 2;; sequence++) {
+				final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name="
+						+ ObjectName.quote(uniqueName));
+				try {
+					server.registerMBean(mbean, objectName);
+					return objectName;
+				} catch (final InstanceAlreadyExistsException e) {
+					uniqueName = name + "-" + sequence;
+				}
+			}
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Failed to register the " + type + " MBean of " + name + ": " + e.getMessage(),
+					e);
+			return null;
+		}
+	}
+
+	/**********
+	 * Unregisters an MBean registered with {@link #register(String, String, Object, Class)}.
+	 *
+	 * @param objectName the name returned when registering, may be null.
+	 */
+	public static void unregister(final ObjectName objectName) {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (final InstanceNotFoundException e) {
+			// already unregistered.
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Failed to unregister MBean " + objectName + ": " + e.getMessage(), e);
+		}
+	}
+}
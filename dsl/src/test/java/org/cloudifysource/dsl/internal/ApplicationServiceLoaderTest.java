@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.domain.Service;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ApplicationServiceLoader}.
+ *
+ * @since 2.7.0
+ */
+public class ApplicationServiceLoaderTest {
+
+	private File applicationDir;
+	private File applicationFile;
+	private CountingServiceLoader loader;
+
+	@Before
+	public void before() throws IOException {
+		applicationDir = File.createTempFile("applicationServiceLoaderTest", "");
+		FileUtils.forceDelete(applicationDir);
+		applicationFile = new File(applicationDir, "test-application.groovy");
+		FileUtils.writeStringToFile(applicationFile,
+				"application {\n\tservice { name = \"a\" }\n\tservice { name = \"b\" }\n}");
+		for (final String name : new String[] { "a", "b" }) {
+			FileUtils.writeStringToFile(new File(applicationDir, name + "/" + name + "-service.groovy"),
+					"service { name \"" + name + "\" }");
+		}
+		loader = new CountingServiceLoader(applicationDir, applicationFile);
+	}
+
+	@After
+	public void after() {
+		loader.close();
+		FileUtils.deleteQuietly(applicationDir);
+	}
+
+	@Test
+	public void testEqualPropertiesReuseServiceReadAhead() throws Exception {
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("port", 8080);
+
+		Assert.assertEquals("a-8080", loader.getService(new File(applicationDir, "a"), properties)
+				.getService().getName());
+		// the recipe passes an equal map that is not the same instance.
+		Assert.assertEquals("b-8080", loader.getService(new File(applicationDir, "b"),
+				new HashMap<String, Object>(properties)).getService().getName());
+		Assert.assertEquals(1, loader.getReads("b"));
+	}
+
+	@Test
+	public void testChangedPropertiesReadServiceAgain() throws Exception {
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("port", 8080);
+		loader.getService(new File(applicationDir, "a"), properties);
+
+		// changing the map passed to the first service block is not seen by the services read ahead.
+		properties.put("port", 9090);
+		Assert.assertEquals("b-9090", loader.getService(new File(applicationDir, "b"), properties)
+				.getService().getName());
+	}
+
+	@Test
+	public void testOnlyServiceBlockNamesAreFound() throws Exception {
+		FileUtils.writeStringToFile(applicationFile, "// service { name = \"commented\" }\n"
+				+ "def suffix = \"1\"\n"
+				+ "def unused = \"c\"\n"
+				+ "application {\n"
+				+ "\tname = \"app\"\n"
+				+ "\tservice {\n\t\tname = \"a\"\n\t}\n"
+				+ "\tservice {\n\t\tname 'b'\n\t\ticon = \"icon.png\"\n\t}\n"
+				+ "\tservice {\n\t\tname = \"d${suffix}\"\n\t}\n"
+				+ "}");
+
+		final Set<String> names = ApplicationServiceLoader.findServiceNames(applicationFile);
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")), names);
+	}
+
+	@Test
+	public void testConcurrentScriptsPrintToTheirOwnScript() throws Exception {
+		final TestScript first = new TestScript();
+		final TestScript second = new TestScript();
+		final CountDownLatch bound = new CountDownLatch(2);
+		final AtomicReference<BaseDslScript> secondTarget = new AtomicReference<BaseDslScript>();
+
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				BaseDslScript.bindPrintTarget(second);
+				bound.countDown();
+				try {
+					bound.await(10, TimeUnit.SECONDS);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				secondTarget.set(BaseDslScript.getPrintTarget());
+				BaseDslScript.unbindPrintTarget();
+			}
+		});
+		thread.start();
+		BaseDslScript.bindPrintTarget(first);
+		bound.countDown();
+		try {
+			Assert.assertTrue(bound.await(10, TimeUnit.SECONDS));
+			Assert.assertSame(first, BaseDslScript.getPrintTarget());
+		} finally {
+			BaseDslScript.unbindPrintTarget();
+		}
+		thread.join(TimeUnit.SECONDS.toMillis(10));
+		Assert.assertSame(second, secondTarget.get());
+	}
+
+	/**
+	 * Names each service after its directory and the "port" application property, and counts the reads.
+	 */
+	private static class CountingServiceLoader extends ApplicationServiceLoader {
+
+		private final Map<String, AtomicInteger> reads = new ConcurrentHashMap<String, AtomicInteger>();
+
+		CountingServiceLoader(final File applicationDir, final File applicationFile) {
+			super(applicationDir, applicationFile, 2);
+		}
+
+		@Override
+		protected DSLServiceCompilationResult readService(final File serviceDir,
+				final Map<String, Object> applicationProperties) {
+			final String name = serviceDir.getName();
+			synchronized (reads) {
+				if (!reads.containsKey(name)) {
+					reads.put(name, new AtomicInteger());
+				}
+			}
+			reads.get(name).incrementAndGet();
+			final Service service = new Service();
+			service.setName(name + "-" + applicationProperties.get("port"));
+			return new DSLServiceCompilationResult(service, null, null);
+		}
+
+		int getReads(final String name) {
+			final AtomicInteger count = reads.get(name);
+			return count == null ? 0 : count.get();
+		}
+	}
+
+	/**
+	 * A script that does nothing.
+	 */
+	private static class TestScript extends BaseDslScript {
+
+		@Override
+		public Object run() {
+			return null;
+		}
+	}
+}
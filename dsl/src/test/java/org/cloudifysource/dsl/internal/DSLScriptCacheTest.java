@@ -0,0 +1,154 @@
+package org.cloudifysource.dsl.internal;
+
+import groovy.lang.GroovyClassLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.domain.Service;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DSLScriptCache}.
+ *
+ *
+ */
+public class DSLScriptCacheTest {
+
+	private static final String SERVICE_DIR = "testResources/simple";
+
+	@Test
+	public void testCompiledScriptIsReused() throws Exception {
+		final DSLScriptCache cache = new DSLScriptCache(DSLScriptCache.DEFAULT_MAX_SIZE);
+
+		final Service first = readService(cache);
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+
+		final Service second = readService(cache);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.size());
+
+		// the script body runs again, so each read returns its own service object.
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(first.getName(), second.getName());
+		Assert.assertEquals(first.getNumInstances(), second.getNumInstances());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedScriptIsEvicted() {
+		final DSLScriptCache cache = new DSLScriptCache(2);
+		final DSLScriptCache.CompiledScript script = new DSLScriptCache.CompiledScript("script",
+				new HashMap<String, byte[]>());
+
+		cache.put("a", script);
+		cache.put("b", script);
+		Assert.assertNotNull(cache.get("a"));
+		cache.put("c", script);
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.getEvictions());
+		Assert.assertNotNull(cache.get("a"));
+		Assert.assertNull(cache.get("b"));
+	}
+
+	@Test
+	public void testKeyDependsOnContentAndCompileDependencies() throws Exception {
+		final File first = copyRecipe();
+		final File second = copyRecipe();
+		try {
+			final String key = DSLScriptCache.createKey("service {}", first);
+			Assert.assertFalse(key.equals(DSLScriptCache.createKey("service { name \"x\" }", first)));
+			// the location of the recipe is not part of the key.
+			Assert.assertEquals(key, DSLScriptCache.createKey("service {}", second));
+
+			// files the compilation does not depend on are not read.
+			FileUtils.writeStringToFile(new File(second, "installer.zip"), "installer");
+			FileUtils.writeStringToFile(new File(new File(second, "usmlib"), "readme.txt"), "readme");
+			Assert.assertEquals(key, DSLScriptCache.createKey("service {}", second));
+
+			FileUtils.writeStringToFile(new File(new File(second, "usmlib"), "helper.jar"), "jar");
+			Assert.assertFalse(key.equals(DSLScriptCache.createKey("service {}", second)));
+		} finally {
+			FileUtils.deleteQuietly(first);
+			FileUtils.deleteQuietly(second);
+		}
+	}
+
+	@Test
+	public void testRecipeIsCompiledOnceForAllDirectories() throws Exception {
+		final File first = copyRecipe();
+		final File second = copyRecipe();
+		try {
+			final DSLScriptCache cache = new DSLScriptCache(DSLScriptCache.DEFAULT_MAX_SIZE);
+			readService(cache, first);
+			readService(cache, second);
+			Assert.assertEquals(1, cache.getMisses());
+			Assert.assertEquals(1, cache.getHits());
+
+			// a changed groovy file next to the recipe is compiled again.
+			FileUtils.writeStringToFile(new File(second, "Helper.groovy"), "class Helper {}");
+			readService(cache, second);
+			Assert.assertEquals(2, cache.getMisses());
+
+			// a changed resource is not.
+			FileUtils.writeStringToFile(new File(new File(second, "resources"), "helper.properties"), "a=1");
+			readService(cache, second);
+			Assert.assertEquals(2, cache.getMisses());
+		} finally {
+			FileUtils.deleteQuietly(first);
+			FileUtils.deleteQuietly(second);
+		}
+	}
+
+	@Test
+	public void testEachDirectoryHasItsOwnClassLoader() throws Exception {
+		final File first = copyRecipe();
+		final File second = copyRecipe();
+		try {
+			final DSLScriptCache.CompiledScript script = new DSLScriptCache.CompiledScript("script",
+					new HashMap<String, byte[]>());
+			final List<String> firstClasspath = Arrays.asList(first.getAbsolutePath());
+			final GroovyClassLoader classLoader = script.getClassLoader(firstClasspath, new CompilerConfiguration());
+			Assert.assertSame(classLoader, script.getClassLoader(firstClasspath, new CompilerConfiguration()));
+			Assert.assertNotSame(classLoader, script.getClassLoader(Arrays.asList(second.getAbsolutePath()),
+					new CompilerConfiguration()));
+
+			final DSLScriptCache cache = new DSLScriptCache(DSLScriptCache.DEFAULT_MAX_SIZE);
+			cache.put("key", script);
+			// the class loader of a deleted directory is released, the compiled classes are kept.
+			FileUtils.deleteDirectory(first);
+			Assert.assertSame(script, cache.get("key"));
+			Assert.assertEquals(1, script.getClassLoaderCount());
+		} finally {
+			FileUtils.deleteQuietly(first);
+			FileUtils.deleteQuietly(second);
+		}
+	}
+
+	private File copyRecipe() throws IOException {
+		final File dir = File.createTempFile("dslScriptCacheTest", "");
+		FileUtils.forceDelete(dir);
+		FileUtils.copyDirectory(new File(SERVICE_DIR), dir);
+		return dir;
+	}
+
+	private Service readService(final DSLScriptCache cache) throws DSLException {
+		return readService(cache, new File(SERVICE_DIR));
+	}
+
+	private Service readService(final DSLScriptCache cache, final File serviceDir) throws DSLException {
+		final DSLReader dslReader = new DSLReader();
+		dslReader.setWorkDir(serviceDir);
+		dslReader.setDslFileNameSuffix(DSLUtils.SERVICE_DSL_FILE_NAME_SUFFIX);
+		dslReader.setRunningInGSC(true);
+		dslReader.setScriptCache(cache);
+		return dslReader.readDslEntity(Service.class);
+	}
+}
@@ -15,11 +15,23 @@ package org.cloudifysource.esc.byon;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.apache.commons.lang.StringUtils;
@@ -27,6 +39,8 @@ import org.apache.commons.lang.StringUtils;
 import org.cloudifysource.domain.cloud.RemoteExecutionModes;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.utils.IPUtils;
+import org.cloudifysource.esc.byon.ByonNodePool.PooledNode;
+import org.cloudifysource.esc.byon.ByonNodePool.State;
 import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
 import org.cloudifysource.esc.driver.provisioning.CustomNode;
 import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
@@ -38,20 +52,49 @@ import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
  *
  *        Implements a cloud-simulator, using private machines as a pool of nodes on which the application is deployed.
  *        The list of available nodes and matching credentials are configured through the cloud Groovy file.
+ *
+ *        The nodes of each template are kept in a {@link ByonNodePool} with its own lock, and no connection to a node
+ *        is made while a lock is held. A background prober checks the free and invalid nodes periodically, so a node
+ *        is usually allocated without waiting for a connection check.
  */
 public class ByonDeployer {
 
-	private static final String NODES_LIST_FREE = "FREE";
-	private static final String NODES_LIST_ALLOCATED = "ALLOCATED";
-	private static final String NODES_LIST_INVALID = "INVALID";
-	private static final String NODES_LIST_TERMINATED = "TERMINATED";
-	
+	/**
+	 * System property for the interval between background checks of the nodes, in milliseconds.
+	 */
+	public static final String PROBE_INTERVAL_PROPERTY_NAME = "org.cloudifysource.esc.byon.probe-interval";
+
+	/**
+	 * Default interval between background checks of the nodes, in milliseconds.
+	 */
+	public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 60000;
+
+	/**
+	 * System property for the maximum number of nodes checked concurrently.
+	 */
+	public static final String PROBE_THREADS_PROPERTY_NAME = "org.cloudifysource.esc.byon.probe-threads";
+
+	/**
+	 * Default maximum number of nodes checked concurrently.
+	 */
+	public static final int DEFAULT_PROBE_THREADS = 10;
+
+	private static final long PROBE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+	// free nodes that were not validated recently are checked one by one, a host range may hold thousands of them.
+	private static final int MAX_FREE_NODES_CHECKED_PER_ALLOCATION = 5;
 
 	protected static final java.util.logging.Logger logger = java.util.logging.Logger
 			.getLogger(ByonDeployer.class.getName());
 
-	private final Map<String, Map<String, List<CustomNode>>> nodesListsByTemplates =
-			new Hashtable<String, Map<String, List<CustomNode>>>();
+	private final Map<String, ByonNodePool> poolsByTemplate = new ConcurrentHashMap<String, ByonNodePool>();
+
+	private final long probeIntervalMillis = Long.getLong(PROBE_INTERVAL_PROPERTY_NAME, DEFAULT_PROBE_INTERVAL_MILLIS);
+	private final int probeThreads = Integer.getInteger(PROBE_THREADS_PROPERTY_NAME, DEFAULT_PROBE_THREADS);
+
+	private final Object proberMutex = new Object();
+	private ExecutorService probeExecutor;
+	private ScheduledExecutorService prober;
 
 	/**
 	 * Constructor.
@@ -61,7 +104,7 @@ public class ByonDeployer {
 	
 
 	/**
-	 * Adds a list of nodes related to a specific template.
+	 * Adds a list of nodes related to a specific template. The nodes are checked concurrently.
 	 *
 	 * @param templateName
 	 *            The name of the template this nodes-list belongs to
@@ -75,34 +118,43 @@ public class ByonDeployer {
 	public synchronized void addNodesList(final String templateName,
 			final ComputeTemplate template,
 			final List<Map<String, String>> nodesList) throws Exception {
-		final List<CustomNode> resolvedNodes = new ArrayList<CustomNode>();
-		final List<CustomNode> unresolvedNodes = new ArrayList<CustomNode>();
 
-		// parse the given nodes list
-		List<CustomNode> parsedNodes = ByonUtils.parseCloudNodes(nodesList);
-		parsedNodes = removeDuplicates(parsedNodes);
+		// parse the given nodes list, the nodes of host ranges are created when used
+		final List<CustomNode> listedNodes = new ArrayList<CustomNode>();
+		final List<ByonNodeRange> ranges = new ArrayList<ByonNodeRange>();
+		ByonUtils.parseCloudNodes(nodesList, listedNodes, ranges);
+		final List<CustomNode> parsedNodes = new ArrayList<CustomNode>(new LinkedHashSet<CustomNode>(listedNodes));
+		final boolean winrm = template.getRemoteExecution() == RemoteExecutionModes.WINRM;
 
 		// the infrastructure is based on machine IPs, they need to be unique.
 		// we set the resolved IP address on each node for an easy machine
 		// comparison from this point on
-		for (CustomNode node : parsedNodes) {
-			try {
-                node.resolve();
-				if (template.getRemoteExecution() == RemoteExecutionModes.WINRM) {
-					node.setLoginPort(RemoteExecutionModes.WINRM.getDefaultPort());
+		final List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>(parsedNodes.size());
+		for (final CustomNode node : parsedNodes) {
+			checks.add(new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() {
+					try {
+						if (winrm) {
+							node.setLoginPort(RemoteExecutionModes.WINRM.getDefaultPort());
+						}
+						node.resolve();
+						IPUtils.validateConnection(node.getPrivateIP(), node.getLoginPort());
+						return Boolean.TRUE;
+					} catch (final Exception ex) {
+						// this node is not reachable - add it to the invalid nodes pool
+						logger.log(Level.WARNING, "Failed to resolve node: " + node.toShortString() + ", exception: "
+								+ ex.getMessage(), ex);
+						return Boolean.FALSE;
+					}
 				}
-				IPUtils.validateConnection(node.getPrivateIP(), node.getLoginPort());
-				resolvedNodes.add(node);
-			} catch (final Exception ex) {
-				// this node is not reachable - add it to the invalid nodes pool
-				logger.log(Level.WARNING, "Failed to resolve node: " + node.toShortString() + ", exception: " 
-				+ ex.getMessage(), ex);
-				unresolvedNodes.add(node);
-			}
+			});
 		}
+		final List<Future<Boolean>> results = getProbeExecutor().invokeAll(checks);
 
 		// avoid duplicate machines in different templates (compare by IP)
-		final Set<String> duplicateNodes = getDuplicateIPs(getAllNodes(), parsedNodes);
+		final Set<String> duplicateNodes = getDuplicateIPs(parsedNodes, ranges);
 		if (duplicateNodes.size() > 0) {
 			throw new CloudProvisioningException(
 					"Failed to add nodes for template \""
@@ -112,7 +164,16 @@ public class ByonDeployer {
 							+ Arrays.toString(duplicateNodes.toArray()));
 		}
 
-		setInitialPoolsForTemplate(templateName, resolvedNodes, unresolvedNodes);
+		final ByonNodePool pool =
+				new ByonNodePool(templateName, winrm ? RemoteExecutionModes.WINRM.getDefaultPort() : -1);
+		for (int i = 0; i < parsedNodes.size(); i++) {
+			pool.add(parsedNodes.get(i), getCheckResult(results.get(i)));
+		}
+		for (final ByonNodeRange range : ranges) {
+			pool.addRange(range);
+		}
+		logger.info("Setting initial pools for template: " + templateName + "." + pool.describe());
+		poolsByTemplate.put(templateName, pool);
 	}
 
     /**
@@ -120,6 +181,9 @@ public class ByonDeployer {
 	 * free nodes, unless this list is exhausted. If all there are no free nodes available, the invalid nodes are
 	 * checked for SSH connection, and if a connection can be established - the node is used.
 	 *
+	 * A free node that was checked by the background prober recently is allocated without connecting to it. Otherwise
+	 * it is checked, and if the check fails it is moved to the invalid pool and the next free node is tried.
+	 *
 	 * @param templateName
 	 *            The name of the nodes-list' template this server belongs to
 	 * @param serverName
@@ -129,7 +193,7 @@ public class ByonDeployer {
 	 *             Indicated a new machine could not be allocated, either because the name is empty or because the nodes
 	 *             pool is exhausted
 	 */
-	public synchronized CustomNode createServer(final String templateName,
+	public CustomNode createServer(final String templateName,
 			final String serverName) throws CloudProvisioningException {
 
 		if (org.apache.commons.lang.StringUtils.isBlank(serverName)) {
@@ -137,74 +201,38 @@ public class ByonDeployer {
 					"Failed to create new cloud node, server name is missing");
 		}
 
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to create new cloud node. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-		final List<CustomNode> invalidNodesPool = templateLists
-				.get(NODES_LIST_INVALID);
-
-		if (freeNodesPool.isEmpty() && invalidNodesPool.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to create a new cloud node for template \""
-							+ templateName
-							+ "\", all available nodes are currently used."
-							+ " Free nodes: " + getNodesListForPrint(freeNodesPool)
-							+ ", Invalid nodes: " + getNodesListForPrint(invalidNodesPool)
-							+ ", Allocated nodes: " + getNodesListForPrint(allocatedNodesPool));
-		}
+		final ByonNodePool pool = getPool(templateName, "Failed to create new cloud node.");
+		ensureProberStarted();
 
 		CustomNode node = null;
-		if (!freeNodesPool.isEmpty()) {
-			node = freeNodesPool.iterator().next();
-			// if this node is indeed not allocated, test the connectivity to it.
-			// if we can't connect to it - move it to the invalid pool,
-			// otherwise - allocate it.
-			if (!allocatedNodesPool.contains(node)) {
-				try {
-                    node.resolve();
-					IPUtils.validateConnection(node.getPrivateIP(),
-							node.getLoginPort());
-					allocatedNodesPool.add(node);
-					freeNodesPool.remove(node);
-				} catch (final Exception e) {
-					// catch any exception - to prevent a machine leak. Add the
-					// machine to the invalids pool
-					logger.log(
-							Level.INFO,
-							"Failed to create server on " + node.getPrivateIP()
-									+ ", connection failed on port "
-									+ node.getLoginPort(), e);
-					try {
-						invalidateServer(templateName, node);
-					} catch (final CloudProvisioningException ie) {
-						logger.log(Level.INFO,
-								"Failed to mark machine " + node.getPrivateIP()
-										+ " as Invalid.", ie);
-					}
-					throw new CloudProvisioningException(e);
-				}
+		int checkedNodes = 0;
+		PooledNode pooledNode = pool.allocateFree();
+		while (node == null && pooledNode != null) {
+			if (System.currentTimeMillis() - pooledNode.getLastValidationTime() < probeIntervalMillis) {
+				node = pooledNode.getNode();
+			} else if (checkedNodes == MAX_FREE_NODES_CHECKED_PER_ALLOCATION) {
+				pool.release(pooledNode.getNode());
+				throw new CloudProvisioningException("Failed to create a new cloud node for template \""
+						+ templateName + "\", " + checkedNodes + " free nodes could not be reached."
+						+ pool.describe());
+			} else if (isReachable(pool, pooledNode)) {
+				node = pooledNode.getNode();
+			} else {
+				checkedNodes++;
+				// catch any exception - to prevent a machine leak. Add the
+				// machine to the invalids pool
+				logger.log(Level.INFO, "Failed to create server on " + pooledNode.getNode().getPrivateIP()
+						+ ", connection failed on port " + pooledNode.getNode().getLoginPort());
+				invalidateServer(templateName, pooledNode.getNode());
+				pooledNode = pool.allocateFree();
 			}
-		} else {
-			for (CustomNode currentNode : invalidNodesPool) {
-				try {
-                    currentNode.resolve();
-					IPUtils.validateConnection(currentNode.getPrivateIP(), currentNode.getLoginPort());
-					if (!allocatedNodesPool.contains(currentNode)) {
-						allocatedNodesPool.add(currentNode);
-					}
-					invalidNodesPool.remove(currentNode);
-					node = currentNode;
+		}
+
+		if (node == null) {
+			for (final PooledNode currentNode : pool.getPooledNodes(State.INVALID)) {
+				if (isReachable(pool, currentNode) && pool.allocateInvalid(currentNode)) {
+					node = currentNode.getNode();
 					break;
-				} catch (final Exception ex) {
-					// ignore and continue
 				}
 			}
 		}
@@ -214,9 +242,7 @@ public class ByonDeployer {
 					"Failed to create a new cloud node for template \""
 							+ templateName
 							+ "\", all available nodes are currently used."
-							+ " Free nodes: " + getNodesListForPrint(freeNodesPool)
-							+ ", Invalid nodes: " + getNodesListForPrint(invalidNodesPool)
-							+ ", Allocated nodes: " + getNodesListForPrint(allocatedNodesPool));
+							+ pool.describe());
 		}
 
 		node.setNodeName(serverName);
@@ -235,34 +261,16 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the IPs could not be marked as allocated with the specified template
 	 */
-	public synchronized void setAllocated(final String templateName,
+	public void setAllocated(final String templateName,
 			final Set<String> ipAddresses) throws CloudProvisioningException {
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to set allocated servers. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists.get(NODES_LIST_ALLOCATED);
+		final ByonNodePool pool = getPool(templateName, "Failed to set allocated servers.");
 
 		for (final String ipAddress : ipAddresses) {
 			logger.log(Level.INFO, "Looking for " + ipAddress + " in the pool of \"free\" machines");
-			for (final CustomNode node : freeNodesPool) {
-				if (StringUtils.isNotBlank(node.getPrivateIP())) {
-					if (IPUtils.isSameIpAddress(node.getPrivateIP(), ipAddress)) {
-						freeNodesPool.remove(node);
-						if (!allocatedNodesPool.contains(node)) {
-							allocatedNodesPool.add(node);
-						}
-						logger.log(Level.INFO, "Marking " + node.getPrivateIP() + " (" + ipAddress + ")"
-								+ " as \"allocated\"");
-						break;
-					}
-				} else {
-					logger.log(Level.INFO, "Host " + node.getPrivateIP() + " is not resolved to an IP address");
-				}
+			final CustomNode node = pool.allocateByIp(ipAddress);
+			if (node != null) {
+				logger.log(Level.INFO, "Marking " + node.getPrivateIP() + " (" + ipAddress + ")"
+						+ " as \"allocated\"");
 			}
 		}
 	}
@@ -277,29 +285,16 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the server could not be shutdown with the specified template
 	 */
-	public synchronized void shutdownServer(final String templateName,
+	public void shutdownServer(final String templateName,
 			final CustomNode serverName) throws CloudProvisioningException {
 		if (serverName == null) {
 			return;
 		}
 
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException("Failed to shutdown server \""
-					+ serverName + "\". \"" + templateName
-					+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
+		final ByonNodePool pool = getPool(templateName, "Failed to shutdown server \"" + serverName + "\".");
 
 		((CustomNodeImpl) serverName).setGroup(null);
-		allocatedNodesPool.remove(serverName);
-		if (!freeNodesPool.contains(serverName)) {
-			freeNodesPool.add(serverName);
-		}
+		pool.release(serverName);
 	}
 
 	/**
@@ -370,16 +365,7 @@ public class ByonDeployer {
 	 */
 	public CustomNode getServerByID(final String templateName, final String id)
 			throws CloudProvisioningException {
-		CustomNode selectedNode = null;
-
-		for (final CustomNode node : getAllNodesByTemplateName(templateName)) {
-			if (node.getId().equalsIgnoreCase(id)) {
-				selectedNode = node;
-				break;
-			}
-		}
-
-		return selectedNode;
+		return getPool(templateName, "Failed to get servers list.").getById(id);
 	}
 
 	/**
@@ -395,16 +381,7 @@ public class ByonDeployer {
 	 */
 	public CustomNode getServerByIP(final String templateName,
 			final String ipAddress) throws CloudProvisioningException {
-		CustomNode selectedNode = null;
-
-		for (final CustomNode node : getAllNodesByTemplateName(templateName)) {
-			if (IPUtils.isSameIpAddress(node.getPrivateIP(), ipAddress)) {
-				selectedNode = node;
-				break;
-			}
-		}
-
-		return selectedNode;
+		return getPool(templateName, "Failed to get servers list.").getByIp(ipAddress);
 	}
 
 	/**
@@ -418,27 +395,7 @@ public class ByonDeployer {
 	 */
 	public Set<CustomNode> getAllNodesByTemplateName(final String templateName)
 			throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-		final List<CustomNode> invalidNodesPool = templateLists
-				.get(NODES_LIST_INVALID);
-
-		allNodes.addAll(freeNodesPool);
-		allNodes.addAll(allocatedNodesPool);
-		allNodes.addAll(invalidNodesPool);
-
-		return allNodes;
+		return new HashSet<CustomNode>(getPool(templateName, "Failed to get servers list.").getAllNodes());
 	}
 
 	/**
@@ -452,19 +409,7 @@ public class ByonDeployer {
 	 */
 	public Set<CustomNode> getFreeNodesByTemplateName(final String templateName)
 			throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-
-		allNodes.addAll(templateLists.get(NODES_LIST_FREE));
-
-		return allNodes;
+		return new HashSet<CustomNode>(getPool(templateName, "Failed to get servers list.").getNodes(State.FREE));
 	}
 
 	/**
@@ -478,19 +423,7 @@ public class ByonDeployer {
 	 */
 	public Set<CustomNode> getAllocatedNodesByTemplateName(
 			final String templateName) throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-
-		allNodes.addAll(templateLists.get(NODES_LIST_ALLOCATED));
-
-		return allNodes;
+		return new HashSet<CustomNode>(getPool(templateName, "Failed to get servers list.").getNodes(State.ALLOCATED));
 	}
 
 	/**
@@ -504,19 +437,7 @@ public class ByonDeployer {
 	 */
 	public Set<CustomNode> getInvalidNodesByTemplateName(
 			final String templateName) throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-
-		allNodes.addAll(templateLists.get(NODES_LIST_INVALID));
-
-		return allNodes;
+		return new HashSet<CustomNode>(getPool(templateName, "Failed to get servers list.").getNodes(State.INVALID));
 	}
 
 	/**
@@ -530,161 +451,229 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the server could not be marked as Invalid for the specified template
 	 */
-	public synchronized void invalidateServer(final String templateName,
+	public void invalidateServer(final String templateName,
 			final CustomNode serverName) throws CloudProvisioningException {
 		logger.warning("Invalidaing node: " + serverName + " from template: " + templateName);
 		// attempting to remove the invalid node from the active lists so it
 		// will not be used anymore, just to
 		// be sure.
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			// todo illegal argument exception
-			throw new CloudProvisioningException(
-					"Failed to invalidate server. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-		final List<CustomNode> invalidNodesPool = templateLists
-				.get(NODES_LIST_INVALID);
-
-		freeNodesPool.remove(serverName);
-		allocatedNodesPool.remove(serverName);
-		if (!invalidNodesPool.contains(serverName)) {
-			invalidNodesPool.add(serverName);
-		}
+		getPool(templateName, "Failed to invalidate server.").invalidate(serverName);
 	}
 
 	/**
-	 * closes the deployer, currently not doing anything.
+	 * Stops the background prober. The deployer may be shared, so the prober is started again if the deployer is used
+	 * after it was closed.
 	 */
 	public void close() {
-		// Do nothing
+		synchronized (proberMutex) {
+			if (prober != null) {
+				prober.shutdownNow();
+				prober = null;
+			}
+			if (probeExecutor != null) {
+				probeExecutor.shutdownNow();
+				probeExecutor = null;
+			}
+		}
 	}
 
-	private List<CustomNode> getAllNodes() throws CloudProvisioningException {
-		final List<CustomNode> allNodes = new ArrayList<CustomNode>();
+	private ByonNodePool getPool(final String templateName, final String errorMessage)
+			throws CloudProvisioningException {
+		final ByonNodePool pool = templateName == null ? null : poolsByTemplate.get(templateName);
+		if (pool == null) {
+			throw new CloudProvisioningException(errorMessage + " \"" + templateName
+					+ "\" is not a known template.");
+		}
+		return pool;
+	}
 
-		for (final String templateName : nodesListsByTemplates.keySet()) {
-			final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-					.get(templateName);
-			if (templateLists == null || templateLists.isEmpty()) {
-				throw new CloudProvisioningException(
-						"Failed to get servers list. \"" + templateName
-								+ "\" is not a known template.");
+	/**
+	 * Connects to a node, outside of the pool lock.
+	 *
+	 * @return true if a connection was made.
+	 */
+	private boolean isReachable(final ByonNodePool pool, final PooledNode pooledNode) {
+		final CustomNode node = pooledNode.getNode();
+		final boolean wasResolved = StringUtils.isNotBlank(node.getPrivateIP());
+		try {
+			node.resolve();
+			if (!wasResolved) {
+				pool.reindex(pooledNode);
 			}
-			final List<CustomNode> freeNodesPool = templateLists
-					.get(NODES_LIST_FREE);
-			final List<CustomNode> allocatedNodesPool = templateLists
-					.get(NODES_LIST_ALLOCATED);
-			final List<CustomNode> invalidNodesPool = templateLists
-					.get(NODES_LIST_INVALID);
-
-			allNodes.addAll(freeNodesPool);
-			allNodes.addAll(allocatedNodesPool);
-			allNodes.addAll(invalidNodesPool);
+			IPUtils.validateConnection(node.getPrivateIP(), node.getLoginPort());
+			pooledNode.setLastValidationTime(System.currentTimeMillis());
+			return true;
+		} catch (final Exception e) {
+			logger.log(Level.FINE, "Failed to connect to node " + node.toShortString() + ": " + e.getMessage(), e);
+			return false;
 		}
+	}
 
-		return allNodes;
+	private static boolean getCheckResult(final Future<Boolean> result) throws InterruptedException {
+		try {
+			return result.get();
+		} catch (final ExecutionException e) {
+			return false;
+		}
 	}
 
+	private ExecutorService getProbeExecutor() {
+		synchronized (proberMutex) {
+			if (probeExecutor == null) {
+				final ThreadPoolExecutor executor = new ThreadPoolExecutor(probeThreads, probeThreads,
+						PROBE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+						new ThreadFactory() {
+
+							private final AtomicInteger counter = new AtomicInteger();
+
+							@Override
+							public Thread newThread(final Runnable r) {
+								final Thread thread = new Thread(r, "ByonNodeProbe-" + counter.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				executor.allowCoreThreadTimeOut(true);
+				probeExecutor = executor;
+			}
+			return probeExecutor;
+		}
+	}
 
-	/**
-	 * Sets the initial nodes pools (free nodes, allocated, invalid and terminated) for each template. The initial
-	 * allocated-nodes pool is always empty. The terminated nodes pool is currently not supported and remains empty all
-	 * along.
-	 *
-	 * @param templateName
-	 *            The name of the template
-	 * @param resolvedNodes
-	 *            The resolved nodes (will be set as free nodes ready for use)
-	 * @param unresolvedNodes
-	 *            The unresolved nodes (will be set as invalid as they aren't reachable now)
-	 */
-	private void setInitialPoolsForTemplate(final String templateName,
-			final List<CustomNode> resolvedNodes,
-			final List<CustomNode> unresolvedNodes) {
-		// todo use hashmap instead
-		// use pojo instead of a complex map
-		final Map<String, List<CustomNode>> templateLists = new Hashtable<String, List<CustomNode>>();
-		final List<CustomNode> freeNodesPool = new ArrayList<CustomNode>();
-		final List<CustomNode> invalidNodesPool = new ArrayList<CustomNode>();
-
-		freeNodesPool.addAll(aggregateWithoutDuplicates(freeNodesPool,
-				resolvedNodes));
-		invalidNodesPool.addAll(aggregateWithoutDuplicates(invalidNodesPool,
-				unresolvedNodes));
-		
-		logger.info("Setting initial pools for template: " + templateName + ". "
-				+ "Free nodes: " + getNodesListForPrint(freeNodesPool)
-				+ "Invalid nodes: " + getNodesListForPrint(invalidNodesPool));
+	private void ensureProberStarted() {
+		synchronized (proberMutex) {
+			if (prober != null) {
+				return;
+			}
+			prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
 
-		templateLists.put(NODES_LIST_FREE, freeNodesPool);
-		templateLists.put(NODES_LIST_ALLOCATED, new ArrayList<CustomNode>());
-		templateLists.put(NODES_LIST_INVALID, invalidNodesPool);
-		templateLists.put(NODES_LIST_TERMINATED, new ArrayList<CustomNode>());
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "ByonNodeProber");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			prober.scheduleWithFixedDelay(new Runnable() {
 
-		nodesListsByTemplates.put(templateName, templateLists);
+				@Override
+				public void run() {
+					probeNodes();
+				}
+			}, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+		}
 	}
 
-	private static List<CustomNode> removeDuplicates(
-			final List<CustomNode> customNodesList) {
-		final List<CustomNode> totalList = new ArrayList<CustomNode>();
-		for (final CustomNode node : customNodesList) {
-			if (!totalList.contains(node)) {
-				totalList.add(node);
+	/**
+	 * Checks the free and invalid nodes of all templates, moving the nodes that stopped or started responding between
+	 * the pools.
+	 */
+	private void probeNodes() {
+		final List<Callable<Void>> probes = new ArrayList<Callable<Void>>();
+		for (final ByonNodePool pool : poolsByTemplate.values()) {
+			for (final PooledNode pooledNode : pool.getPooledNodes(State.FREE)) {
+				probes.add(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						if (!isReachable(pool, pooledNode)) {
+							logger.info("Free node " + pooledNode.getNode().toShortString()
+									+ " is not reachable, moving it to the invalid pool of template: "
+									+ pool.getTemplateName());
+							pool.invalidateFree(pooledNode);
+						}
+						return null;
+					}
+				});
 			}
+			for (final PooledNode pooledNode : pool.getPooledNodes(State.INVALID)) {
+				probes.add(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						if (isReachable(pool, pooledNode)) {
+							logger.info("Invalid node " + pooledNode.getNode().toShortString()
+									+ " is reachable, moving it to the free pool of template: "
+									+ pool.getTemplateName());
+							pool.validateInvalid(pooledNode);
+						}
+						return null;
+					}
+				});
+			}
+		}
+		try {
+			getProbeExecutor().invokeAll(probes);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Failed to check the BYON nodes: " + e.getMessage(), e);
 		}
-		return totalList;
 	}
 
-	private static Set<String> getDuplicateIPs(final List<CustomNode> oldNodes,
-			final List<CustomNode> newNodes) {
+	private Set<String> getDuplicateIPs(final List<CustomNode> newNodes, final List<ByonNodeRange> newRanges) {
 		final Set<String> existingIPs = new HashSet<String>();
+		final IPRangeSet existingRanges = new IPRangeSet();
+		for (final ByonNodePool pool : poolsByTemplate.values()) {
+			existingIPs.addAll(pool.getIpKeys());
+			existingRanges.addAll(pool.getRangeAddresses());
+		}
 
+		final Set<String> duplicateIPs = new HashSet<String>();
 		for (final CustomNode newNode : newNodes) {
-			for (final CustomNode oldNode : oldNodes) {
-				if (IPUtils.isSameIpAddress(oldNode.getPrivateIP(), newNode.getPrivateIP())) {
-					existingIPs.add(oldNode.getPrivateIP());
-					break;
-				}
+			final long address = IPRangeSet.parseAddress(newNode.getPrivateIP());
+			if (existingIPs.contains(ByonNodePool.ipKey(newNode.getPrivateIP()))
+					|| address >= 0 && existingRanges.contains(address)) {
+				duplicateIPs.add(newNode.getPrivateIP());
 			}
 		}
 
-		return existingIPs;
-	}
-
-	private static List<CustomNode> aggregateWithoutDuplicates(
-			final List<CustomNode> basicList, final List<CustomNode> newItems) {
-		final List<CustomNode> totalList = new ArrayList<CustomNode>(basicList);
-		for (final CustomNode node : newItems) {
-			if (!totalList.contains(node)) {
-				totalList.add(node);
+		// ranges are compared by their intervals, the addresses of existing nodes are compared one by one.
+		for (final ByonNodeRange range : newRanges) {
+			final IPRangeSet overlap = range.getAddresses().intersection(existingRanges);
+			if (!overlap.isEmpty()) {
+				duplicateIPs.add(overlap.toString());
+			}
+			for (final String ipKey : existingIPs) {
+				final long address = IPRangeSet.parseAddress(ipKey);
+				if (address >= 0 && range.getAddresses().contains(address)) {
+					duplicateIPs.add(ipKey);
+				}
 			}
 		}
-		return totalList;
+		return duplicateIPs;
+	}
+
+	/**
+	 * Describes the free, invalid and allocated nodes of a template. The free addresses of host ranges that were not
+	 * used yet are listed as intervals.
+	 *
+	 * @param templateName
+	 *            The name of the nodes-list' template to use
+	 * @return The description
+	 * @throws CloudProvisioningException
+	 *             Indicates the servers list could not be obtained for the given template name
+	 */
+	public String getNodesDescription(final String templateName) throws CloudProvisioningException {
+		return getPool(templateName, "Failed to get servers list.").describe().trim();
 	}
 
 	public List<String> getTemplatesList() {
 		List<String> templatesList = new LinkedList<String>();
-		templatesList.addAll(nodesListsByTemplates.keySet());
+		templatesList.addAll(poolsByTemplate.keySet());
 		return templatesList;
 	}
 
 	public void removeTemplates(List<String> redundantTemplates) throws CloudProvisioningException {
 		for (String templateName : redundantTemplates) {
-			Map<String, List<CustomNode>> nodesMap = nodesListsByTemplates.get(templateName);
-			List<CustomNode> allocatedNodesList = nodesMap.get(NODES_LIST_ALLOCATED);
-			if (allocatedNodesList != null && !allocatedNodesList.isEmpty()) {
+			ByonNodePool pool = poolsByTemplate.get(templateName);
+			if (pool != null && pool.hasAllocatedNodes()) {
 				String errMsg = "Failed to remove template [" + templateName
-						+ "] from deployer, some nodes are still allocated: " + allocatedNodesList;
+						+ "] from deployer, some nodes are still allocated: " + pool.getNodes(State.ALLOCATED);
 				logger.log(Level.WARNING, errMsg);
 				throw new CloudProvisioningException(errMsg);
 			}
-			nodesListsByTemplates.remove(templateName);
+			poolsByTemplate.remove(templateName);
 		}
 	}
 	
@@ -0,0 +1,459 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.cloudifysource.dsl.utils.IPUtils;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+
+import com.googlecode.ipv6.IPv6Address;
+
+/**
+ * The nodes of a single BYON template, in the free, allocated and invalid pools.
+ *
+ * Each template has its own pool, and its own lock, so allocations of different templates do not wait for each other.
+ * No network operation is made while the lock is held. The pools are hash sets that keep their insertion order, and
+ * the nodes are indexed by IP address and by ID. Nodes are tracked by identity, since the equality of a node depends on
+ * fields that change when it is allocated.
+ *
+ * The nodes of a host range are created when first used: when they are allocated, or looked up by IP address or ID.
+ * Until then, the pool only holds the intervals of the free addresses of the range. Such a node is added as a free
+ * node that was not validated yet.
+ *
+ * @since 2.7.0
+ */
+final class ByonNodePool {
+
+	/**
+	 * The pool a node is in.
+	 */
+	enum State {
+		FREE, ALLOCATED, INVALID
+	}
+
+	/**
+	 * A node, its pool, and the last time a connection to it was made.
+	 */
+	static final class PooledNode {
+
+		private final CustomNode node;
+		private State state;
+		private volatile long lastValidationTime;
+
+		private PooledNode(final CustomNode node, final State state, final long lastValidationTime) {
+			this.node = node;
+			this.state = state;
+			this.lastValidationTime = lastValidationTime;
+		}
+
+		CustomNode getNode() {
+			return node;
+		}
+
+		long getLastValidationTime() {
+			return lastValidationTime;
+		}
+
+		void setLastValidationTime(final long lastValidationTime) {
+			this.lastValidationTime = lastValidationTime;
+		}
+	}
+
+	private final String templateName;
+	// the login port of the nodes created for range addresses, or -1 for the default port.
+	private final int rangeLoginPort;
+
+	private final Map<CustomNode, PooledNode> nodes = new IdentityHashMap<CustomNode, PooledNode>();
+	private final Map<String, PooledNode> nodesByIp = new HashMap<String, PooledNode>();
+	private final Map<String, PooledNode> nodesById = new HashMap<String, PooledNode>();
+
+	private final Set<PooledNode> freeNodes = new LinkedHashSet<PooledNode>();
+	private final Set<PooledNode> allocatedNodes = new LinkedHashSet<PooledNode>();
+	private final Set<PooledNode> invalidNodes = new LinkedHashSet<PooledNode>();
+
+	// the addresses of each range that do not have a node yet, these are free.
+	private final Map<ByonNodeRange, IPRangeSet> unusedAddresses = new LinkedHashMap<ByonNodeRange, IPRangeSet>();
+
+	ByonNodePool(final String templateName, final int rangeLoginPort) {
+		this.templateName = templateName;
+		this.rangeLoginPort = rangeLoginPort;
+	}
+
+	String getTemplateName() {
+		return templateName;
+	}
+
+	/**
+	 * Adds a node to the pool.
+	 *
+	 * @param node
+	 *            the node.
+	 * @param valid
+	 *            true to add the node as free, false to add it as invalid.
+	 */
+	synchronized void add(final CustomNode node, final boolean valid) {
+		if (nodes.containsKey(node)) {
+			return;
+		}
+		final PooledNode pooledNode = new PooledNode(node, valid ? State.FREE : State.INVALID,
+				valid ? System.currentTimeMillis() : 0);
+		nodes.put(node, pooledNode);
+		poolOf(pooledNode.state).add(pooledNode);
+		index(pooledNode);
+
+		// a node of a range address was created elsewhere, it replaces the range address.
+		final long address = IPRangeSet.parseAddress(node.getPrivateIP());
+		if (address >= 0) {
+			for (final IPRangeSet addresses : unusedAddresses.values()) {
+				addresses.remove(address, address);
+			}
+		}
+	}
+
+	/**
+	 * Adds the addresses of a range to the pool as free nodes, without creating the nodes. Addresses that are already
+	 * in the pool are skipped.
+	 *
+	 * @param range
+	 *            the range.
+	 */
+	synchronized void addRange(final ByonNodeRange range) {
+		final IPRangeSet addresses = new IPRangeSet(range.getAddresses());
+		for (final IPRangeSet other : unusedAddresses.values()) {
+			addresses.removeAll(other);
+		}
+		for (final PooledNode pooledNode : nodes.values()) {
+			final long address = IPRangeSet.parseAddress(pooledNode.node.getPrivateIP());
+			if (address >= 0) {
+				addresses.remove(address, address);
+			}
+		}
+		unusedAddresses.put(range, addresses);
+	}
+
+	/**
+	 * Moves the first free node to the allocated pool.
+	 *
+	 * @return the node, or null if there are no free nodes.
+	 */
+	synchronized PooledNode allocateFree() {
+		final Iterator<PooledNode> iterator = freeNodes.iterator();
+		PooledNode pooledNode = iterator.hasNext() ? iterator.next() : null;
+		if (pooledNode == null) {
+			for (final Map.Entry<ByonNodeRange, IPRangeSet> entry : unusedAddresses.entrySet()) {
+				if (!entry.getValue().isEmpty()) {
+					pooledNode = createNode(entry.getKey(), entry.getValue().pollFirst());
+					break;
+				}
+			}
+		}
+		if (pooledNode != null) {
+			moveTo(pooledNode, State.ALLOCATED);
+		}
+		return pooledNode;
+	}
+
+	/**
+	 * Moves a node to the allocated pool, if it is still invalid.
+	 *
+	 * @param pooledNode
+	 *            the node.
+	 * @return true if the node was allocated.
+	 */
+	synchronized boolean allocateInvalid(final PooledNode pooledNode) {
+		if (pooledNode.state != State.INVALID) {
+			return false;
+		}
+		moveTo(pooledNode, State.ALLOCATED);
+		return true;
+	}
+
+	/**
+	 * Moves the node with the given IP address from the free pool to the allocated pool.
+	 *
+	 * @param ipAddress
+	 *            the IP address.
+	 * @return the node, or null if no free node has this address.
+	 */
+	synchronized CustomNode allocateByIp(final String ipAddress) {
+		final PooledNode pooledNode = findByIp(ipAddress);
+		if (pooledNode == null || pooledNode.state != State.FREE) {
+			return null;
+		}
+		moveTo(pooledNode, State.ALLOCATED);
+		return pooledNode.node;
+	}
+
+	/**
+	 * Moves a node to the free pool. A node that is not in the pool is added to it.
+	 *
+	 * @param node
+	 *            the node.
+	 */
+	synchronized void release(final CustomNode node) {
+		final PooledNode pooledNode = nodes.get(node);
+		if (pooledNode == null) {
+			add(node, true);
+		} else if (pooledNode.state == State.ALLOCATED) {
+			moveTo(pooledNode, State.FREE);
+		}
+	}
+
+	/**
+	 * Moves a node to the invalid pool. A node that is not in the pool is added to it.
+	 *
+	 * @param node
+	 *            the node.
+	 */
+	synchronized void invalidate(final CustomNode node) {
+		final PooledNode pooledNode = nodes.get(node);
+		if (pooledNode == null) {
+			add(node, false);
+		} else {
+			moveTo(pooledNode, State.INVALID);
+		}
+	}
+
+	/**
+	 * Moves a node from the free pool to the invalid pool, if it is still free.
+	 *
+	 * @param pooledNode
+	 *            the node.
+	 */
+	synchronized void invalidateFree(final PooledNode pooledNode) {
+		if (pooledNode.state == State.FREE) {
+			moveTo(pooledNode, State.INVALID);
+		}
+	}
+
+	/**
+	 * Moves a node from the invalid pool to the free pool, if it is still invalid.
+	 *
+	 * @param pooledNode
+	 *            the node.
+	 */
+	synchronized void validateInvalid(final PooledNode pooledNode) {
+		if (pooledNode.state == State.INVALID) {
+			moveTo(pooledNode, State.FREE);
+		}
+	}
+
+	/**
+	 * Updates the IP address index after a node was resolved.
+	 *
+	 * @param pooledNode
+	 *            the node.
+	 */
+	synchronized void reindex(final PooledNode pooledNode) {
+		index(pooledNode);
+	}
+
+	synchronized CustomNode getByIp(final String ipAddress) {
+		final PooledNode pooledNode = findByIp(ipAddress);
+		return pooledNode == null ? null : pooledNode.node;
+	}
+
+	synchronized CustomNode getById(final String id) {
+		if (id == null) {
+			return null;
+		}
+		PooledNode pooledNode = nodesById.get(id.toLowerCase());
+		if (pooledNode == null) {
+			for (final Map.Entry<ByonNodeRange, IPRangeSet> entry : unusedAddresses.entrySet()) {
+				final long address = entry.getKey().getAddressOfId(id);
+				if (address >= 0 && entry.getValue().contains(address)) {
+					entry.getValue().remove(address, address);
+					pooledNode = createNode(entry.getKey(), address);
+					break;
+				}
+			}
+		}
+		return pooledNode == null ? null : pooledNode.node;
+	}
+
+	/**
+	 * Returns the nodes in a pool. The free nodes of range addresses are created for the returned list, and are not
+	 * added to the pool.
+	 *
+	 * @param state
+	 *            the pool.
+	 * @return the nodes.
+	 */
+	synchronized List<CustomNode> getNodes(final State state) {
+		final Set<PooledNode> pool = poolOf(state);
+		final List<CustomNode> result = new ArrayList<CustomNode>(pool.size());
+		for (final PooledNode pooledNode : pool) {
+			result.add(pooledNode.node);
+		}
+		if (state == State.FREE) {
+			addUnusedNodes(result);
+		}
+		return result;
+	}
+
+	synchronized List<CustomNode> getAllNodes() {
+		final List<CustomNode> result = new ArrayList<CustomNode>(nodes.keySet());
+		addUnusedNodes(result);
+		return result;
+	}
+
+	synchronized List<PooledNode> getPooledNodes(final State state) {
+		return new ArrayList<PooledNode>(poolOf(state));
+	}
+
+	synchronized boolean hasAllocatedNodes() {
+		return !allocatedNodes.isEmpty();
+	}
+
+	/**
+	 * @return the index keys of the IP addresses of the nodes that were created.
+	 */
+	synchronized Set<String> getIpKeys() {
+		return new LinkedHashSet<String>(nodesByIp.keySet());
+	}
+
+	/**
+	 * @return the addresses of the ranges of the pool, including those that have a node.
+	 */
+	synchronized IPRangeSet getRangeAddresses() {
+		final IPRangeSet result = new IPRangeSet();
+		for (final ByonNodeRange range : unusedAddresses.keySet()) {
+			result.addAll(range.getAddresses());
+		}
+		return result;
+	}
+
+	/**
+	 * @return a description of the pools, for error messages.
+	 */
+	synchronized String describe() {
+		final StringBuilder unused = new StringBuilder();
+		for (final IPRangeSet addresses : unusedAddresses.values()) {
+			if (!addresses.isEmpty()) {
+				unused.append(" [").append(addresses).append(']');
+			}
+		}
+		return " Free nodes: " + toShortString(freeNodes) + unused
+				+ ", Invalid nodes: " + toShortString(invalidNodes)
+				+ ", Allocated nodes: " + toShortString(allocatedNodes);
+	}
+
+	/**
+	 * Returns the key of an IP address in the index, so different forms of the same IPv6 address match.
+	 *
+	 * @param ipAddress
+	 *            the IP address.
+	 * @return the key, or null for a blank address.
+	 */
+	static String ipKey(final String ipAddress) {
+		if (StringUtils.isBlank(ipAddress)) {
+			return null;
+		}
+		final String trimmed = ipAddress.trim();
+		if (trimmed.indexOf(':') >= 0 && IPUtils.isIPv6Address(trimmed)) {
+			try {
+				return IPv6Address.fromString(trimmed).toString();
+			} catch (final IllegalArgumentException e) {
+				// an address with an interface part, compare it as is.
+			}
+		}
+		return trimmed.toLowerCase();
+	}
+
+	private PooledNode findByIp(final String ipAddress) {
+		PooledNode pooledNode = nodesByIp.get(ipKey(ipAddress));
+		if (pooledNode == null) {
+			final long address = IPRangeSet.parseAddress(ipAddress);
+			for (final Map.Entry<ByonNodeRange, IPRangeSet> entry : unusedAddresses.entrySet()) {
+				if (address >= 0 && entry.getValue().contains(address)) {
+					entry.getValue().remove(address, address);
+					pooledNode = createNode(entry.getKey(), address);
+					break;
+				}
+			}
+		}
+		return pooledNode;
+	}
+
+	// creates the node of a range address that was removed from the unused addresses, as a free node.
+	private PooledNode createNode(final ByonNodeRange range, final long address) {
+		final CustomNode node = newRangeNode(range, address);
+		final PooledNode pooledNode = new PooledNode(node, State.FREE, 0);
+		nodes.put(node, pooledNode);
+		freeNodes.add(pooledNode);
+		index(pooledNode);
+		return pooledNode;
+	}
+
+	private void addUnusedNodes(final List<CustomNode> result) {
+		for (final Map.Entry<ByonNodeRange, IPRangeSet> entry : unusedAddresses.entrySet()) {
+			for (final Long address : entry.getValue()) {
+				result.add(newRangeNode(entry.getKey(), address));
+			}
+		}
+	}
+
+	private CustomNode newRangeNode(final ByonNodeRange range, final long address) {
+		final CustomNode node = range.createNode(address);
+		if (rangeLoginPort >= 0) {
+			node.setLoginPort(rangeLoginPort);
+		}
+		return node;
+	}
+
+	private void moveTo(final PooledNode pooledNode, final State state) {
+		poolOf(pooledNode.state).remove(pooledNode);
+		pooledNode.state = state;
+		poolOf(state).add(pooledNode);
+	}
+
+	private void index(final PooledNode pooledNode) {
+		final String ipKey = ipKey(pooledNode.node.getPrivateIP());
+		if (ipKey != null && !nodesByIp.containsKey(ipKey)) {
+			nodesByIp.put(ipKey, pooledNode);
+		}
+		final String id = pooledNode.node.getId();
+		if (id != null && !nodesById.containsKey(id.toLowerCase())) {
+			nodesById.put(id.toLowerCase(), pooledNode);
+		}
+	}
+
+	private Set<PooledNode> poolOf(final State state) {
+		switch (state) {
+		case FREE:
+			return freeNodes;
+		case ALLOCATED:
+			return allocatedNodes;
+		default:
+			return invalidNodes;
+		}
+	}
+
+	private static String toShortString(final Set<PooledNode> pool) {
+		final StringBuilder builder = new StringBuilder();
+		for (final PooledNode pooledNode : pool) {
+			builder.append(pooledNode.node.toShortString());
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.cloudifysource.dsl.utils.IPUtils;
+import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
+
+/**
+ * The nodes of a BYON "host-range" entry, e.g. 192.168.9.1-192.168.9.8 or 192.168.9.0/24. A range holds the addresses
+ * as intervals and creates the node of an address on demand, so a large CIDR does not create a node per address.
+ *
+ * The range may list several ranges and CIDRs, separated by commas, and the optional "host-exclude" entry lists
+ * addresses, ranges and CIDRs to leave out. Node IDs are numbered by the position of the address in the listed ranges,
+ * so excluding an address does not change the IDs of the others.
+ *
+ * @since 2.7.0
+ */
+final class ByonNodeRange {
+
+	private static final String PROVIDER_ID = "BYON";
+	private static final String ID_TEMPLATE_PLACEHOLDER = "{0}";
+
+	private final String nodeId;
+	private final String username;
+	private final String credential;
+	private final String keyFile;
+
+	// the ranges as listed, used to number the nodes.
+	private final long[] segmentStarts;
+	private final long[] segmentEnds;
+	private final boolean useIdAsTemplate;
+	private final boolean useIdAsPrefix;
+
+	private final IPRangeSet addresses;
+
+	private ByonNodeRange(final String nodeId, final String username, final String credential,
+			final String keyFile, final long[] segmentStarts, final long[] segmentEnds, final IPRangeSet addresses) {
+		this.nodeId = nodeId;
+		this.username = username;
+		this.credential = credential;
+		this.keyFile = keyFile;
+		this.segmentStarts = segmentStarts;
+		this.segmentEnds = segmentEnds;
+		this.addresses = addresses;
+
+		long count = 0;
+		for (int i = 0; i < segmentStarts.length; i++) {
+			count += segmentEnds[i] - segmentStarts[i] + 1;
+		}
+		final boolean multiple = count > 1;
+		this.useIdAsTemplate = multiple && nodeId.contains(ID_TEMPLATE_PLACEHOLDER);
+		this.useIdAsPrefix = multiple && !useIdAsTemplate;
+	}
+
+	/**
+	 * Parses a range entry.
+	 *
+	 * @param nodeId
+	 *            the node ID, a prefix or a template such as "node{0}".
+	 * @param hostRange
+	 *            comma-separated addresses, ranges and CIDRs.
+	 * @param hostExclude
+	 *            comma-separated addresses, ranges and CIDRs to leave out, may be null.
+	 * @param username
+	 *            the user name.
+	 * @param credential
+	 *            the password.
+	 * @param keyFile
+	 *            the key file.
+	 * @return the range.
+	 * @throws CloudProvisioningException
+	 *             Indicated an invalid IP address or range is used
+	 */
+	static ByonNodeRange parse(final String nodeId, final String hostRange, final String hostExclude,
+			final String username, final String credential, final String keyFile)
+			throws CloudProvisioningException {
+		final String[] parts = hostRange.trim().split(",");
+		final long[] starts = new long[parts.length];
+		final long[] ends = new long[parts.length];
+		final IPRangeSet addresses = new IPRangeSet();
+		for (int i = 0; i < parts.length; i++) {
+			final long[] interval = parseInterval(parts[i].trim());
+			starts[i] = interval[0];
+			ends[i] = interval[1];
+			addresses.add(interval[0], interval[1]);
+		}
+
+		if (StringUtils.isNotBlank(hostExclude)) {
+			for (final String part : hostExclude.trim().split(",")) {
+				final long[] interval = parseInterval(part.trim());
+				addresses.remove(interval[0], interval[1]);
+			}
+		}
+
+		return new ByonNodeRange(nodeId.trim(), username, credential, keyFile, starts, ends, addresses);
+	}
+
+	/**
+	 * @return the addresses of the range, without the excluded ones. Must not be modified.
+	 */
+	IPRangeSet getAddresses() {
+		return addresses;
+	}
+
+	/**
+	 * Creates the node of an address.
+	 *
+	 * @param address
+	 *            an address in the range.
+	 * @return a new node.
+	 */
+	CustomNode createNode(final long address) {
+		final String id = getId(getIndex(address));
+		return new CustomNodeImpl(PROVIDER_ID, id, IPUtils.long2String(address), null, username, credential,
+				keyFile, id);
+	}
+
+	/**
+	 * Creates the nodes of all the addresses.
+	 *
+	 * @return the nodes, ordered by address.
+	 */
+	List<CustomNode> createNodes() {
+		final List<CustomNode> nodes = new ArrayList<CustomNode>();
+		for (final Long address : addresses) {
+			nodes.add(createNode(address));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Finds the address of the node with the given ID, compared regardless of case.
+	 *
+	 * @param id
+	 *            a node ID.
+	 * @return the address, or -1 if no node in the range has this ID.
+	 */
+	long getAddressOfId(final String id) {
+		if (id == null) {
+			return -1;
+		}
+		long index;
+		if (useIdAsTemplate) {
+			final int placeholder = nodeId.indexOf(ID_TEMPLATE_PLACEHOLDER);
+			index = parseIndex(id, placeholder, id.length() - (nodeId.length() - placeholder
+					- ID_TEMPLATE_PLACEHOLDER.length()));
+		} else if (useIdAsPrefix) {
+			index = id.regionMatches(true, 0, nodeId, 0, nodeId.length())
+					? parseIndex(id, nodeId.length(), id.length()) : -1;
+		} else {
+			index = id.equalsIgnoreCase(nodeId) ? 1 : -1;
+		}
+		if (index < 1) {
+			return -1;
+		}
+
+		final long address = getAddress(index);
+		if (address < 0 || !addresses.contains(address) || !getId(index).equalsIgnoreCase(id)) {
+			return -1;
+		}
+		return address;
+	}
+
+	@Override
+	public String toString() {
+		return addresses.toString();
+	}
+
+	private String getId(final long index) {
+		if (useIdAsTemplate) {
+			return MessageFormat.format(nodeId, (int) index);
+		} else if (useIdAsPrefix) {
+			return nodeId + index;
+		} else {
+			return nodeId;
+		}
+	}
+
+	// the position of the address in the listed ranges, starting from 1.
+	private long getIndex(final long address) {
+		long base = 0;
+		for (int i = 0; i < segmentStarts.length; i++) {
+			if (address >= segmentStarts[i] && address <= segmentEnds[i]) {
+				return base + address - segmentStarts[i] + 1;
+			}
+			base += segmentEnds[i] - segmentStarts[i] + 1;
+		}
+		return -1;
+	}
+
+	private long getAddress(final long index) {
+		long base = 0;
+		for (int i = 0; i < segmentStarts.length; i++) {
+			final long length = segmentEnds[i] - segmentStarts[i] + 1;
+			if (index <= base + length) {
+				return segmentStarts[i] + index - base - 1;
+			}
+			base += length;
+		}
+		return -1;
+	}
+
+	// reads the digits of an ID between the given positions, skipping number grouping characters.
+	private static long parseIndex(final String id, final int start, final int end) {
+		if (start < 0 || end <= start || end > id.length()) {
+			return -1;
+		}
+		long index = 0;
+		boolean found = false;
+		for (int i = start; i < end; i++) {
+			final char c = id.charAt(i);
+			if (Character.isDigit(c)) {
+				index = index * 10 + Character.digit(c, 10);
+				found = true;
+				if (index > Integer.MAX_VALUE) {
+					return -1;
+				}
+			}
+		}
+		return found ? index : -1;
+	}
+
+	private static long[] parseInterval(final String text) throws CloudProvisioningException {
+		String start;
+		String end;
+		if (text.contains("/")) {
+			try {
+				final String range = IPUtils.ipCIDR2Range(text);
+				start = range.substring(0, range.indexOf('-'));
+				end = range.substring(range.indexOf('-') + 1);
+			} catch (final Exception e) {
+				throw new CloudProvisioningException("Failed to start cloud machine.", e);
+			}
+		} else if (text.contains("-")) {
+			start = text.substring(0, text.indexOf('-')).trim();
+			end = text.substring(text.indexOf('-') + 1).trim();
+		} else {
+			start = text;
+			end = text;
+		}
+
+		final long startAddress = IPRangeSet.parseAddress(start);
+		if (startAddress < 0) {
+			throw new CloudProvisioningException("Invalid IP address: " + start);
+		}
+		final long endAddress = IPRangeSet.parseAddress(end);
+		if (endAddress < 0) {
+			throw new CloudProvisioningException("Invalid IP address: " + end);
+		}
+		if (startAddress > endAddress) {
+			throw new CloudProvisioningException("Invalid IP range, the start address is after the end address: "
+					+ text);
+		}
+		return new long[] { startAddress, endAddress };
+	}
+}
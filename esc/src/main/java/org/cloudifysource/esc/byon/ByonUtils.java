@@ -23,6 +23,7 @@ public class ByonUtils {
 	private static final String NODE_ID = "id";
 	private static final String NODE_HOST_LIST = "host-list";
 	private static final String NODE_HOST_RANGE = "host-range";
+	private static final String NODE_HOST_EXCLUDE = "host-exclude";
 	private static final String NODE_USERNAME = "username";
 	private static final String NODE_KEY_FILE = "keyFile";
 	private static final String NODE_CREDENTIAL = "credential";
@@ -31,6 +32,8 @@ public class ByonUtils {
 	private static final String INVALID_HOSTS_ERR_MESSAGE = "Failed to parse cloud nodes, invalid hosts configuration";
 	private static final String EMPTY_IP_RANGE_ERR_MESSAGE = "Failed to parse cloud nodes, invalid IP range "
 			+ "configuration: missing \"-\"";
+	private static final String EMPTY_IP_CIDR_ERR_MESSAGE = "Failed to parse cloud nodes, invalid IP CIDR "
+			+ "configuration: missing \"/\"";
 	
 	
 	/**
@@ -70,6 +73,21 @@ public class ByonUtils {
 	}
 	
 	
+	/**
+	 * Parses the nodes defined in the given {@link ComputeTemplate} object by a host list. Host ranges are validated,
+	 * but their nodes are not created. Host ranges only hold IPv4 addresses.
+	 * @param template The template to parse.
+	 * @return a list of {@link CustomNode} objects.
+	 * @throws CloudProvisioningException Indicates a failure to parse the given template.
+	 */
+	public static List<CustomNode> parseListedCloudNodes(final ComputeTemplate template)
+			throws CloudProvisioningException {
+		final List<CustomNode> cloudNodes = new ArrayList<CustomNode>();
+		parseCloudNodes(ByonUtils.getTemplateNodesList(template), cloudNodes, new ArrayList<ByonNodeRange>());
+		return cloudNodes;
+	}
+	
+	
 	/**
 	 * Parses the nodes defined in the given list to create a list of {@link CustomNode} objects.
 	 * @param nodesMapList The list of nodes to parse, as specified in the cloud configuration file.
@@ -81,6 +99,26 @@ public class ByonUtils {
 			throws CloudProvisioningException {
 
 		final List<CustomNode> cloudNodes = new ArrayList<CustomNode>();
+		parseCloudNodes(nodesMapList, cloudNodes, null);
+		return cloudNodes;
+	}
+
+	/**
+	 * Parses the nodes defined in the given list. Nodes defined by a host range are not created, the ranges are
+	 * returned instead so their nodes can be created when needed.
+	 *
+	 * @param nodesMapList
+	 *            The list of nodes to parse, as specified in the cloud configuration file.
+	 * @param cloudNodes
+	 *            The nodes defined by a host list are added to this list.
+	 * @param cloudNodeRanges
+	 *            The ranges are added to this list. If null, the nodes of the ranges are created and added to
+	 *            cloudNodes.
+	 * @throws CloudProvisioningException
+	 *             Indicates a failure to parse the given nodes list.
+	 */
+	static void parseCloudNodes(final List<Map<String, String>> nodesMapList, final List<CustomNode> cloudNodes,
+			final List<ByonNodeRange> cloudNodeRanges) throws CloudProvisioningException {
 
 		for (final Map<String, String> nodeMap : nodesMapList) {
 
@@ -99,21 +137,23 @@ public class ByonUtils {
 					cloudNodes.add(parseOneNode(nodeMap));
 				}
 			} else if (StringUtils.isNotBlank(hostRange)) {
-				if (isIPRange(hostRange.trim())) {
-					cloudNodes.addAll(parseNodeRange(nodeMap));
-				} else if (isIPCIDR(hostRange.trim())) {
-					cloudNodes.addAll(parseNodeCIDR(nodeMap));
+				// each listed address, range and CIDR is validated by parsing it.
+				final ByonNodeRange range;
+				try {
+					range = parseRange(nodeMap);
+				} catch (final CloudProvisioningException e) {
+					throw new CloudProvisioningException(INVALID_HOSTS_ERR_MESSAGE + ": " + hostRange, e);
+				}
+				if (cloudNodeRanges == null) {
+					cloudNodes.addAll(range.createNodes());
 				} else {
-					throw new CloudProvisioningException(
-							INVALID_HOSTS_ERR_MESSAGE + ": " + hostRange);
+					cloudNodeRanges.add(range);
 				}
 			} else {
 				//host list or range not set 
 				throw new CloudProvisioningException(EMPTY_HOSTS_ERR_MESSAGE);
 			}
 		}
-
-		return cloudNodes;
 	}
 	
 
@@ -224,63 +264,12 @@ public class ByonUtils {
 	public static List<CustomNode> parseNodeRange(final Map<String, String> nodeMap)
 			throws CloudProvisioningException {
 
-		final List<CustomNode> cloudNodes = new ArrayList<CustomNode>();
-
-		boolean useIdAsTemplate = false;
-		boolean useIdAsPrefix = false;
-		int index = 1;
-		String currnentId;
-
-		final String nodeId = nodeMap.get(NODE_ID).trim();
-		final String ipRange = nodeMap.get(NODE_HOST_RANGE).trim();
-
 		// syntax validation (IPs are validated later, through IPUtils)
-		final int ipDashIndex = ipRange.indexOf('-');
-		if (ipDashIndex < 0) {
+		if (nodeMap.get(NODE_HOST_RANGE).indexOf('-') < 0) {
 			throw new CloudProvisioningException(EMPTY_IP_RANGE_ERR_MESSAGE);
 		}
 
-		// run through the range of IPs
-		final String ipRangeStart = ipRange.substring(0, ipRange.indexOf('-'));
-		final String ipRangeEnd = ipRange.substring(ipRange.indexOf('-') + 1);
-
-		if (IPUtils.ip2Long(ipRangeStart) < IPUtils.ip2Long(ipRangeEnd)) {
-			if (isIdTemplate(nodeId)) {
-				useIdAsTemplate = true;
-			} else {
-				useIdAsPrefix = true;
-			}
-		}
-
-		String ip = ipRangeStart;
-		while (IPUtils.ip2Long(ip) <= IPUtils.ip2Long(ipRangeEnd)) {
-
-			// validate the IP
-			ip = ip.trim();
-			if (!IPUtils.validateIPAddress(ip)) {
-				throw new CloudProvisioningException("Invalid IP address: "
-						+ ip);
-			}
-
-			// set the id
-			if (useIdAsTemplate) {
-				currnentId = MessageFormat.format(nodeId, index);
-			} else if (useIdAsPrefix) {
-				currnentId = nodeId + index;
-			} else {
-				// just one IPs
-				currnentId = nodeId;
-			}
-
-            cloudNodes.add(new CustomNodeImpl(PROVIDER_ID, currnentId, ip, null,
-					nodeMap.get(NODE_USERNAME), nodeMap.get(NODE_CREDENTIAL),
-					nodeMap.get(NODE_KEY_FILE), currnentId));
-
-			index++;
-			ip = IPUtils.getNextIP(ip);
-		}
-
-		return cloudNodes;
+		return parseRange(nodeMap).createNodes();
 	}
 	
 	
@@ -295,15 +284,20 @@ public class ByonUtils {
 	 */
 	public static List<CustomNode> parseNodeCIDR(final Map<String, String> nodeMap)
 			throws CloudProvisioningException {
-		try {
-			nodeMap.put(NODE_HOST_RANGE, IPUtils.ipCIDR2Range(nodeMap
-					.get(NODE_HOST_RANGE).trim()));
-		} catch (final Exception e) {
-			throw new CloudProvisioningException(
-					"Failed to start cloud machine.", e);
+
+		if (!isIPCIDR(nodeMap.get(NODE_HOST_RANGE))) {
+			throw new CloudProvisioningException(EMPTY_IP_CIDR_ERR_MESSAGE);
 		}
 
-		return parseNodeRange(nodeMap);
+		return parseRange(nodeMap).createNodes();
+	}
+	
+	
+	private static ByonNodeRange parseRange(final Map<String, String> nodeMap)
+			throws CloudProvisioningException {
+		return ByonNodeRange.parse(nodeMap.get(NODE_ID), nodeMap.get(NODE_HOST_RANGE),
+				nodeMap.get(NODE_HOST_EXCLUDE), nodeMap.get(NODE_USERNAME), nodeMap.get(NODE_CREDENTIAL),
+				nodeMap.get(NODE_KEY_FILE));
 	}
 	
 	
@@ -361,22 +355,6 @@ public class ByonUtils {
 	}
 	
 
-	private static boolean isIPRange(final String hostRange)
-			throws CloudProvisioningException {
-		boolean result = false;
-
-		if (hostRange.contains("-")) {
-			final String ipRangeStart = hostRange.substring(0,
-					hostRange.indexOf('-'));
-			if (IPUtils.validateIPAddress(ipRangeStart)) {
-				result = true;
-			}
-		}
-
-		return result;
-	}
-	
-
 	private static boolean isIPCIDR(final String hostRange) {
 		boolean result = false;
 
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.cloudifysource.dsl.utils.IPUtils;
+
+/**
+ * A set of IPv4 addresses, kept as sorted, disjoint intervals. The memory used depends on the number of intervals, not
+ * on the number of addresses, so a CIDR with a few exclusions takes a few entries. Not thread safe.
+ *
+ * @since 2.7.0
+ */
+final class IPRangeSet implements Iterable<Long> {
+
+	private static final int IPV4_PARTS = 4;
+	private static final int MAX_IPV4_PART = 255;
+
+	// interval start -> interval end, inclusive
+	private final TreeMap<Long, Long> intervals = new TreeMap<Long, Long>();
+	private long size;
+
+	IPRangeSet() {
+	}
+
+	IPRangeSet(final IPRangeSet other) {
+		intervals.putAll(other.intervals);
+		size = other.size;
+	}
+
+	/**
+	 * Adds the addresses from start to end, inclusive.
+	 *
+	 * @param start
+	 *            the first address.
+	 * @param end
+	 *            the last address.
+	 */
+	void add(final long start, final long end) {
+		if (start > end) {
+			return;
+		}
+		long newStart = start;
+		long newEnd = end;
+		// merge with an interval that ends right before the new one, or overlaps it.
+		final Entry<Long, Long> floor = intervals.floorEntry(start);
+		if (floor != null && floor.getValue() >= start - 1) {
+			newStart = floor.getKey();
+			newEnd = Math.max(newEnd, floor.getValue());
+			removeInterval(floor.getKey());
+		}
+		// merge with the intervals that start inside the new one, or right after it.
+		Entry<Long, Long> next = intervals.ceilingEntry(newStart);
+		while (next != null && next.getKey() <= newEnd + 1) {
+			newEnd = Math.max(newEnd, next.getValue());
+			removeInterval(next.getKey());
+			next = intervals.ceilingEntry(newStart);
+		}
+		intervals.put(newStart, newEnd);
+		size += newEnd - newStart + 1;
+	}
+
+	/**
+	 * Adds the addresses found in another set.
+	 *
+	 * @param other
+	 *            another set.
+	 */
+	void addAll(final IPRangeSet other) {
+		for (final Entry<Long, Long> entry : other.intervals.entrySet()) {
+			add(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Removes the addresses from start to end, inclusive.
+	 *
+	 * @param start
+	 *            the first address.
+	 * @param end
+	 *            the last address.
+	 */
+	void remove(final long start, final long end) {
+		if (start > end) {
+			return;
+		}
+		Entry<Long, Long> entry = intervals.floorEntry(start);
+		if (entry == null || entry.getValue() < start) {
+			entry = intervals.ceilingEntry(start);
+		}
+		while (entry != null && entry.getKey() <= end) {
+			final long entryStart = entry.getKey();
+			final long entryEnd = entry.getValue();
+			removeInterval(entryStart);
+			if (entryStart < start) {
+				intervals.put(entryStart, start - 1);
+				size += start - entryStart;
+			}
+			if (entryEnd > end) {
+				intervals.put(end + 1, entryEnd);
+				size += entryEnd - end;
+			}
+			entry = intervals.ceilingEntry(entryStart + 1);
+		}
+	}
+
+	/**
+	 * Removes the addresses found in another set.
+	 *
+	 * @param other
+	 *            another set.
+	 */
+	void removeAll(final IPRangeSet other) {
+		for (final Entry<Long, Long> entry : other.intervals.entrySet()) {
+			remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	boolean contains(final long address) {
+		final Entry<Long, Long> floor = intervals.floorEntry(address);
+		return floor != null && floor.getValue() >= address;
+	}
+
+	/**
+	 * Removes the lowest address.
+	 *
+	 * @return the address, or -1 if the set is empty.
+	 */
+	long pollFirst() {
+		if (intervals.isEmpty()) {
+			return -1;
+		}
+		final long first = intervals.firstKey();
+		remove(first, first);
+		return first;
+	}
+
+	long size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param other
+	 *            another set.
+	 * @return the addresses found in both sets.
+	 */
+	IPRangeSet intersection(final IPRangeSet other) {
+		final IPRangeSet result = new IPRangeSet();
+		final Iterator<Entry<Long, Long>> mine = intervals.entrySet().iterator();
+		final Iterator<Entry<Long, Long>> theirs = other.intervals.entrySet().iterator();
+		Entry<Long, Long> a = mine.hasNext() ? mine.next() : null;
+		Entry<Long, Long> b = theirs.hasNext() ? theirs.next() : null;
+		while (a != null && b != null) {
+			final long start = Math.max(a.getKey(), b.getKey());
+			final long end = Math.min(a.getValue(), b.getValue());
+			if (start <= end) {
+				result.intervals.put(start, end);
+				result.size += end - start + 1;
+			}
+			if (a.getValue() < b.getValue()) {
+				a = mine.hasNext() ? mine.next() : null;
+			} else {
+				b = theirs.hasNext() ? theirs.next() : null;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Iterator<Long> iterator() {
+		final Iterator<Entry<Long, Long>> entries = intervals.entrySet().iterator();
+		return new Iterator<Long>() {
+
+			private long next;
+			private long end = -1;
+
+			@Override
+			public boolean hasNext() {
+				return next <= end || entries.hasNext();
+			}
+
+			@Override
+			public Long next() {
+				if (next > end) {
+					if (!entries.hasNext()) {
+						throw new NoSuchElementException();
+					}
+					final Entry<Long, Long> entry = entries.next();
+					next = entry.getKey();
+					end = entry.getValue();
+				}
+				return next++;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return the intervals, e.g. "10.0.0.1-10.0.0.9, 10.0.0.11".
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		for (final Entry<Long, Long> entry : intervals.entrySet()) {
+			if (builder.length() > 0) {
+				builder.append(", ");
+			}
+			builder.append(IPUtils.long2String(entry.getKey()));
+			if (entry.getValue() > entry.getKey()) {
+				builder.append('-').append(IPUtils.long2String(entry.getValue()));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Converts a dotted decimal IPv4 address to a long, without resolving it.
+	 *
+	 * @param ipAddress
+	 *            the address.
+	 * @return the address as a long, or -1 if it is not an IPv4 address.
+	 */
+	static long parseAddress(final String ipAddress) {
+		if (ipAddress == null) {
+			return -1;
+		}
+		final String[] parts = ipAddress.trim().split("\\.", -1);
+		if (parts.length != IPV4_PARTS) {
+			return -1;
+		}
+		long address = 0;
+		for (final String part : parts) {
+			if (part.length() == 0 || part.length() > 3) {
+				return -1;
+			}
+			for (int i = 0; i < part.length(); i++) {
+				if (!Character.isDigit(part.charAt(i))) {
+					return -1;
+				}
+			}
+			final int value = Integer.parseInt(part);
+			if (value > MAX_IPV4_PART) {
+				return -1;
+			}
+			address = address * (MAX_IPV4_PART + 1) + value;
+		}
+		return address;
+	}
+
+	private void removeInterval(final long start) {
+		final Long end = intervals.remove(start);
+		size -= end - start + 1;
+	}
+}
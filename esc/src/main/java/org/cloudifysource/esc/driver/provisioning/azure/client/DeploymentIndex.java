@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.azure.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the private and public IP addresses of the virtual machines to the cloud service and deployment they run in.
+ * Each virtual machine has a dedicated cloud service, so a cloud service has at most one entry.
+ *
+ * The index may be stale: a deployment found through it should be verified before it is used.
+ *
+ * The cloud services that were read are trusted for a while, so a lookup that misses the index does not read them
+ * again: neither those found without a virtual machine, nor those whose virtual machine has another address.
+ *
+ * @since 2.7.0
+ */
+final class DeploymentIndex {
+
+	/**
+	 * The location of a virtual machine.
+	 */
+	static final class Entry {
+
+		private final String hostedServiceName;
+		private final String deploymentName;
+		private final String privateIp;
+		private final String publicIp;
+		private final long readTime = System.currentTimeMillis();
+
+		Entry(final String hostedServiceName, final String deploymentName, final String privateIp,
+				final String publicIp) {
+			this.hostedServiceName = hostedServiceName;
+			this.deploymentName = deploymentName;
+			this.privateIp = privateIp;
+			this.publicIp = publicIp;
+		}
+
+		String getHostedServiceName() {
+			return hostedServiceName;
+		}
+
+		String getDeploymentName() {
+			return deploymentName;
+		}
+
+		String getIp(final boolean isPrivateIp) {
+			return isPrivateIp ? privateIp : publicIp;
+		}
+	}
+
+	private final Map<String, Entry> entriesByService = new HashMap<String, Entry>();
+	private final Map<String, Entry> entriesByPrivateIp = new HashMap<String, Entry>();
+	private final Map<String, Entry> entriesByPublicIp = new HashMap<String, Entry>();
+	// the time each cloud service without a virtual machine was read.
+	private final Map<String, Long> emptyServices = new HashMap<String, Long>();
+
+	private final long serviceTtlMillis;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param serviceTtlMillis
+	 *            how long a cloud service that was read is trusted, with or without a virtual machine.
+	 */
+	DeploymentIndex(final long serviceTtlMillis) {
+		this.serviceTtlMillis = serviceTtlMillis;
+	}
+
+	/**
+	 * Adds an entry, replacing the previous entry of the cloud service.
+	 *
+	 * @param entry
+	 *            the entry.
+	 */
+	synchronized void put(final Entry entry) {
+		removeService(entry.hostedServiceName);
+		entriesByService.put(entry.hostedServiceName, entry);
+		if (entry.privateIp != null) {
+			entriesByPrivateIp.put(entry.privateIp, entry);
+		}
+		if (entry.publicIp != null) {
+			entriesByPublicIp.put(entry.publicIp, entry);
+		}
+	}
+
+	/**
+	 * @param ip
+	 *            an IP address.
+	 * @param isPrivateIp
+	 *            whether or not this ip is private or public.
+	 * @return the entry of the virtual machine with this address, or null if it is not known.
+	 */
+	synchronized Entry get(final String ip, final boolean isPrivateIp) {
+		return isPrivateIp ? entriesByPrivateIp.get(ip) : entriesByPublicIp.get(ip);
+	}
+
+	/**
+	 * @param hostedServiceName
+	 *            the cloud service name.
+	 * @return the entry of the cloud service, or null if it is not known.
+	 */
+	synchronized Entry getByService(final String hostedServiceName) {
+		return entriesByService.get(hostedServiceName);
+	}
+
+	/**
+	 * Records a cloud service that has no virtual machine, replacing its entry.
+	 *
+	 * @param hostedServiceName
+	 *            the cloud service name.
+	 */
+	synchronized void putEmptyService(final String hostedServiceName) {
+		removeService(hostedServiceName);
+		emptyServices.put(hostedServiceName, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param hostedServiceName
+	 *            the cloud service name.
+	 * @return true if the cloud service was recently found without a virtual machine.
+	 */
+	synchronized boolean isEmptyService(final String hostedServiceName) {
+		final Long readTime = emptyServices.get(hostedServiceName);
+		if (readTime == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - readTime >= serviceTtlMillis) {
+			emptyServices.remove(hostedServiceName);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param entry
+	 *            an entry of the index.
+	 * @return true if the cloud service of the entry was read recently, so its addresses need not be read again.
+	 */
+	boolean isRecent(final Entry entry) {
+		return System.currentTimeMillis() - entry.readTime < serviceTtlMillis;
+	}
+
+	/**
+	 * Removes the entry of a cloud service, if there is one, or the record of it being empty.
+	 *
+	 * @param hostedServiceName
+	 *            the cloud service name.
+	 */
+	synchronized void removeService(final String hostedServiceName) {
+		emptyServices.remove(hostedServiceName);
+		final Entry entry = entriesByService.remove(hostedServiceName);
+		if (entry == null) {
+			return;
+		}
+		// the address may have moved to another virtual machine since.
+		if (entry.privateIp != null && entriesByPrivateIp.get(entry.privateIp) == entry) {
+			entriesByPrivateIp.remove(entry.privateIp);
+		}
+		if (entry.publicIp != null && entriesByPublicIp.get(entry.publicIp) == entry) {
+			entriesByPublicIp.remove(entry.publicIp);
+		}
+	}
+}
@@ -17,8 +17,18 @@
 
 package org.cloudifysource.esc.driver.provisioning.azure.client;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
@@ -71,6 +81,17 @@ import com.sun.jersey.client.urlconnection.HTTPSProperties;
 
 public class MicrosoftAzureRestClient {
 
+	/**
+	 * System property for the maximum number of cloud services read concurrently when looking for a virtual machine by
+	 * its IP address.
+	 */
+	public static final String LOOKUP_THREADS_PROPERTY_NAME = "org.cloudifysource.esc.azure.lookup-threads";
+
+	/**
+	 * Default maximum number of cloud services read concurrently when looking for a virtual machine.
+	 */
+	public static final int DEFAULT_LOOKUP_THREADS = 5;
+
 	private static final int HTTP_NOT_FOUND = 404;
 	private static final int HTTP_OK = 200;
 	private static final int HTTP_CREATED = 201;
@@ -106,6 +127,9 @@ public class MicrosoftAzureRestClient {
 	private static final long ESTIMATED_TIME_TO_START_VM = 5 * 60 * 1000; // 5
 																			// minutes
 
+	// how long a cloud service that was read is not read again when looking for a virtual machine.
+	private static final long CLOUD_SERVICE_TTL_MILLIS = 60 * 1000;
+
 	private WebResource resource;
 	private Client client;
 
@@ -115,6 +139,10 @@ public class MicrosoftAzureRestClient {
 
 	private Logger logger = Logger.getLogger(this.getClass().getName());
 
+	// the cloud service and deployment of each virtual machine, by IP address.
+	private final DeploymentIndex deploymentIndex = new DeploymentIndex(CLOUD_SERVICE_TTL_MILLIS);
+	private final Object deploymentIndexRefreshMutex = new Object();
+
 	public MicrosoftAzureRestClient(final String subscriptionId,
 			final String pathToPfx, final String pfxPassword,
 			final String affinityPrefix, final String cloudServicePrefix,
@@ -509,6 +537,9 @@ public class MicrosoftAzureRestClient {
 		}
 		roleAddressDetails.setPublicIp(publicIp);
 
+		deploymentIndex.put(new DeploymentIndex.Entry(serviceName, deploymentResponse.getName(),
+				roleAddressDetails.getPrivateIp(), publicIp));
+
 		return roleAddressDetails;
 	}
 
@@ -624,6 +655,7 @@ public class MicrosoftAzureRestClient {
 				+ cloudServiceName);
 		String requestId = extractRequestId(response);
 		waitForRequestToFinish(requestId, endTime);
+		deploymentIndex.removeService(cloudServiceName);
 		return true;
 	}
 
@@ -830,6 +862,7 @@ public class MicrosoftAzureRestClient {
 						+ hostedServiceName + "/deployments/" + deploymentName);
 				String requestId = extractRequestId(response);
 				waitForRequestToFinish(requestId, endTime);
+				deploymentIndex.removeService(hostedServiceName);
 				pendingRequest.unlock();
 				logger.fine(getThreadIdentity() + "Lock unlcoked");
 			} catch (final Exception e) {
@@ -1009,6 +1042,11 @@ public class MicrosoftAzureRestClient {
 	}
 
 	/**
+	 * Finds the deployment of the virtual machine with the given IP address. The deployments of the virtual machines
+	 * are indexed by IP address, and a deployment found in the index is read to verify it still has this address. If
+	 * the address is not in the index, the cloud services are read a few at a time, starting with those that are not
+	 * indexed yet. Cloud services read recently are not read again, whether they were found without a virtual machine
+	 * or with a virtual machine that has another address.
 	 * 
 	 * @param machineIp
 	 *            .
@@ -1022,29 +1060,20 @@ public class MicrosoftAzureRestClient {
 			final boolean isPrivateIp) throws MicrosoftAzureException,
 			TimeoutException {
 
-		Deployment deployment = null;
-		HostedServices cloudServices = listHostedServices();
-		for (HostedService hostedService : cloudServices) {
-			String cloudServiceName = hostedService.getServiceName();
-			Deployments deployments = getHostedService(cloudServiceName, true)
-					.getDeployments();
-			// skip empty cloud services
-			if (!deployments.getDeployments().isEmpty()) {
-				deployment = deployments.getDeployments().get(0);
-				String deploymentName = deployment.getName();
-				deployment = getDeploymentByDeploymentName(cloudServiceName,
-						deploymentName);
-				String publicIp = getPublicIpFromDeployment(deployment);
-				String privateIp = getPrivateIpFromDeployment(deployment);
-				String ip = isPrivateIp ? privateIp : publicIp;
-				if (machineIp.equals(ip)) {
-					deployment.setHostedServiceName(cloudServiceName);
-					return deployment;
+		Deployment deployment = getIndexedDeployment(machineIp, isPrivateIp);
+		if (deployment == null) {
+			synchronized (deploymentIndexRefreshMutex) {
+				// the address may have been indexed while waiting for another lookup.
+				deployment = getIndexedDeployment(machineIp, isPrivateIp);
+				if (deployment == null) {
+					deployment = findDeploymentInCloudServices(machineIp, isPrivateIp);
 				}
 			}
 		}
-		logger.info("Could not find any roles with ip :" + machineIp);
-		return null;
+		if (deployment == null) {
+			logger.info("Could not find any roles with ip :" + machineIp);
+		}
+		return deployment;
 
 	}
 
@@ -1320,6 +1349,146 @@ public class MicrosoftAzureRestClient {
 				.unmarshall(response.getEntity(String.class));
 	}
 
+	private Deployment getIndexedDeployment(final String machineIp, final boolean isPrivateIp)
+			throws MicrosoftAzureException, TimeoutException {
+		final DeploymentIndex.Entry entry = deploymentIndex.get(machineIp, isPrivateIp);
+		if (entry == null) {
+			return null;
+		}
+		try {
+			final Deployment deployment = getDeploymentByDeploymentName(entry.getHostedServiceName(),
+					entry.getDeploymentName());
+			if (machineIp.equals(getIpFromDeployment(deployment, isPrivateIp))) {
+				return deployment;
+			}
+		} catch (final MicrosoftAzureException e) {
+			logger.fine("Failed reading deployment " + entry.getDeploymentName() + " of cloud service "
+					+ entry.getHostedServiceName() + " : " + e.getMessage());
+		}
+		// the virtual machine was deleted, or its address was given to another one.
+		deploymentIndex.removeService(entry.getHostedServiceName());
+		return null;
+	}
+
+	private Deployment findDeploymentInCloudServices(final String machineIp, final boolean isPrivateIp)
+			throws MicrosoftAzureException, TimeoutException {
+
+		// the cloud services that are not indexed are read first, then those that were not read recently and whose
+		// address may have changed.
+		final List<String> cloudServiceNames = new ArrayList<String>();
+		final List<String> mismatchedCloudServiceNames = new ArrayList<String>();
+		for (HostedService hostedService : listHostedServices()) {
+			final String cloudServiceName = hostedService.getServiceName();
+			if (deploymentIndex.isEmptyService(cloudServiceName)) {
+				continue;
+			}
+			final DeploymentIndex.Entry entry = deploymentIndex.getByService(cloudServiceName);
+			if (entry == null) {
+				cloudServiceNames.add(cloudServiceName);
+			} else if (!machineIp.equals(entry.getIp(isPrivateIp)) && !deploymentIndex.isRecent(entry)) {
+				mismatchedCloudServiceNames.add(cloudServiceName);
+			}
+		}
+		cloudServiceNames.addAll(mismatchedCloudServiceNames);
+		if (cloudServiceNames.isEmpty()) {
+			return null;
+		}
+
+		final int threads = Math.min(cloudServiceNames.size(),
+				Math.max(1, Integer.getInteger(LOOKUP_THREADS_PROPERTY_NAME, DEFAULT_LOOKUP_THREADS)));
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "AzureDeploymentLookup-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			final CompletionService<Deployment> lookups = new ExecutorCompletionService<Deployment>(executor);
+			for (final String cloudServiceName : cloudServiceNames) {
+				lookups.submit(new Callable<Deployment>() {
+
+					@Override
+					public Deployment call() throws Exception {
+						return indexCloudService(cloudServiceName);
+					}
+				});
+			}
+
+			Throwable failure = null;
+			for (int i = 0; i < cloudServiceNames.size(); i++) {
+				try {
+					final Deployment deployment = lookups.take().get();
+					if (deployment != null && machineIp.equals(getIpFromDeployment(deployment, isPrivateIp))) {
+						return deployment;
+					}
+				} catch (final ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+			// the machine may be in a cloud service that could not be read.
+			if (failure instanceof MicrosoftAzureException) {
+				throw (MicrosoftAzureException) failure;
+			}
+			if (failure instanceof TimeoutException) {
+				throw (TimeoutException) failure;
+			}
+			if (failure != null) {
+				throw new MicrosoftAzureException(failure);
+			}
+			return null;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MicrosoftAzureException(e);
+		} finally {
+			// the remaining lookups are not needed once the machine was found.
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the deployment of a cloud service and adds it to the index.
+	 * 
+	 * @return the deployment, or null if the cloud service has no running virtual machine.
+	 */
+	private Deployment indexCloudService(final String cloudServiceName)
+			throws MicrosoftAzureException, TimeoutException {
+		final Deployments deployments = getHostedService(cloudServiceName, true).getDeployments();
+		// skip empty cloud services
+		if (deployments == null || deployments.getDeployments().isEmpty()) {
+			deploymentIndex.putEmptyService(cloudServiceName);
+			return null;
+		}
+		Deployment deployment = deployments.getDeployments().get(0);
+		if (!hasRoleInstance(deployment)) {
+			deployment = getDeploymentByDeploymentName(cloudServiceName, deployment.getName());
+			if (!hasRoleInstance(deployment)) {
+				deploymentIndex.putEmptyService(cloudServiceName);
+				return null;
+			}
+		}
+		deployment.setHostedServiceName(cloudServiceName);
+		deploymentIndex.put(new DeploymentIndex.Entry(cloudServiceName, deployment.getName(),
+				getPrivateIpFromDeployment(deployment), getPublicIpFromDeployment(deployment)));
+		return deployment;
+	}
+
+	private boolean hasRoleInstance(final Deployment deployment) {
+		return deployment.getRoleList() != null && deployment.getRoleInstanceList() != null
+				&& deployment.getRoleInstanceList().getRoleInstances() != null
+				&& !deployment.getRoleInstanceList().getRoleInstances().isEmpty();
+	}
+
+	private String getIpFromDeployment(final Deployment deployment, final boolean isPrivateIp) {
+		return isPrivateIp ? getPrivateIpFromDeployment(deployment) : getPublicIpFromDeployment(deployment);
+	}
+
 	private String getPublicIpFromDeployment(final Deployment deployment) {
 		ConfigurationSets configurationSets = deployment.getRoleList()
 				.getRoles().get(0).getConfigurationSets();
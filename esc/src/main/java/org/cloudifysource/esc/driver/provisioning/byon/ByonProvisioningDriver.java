@@ -139,7 +139,7 @@ public class ByonProvisioningDriver extends BaseProvisioningDriver {
 		boolean ipv6Used = false;
 		
 		try {
-			List<CustomNode> nodes = ByonUtils.parseCloudNodes(template);
+			List<CustomNode> nodes = ByonUtils.parseListedCloudNodes(template);
 			for (CustomNode node : nodes) {
 				if (StringUtils.isNotBlank(node.getPrivateIP()) && IPUtils.isIPv6Address(node.getPrivateIP())) {
 					ipv6Used = true;
@@ -240,13 +240,8 @@ public class ByonProvisioningDriver extends BaseProvisioningDriver {
 			logger.info("Verifying the active machines are not in the free pool: "
 					+ "\n Admin reports the currently used machines are: "
 					+ Arrays.toString(activeMachinesIPs.toArray())
-					+ "\n Byon deployer reports the free machines for template " + cloudTemplateName + " are: "
-					+ Arrays.toString(deployer.getFreeNodesByTemplateName(cloudTemplateName).toArray())
-					+ "\n Byon deployer reports the currently used machines for template " + cloudTemplateName
-					+ " are:"
-					+ Arrays.toString(deployer.getAllocatedNodesByTemplateName(cloudTemplateName).toArray())
-					+ "\n Byon deployer reports the invalid used machines for template " + cloudTemplateName + " are: "
-					+ Arrays.toString(deployer.getInvalidNodesByTemplateName(cloudTemplateName).toArray()) + ")");
+					+ "\n Byon deployer reports the machines for template " + cloudTemplateName + " are: "
+					+ deployer.getNodesDescription(cloudTemplateName));
 		}
 		final String newServerName = createNewServerName();
 		logger.info("Attempting to start a new cloud machine");
@@ -88,6 +88,8 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 	private static final String PUBLIC_IP_CIDR = "org.cloudifysource.default-cloud-driver.public-ip-cidr";
 	private static final String PRIVATE_IP_REGEX = "org.cloudifysource.default-cloud-driver.private-ip-regex";
 	private static final String PRIVATE_IP_CIDR = "org.cloudifysource.default-cloud-driver.private-ip-cidr";
+	private static final String NODE_INVENTORY_REFRESH_INTERVAL =
+			"org.cloudifysource.default-cloud-driver.node-inventory-refresh-interval-millis";
 	private static final int CLOUD_NODE_STATE_POLLING_INTERVAL = 2000;
 	private static final String DEFAULT_EC2_WINDOWS_USERNAME = "Administrator";
 	private static final String EC2_API = "aws-ec2";
@@ -106,6 +108,7 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 	private String propertiesFile;
 
 	private JCloudsDeployer deployer;
+	private NodeStatePoller nodeStatePoller;
 	private SubnetInfo privateSubnetInfo;
 	private Pattern privateIpPattern;
 	private SubnetInfo publicSubnetInfo;
@@ -128,6 +131,8 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 			// will be shutdown by the first
 			// service to by undeployed.
 			this.deployer = createDeployer(cloud);
+			this.nodeStatePoller = new NodeStatePoller(this.deployer.getProvider(), this.deployer.getInventory(),
+					CLOUD_NODE_STATE_POLLING_INTERVAL);
 			// (JCloudsDeployer)
 			// context.getOrCreate("UNIQUE_JCLOUDS_DEPLOYER_ID_" +
 			// this.cloudTemplateName,
@@ -333,38 +338,8 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 	private NodeMetadata waitForNodeToBecomeReady(final String id,
 			final long end) throws CloudProvisioningException,
 			InterruptedException, TimeoutException {
-		NodeMetadata node = null;
-		while (System.currentTimeMillis() < end) {
-			node = deployer.getServerByID(id);
-
-			if (node == null) {
-				logger.fine("Server Status (" + id
-						+ ") Not Found, please wait...");
-				Thread.sleep(CLOUD_NODE_STATE_POLLING_INTERVAL);
-				break;
-			} else {
-				switch (node.getStatus()) {
-				case RUNNING:
-					return node;
-				case PENDING:
-					logger.fine("Server Status (" + id
-							+ ") still PENDING, please wait...");
-					Thread.sleep(CLOUD_NODE_STATE_POLLING_INTERVAL);
-					break;
-				case TERMINATED:
-				case ERROR:
-				case UNRECOGNIZED:
-				case SUSPENDED:
-				default:
-					throw new CloudProvisioningException(
-							"Failed to allocate server - Cloud reported node in "
-									+ node.getStatus().toString()
-									+ " state. Node details: " + node);
-				}
-			}
-
-		}
-		throw new TimeoutException("Node failed to reach RUNNING mode in time");
+		// nodes started concurrently are polled together, with one cloud list call per polling interval.
+		return nodeStatePoller.waitForNodeToBecomeReady(id, end);
 	}
 
 	/*********
@@ -385,9 +360,10 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 			// counter = (counter + 1) % MAX_SERVERS_LIMIT;
 			++attempts;
 			serverName = serverNamePrefix + counter.incrementAndGet();
-			// verifying this server name is not already used
+			// verifying this server name is not already used. A free name is the expected result, so a miss does not
+			// refresh the inventory.
 			final NodeMetadata existingNode = deployer
-					.getServerByID(serverName);
+					.getServerByID(serverName, false);
 			if (existingNode == null) {
 				foundFreeName = true;
 				break;
@@ -688,6 +664,9 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 
 	@Override
 	public void close() {
+		if (nodeStatePoller != null) {
+			nodeStatePoller.close();
+		}
 		if (deployer != null) {
 			deployer.close();
 		}
@@ -712,6 +691,11 @@ public class DefaultProvisioningDriver extends BaseProvisioningDriver {
 		deployer.setMinRamMegabytes(cloudTemplate.getMachineMemoryMB());
 		deployer.setHardwareId(cloudTemplate.getHardwareId());
 		deployer.setExtraOptions(cloudTemplate.getOptions());
+
+		final Object refreshInterval = cloudTemplate.getCustom().get(NODE_INVENTORY_REFRESH_INTERVAL);
+		if (refreshInterval != null) {
+			deployer.getInventory().setRefreshIntervalMillis(Long.parseLong(refreshInterval.toString()));
+		}
 		return deployer;
 	}
 
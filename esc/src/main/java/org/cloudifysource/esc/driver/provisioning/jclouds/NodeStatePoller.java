@@ -0,0 +1,528 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.jclouds;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.cloudifysource.dsl.utils.MBeanUtils;
+import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.jclouds.JCloudsNodeInventory;
+import org.jclouds.aws.AWSResponseException;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.http.HttpResponseException;
+
+/**************
+ * Waits for newly created cloud nodes to reach the RUNNING state. All nodes that are pending at the same time are
+ * resolved together: every tick reads the deployer's {@link JCloudsNodeInventory}, and the waits for each pending node
+ * end when it is RUNNING, or fail when the cloud reports a failure state. Several threads may wait for the same node.
+ * A tick lists the cloud only if the inventory was not refreshed during the last polling interval, so the poller and
+ * the background refresher of the inventory do not both list the cloud.
+ *
+ * When the cloud API rejects calls because of rate limiting, the polling interval is doubled, up to a maximum, and is
+ * halved again after every successful tick. Rate limiting is recognized by the HTTP status of the response, or by the
+ * error code of AWS responses.
+ *
+ * The poller statistics are published as an MBean named "org.cloudifysource:type=NodeStatePoller" while nodes are
+ * polled.
+ *
+ * @since 2.7.0
+ */
+class NodeStatePoller {
+
+	private static final Logger logger = Logger.getLogger(NodeStatePoller.class.getName());
+
+	private static final int MAX_BACKOFF_MULTIPLIER = 16;
+
+	// Too Many Requests, Request Entity Too Large (the openstack overLimit fault) and Service Unavailable.
+	private static final Set<Integer> THROTTLING_STATUS_CODES = new HashSet<Integer>(Arrays.asList(429, 413, 503));
+	private static final Set<String> THROTTLING_AWS_ERROR_CODES = new HashSet<String>(Arrays.asList(
+			"RequestLimitExceeded", "Throttling", "ThrottlingException"));
+
+	private final String name;
+	private final JCloudsNodeInventory inventory;
+	private final long basePollingIntervalMillis;
+
+	// the waits for each pending node, by node ID. Lists are added and removed with the monitor held.
+	private final Map<String, List<PendingNode>> pendingNodes = new ConcurrentHashMap<String, List<PendingNode>>();
+
+	private ScheduledExecutorService scheduler;
+	private ObjectName mbeanName;
+	private boolean tickScheduled = false;
+	private long currentPollingIntervalMillis;
+
+	private final AtomicLong completedNodes = new AtomicLong();
+	private final AtomicLong failedNodes = new AtomicLong();
+	private final AtomicLong totalWaitMillis = new AtomicLong();
+	private final AtomicLong maxWaitMillis = new AtomicLong();
+	private final AtomicLong throttledCalls = new AtomicLong();
+	private final AtomicLong ticks = new AtomicLong();
+
+	/*********
+	 * Constructor.
+	 *
+	 * @param name the name the statistics are published with.
+	 * @param inventory the node inventory that node states are read from.
+	 * @param pollingIntervalMillis the interval between ticks, when the cloud is not throttling requests.
+	 */
+	NodeStatePoller(final String name, final JCloudsNodeInventory inventory, final long pollingIntervalMillis) {
+		this.name = name;
+		this.inventory = inventory;
+		this.basePollingIntervalMillis = pollingIntervalMillis;
+		this.currentPollingIntervalMillis = pollingIntervalMillis;
+	}
+
+	/*********
+	 * Blocks until the node with the given ID is RUNNING.
+	 *
+	 * @param id the node ID.
+	 * @param end the time, in epoch millis, by which the node must be running.
+	 * @return the node meta data of the running node.
+	 * @throws CloudProvisioningException if the cloud reported the node in a failure state.
+	 * @throws InterruptedException if the calling thread was interrupted.
+	 * @throws TimeoutException if the node did not reach RUNNING state in time.
+	 */
+	public NodeMetadata waitForNodeToBecomeReady(final String id, final long end)
+			throws CloudProvisioningException, InterruptedException, TimeoutException {
+		final PendingNode pending = register(id);
+		try {
+			return pending.await(Math.max(0, end - System.currentTimeMillis()));
+		} finally {
+			unregister(pending);
+		}
+	}
+
+	/*********
+	 * Returns the number of nodes currently waited for to become ready. Several waits for the same node count once.
+	 *
+	 * @return the number of pending nodes.
+	 */
+	public int getPendingNodesCount() {
+		return pendingNodes.size();
+	}
+
+	/***********
+	 * Returns the poller statistics.
+	 *
+	 * @return the statistics.
+	 */
+	public Statistics getStatistics() {
+		long oldestWait = 0;
+		final long now = System.currentTimeMillis();
+		for (final List<PendingNode> waits : pendingNodes.values()) {
+			for (final PendingNode pending : waits) {
+				oldestWait = Math.max(oldestWait, now - pending.startTime);
+			}
+		}
+		final long done = completedNodes.get() + failedNodes.get();
+		synchronized (this) {
+			return new Statistics(pendingNodes.size(), oldestWait, completedNodes.get(), failedNodes.get(),
+					done == 0 ? 0 : totalWaitMillis.get() / done, maxWaitMillis.get(), throttledCalls.get(),
+					ticks.get(), currentPollingIntervalMillis);
+		}
+	}
+
+	/*********
+	 * Stops the poller. Nodes that are still pending fail.
+	 */
+	public synchronized void close() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+		MBeanUtils.unregister(this.mbeanName);
+		this.mbeanName = null;
+		for (final List<PendingNode> waits : pendingNodes.values()) {
+			for (final PendingNode pending : waits) {
+				pending.fail(new CloudProvisioningException("Node state poller was closed while waiting for node "
+						+ pending.id));
+			}
+		}
+	}
+
+	private synchronized void unregister(final PendingNode pending) {
+		final List<PendingNode> waits = pendingNodes.get(pending.id);
+		if (waits != null) {
+			waits.remove(pending);
+			if (waits.isEmpty()) {
+				pendingNodes.remove(pending.id);
+			}
+		}
+	}
+
+	private synchronized PendingNode register(final String id) {
+		final PendingNode pending = new PendingNode(id);
+		List<PendingNode> waits = pendingNodes.get(id);
+		if (waits == null) {
+			waits = new CopyOnWriteArrayList<PendingNode>();
+			pendingNodes.put(id, waits);
+		}
+		waits.add(pending);
+		if (this.scheduler == null) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "NodeStatePoller");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.mbeanName = MBeanUtils.register("NodeStatePoller", name, new StatisticsMBean() {
+
+				@Override
+				public int getPendingNodes() {
+					return getStatistics().getPendingNodes();
+				}
+
+				@Override
+				public long getOldestPendingWaitMillis() {
+					return getStatistics().getOldestPendingWaitMillis();
+				}
+
+				@Override
+				public long getCompletedNodes() {
+					return getStatistics().getCompletedNodes();
+				}
+
+				@Override
+				public long getFailedNodes() {
+					return getStatistics().getFailedNodes();
+				}
+
+				@Override
+				public long getAverageWaitMillis() {
+					return getStatistics().getAverageWaitMillis();
+				}
+
+				@Override
+				public long getMaxWaitMillis() {
+					return getStatistics().getMaxWaitMillis();
+				}
+
+				@Override
+				public long getThrottledCalls() {
+					return getStatistics().getThrottledCalls();
+				}
+
+				@Override
+				public long getTicks() {
+					return getStatistics().getTicks();
+				}
+
+				@Override
+				public long getPollingIntervalMillis() {
+					return getStatistics().getPollingIntervalMillis();
+				}
+			}, StatisticsMBean.class);
+		}
+		if (!tickScheduled) {
+			scheduleTick();
+		}
+		return pending;
+	}
+
+	// called with the monitor held
+	private void scheduleTick() {
+		tickScheduled = true;
+		this.scheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				tick();
+			}
+		}, currentPollingIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void tick() {
+		ticks.incrementAndGet();
+		try {
+			if (!pendingNodes.isEmpty()) {
+				pollPendingNodes();
+			}
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Unexpected error while polling cloud node states: " + e.getMessage(), e);
+		} finally {
+			synchronized (this) {
+				tickScheduled = false;
+				if (this.scheduler != null && !pendingNodes.isEmpty()) {
+					scheduleTick();
+				}
+			}
+		}
+	}
+
+	private void pollPendingNodes() {
+		final long pollingIntervalMillis;
+		synchronized (this) {
+			pollingIntervalMillis = currentPollingIntervalMillis;
+		}
+		try {
+			inventory.refreshIfOlderThan(pollingIntervalMillis);
+		} catch (final RuntimeException e) {
+			if (isThrottlingError(e)) {
+				throttledCalls.incrementAndGet();
+				synchronized (this) {
+					currentPollingIntervalMillis =
+							Math.min(currentPollingIntervalMillis * 2, basePollingIntervalMillis
+									* MAX_BACKOFF_MULTIPLIER);
+					logger.info("Cloud API is throttling requests, polling for node states every "
+							+ currentPollingIntervalMillis + " ms");
+				}
+			} else {
+				logger.log(Level.WARNING, "Failed to list cloud nodes while waiting for "
+						+ pendingNodes.size() + " nodes to start: " + e.getMessage(), e);
+			}
+			return;
+		}
+
+		synchronized (this) {
+			currentPollingIntervalMillis = Math.max(basePollingIntervalMillis, currentPollingIntervalMillis / 2);
+		}
+
+		for (final Map.Entry<String, List<PendingNode>> entry : pendingNodes.entrySet()) {
+			final String id = entry.getKey();
+			final NodeMetadata node = inventory.getNodeById(id, false);
+			if (node == null) {
+				logger.fine("Server Status (" + id + ") Not Found, please wait...");
+				continue;
+			}
+			switch (node.getStatus()) {
+			case RUNNING:
+				for (final PendingNode pending : entry.getValue()) {
+					pending.complete(node);
+				}
+				break;
+			case PENDING:
+				logger.fine("Server Status (" + id + ") still PENDING, please wait...");
+				break;
+			case TERMINATED:
+			case ERROR:
+			case UNRECOGNIZED:
+			case SUSPENDED:
+			default:
+				for (final PendingNode pending : entry.getValue()) {
+					pending.fail(new CloudProvisioningException("Failed to allocate server - Cloud reported node in "
+							+ node.getStatus().toString() + " state. Node details: " + node));
+				}
+				break;
+			}
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Polled cloud node states. " + getStatistics());
+		}
+	}
+
+	// package-private for tests
+	static boolean isThrottlingError(final Throwable error) {
+		Throwable current = error;
+		while (current != null) {
+			if (current instanceof AWSResponseException) {
+				final AWSResponseException awsError = (AWSResponseException) current;
+				if (awsError.getError() != null
+						&& THROTTLING_AWS_ERROR_CODES.contains(awsError.getError().getCode())) {
+					return true;
+				}
+			}
+			if (current instanceof HttpResponseException) {
+				final HttpResponseException httpError = (HttpResponseException) current;
+				if (httpError.getResponse() != null
+						&& THROTTLING_STATUS_CODES.contains(httpError.getResponse().getStatusCode())) {
+					return true;
+				}
+			}
+			current = current.getCause();
+		}
+		return false;
+	}
+
+	private void recordWait(final long startTime) {
+		final long waited = System.currentTimeMillis() - startTime;
+		totalWaitMillis.addAndGet(waited);
+		long max = maxWaitMillis.get();
+		while (waited > max && !maxWaitMillis.compareAndSet(max, waited)) {
+			max = maxWaitMillis.get();
+		}
+	}
+
+	/*********
+	 * The wait of a single node, ended once by the poller with either the running node or a failure.
+	 */
+	private final class PendingNode {
+
+		private final String id;
+		private final long startTime = System.currentTimeMillis();
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		// guarded by this
+		private NodeMetadata node;
+		private CloudProvisioningException failure;
+
+		PendingNode(final String id) {
+			this.id = id;
+		}
+
+		void complete(final NodeMetadata runningNode) {
+			synchronized (this) {
+				if (done.getCount() == 0) {
+					return;
+				}
+				this.node = runningNode;
+				done.countDown();
+			}
+			completedNodes.incrementAndGet();
+			recordWait(startTime);
+		}
+
+		void fail(final CloudProvisioningException e) {
+			synchronized (this) {
+				if (done.getCount() == 0) {
+					return;
+				}
+				this.failure = e;
+				done.countDown();
+			}
+			failedNodes.incrementAndGet();
+			recordWait(startTime);
+		}
+
+		NodeMetadata await(final long timeoutMillis) throws InterruptedException, TimeoutException,
+				CloudProvisioningException {
+			if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new TimeoutException("Node failed to reach RUNNING mode in time");
+			}
+			synchronized (this) {
+				if (failure != null) {
+					throw failure;
+				}
+				return node;
+			}
+		}
+	}
+
+	/***********
+	 * The poller statistics, as published over JMX.
+	 */
+	public interface StatisticsMBean {
+
+		int getPendingNodes();
+
+		long getOldestPendingWaitMillis();
+
+		long getCompletedNodes();
+
+		long getFailedNodes();
+
+		long getAverageWaitMillis();
+
+		long getMaxWaitMillis();
+
+		long getThrottledCalls();
+
+		long getTicks();
+
+		long getPollingIntervalMillis();
+	}
+
+	/***********
+	 * Poller statistics.
+	 */
+	static class Statistics {
+
+		private final int pendingNodes;
+		private final long oldestPendingWaitMillis;
+		private final long completedNodes;
+		private final long failedNodes;
+		private final long averageWaitMillis;
+		private final long maxWaitMillis;
+		private final long throttledCalls;
+		private final long ticks;
+		private final long pollingIntervalMillis;
+
+		Statistics(final int pendingNodes, final long oldestPendingWaitMillis, final long completedNodes,
+				final long failedNodes, final long averageWaitMillis, final long maxWaitMillis,
+				final long throttledCalls, final long ticks, final long pollingIntervalMillis) {
+			this.pendingNodes = pendingNodes;
+			this.oldestPendingWaitMillis = oldestPendingWaitMillis;
+			this.completedNodes = completedNodes;
+			this.failedNodes = failedNodes;
+			this.averageWaitMillis = averageWaitMillis;
+			this.maxWaitMillis = maxWaitMillis;
+			this.throttledCalls = throttledCalls;
+			this.ticks = ticks;
+			this.pollingIntervalMillis = pollingIntervalMillis;
+		}
+
+		public int getPendingNodes() {
+			return pendingNodes;
+		}
+
+		public long getOldestPendingWaitMillis() {
+			return oldestPendingWaitMillis;
+		}
+
+		public long getCompletedNodes() {
+			return completedNodes;
+		}
+
+		public long getFailedNodes() {
+			return failedNodes;
+		}
+
+		public long getAverageWaitMillis() {
+			return averageWaitMillis;
+		}
+
+		public long getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
+		public long getThrottledCalls() {
+			return throttledCalls;
+		}
+
+		public long getTicks() {
+			return ticks;
+		}
+
+		public long getPollingIntervalMillis() {
+			return pollingIntervalMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "Statistics [pendingNodes=" + pendingNodes + ", oldestPendingWaitMillis="
+					+ oldestPendingWaitMillis + ", completedNodes=" + completedNodes + ", failedNodes=" + failedNodes
+					+ ", averageWaitMillis=" + averageWaitMillis + ", maxWaitMillis=" + maxWaitMillis
+					+ ", throttledCalls=" + throttledCalls + ", ticks=" + ticks + ", pollingIntervalMillis="
+					+ pollingIntervalMillis + "]";
+		}
+	}
+}
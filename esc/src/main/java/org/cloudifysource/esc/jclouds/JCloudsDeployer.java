@@ -72,6 +72,9 @@ public class JCloudsDeployer {
 	private static final long RETRY_SLEEP_TIMEOUT_IN_MILLIS = 5000;
 	private static final int NUMBER_OF_RETRY_ATTEMPTS = 2;
 
+	// lookups that miss list the cloud again at most this often, however many of them miss.
+	private static final long MISS_REFRESH_MIN_AGE_MILLIS = 1000;
+
 	private int minRamMegabytes = DEFAULT_MIN_RAM_MB;
 	private String imageId = DEFAULT_IMAGE_ID_RACKSPACE;
 
@@ -88,11 +91,14 @@ public class JCloudsDeployer {
 	private final String key;
 
 	private final Properties overrides;
+
+	private final JCloudsNodeInventory inventory = new JCloudsNodeInventory(this);
 	
 	/*******
 	 * Shuts down the deployer, freeing all resources.
 	 */
 	public void close() {
+		this.inventory.close();
 		this.context.close();
 	}
 
@@ -108,6 +114,10 @@ public class JCloudsDeployer {
 		return overrides;
 	}
 
+	public String getProvider() {
+		return provider;
+	}
+
 	/********
 	 * .
 	 * 
@@ -189,6 +199,7 @@ public class JCloudsDeployer {
 		if (nodes.size() > 1) {
 			throw new IllegalStateException("Created too manys servers");
 		}
+		inventory.nodesCreated(nodes);
 
 		return nodes.iterator().next();
 
@@ -224,6 +235,7 @@ public class JCloudsDeployer {
 		if (nodes.size() > numberOfMachines) {
 			throw new IllegalStateException("Created too manys machines");
 		}
+		inventory.nodesCreated(nodes);
 
 		return nodes;
 
@@ -249,6 +261,7 @@ public class JCloudsDeployer {
 			if (nodes.size() != 1) {
 				throw new IllegalStateException();
 			}
+			inventory.nodesCreated(nodes);
 			return nodes.iterator().next();
 		} catch (RunNodesException e) {
 			// if there are nodes in the returned maps - kill them
@@ -263,6 +276,7 @@ public class JCloudsDeployer {
 	 */
 	@PreDestroy
 	public void destroy() {
+		inventory.close();
 		context.close();
 	}
 
@@ -275,8 +289,10 @@ public class JCloudsDeployer {
 	 */
 	public Set<? extends NodeMetadata> createDefaultServer(final String name)
 			throws RunNodesException {
-		return this.context.getComputeService().createNodesInGroup(
+		final Set<? extends NodeMetadata> nodes = this.context.getComputeService().createNodesInGroup(
 				name, 1);
+		inventory.nodesCreated(nodes);
+		return nodes;
 	}
 
 	public Set<? extends Image> getAllImages() {
@@ -304,6 +320,15 @@ public class JCloudsDeployer {
 		return minRamMegabytes;
 	}
 
+	/*******
+	 * Returns the inventory that all server lookups of this deployer are served from.
+	 * 
+	 * @return the node inventory.
+	 */
+	public JCloudsNodeInventory getInventory() {
+		return inventory;
+	}
+
 	/*******
 	 * Queries the cloud for a single server that matches the given critetia. If more then one is returned, throws an
 	 * exception.
@@ -312,7 +337,10 @@ public class JCloudsDeployer {
 	 * @return the node meta data, or null if no match is found.
 	 */
 	public NodeMetadata getServer(final Predicate<ComputeMetadata> filter) {
-		final Set<? extends NodeMetadata> nodes = getServers(filter);
+		return selectSingleNonTerminated(getServers(filter));
+	}
+
+	private NodeMetadata selectSingleNonTerminated(final Set<? extends NodeMetadata> nodes) {
 		final Set<NodeMetadata> runningNodes = new HashSet<NodeMetadata>();
 		final Iterator<? extends NodeMetadata> nodesIterator = nodes.iterator();
 		while (nodesIterator.hasNext()) {
@@ -331,23 +359,35 @@ public class JCloudsDeployer {
 	}
 
 	/********
-	 * Looks for a server with an ID that matches the given ID.
+	 * Looks for a server with an ID that matches the given ID. A miss refreshes the inventory, if it was not refreshed
+	 * recently, and looks again.
 	 * 
 	 * @param serverID the server ID.
 	 * @return the node meta data, or null.
 	 */
 	public NodeMetadata getServerByID(final String serverID) {
-		final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-			@Override
-			public boolean apply(final ComputeMetadata compute) {
-				return compute.getId().equals(serverID);
-			}
-
-		};
-
-		return getServer(filter);
+		return getServerByID(serverID, true);
+	}
 
+	/********
+	 * Looks for a server with an ID that matches the given ID.
+	 * 
+	 * @param serverID the server ID.
+	 * @param refreshOnMiss true to refresh the inventory on a miss, if it was not refreshed recently, and look again.
+	 *        Callers that expect a miss, like a check that a server name is free, pass false.
+	 * @return the node meta data, or null.
+	 */
+	public NodeMetadata getServerByID(final String serverID, final boolean refreshOnMiss) {
+		NodeMetadata node = inventory.getNodeById(serverID, false);
+		if (node == null && refreshOnMiss) {
+			// a miss usually means a node started by another process that we have not listed yet - look again.
+			inventory.refreshIfOlderThan(MISS_REFRESH_MIN_AGE_MILLIS);
+			node = inventory.getNodeById(serverID, false);
+		}
+		if (node == null || node.getStatus() == NodeMetadata.Status.TERMINATED) {
+			return null;
+		}
+		return node;
 	}
 
 	/*********
@@ -359,20 +399,7 @@ public class JCloudsDeployer {
 	 */
 	public NodeMetadata getServerByName(final String serverName) {
 		final String adaptedServerName = serverName.replace("_", "") + "-";
-
-		final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-			@Override
-			public boolean apply(final ComputeMetadata compute) {
-				if (compute.getName() == null) {
-					return false;
-				}
-				return compute.getName().startsWith(adaptedServerName);
-			}
-
-		};
-
-		return getServer(filter);
+		return selectSingleNonTerminated(inventory.getNodesByNamePrefix(adaptedServerName));
 	}
 
 	/*******************
@@ -382,7 +409,7 @@ public class JCloudsDeployer {
 	 * @return the nodes.
 	 */
 	public Set<? extends NodeMetadata> getServers(final Predicate<ComputeMetadata> filter) {
-		return this.context.getComputeService().listNodesDetailsMatching(filter);
+		return inventory.getNodes(filter);
 	}
 
 	/*******************
@@ -392,15 +419,7 @@ public class JCloudsDeployer {
 	 * @return the nodes.
 	 */
 	public Set<? extends NodeMetadata> getServers(final String group) {
-		return getServers(new Predicate<ComputeMetadata>() {
-
-			@Override
-			public boolean apply(final ComputeMetadata input) {
-				final NodeMetadata node = (NodeMetadata) input;
-				return node.getGroup() != null && node.getGroup().equals(group);
-			}
-		});
-
+		return inventory.getNodesByGroup(group);
 	}
 
 	/***********
@@ -410,18 +429,13 @@ public class JCloudsDeployer {
 	 * @return the node meta data, or null.
 	 */
 	public NodeMetadata getServerWithIP(final String ip) {
-		final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-			@Override
-			public boolean apply(final ComputeMetadata compute) {
-				final NodeMetadata node = (NodeMetadata) compute;
-				return node.getPrivateAddresses().contains(ip) || node.getPublicAddresses().contains(ip);
-			}
-
-		};
-
-		return getServer(filter);
-
+		Set<NodeMetadata> nodes = inventory.getNodesByIp(ip, false);
+		if (nodes.isEmpty()) {
+			// a miss here usually means a scale-in request for a node we have not listed yet - look again.
+			inventory.refreshIfOlderThan(MISS_REFRESH_MIN_AGE_MILLIS);
+			nodes = inventory.getNodesByIp(ip, false);
+		}
+		return selectSingleNonTerminated(nodes);
 	}
 
 	/************
@@ -653,6 +667,7 @@ public class JCloudsDeployer {
 	public void shutdownMachine(final String serverId) {
 		this.context.getComputeService().destroyNode(
 				serverId);
+		inventory.nodeDestroyed(serverId);
 	}
 
 	/*********
@@ -669,6 +684,7 @@ public class JCloudsDeployer {
 		// first shutdown the machine
 		this.context.getComputeService().destroyNode(
 				serverId);
+		inventory.nodeDestroyed(serverId);
 
 		logger.info("Machine: " + serverId + " shutdown has started. Waiting for process to complete");
 		final long endTime = System.currentTimeMillis() + unit.toMillis(duration);
@@ -724,6 +740,7 @@ public class JCloudsDeployer {
 						return input.getGroup() != null && input.getGroup().equals(group);
 					}
 				});
+		inventory.invalidate();
 	}
 
 	/********
@@ -744,6 +761,7 @@ public class JCloudsDeployer {
 						return false;
 					}
 				});
+		inventory.invalidate();
 	}
 
 	/*********
@@ -754,26 +772,9 @@ public class JCloudsDeployer {
 	 * @return the node meta data, or null.
 	 */
 	public NodeMetadata getServerByTag(final String tag) {
-		final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-			@Override
-			public boolean apply(final ComputeMetadata compute) {
-				final NodeMetadata node = (NodeMetadata) compute;
-				if (node.getGroup() == null) {
-					return false;
-				}
-				if (node.getGroup().equals(tag)) {
-					return true;
-				}
-				if (node.getGroup().equals(tag.replace("_", ""))) {
-					return true;
-				}
-				return false;
-			}
-
-		};
-
-		return getServer(filter);
+		final Set<NodeMetadata> nodes = new HashSet<NodeMetadata>(inventory.getNodesByGroup(tag));
+		nodes.addAll(inventory.getNodesByGroup(tag.replace("_", "")));
+		return selectSingleNonTerminated(nodes);
 	}
 
 	private Set<? extends NodeMetadata> createServersWithRetry(final String group, final int count,
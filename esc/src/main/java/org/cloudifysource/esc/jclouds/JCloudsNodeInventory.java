@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.jclouds;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import javax.management.ObjectName;
+
+import org.cloudifysource.dsl.utils.MBeanUtils;
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/************
+ * An in-memory inventory of the nodes visible to a {@link JCloudsDeployer}. A single listing of the cloud account is
+ * kept as an immutable snapshot, indexed by node ID, IP address, name and group (tag). Readers never block on each
+ * other: a lookup either reads the current snapshot, or - if it is older than the allowed staleness - triggers a
+ * refresh that concurrent readers share, so that at most one list call is in flight at any time.
+ *
+ * A background task refreshes the snapshot periodically while the inventory is in use, and stops listing once no
+ * lookups were made for a while. Node creation and destruction update the snapshot explicitly. Updates made while
+ * a listing is in flight are applied again to its result, as the listing may have started before they took effect.
+ *
+ * The inventory statistics are published as an MBean named "org.cloudifysource:type=JCloudsNodeInventory" while the
+ * background refresher runs.
+ *
+ * @since 2.7.0
+ *
+ */
+public class JCloudsNodeInventory {
+
+	private static final java.util.logging.Logger logger = java.util.logging.Logger
+			.getLogger(JCloudsNodeInventory.class.getName());
+
+	/**
+	 * Default interval between background refreshes.
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 5000;
+
+	// background refreshes stop after this many intervals without a lookup
+	private static final int IDLE_INTERVALS_BEFORE_PAUSE = 12;
+
+	private final JCloudsDeployer deployer;
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+	private final ReentrantLock refreshLock = new ReentrantLock();
+	private final Object updateMutex = new Object();
+
+	// updates made while a listing is in flight, by node ID. A null value marks a destroyed node. Guarded by
+	// updateMutex, null when no listing is in flight.
+	private Map<String, NodeMetadata> updatesDuringRefresh;
+	private boolean invalidatedDuringRefresh;
+
+	private volatile long refreshIntervalMillis = DEFAULT_REFRESH_INTERVAL_MILLIS;
+	private volatile long lastAccessTime = 0;
+
+	private ScheduledExecutorService refresher;
+	private ObjectName mbeanName;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshCount = new AtomicLong();
+	private final AtomicLong refreshFailures = new AtomicLong();
+	private final AtomicLong totalRefreshMillis = new AtomicLong();
+	private volatile long lastRefreshMillis = 0;
+
+	/***********
+	 * Constructor.
+	 *
+	 * @param deployer the deployer whose compute service is listed.
+	 */
+	public JCloudsNodeInventory(final JCloudsDeployer deployer) {
+		this.deployer = deployer;
+	}
+
+	public long getRefreshIntervalMillis() {
+		return refreshIntervalMillis;
+	}
+
+	/**********
+	 * Sets the interval between background refreshes. This is also the maximum age of a snapshot that lookups will
+	 * accept before refreshing it themselves.
+	 *
+	 * @param refreshIntervalMillis the refresh interval, in milliseconds.
+	 */
+	public void setRefreshIntervalMillis(final long refreshIntervalMillis) {
+		if (refreshIntervalMillis <= 0) {
+			throw new IllegalArgumentException("Refresh interval must be positive, got: " + refreshIntervalMillis);
+		}
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+
+	/*********
+	 * Returns the node with the given ID.
+	 *
+	 * @param id the node ID.
+	 * @param refreshOnMiss if true and the node is not found, the inventory is refreshed once and queried again.
+	 * @return the node meta data, or null if no such node exists.
+	 */
+	public NodeMetadata getNodeById(final String id, final boolean refreshOnMiss) {
+		NodeMetadata node = getSnapshot().byId.get(id);
+		if (node == null && refreshOnMiss) {
+			node = refreshSnapshot().byId.get(id);
+		}
+		return node;
+	}
+
+	/*********
+	 * Returns the nodes whose private or public addresses include the given IP.
+	 *
+	 * @param ip the IP address.
+	 * @param refreshOnMiss if true and no node is found, the inventory is refreshed once and queried again.
+	 * @return the matching nodes, possibly empty.
+	 */
+	public Set<NodeMetadata> getNodesByIp(final String ip, final boolean refreshOnMiss) {
+		Set<NodeMetadata> nodes = getSnapshot().getByIp(ip);
+		if (nodes.isEmpty() && refreshOnMiss) {
+			nodes = refreshSnapshot().getByIp(ip);
+		}
+		return nodes;
+	}
+
+	/*********
+	 * Returns the nodes whose group equals the given group.
+	 *
+	 * @param group the group (tag).
+	 * @return the matching nodes, possibly empty.
+	 */
+	public Set<NodeMetadata> getNodesByGroup(final String group) {
+		return getSnapshot().getByGroup(group);
+	}
+
+	/*********
+	 * Returns the nodes whose name starts with the given prefix.
+	 *
+	 * @param prefix the name prefix.
+	 * @return the matching nodes, possibly empty.
+	 */
+	public Set<NodeMetadata> getNodesByNamePrefix(final String prefix) {
+		final SortedMap<String, Set<NodeMetadata>> tail = getSnapshot().byName.tailMap(prefix);
+		final Set<NodeMetadata> result = new HashSet<NodeMetadata>();
+		for (final Map.Entry<String, Set<NodeMetadata>> entry : tail.entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			result.addAll(entry.getValue());
+		}
+		return result;
+	}
+
+	/*********
+	 * Returns all nodes that match the given filter.
+	 *
+	 * @param filter the filter.
+	 * @return the matching nodes, possibly empty.
+	 */
+	public Set<NodeMetadata> getNodes(final Predicate<ComputeMetadata> filter) {
+		final Set<NodeMetadata> result = new HashSet<NodeMetadata>();
+		for (final NodeMetadata node : getSnapshot().byId.values()) {
+			if (filter.apply(node)) {
+				result.add(node);
+			}
+		}
+		return result;
+	}
+
+	/*********
+	 * Adds newly created nodes to the inventory, so that they can be found before the next refresh lists them.
+	 *
+	 * @param nodes the created nodes.
+	 */
+	public void nodesCreated(final Collection<? extends NodeMetadata> nodes) {
+		synchronized (updateMutex) {
+			final Map<String, NodeMetadata> updated = new LinkedHashMap<String, NodeMetadata>(this.snapshot.byId);
+			for (final NodeMetadata node : nodes) {
+				updated.put(node.getId(), node);
+			}
+			this.snapshot = new Snapshot(updated.values(), this.snapshot.timestamp);
+			if (updatesDuringRefresh != null) {
+				for (final NodeMetadata node : nodes) {
+					updatesDuringRefresh.put(node.getId(), node);
+				}
+			}
+		}
+	}
+
+	/*********
+	 * Removes a destroyed node from the inventory.
+	 *
+	 * @param id the node ID.
+	 */
+	public void nodeDestroyed(final String id) {
+		synchronized (updateMutex) {
+			final Map<String, NodeMetadata> updated = new LinkedHashMap<String, NodeMetadata>(this.snapshot.byId);
+			if (updated.remove(id) != null) {
+				this.snapshot = new Snapshot(updated.values(), this.snapshot.timestamp);
+			}
+			if (updatesDuringRefresh != null) {
+				updatesDuringRefresh.put(id, null);
+			}
+		}
+	}
+
+	/**********
+	 * Marks the current snapshot as stale, so that the next lookup lists the cloud again. Used after operations whose
+	 * effect on the node list is not known in advance, like destroying all nodes that match a predicate.
+	 */
+	public void invalidate() {
+		synchronized (updateMutex) {
+			this.snapshot = new Snapshot(this.snapshot.byId.values(), 0);
+			if (updatesDuringRefresh != null) {
+				invalidatedDuringRefresh = true;
+			}
+		}
+	}
+
+	/**********
+	 * Lists the cloud now, unless another thread is already doing so, in which case waits for its result.
+	 */
+	public void refresh() {
+		refreshSnapshot();
+	}
+
+	/**********
+	 * Lists the cloud now if the current snapshot is older than the given age. Lets a caller that needs recent states
+	 * share the listings of the background refresher instead of adding its own.
+	 *
+	 * @param maxAgeMillis the maximum age of a snapshot that is still recent enough, in milliseconds.
+	 */
+	public void refreshIfOlderThan(final long maxAgeMillis) {
+		final Snapshot current = this.snapshot;
+		if (current.isOlderThan(maxAgeMillis)) {
+			refreshSnapshot(current);
+		}
+	}
+
+	/***********
+	 * Returns the inventory usage statistics.
+	 *
+	 * @return the statistics.
+	 */
+	public Statistics getStatistics() {
+		final long count = refreshCount.get();
+		return new Statistics(hits.get(), misses.get(), count, refreshFailures.get(),
+				count == 0 ? 0 : totalRefreshMillis.get() / count, lastRefreshMillis, this.snapshot.byId.size());
+	}
+
+	/**********
+	 * Stops the background refresher.
+	 */
+	public synchronized void close() {
+		if (this.refresher != null) {
+			this.refresher.shutdownNow();
+			this.refresher = null;
+		}
+		MBeanUtils.unregister(this.mbeanName);
+		this.mbeanName = null;
+	}
+
+	private Snapshot getSnapshot() {
+		this.lastAccessTime = System.currentTimeMillis();
+		ensureRefresherStarted();
+		final Snapshot current = this.snapshot;
+		if (!current.isOlderThan(refreshIntervalMillis * 2)) {
+			hits.incrementAndGet();
+			return current;
+		}
+		misses.incrementAndGet();
+		return refreshSnapshot(current);
+	}
+
+	private Snapshot refreshSnapshot() {
+		return refreshSnapshot(this.snapshot);
+	}
+
+	// single-flight: threads that queue on the lock behind a refresh that started after their snapshot was read
+	// reuse its result instead of listing again.
+	private Snapshot refreshSnapshot(final Snapshot seen) {
+		refreshLock.lock();
+		try {
+			final Snapshot current = this.snapshot;
+			if (current != seen && current.timestamp > seen.timestamp) {
+				return current;
+			}
+
+			synchronized (updateMutex) {
+				updatesDuringRefresh = new LinkedHashMap<String, NodeMetadata>();
+				invalidatedDuringRefresh = false;
+			}
+			final long start = System.currentTimeMillis();
+			final Set<? extends NodeMetadata> nodes;
+			try {
+				nodes = listAllNodes();
+			} catch (final RuntimeException e) {
+				refreshFailures.incrementAndGet();
+				throw e;
+			}
+			final long end = System.currentTimeMillis();
+
+			final Snapshot fresh;
+			synchronized (updateMutex) {
+				final Map<String, NodeMetadata> listed = new LinkedHashMap<String, NodeMetadata>();
+				for (final NodeMetadata node : nodes) {
+					listed.put(node.getId(), node);
+				}
+				for (final Map.Entry<String, NodeMetadata> update : updatesDuringRefresh.entrySet()) {
+					if (update.getValue() == null) {
+						listed.remove(update.getKey());
+					} else {
+						listed.put(update.getKey(), update.getValue());
+					}
+				}
+				fresh = new Snapshot(listed.values(), invalidatedDuringRefresh ? 0 : end);
+				this.snapshot = fresh;
+			}
+
+			lastRefreshMillis = end - start;
+			totalRefreshMillis.addAndGet(lastRefreshMillis);
+			refreshCount.incrementAndGet();
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Node inventory refreshed in " + lastRefreshMillis + " ms, " + fresh.byId.size()
+						+ " nodes. " + getStatistics());
+			}
+			return fresh;
+		} finally {
+			synchronized (updateMutex) {
+				updatesDuringRefresh = null;
+			}
+			refreshLock.unlock();
+		}
+	}
+
+	/*********
+	 * Lists all of the nodes in the cloud account.
+	 *
+	 * @return the nodes.
+	 */
+	protected Set<? extends NodeMetadata> listAllNodes() {
+		return deployer.getContext().getComputeService()
+				.listNodesDetailsMatching(Predicates.<ComputeMetadata> alwaysTrue());
+	}
+
+	private synchronized void ensureRefresherStarted() {
+		if (this.refresher != null) {
+			return;
+		}
+		this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "JCloudsNodeInventoryRefresher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.refresher.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				backgroundRefresh();
+			}
+		}, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+		this.mbeanName = MBeanUtils.register("JCloudsNodeInventory", getMBeanName(), new StatisticsMBean() {
+
+			@Override
+			public long getHits() {
+				return getStatistics().getHits();
+			}
+
+			@Override
+			public long getMisses() {
+				return getStatistics().getMisses();
+			}
+
+			@Override
+			public double getHitRate() {
+				return getStatistics().getHitRate();
+			}
+
+			@Override
+			public long getRefreshCount() {
+				return getStatistics().getRefreshCount();
+			}
+
+			@Override
+			public long getRefreshFailures() {
+				return getStatistics().getRefreshFailures();
+			}
+
+			@Override
+			public long getAverageRefreshMillis() {
+				return getStatistics().getAverageRefreshMillis();
+			}
+
+			@Override
+			public long getLastRefreshMillis() {
+				return getStatistics().getLastRefreshMillis();
+			}
+
+			@Override
+			public int getNodeCount() {
+				return getStatistics().getNodeCount();
+			}
+		}, StatisticsMBean.class);
+	}
+
+	private String getMBeanName() {
+		return deployer == null || deployer.getProvider() == null ? "inventory" : deployer.getProvider();
+	}
+
+	private void backgroundRefresh() {
+		final long now = System.currentTimeMillis();
+		if (now - lastAccessTime > refreshIntervalMillis * IDLE_INTERVALS_BEFORE_PAUSE) {
+			// nobody is looking - do not spend API calls.
+			return;
+		}
+		if (!this.snapshot.isOlderThan(refreshIntervalMillis / 2)) {
+			// a foreground refresh just happened.
+			return;
+		}
+		try {
+			refreshSnapshot();
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Background refresh of cloud node inventory failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**********
+	 * An immutable, indexed view of the node list.
+	 */
+	private static final class Snapshot {
+
+		private static final Snapshot EMPTY = new Snapshot(Collections.<NodeMetadata> emptySet(), 0);
+
+		private final long timestamp;
+		private final Map<String, NodeMetadata> byId = new LinkedHashMap<String, NodeMetadata>();
+		private final Map<String, Set<NodeMetadata>> byIp = new HashMap<String, Set<NodeMetadata>>();
+		private final Map<String, Set<NodeMetadata>> byGroup = new HashMap<String, Set<NodeMetadata>>();
+		private final TreeMap<String, Set<NodeMetadata>> byName = new TreeMap<String, Set<NodeMetadata>>();
+
+		Snapshot(final Collection<? extends NodeMetadata> nodes, final long timestamp) {
+			this.timestamp = timestamp;
+			for (final NodeMetadata node : nodes) {
+				byId.put(node.getId(), node);
+				for (final String ip : node.getPrivateAddresses()) {
+					index(byIp, ip, node);
+				}
+				for (final String ip : node.getPublicAddresses()) {
+					index(byIp, ip, node);
+				}
+				if (node.getGroup() != null) {
+					index(byGroup, node.getGroup(), node);
+				}
+				if (node.getName() != null) {
+					index(byName, node.getName(), node);
+				}
+			}
+		}
+
+		private static void index(final Map<String, Set<NodeMetadata>> index, final String key,
+				final NodeMetadata node) {
+			Set<NodeMetadata> set = index.get(key);
+			if (set == null) {
+				set = new HashSet<NodeMetadata>();
+				index.put(key, set);
+			}
+			set.add(node);
+		}
+
+		Set<NodeMetadata> getByIp(final String ip) {
+			final Set<NodeMetadata> set = byIp.get(ip);
+			return set == null ? Collections.<NodeMetadata> emptySet() : Collections.unmodifiableSet(set);
+		}
+
+		Set<NodeMetadata> getByGroup(final String group) {
+			final Set<NodeMetadata> set = byGroup.get(group);
+			return set == null ? Collections.<NodeMetadata> emptySet() : Collections.unmodifiableSet(set);
+		}
+
+		boolean isOlderThan(final long millis) {
+			return System.currentTimeMillis() - timestamp > millis;
+		}
+	}
+
+	/***********
+	 * The inventory statistics, as published over JMX.
+	 */
+	public interface StatisticsMBean {
+
+		long getHits();
+
+		long getMisses();
+
+		double getHitRate();
+
+		long getRefreshCount();
+
+		long getRefreshFailures();
+
+		long getAverageRefreshMillis();
+
+		long getLastRefreshMillis();
+
+		int getNodeCount();
+	}
+
+	/***********
+	 * Inventory usage statistics. A hit is a lookup served from the current snapshot, a miss is a lookup that had to
+	 * wait for a refresh.
+	 */
+	public static class Statistics {
+
+		private final long hits;
+		private final long misses;
+		private final long refreshCount;
+		private final long refreshFailures;
+		private final long averageRefreshMillis;
+		private final long lastRefreshMillis;
+		private final int nodeCount;
+
+		Statistics(final long hits, final long misses, final long refreshCount, final long refreshFailures,
+				final long averageRefreshMillis, final long lastRefreshMillis, final int nodeCount) {
+			this.hits = hits;
+			this.misses = misses;
+			this.refreshCount = refreshCount;
+			this.refreshFailures = refreshFailures;
+			this.averageRefreshMillis = averageRefreshMillis;
+			this.lastRefreshMillis = lastRefreshMillis;
+			this.nodeCount = nodeCount;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		/*********
+		 * Returns the fraction of lookups served without waiting for a refresh.
+		 *
+		 * @return the hit rate, between 0 and 1.
+		 */
+		public double getHitRate() {
+			final long total = hits + misses;
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		public long getRefreshCount() {
+			return refreshCount;
+		}
+
+		public long getRefreshFailures() {
+			return refreshFailures;
+		}
+
+		public long getAverageRefreshMillis() {
+			return averageRefreshMillis;
+		}
+
+		public long getLastRefreshMillis() {
+			return lastRefreshMillis;
+		}
+
+		public int getNodeCount() {
+			return nodeCount;
+		}
+
+		@Override
+		public String toString() {
+			return "Statistics [hits=" + hits + ", misses=" + misses + ", hitRate=" + getHitRate()
+					+ ", refreshCount=" + refreshCount + ", refreshFailures=" + refreshFailures
+					+ ", averageRefreshMillis=" + averageRefreshMillis + ", lastRefreshMillis=" + lastRefreshMillis
+					+ ", nodeCount=" + nodeCount + "]";
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the allocation and the background checks of {@link ByonDeployer}. The nodes are loopback addresses, and
+ * their login port is a local server socket.
+ *
+ * @since 2.7.0
+ */
+public class ByonDeployerTest {
+
+	private static final int NODES_PER_TEMPLATE = 4;
+	private static final long PROBE_INTERVAL_MILLIS = 100;
+	private static final long WAIT_MILLIS = 10000;
+
+	private ServerSocket loginSocket;
+	private ByonDeployer deployer;
+
+	@Before
+	public void before() throws IOException {
+		loginSocket = new ServerSocket(0);
+	}
+
+	@After
+	public void after() throws IOException {
+		if (deployer != null) {
+			deployer.close();
+		}
+		loginSocket.close();
+	}
+
+	@Test
+	public void testConcurrentCreateServerAcrossTemplates() throws Exception {
+		deployer = new ByonDeployer();
+		addNodes("small", 1);
+		addNodes("large", 2);
+
+		final int requests = 2 * NODES_PER_TEMPLATE;
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			final List<Future<CustomNode>> results = new ArrayList<Future<CustomNode>>();
+			for (int i = 0; i < requests; i++) {
+				final String templateName = i % 2 == 0 ? "small" : "large";
+				final String serverName = "server" + i;
+				results.add(executor.submit(new Callable<CustomNode>() {
+
+					@Override
+					public CustomNode call() throws Exception {
+						start.await();
+						return deployer.createServer(templateName, serverName);
+					}
+				}));
+			}
+			start.countDown();
+
+			// every request gets a node of its own template.
+			final Set<String> allocatedIps = new HashSet<String>();
+			for (int i = 0; i < requests; i++) {
+				final CustomNode node = results.get(i).get();
+				Assert.assertEquals("server" + i, node.getNodeName());
+				final String subnet = i % 2 == 0 ? "127.0.1." : "127.0.2.";
+				Assert.assertTrue(node.getPrivateIP(), node.getPrivateIP().startsWith(subnet));
+				Assert.assertTrue(allocatedIps.add(node.getPrivateIP()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (final String templateName : new String[] { "small", "large" }) {
+			Assert.assertEquals(NODES_PER_TEMPLATE, deployer.getAllocatedNodesByTemplateName(templateName).size());
+			Assert.assertTrue(deployer.getFreeNodesByTemplateName(templateName).isEmpty());
+			Assert.assertTrue(deployer.getInvalidNodesByTemplateName(templateName).isEmpty());
+		}
+		try {
+			deployer.createServer("small", "one-too-many");
+			Assert.fail("All the nodes of the template are allocated");
+		} catch (final Exception e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testProberMovesNodesBetweenFreeAndInvalidPools() throws Exception {
+		System.setProperty(ByonDeployer.PROBE_INTERVAL_PROPERTY_NAME, Long.toString(PROBE_INTERVAL_MILLIS));
+		try {
+			deployer = new ByonDeployer();
+		} finally {
+			System.clearProperty(ByonDeployer.PROBE_INTERVAL_PROPERTY_NAME);
+		}
+		addNodes("template", 1);
+
+		// the prober is started by the first allocation.
+		final CustomNode allocated = deployer.createServer("template", "server");
+		waitForPools("template", NODES_PER_TEMPLATE - 1, 0);
+
+		// the nodes stop responding, the free ones are moved to the invalid pool.
+		final int port = loginSocket.getLocalPort();
+		loginSocket.close();
+		waitForPools("template", 0, NODES_PER_TEMPLATE - 1);
+		Assert.assertEquals(1, deployer.getAllocatedNodesByTemplateName("template").size());
+
+		// the nodes respond again, and are moved back to the free pool.
+		loginSocket = new ServerSocket(port);
+		waitForPools("template", NODES_PER_TEMPLATE - 1, 0);
+
+		deployer.shutdownServer("template", allocated);
+		waitForPools("template", NODES_PER_TEMPLATE, 0);
+	}
+
+	// adds nodes at 127.0.<subnet>.1 and up, whose login port is the local server socket.
+	private void addNodes(final String templateName, final int subnet) throws Exception {
+		final List<Map<String, String>> nodesList = new ArrayList<Map<String, String>>();
+		final Map<String, String> nodeMap = new HashMap<String, String>();
+		nodeMap.put("id", templateName + "{0}");
+		final StringBuilder hostList = new StringBuilder();
+		for (int i = 1; i <= NODES_PER_TEMPLATE; i++) {
+			hostList.append(i == 1 ? "" : ",").append("127.0.").append(subnet).append('.').append(i);
+		}
+		nodeMap.put("host-list", hostList.toString());
+		nodesList.add(nodeMap);
+		deployer.addNodesList(templateName, new ComputeTemplate(), nodesList);
+
+		// the nodes were checked on the default login port, they are checked again when allocated.
+		for (final CustomNode node : deployer.getAllNodesByTemplateName(templateName)) {
+			node.setLoginPort(loginSocket.getLocalPort());
+		}
+	}
+
+	private void waitForPools(final String templateName, final int free, final int invalid) throws Exception {
+		final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+		while (deployer.getFreeNodesByTemplateName(templateName).size() != free
+				|| deployer.getInvalidNodesByTemplateName(templateName).size() != invalid) {
+			if (System.currentTimeMillis() > deadline) {
+				Assert.fail("Expected " + free + " free and " + invalid + " invalid nodes: "
+						+ deployer.getNodesDescription(templateName));
+			}
+			Thread.sleep(PROBE_INTERVAL_MILLIS);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.util.Arrays;
+
+import org.cloudifysource.esc.byon.ByonNodePool.PooledNode;
+import org.cloudifysource.esc.byon.ByonNodePool.State;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the moves of nodes between the pools of {@link ByonNodePool}.
+ *
+ * @since 2.7.0
+ */
+public class ByonNodePoolTest {
+
+	private final ByonNodePool pool = new ByonNodePool("template", -1);
+
+	@Test
+	public void testAllocateFreeTakesOnlyFreeNodes() {
+		final CustomNode first = createNode(1);
+		final CustomNode second = createNode(2);
+		final CustomNode invalid = createNode(3);
+		pool.add(first, true);
+		pool.add(second, true);
+		pool.add(invalid, false);
+
+		final PooledNode allocated = pool.allocateFree();
+		Assert.assertSame(first, allocated.getNode());
+		// a node added as valid was validated when it was added.
+		Assert.assertTrue(allocated.getLastValidationTime() > 0);
+		Assert.assertSame(second, pool.allocateFree().getNode());
+		Assert.assertNull(pool.allocateFree());
+
+		Assert.assertEquals(Arrays.asList(first, second), pool.getNodes(State.ALLOCATED));
+		Assert.assertTrue(pool.getNodes(State.FREE).isEmpty());
+		Assert.assertEquals(Arrays.asList(invalid), pool.getNodes(State.INVALID));
+		Assert.assertEquals(0, pool.getPooledNodes(State.INVALID).get(0).getLastValidationTime());
+	}
+
+	@Test
+	public void testReleaseMovesOnlyAllocatedNodes() {
+		final CustomNode node = createNode(1);
+		pool.add(node, true);
+		final PooledNode pooledNode = pool.allocateFree();
+
+		pool.release(node);
+		assertState(node, State.FREE);
+		Assert.assertFalse(pool.hasAllocatedNodes());
+
+		// an invalid node is not released to the free pool.
+		pool.invalidate(node);
+		assertState(node, State.INVALID);
+		pool.release(node);
+		assertState(node, State.INVALID);
+
+		pool.validateInvalid(pooledNode);
+		assertState(node, State.FREE);
+	}
+
+	@Test
+	public void testInvalidateMovesNodesOfAnyPool() {
+		final CustomNode node = createNode(1);
+		pool.add(node, true);
+
+		pool.invalidate(node);
+		assertState(node, State.INVALID);
+		final PooledNode pooledNode = pool.getPooledNodes(State.INVALID).get(0);
+		Assert.assertTrue(pool.allocateInvalid(pooledNode));
+		assertState(node, State.ALLOCATED);
+		Assert.assertFalse(pool.allocateInvalid(pooledNode));
+
+		pool.invalidate(node);
+		assertState(node, State.INVALID);
+	}
+
+	@Test
+	public void testConditionalMovesSkipNodesThatMoved() {
+		final CustomNode node = createNode(1);
+		pool.add(node, true);
+		final PooledNode pooledNode = pool.allocateFree();
+
+		// the prober found the node free, but it was allocated meanwhile.
+		pool.invalidateFree(pooledNode);
+		assertState(node, State.ALLOCATED);
+		pool.validateInvalid(pooledNode);
+		assertState(node, State.ALLOCATED);
+
+		pool.release(node);
+		pool.invalidateFree(pooledNode);
+		assertState(node, State.INVALID);
+		pool.validateInvalid(pooledNode);
+		assertState(node, State.FREE);
+	}
+
+	@Test
+	public void testUnknownNodesAreAdded() {
+		final CustomNode released = createNode(1);
+		final CustomNode invalidated = createNode(2);
+		pool.release(released);
+		pool.invalidate(invalidated);
+
+		assertState(released, State.FREE);
+		assertState(invalidated, State.INVALID);
+		Assert.assertSame(released, pool.getByIp("10.0.0.1"));
+		Assert.assertSame(invalidated, pool.getById("NODE2"));
+	}
+
+	@Test
+	public void testAllocateByIpTakesOnlyFreeNodes() {
+		final CustomNode free = createNode(1);
+		final CustomNode invalid = createNode(2);
+		pool.add(free, true);
+		pool.add(invalid, false);
+
+		Assert.assertNull(pool.allocateByIp("10.0.0.2"));
+		Assert.assertNull(pool.allocateByIp("10.0.0.3"));
+		Assert.assertSame(free, pool.allocateByIp(" 10.0.0.1 "));
+		Assert.assertNull(pool.allocateByIp("10.0.0.1"));
+		assertState(free, State.ALLOCATED);
+		assertState(invalid, State.INVALID);
+	}
+
+	private void assertState(final CustomNode node, final State state) {
+		for (final State other : State.values()) {
+			Assert.assertEquals(node + " in " + other, other == state, pool.getNodes(other).contains(node));
+		}
+	}
+
+	private static CustomNode createNode(final int index) {
+		return new CustomNodeImpl("BYON", "node" + index, "10.0.0." + index, null, "user", "password", null,
+				"node" + index);
+	}
+}
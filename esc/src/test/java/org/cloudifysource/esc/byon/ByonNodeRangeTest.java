@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudifysource.dsl.utils.IPUtils;
+import org.cloudifysource.esc.byon.ByonNodePool.PooledNode;
+import org.cloudifysource.esc.byon.ByonNodePool.State;
+import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ByonNodeRange}, {@link IPRangeSet} and the range nodes of {@link ByonNodePool}.
+ *
+ * @since 2.7.0
+ */
+public class ByonNodeRangeTest {
+
+	@Test
+	public void testRangeSetMergesAndSplitsIntervals() {
+		final IPRangeSet set = new IPRangeSet();
+		set.add(10, 20);
+		set.add(21, 30);
+		set.add(5, 12);
+		Assert.assertEquals(26, set.size());
+
+		set.remove(15, 16);
+		Assert.assertEquals(24, set.size());
+		Assert.assertFalse(set.contains(15));
+		Assert.assertTrue(set.contains(17));
+
+		final IPRangeSet other = new IPRangeSet();
+		other.add(0, 6);
+		other.add(14, 17);
+		final IPRangeSet overlap = set.intersection(other);
+		Assert.assertEquals(4, overlap.size());
+		Assert.assertTrue(overlap.contains(5));
+		Assert.assertTrue(overlap.contains(17));
+
+		Assert.assertEquals(5, set.pollFirst());
+		Assert.assertEquals(23, set.size());
+	}
+
+	@Test
+	public void testCidrWithExclusions() throws CloudProvisioningException {
+		final ByonNodeRange range = ByonNodeRange.parse("node{0}", "10.0.0.0/16", "10.0.0.0, 10.0.255.255",
+				"user", "password", null);
+		Assert.assertEquals(65534, range.getAddresses().size());
+
+		// IDs are numbered by the position in the listed range, exclusions leave gaps.
+		final CustomNode node = range.createNode(IPUtils.ip2Long("10.0.0.1"));
+		Assert.assertEquals("node2", node.getId());
+		Assert.assertEquals("10.0.0.1", node.getPrivateIP());
+		Assert.assertEquals(IPUtils.ip2Long("10.0.0.1"), range.getAddressOfId("NODE2"));
+		Assert.assertEquals(-1, range.getAddressOfId("node1"));
+		Assert.assertEquals(-1, range.getAddressOfId("other2"));
+	}
+
+	@Test
+	public void testMultipleRangesUsePrefix() throws CloudProvisioningException {
+		final ByonNodeRange range = ByonNodeRange.parse("byon-", "192.168.9.1-192.168.9.3,192.168.10.0/31", null,
+				null, null, null);
+		Assert.assertEquals(5, range.getAddresses().size());
+		Assert.assertEquals("byon-4", range.createNode(IPUtils.ip2Long("192.168.10.0")).getId());
+		Assert.assertEquals(IPUtils.ip2Long("192.168.10.1"), range.getAddressOfId("byon-5"));
+	}
+
+	@Test
+	public void testPoolCreatesRangeNodesWhenUsed() throws CloudProvisioningException {
+		final ByonNodeRange range = ByonNodeRange.parse("node", "10.0.0.1-10.0.0.100", null, null, null, null);
+		final ByonNodePool pool = new ByonNodePool("template", -1);
+		pool.addRange(range);
+		Assert.assertTrue(pool.getIpKeys().isEmpty());
+
+		final PooledNode allocated = pool.allocateFree();
+		Assert.assertEquals("10.0.0.1", allocated.getNode().getPrivateIP());
+		// a node created from a range was not validated yet.
+		Assert.assertEquals(0, allocated.getLastValidationTime());
+
+		final CustomNode byId = pool.getById("node50");
+		Assert.assertEquals("10.0.0.50", byId.getPrivateIP());
+		Assert.assertEquals(byId, pool.getByIp("10.0.0.50"));
+		Assert.assertEquals(2, pool.getIpKeys().size());
+
+		Assert.assertEquals(99, pool.getNodes(State.FREE).size());
+		Assert.assertEquals(100, pool.getAllNodes().size());
+
+		pool.release(allocated.getNode());
+		Assert.assertFalse(pool.hasAllocatedNodes());
+		Assert.assertEquals(null, pool.getByIp("10.0.1.1"));
+	}
+
+	@Test
+	public void testHostRangeListsAddressesRangesAndCidrs() throws CloudProvisioningException {
+		final List<CustomNode> nodes = new ArrayList<CustomNode>();
+		final List<ByonNodeRange> ranges = new ArrayList<ByonNodeRange>();
+		ByonUtils.parseCloudNodes(Arrays.asList(createNodeMap("10.0.0.5,10.0.0.7-10.0.0.9"),
+				createNodeMap("10.0.1.1"), createNodeMap("10.0.2.0/31, 10.0.3.1")), nodes, ranges);
+		Assert.assertTrue(nodes.isEmpty());
+		Assert.assertEquals(3, ranges.size());
+		Assert.assertEquals(4, ranges.get(0).getAddresses().size());
+		Assert.assertEquals(1, ranges.get(1).getAddresses().size());
+		Assert.assertEquals(3, ranges.get(2).getAddresses().size());
+	}
+
+	@Test
+	public void testInvalidHostRangeIsRejected() {
+		for (final String hostRange : Arrays.asList("10.0.0.5,10.0.0.x", "10.0.0.9-10.0.0.7", "10.0.0.1,,10.0.0.2")) {
+			try {
+				ByonUtils.parseCloudNodes(Arrays.asList(createNodeMap(hostRange)), new ArrayList<CustomNode>(),
+						new ArrayList<ByonNodeRange>());
+				Assert.fail("An invalid host range was accepted: " + hostRange);
+			} catch (final CloudProvisioningException e) {
+				Assert.assertTrue(e.getMessage().endsWith(hostRange));
+			}
+		}
+	}
+
+	private static Map<String, String> createNodeMap(final String hostRange) {
+		final Map<String, String> nodeMap = new HashMap<String, String>();
+		nodeMap.put("id", "node{0}");
+		nodeMap.put("host-range", hostRange);
+		return nodeMap;
+	}
+}
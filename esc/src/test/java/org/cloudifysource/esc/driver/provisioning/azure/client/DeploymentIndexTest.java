@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.azure.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DeploymentIndex}.
+ *
+ * @since 2.7.0
+ */
+public class DeploymentIndexTest {
+
+	private static final long TTL_MILLIS = 60 * 1000;
+
+	private final DeploymentIndex index = new DeploymentIndex(TTL_MILLIS);
+
+	@Test
+	public void testEntriesAreFoundByAddressAndService() {
+		final DeploymentIndex.Entry entry = new DeploymentIndex.Entry("service1", "deployment1", "10.0.0.1", "1.2.3.4");
+		index.put(entry);
+
+		Assert.assertSame(entry, index.get("10.0.0.1", true));
+		Assert.assertSame(entry, index.get("1.2.3.4", false));
+		Assert.assertNull(index.get("1.2.3.4", true));
+		Assert.assertSame(entry, index.getByService("service1"));
+		Assert.assertEquals("1.2.3.4", index.getByService("service1").getIp(false));
+
+		index.removeService("service1");
+		Assert.assertNull(index.get("10.0.0.1", true));
+		Assert.assertNull(index.getByService("service1"));
+	}
+
+	@Test
+	public void testNewEntryReplacesEntryOfService() {
+		index.put(new DeploymentIndex.Entry("service1", "deployment1", "10.0.0.1", null));
+		final DeploymentIndex.Entry entry = new DeploymentIndex.Entry("service1", "deployment2", "10.0.0.2", null);
+		index.put(entry);
+
+		Assert.assertNull(index.get("10.0.0.1", true));
+		Assert.assertSame(entry, index.get("10.0.0.2", true));
+	}
+
+	@Test
+	public void testRemovedServiceKeepsAddressMovedToAnotherService() {
+		index.put(new DeploymentIndex.Entry("service1", "deployment1", "10.0.0.1", null));
+		final DeploymentIndex.Entry entry = new DeploymentIndex.Entry("service2", "deployment2", "10.0.0.1", null);
+		index.put(entry);
+
+		index.removeService("service1");
+		Assert.assertSame(entry, index.get("10.0.0.1", true));
+	}
+
+	@Test
+	public void testEmptyServiceIsRemembered() {
+		index.put(new DeploymentIndex.Entry("service1", "deployment1", "10.0.0.1", null));
+		index.putEmptyService("service1");
+		Assert.assertTrue(index.isEmptyService("service1"));
+		Assert.assertNull(index.get("10.0.0.1", true));
+		Assert.assertFalse(index.isEmptyService("service2"));
+
+		// a virtual machine was deployed to the cloud service.
+		index.put(new DeploymentIndex.Entry("service1", "deployment2", "10.0.0.2", null));
+		Assert.assertFalse(index.isEmptyService("service1"));
+
+		index.putEmptyService("service1");
+		index.removeService("service1");
+		Assert.assertFalse(index.isEmptyService("service1"));
+	}
+
+	@Test
+	public void testEmptyServiceExpires() throws InterruptedException {
+		final DeploymentIndex expiringIndex = new DeploymentIndex(50);
+		expiringIndex.putEmptyService("service1");
+		Assert.assertTrue(expiringIndex.isEmptyService("service1"));
+
+		Thread.sleep(100);
+		Assert.assertFalse(expiringIndex.isEmptyService("service1"));
+	}
+
+	@Test
+	public void testEntryIsRecentUntilTtl() throws InterruptedException {
+		final DeploymentIndex expiringIndex = new DeploymentIndex(50);
+		final DeploymentIndex.Entry entry = new DeploymentIndex.Entry("service1", "deployment1", "10.0.0.1", null);
+		expiringIndex.put(entry);
+		Assert.assertTrue(expiringIndex.isRecent(entry));
+
+		Thread.sleep(100);
+		Assert.assertFalse(expiringIndex.isRecent(entry));
+	}
+}
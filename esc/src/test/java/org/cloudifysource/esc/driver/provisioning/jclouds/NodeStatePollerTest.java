@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.jclouds;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.jclouds.JCloudsNodeInventory;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadata.Status;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link NodeStatePoller}.
+ *
+ * @since 2.7.0
+ */
+public class NodeStatePollerTest {
+
+	private static final long POLLING_INTERVAL = 20;
+
+	private final Map<String, Status> cloudNodes = new ConcurrentHashMap<String, Status>();
+	private final AtomicInteger listCalls = new AtomicInteger();
+	private volatile RuntimeException listError;
+	private JCloudsNodeInventory inventory;
+	private NodeStatePoller poller;
+	private ExecutorService waiters;
+
+	@Before
+	public void before() {
+		inventory = new JCloudsNodeInventory(null) {
+			@Override
+			protected Set<? extends NodeMetadata> listAllNodes() {
+				listCalls.incrementAndGet();
+				if (listError != null) {
+					throw listError;
+				}
+				final Set<NodeMetadata> nodes = new HashSet<NodeMetadata>();
+				for (final Map.Entry<String, Status> entry : cloudNodes.entrySet()) {
+					nodes.add(new NodeMetadataBuilder().id(entry.getKey()).providerId(entry.getKey())
+							.name("node-" + entry.getKey()).status(entry.getValue())
+							.privateAddresses(Collections.<String> emptySet())
+							.publicAddresses(Collections.<String> emptySet()).build());
+				}
+				return nodes;
+			}
+		};
+		inventory.setRefreshIntervalMillis(60000);
+		poller = new NodeStatePoller("test", inventory, POLLING_INTERVAL);
+		waiters = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void after() {
+		waiters.shutdownNow();
+		poller.close();
+		inventory.close();
+	}
+
+	@Test
+	public void testPendingNodesArePolledTogether() throws Exception {
+		cloudNodes.put("1", Status.PENDING);
+		cloudNodes.put("2", Status.PENDING);
+		final Future<NodeMetadata> first = waitFor("1", 10000);
+		final Future<NodeMetadata> second = waitFor("2", 10000);
+
+		while (poller.getPendingNodesCount() < 2) {
+			Thread.sleep(POLLING_INTERVAL);
+		}
+		Thread.sleep(POLLING_INTERVAL * 5);
+		cloudNodes.put("1", Status.RUNNING);
+		cloudNodes.put("2", Status.RUNNING);
+
+		Assert.assertEquals("1", first.get().getId());
+		Assert.assertEquals("2", second.get().getId());
+		final NodeStatePoller.Statistics statistics = poller.getStatistics();
+		Assert.assertEquals(2, statistics.getCompletedNodes());
+		Assert.assertEquals(0, statistics.getPendingNodes());
+		// one listing per tick, shared by both nodes.
+		Assert.assertTrue(listCalls.get() <= statistics.getTicks() + 1);
+	}
+
+	@Test
+	public void testConcurrentWaitsForTheSameNode() throws Exception {
+		cloudNodes.put("1", Status.PENDING);
+		final Future<NodeMetadata> first = waitFor("1", 10000);
+		final Future<NodeMetadata> second = waitFor("1", 10000);
+
+		while (poller.getPendingNodesCount() < 1) {
+			Thread.sleep(POLLING_INTERVAL);
+		}
+		Thread.sleep(POLLING_INTERVAL * 5);
+		cloudNodes.put("1", Status.RUNNING);
+
+		Assert.assertEquals("1", first.get().getId());
+		Assert.assertEquals("1", second.get().getId());
+		Assert.assertEquals(2, poller.getStatistics().getCompletedNodes());
+		Assert.assertEquals(0, poller.getPendingNodesCount());
+	}
+
+	@Test
+	public void testFailureStateFailsTheWait() throws Exception {
+		cloudNodes.put("1", Status.ERROR);
+		try {
+			poller.waitForNodeToBecomeReady("1", System.currentTimeMillis() + 10000);
+			Assert.fail("Expected the wait to fail");
+		} catch (final CloudProvisioningException e) {
+			Assert.assertTrue(e.getMessage().contains("ERROR"));
+		}
+		Assert.assertEquals(1, poller.getStatistics().getFailedNodes());
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testNodeThatDoesNotStartTimesOut() throws Exception {
+		cloudNodes.put("1", Status.PENDING);
+		poller.waitForNodeToBecomeReady("1", System.currentTimeMillis() + POLLING_INTERVAL * 5);
+	}
+
+	@Test
+	public void testThrottlingIsRecognizedByStatusCode() {
+		Assert.assertTrue(NodeStatePoller.isThrottlingError(createHttpError(429)));
+		Assert.assertTrue(NodeStatePoller.isThrottlingError(new RuntimeException(createHttpError(503))));
+		Assert.assertFalse(NodeStatePoller.isThrottlingError(createHttpError(404)));
+		// the message of an unrelated error is not considered.
+		Assert.assertFalse(NodeStatePoller.isThrottlingError(new RuntimeException("Rate exceeded")));
+	}
+
+	@Test
+	public void testThrottlingBacksOff() throws Exception {
+		cloudNodes.put("1", Status.PENDING);
+		listError = createHttpError(429);
+		final Future<NodeMetadata> wait = waitFor("1", 10000);
+		while (poller.getStatistics().getThrottledCalls() < 2) {
+			Thread.sleep(POLLING_INTERVAL);
+		}
+		Assert.assertTrue(poller.getStatistics().getPollingIntervalMillis() > POLLING_INTERVAL);
+
+		listError = null;
+		cloudNodes.put("1", Status.RUNNING);
+		Assert.assertEquals("1", wait.get().getId());
+	}
+
+	@Test
+	public void testStatisticsArePublished() throws Exception {
+		cloudNodes.put("1", Status.RUNNING);
+		poller.waitForNodeToBecomeReady("1", System.currentTimeMillis() + 10000);
+
+		final ObjectName name = new ObjectName("org.cloudifysource:type=NodeStatePoller,name=\"test\"");
+		Assert.assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "CompletedNodes"));
+		poller.close();
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	private Future<NodeMetadata> waitFor(final String id, final long timeoutMillis) {
+		return waiters.submit(new Callable<NodeMetadata>() {
+
+			@Override
+			public NodeMetadata call() throws Exception {
+				return poller.waitForNodeToBecomeReady(id, System.currentTimeMillis() + timeoutMillis);
+			}
+		});
+	}
+
+	private static HttpResponseException createHttpError(final int statusCode) {
+		return new HttpResponseException("request failed", null, HttpResponse.builder().statusCode(statusCode)
+				.message("error").build());
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.jclouds;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JCloudsNodeInventory}.
+ *
+ */
+public class JCloudsNodeInventoryTest {
+
+	private final Set<NodeMetadata> cloudNodes = new HashSet<NodeMetadata>();
+	private final AtomicInteger listCalls = new AtomicInteger();
+	// runs while the cloud is being listed, to simulate updates that race with a refresh.
+	private Runnable duringListing;
+	private JCloudsNodeInventory inventory;
+
+	@Before
+	public void before() {
+		cloudNodes.add(createNode("1", "cloudify-agent-1", "cloudify_agent", "10.0.0.1"));
+		cloudNodes.add(createNode("2", "cloudify-agent-2", "cloudify_agent", "10.0.0.2"));
+		cloudNodes.add(createNode("3", "cloudify-manager-1", "cloudify_manager", "10.0.0.3"));
+
+		inventory = new JCloudsNodeInventory(null) {
+			@Override
+			protected Set<? extends NodeMetadata> listAllNodes() {
+				listCalls.incrementAndGet();
+				final Set<NodeMetadata> listed = new HashSet<NodeMetadata>(cloudNodes);
+				if (duringListing != null) {
+					duringListing.run();
+				}
+				return listed;
+			}
+		};
+		inventory.setRefreshIntervalMillis(60000);
+	}
+
+	@After
+	public void after() {
+		inventory.close();
+	}
+
+	@Test
+	public void testLookupsShareOneListing() {
+		Assert.assertEquals("1", inventory.getNodeById("1", false).getId());
+		Assert.assertEquals("3", inventory.getNodesByIp("10.0.0.3", false).iterator().next().getId());
+		Assert.assertEquals(2, inventory.getNodesByGroup("cloudify_agent").size());
+		Assert.assertEquals(2, inventory.getNodesByNamePrefix("cloudify-agent-").size());
+		Assert.assertNull(inventory.getNodeById("4", false));
+
+		Assert.assertEquals(1, listCalls.get());
+		Assert.assertEquals(1, inventory.getStatistics().getMisses());
+		Assert.assertEquals(4, inventory.getStatistics().getHits());
+	}
+
+	@Test
+	public void testCreateAndDestroyUpdateIndexes() {
+		inventory.refresh();
+		inventory.nodesCreated(Collections.singleton(createNode("4", "cloudify-agent-3", "cloudify_agent",
+				"10.0.0.4")));
+		Assert.assertNotNull(inventory.getNodeById("4", false));
+		Assert.assertEquals(3, inventory.getNodesByGroup("cloudify_agent").size());
+
+		inventory.nodeDestroyed("1");
+		Assert.assertNull(inventory.getNodeById("1", false));
+		Assert.assertTrue(inventory.getNodesByIp("10.0.0.1", false).isEmpty());
+		Assert.assertEquals(1, listCalls.get());
+	}
+
+	@Test
+	public void testRefreshOnMissAndInvalidate() {
+		inventory.refresh();
+		cloudNodes.add(createNode("5", "cloudify-agent-5", "cloudify_agent", "10.0.0.5"));
+
+		Assert.assertTrue(inventory.getNodesByIp("10.0.0.5", false).isEmpty());
+		Assert.assertEquals(1, inventory.getNodesByIp("10.0.0.5", true).size());
+		Assert.assertEquals(2, listCalls.get());
+
+		inventory.invalidate();
+		inventory.getNodeById("5", false);
+		Assert.assertEquals(3, listCalls.get());
+	}
+
+	@Test
+	public void testRefreshIfOlderThanKeepsRecentSnapshot() throws Exception {
+		inventory.refresh();
+		cloudNodes.add(createNode("5", "cloudify-agent-5", "cloudify_agent", "10.0.0.5"));
+
+		inventory.refreshIfOlderThan(60000);
+		Assert.assertNull(inventory.getNodeById("5", false));
+		Assert.assertEquals(1, listCalls.get());
+
+		Thread.sleep(50);
+		inventory.refreshIfOlderThan(10);
+		Assert.assertNotNull(inventory.getNodeById("5", false));
+		Assert.assertEquals(2, listCalls.get());
+	}
+
+	@Test
+	public void testUpdatesDuringRefreshAreKept() {
+		inventory.refresh();
+		duringListing = new Runnable() {
+
+			@Override
+			public void run() {
+				inventory.nodesCreated(Collections.singleton(createNode("6", "cloudify-agent-6", "cloudify_agent",
+						"10.0.0.6")));
+				inventory.nodeDestroyed("2");
+			}
+		};
+		inventory.refresh();
+		duringListing = null;
+
+		Assert.assertNotNull(inventory.getNodeById("6", false));
+		Assert.assertNull(inventory.getNodeById("2", false));
+		Assert.assertEquals(2, listCalls.get());
+	}
+
+	@Test
+	public void testStatisticsArePublished() throws Exception {
+		inventory.getNodeById("1", false);
+		final ObjectName name = new ObjectName("org.cloudifysource:type=JCloudsNodeInventory,name=*");
+		final Set<ObjectName> names = ManagementFactory.getPlatformMBeanServer().queryNames(name, null);
+		Assert.assertEquals(1, names.size());
+		Assert.assertEquals(3, ManagementFactory.getPlatformMBeanServer().getAttribute(names.iterator().next(),
+				"NodeCount"));
+
+		inventory.close();
+		Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(name, null).isEmpty());
+	}
+
+	private static NodeMetadata createNode(final String id, final String name, final String group,
+			final String ip) {
+		return new NodeMetadataBuilder().id(id).providerId(id).name(name).group(group)
+				.status(NodeMetadata.Status.RUNNING)
+				.privateAddresses(new HashSet<String>(Arrays.asList(ip)))
+				.publicAddresses(Collections.<String> emptySet()).build();
+	}
+}
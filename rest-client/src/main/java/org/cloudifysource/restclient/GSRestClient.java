@@ -52,7 +52,6 @@ import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
@@ -61,7 +60,6 @@ import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
@@ -70,6 +68,7 @@ import org.apache.http.protocol.HttpContext;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyErrorMessages;
 import org.cloudifysource.dsl.rest.response.ControllerDetails;
+import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.type.TypeFactory;
 import org.codehaus.jackson.type.JavaType;
@@ -95,6 +94,7 @@ public class GSRestClient {
 	private static final String ERROR_ARGS = "error_args";
 	private static final String VERBOSE = "verbose";
 	private static final ObjectMapper PROJECT_MAPPER = new ObjectMapper();
+	private static final JavaType MAP_TYPE = TypeFactory.type(Map.class);
 	private static final String RESPONSE_KEY = "response";
 	private static final String ADMIN_REFLECTION_URL = "/admin/";
 	private static final String FORWARD_SLASH = "/";
@@ -134,7 +134,7 @@ public class GSRestClient {
 		if (isSSL()) {
 			httpClient = getSSLHttpClient();
 		} else {
-			httpClient = new DefaultHttpClient();
+			httpClient = RestHttpClientFactory.createHttpClient();
 		}
 		httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
 
@@ -169,7 +169,7 @@ public class GSRestClient {
 		if (isSSL()) {
 			httpClient = getSSLHttpClient();
 		} else {
-			httpClient = new DefaultHttpClient();
+			httpClient = RestHttpClientFactory.createHttpClient();
 		}
 		httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
 
@@ -310,10 +310,7 @@ public class GSRestClient {
 				throw e;
 			}
 			instream = entity.getContent();
-			final String responseBody = StringUtils.getStringFromStream(instream);
-			logger.finer(httpMethod.getURI() + MSG_HTTP_GET_RESPONSE + responseBody);
-			final Map<String, Object> responseMap = GSRestClient.jsonToMap(responseBody);
-			return responseMap;
+			return readJsonMap(instream, httpMethod.getURI());
 		} catch (final ClientProtocolException e) {
 			logger.log(Level.FINE, httpMethod.getURI() + MSG_REST_API_ERR, e);
 			throw new ErrorStatusException(e, REASON_CODE_COMM_ERR, httpMethod.getURI(), MSG_REST_API_ERR);
@@ -409,8 +406,7 @@ public class GSRestClient {
 
 			}
 
-			responseBody = getResponseBody(response, httpMethod);
-			final Map<String, Object> responseMap = GSRestClient.jsonToMap(responseBody);
+			final Map<String, Object> responseMap = readResponseMap(response, httpMethod);
 			return responseJsonKey != null ? responseMap.get(RESPONSE_KEY) : responseMap;
 		} catch (final IOException e) {
 			logger.log(Level.INFO, httpMethod.getURI() + MSG_REST_API_ERR, e);
@@ -458,6 +454,55 @@ public class GSRestClient {
 		}
 	}
 
+	/**
+	 * Reads the body of a successful HTTP response as a json map. The body is parsed as it is received, unless it is
+	 * logged.
+	 *
+	 * @param response
+	 *            The HttpResponse object to analyze
+	 * @param httpMethod
+	 *            The HTTP request that originated this response
+	 * @return the body of the given HttpResponse object, as a map
+	 * @throws ErrorStatusException
+	 *             Reporting a communication failure or a body that is not a json map
+	 * @throws IOException
+	 *             Reporting a failure to read the response's content
+	 */
+	private static Map<String, Object> readResponseMap(final HttpResponse response, final HttpRequestBase httpMethod)
+			throws ErrorStatusException, IOException {
+		final HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			final ErrorStatusException e = new ErrorStatusException(REASON_CODE_COMM_ERR, httpMethod.getURI(),
+					MSG_RESPONSE_ENTITY_NULL);
+			logger.log(Level.FINE, MSG_RESPONSE_ENTITY_NULL, e);
+			throw e;
+		}
+		final InputStream instream = entity.getContent();
+		try {
+			return readJsonMap(instream, httpMethod.getURI());
+		} finally {
+			try {
+				instream.close();
+			} catch (final IOException e) {
+				logger.log(Level.FINE, "Failed to close response of " + httpMethod.getURI(), e);
+			}
+		}
+	}
+
+	private static Map<String, Object> readJsonMap(final InputStream instream, final URI uri)
+			throws ErrorStatusException, IOException {
+		if (logger.isLoggable(Level.FINER)) {
+			final String responseBody = StringUtils.getStringFromStream(instream);
+			logger.finer(uri + MSG_HTTP_GET_RESPONSE + responseBody);
+			return GSRestClient.jsonToMap(responseBody);
+		}
+		try {
+			return PROJECT_MAPPER.readValue(instream, MAP_TYPE);
+		} catch (final JsonProcessingException e) {
+			throw new ErrorStatusException(e, CloudifyErrorMessages.JSON_PARSE_ERROR.getName(), uri);
+		}
+	}
+
 	/**
 	 * Executes the given HTTP request and analyzes the response. Successful responses are expected to be formatted as
 	 * json strings, and are converted to a Map<String, Object> object. The map can use these keys: "status"
@@ -494,10 +539,7 @@ public class GSRestClient {
 				throw e;
 			}
 			instream = entity.getContent();
-			final String responseBody = StringUtils.getStringFromStream(instream);
-			logger.finer(uri + MSG_HTTP_GET_RESPONSE + responseBody);
-			final Map<String, Object> responseMap = GSRestClient.jsonToMap(responseBody);
-			return responseMap;
+			return readJsonMap(instream, uri);
 		} catch (final ClientProtocolException e) {
 			logger.log(Level.FINE, uri + MSG_REST_API_ERR, e);
 			throw new ErrorStatusException(e, REASON_CODE_COMM_ERR, uri, MSG_REST_API_ERR);
@@ -837,9 +879,7 @@ public class GSRestClient {
 			final SchemeRegistry registry = new SchemeRegistry();
 			registry.register(new Scheme(HTTPS, sf, url.getPort()));
 
-			final ClientConnectionManager ccm = new ThreadSafeClientConnManager(params, registry);
-
-			return new DefaultHttpClient(ccm, params);
+			return RestHttpClientFactory.createHttpClient(registry, params);
 		} catch (final KeyStoreException e) {
 			throw new RestException(e);
 		} catch (final NoSuchAlgorithmException e) {
@@ -865,8 +905,7 @@ public class GSRestClient {
 	 */
 	public static Map<String, Object> jsonToMap(final String response) throws ErrorStatusException {
 		try {
-			final JavaType javaType = TypeFactory.type(Map.class);
-			return PROJECT_MAPPER.readValue(response, javaType);
+			return PROJECT_MAPPER.readValue(response, MAP_TYPE);
 		} catch (final IOException e) {
 			throw new ErrorStatusException(e, CloudifyErrorMessages.JSON_PARSE_ERROR.getName(), response);
 		}
@@ -14,7 +14,9 @@ package org.cloudifysource.restclient;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
@@ -31,18 +33,18 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
-import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.SystemDefaultHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyErrorMessages;
+import org.cloudifysource.dsl.internal.UploadContentHash;
 import org.cloudifysource.dsl.rest.AddTemplatesException;
 import org.cloudifysource.dsl.rest.request.AddTemplatesRequest;
 import org.cloudifysource.dsl.rest.request.InstallApplicationRequest;
@@ -61,6 +63,7 @@ import org.cloudifysource.dsl.rest.response.UninstallApplicationResponse;
 import org.cloudifysource.dsl.rest.response.UninstallServiceResponse;
 import org.cloudifysource.dsl.rest.response.UploadResponse;
 import org.cloudifysource.restclient.exceptions.RestClientException;
+import org.cloudifysource.restclient.exceptions.RestClientHttpException;
 import org.cloudifysource.restclient.messages.MessagesUtils;
 import org.cloudifysource.restclient.messages.RestClientMessageKeys;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -87,7 +90,12 @@ public class RestClient {
 	private static final String INSTALL_SERVICE_URL_FORMAT = "%s/services/%s";
 	private static final String INSTALL_APPLICATION_URL_FORMAT = "%s";
 	private static final String UPLOAD_URL_FORMAT = "%s";
+	private static final String UPLOAD_CONTENT_URL_FORMAT = "content/%s";
+	private static final String UPLOAD_CONTENT_FILE_URL_FORMAT = "content/%s/%s";
+	private static final String UPLOAD_CONTENT_CHUNK_URL_FORMAT = "content/%s/%s/chunk?%s=%s";
+	private static final String UPLOAD_CONTENT_COMPLETE_URL_FORMAT = "content/%s/%s/complete";
 	private static final String GET_DEPLOYMENT_EVENTS_URL_FORMAT = "%s/events/?from=%s&to=%s";
+	private static final String WAIT_FOR_DEPLOYMENT_EVENTS_URL_FORMAT = "%s/events/?from=%s&to=%s&timeout=%s";
 	private static final String GET_SERVICE_DESCRIPTION_URL_FORMAT = "%s/service/%s/description";
 	private static final String GET_SERVICES_DESCRIPTION_URL_FORMAT = "%s/description";
 	private static final String GET_APPLICATION_DESCRIPTION_URL_FORMAT = "applications/%s/description";
@@ -99,6 +107,8 @@ public class RestClient {
 
 	private static final String SET_INSTANCES_URL_FORMAT = "%s/services/%s/count";
 	private static final String GET_LAST_EVENT_URL_FORMAT = "%s/events/last/";
+	private static final String MACHINES_DUMP_URL_FORMAT =
+			"/service/dump/machines/stream?processors=%s&fileSizeLimit=%s";
 
 	protected final RestClientExecutor executor;
 	private String versionedDeploymentControllerUrl;
@@ -246,6 +256,10 @@ public class RestClient {
 
 	/**
 	 * Uploads a file to the repository.
+	 * The file is uploaded by its content hash, so a file the server already has is not uploaded again, and files
+	 * larger than {@link CloudifyConstants#UPLOAD_CHUNK_SIZE_BYTES} are uploaded in chunks, resuming a previous
+	 * upload of the same file if it was interrupted. Servers that do not support content addressed uploads get the
+	 * whole file.
 	 * 
 	 * @param fileName
 	 *            The name of the file to upload.
@@ -260,6 +274,17 @@ public class RestClient {
         if (logger.isLoggable(Level.FINE)) {
         	logger.fine("uploading file " + file.getAbsolutePath() + " with name " + finalFileName);
         }
+        try {
+        	return uploadContent(finalFileName, file, computeContentHash(file));
+        } catch (final RestClientHttpException e) {
+        	if (e.getStatusCode() != CloudifyConstants.HTTP_STATUS_NOT_FOUND) {
+        		throw e;
+        	}
+        	if (logger.isLoggable(Level.FINE)) {
+        		logger.fine("content addressed uploads are not supported by the server, uploading the whole file.");
+        	}
+        }
+
 		final String uploadUrl = getFormattedUrl(
 				versionedUploadControllerUrl, 
 				UPLOAD_URL_FORMAT, 
@@ -273,8 +298,61 @@ public class RestClient {
 						new TypeReference<Response<UploadResponse>>() { });	
 		return response;
 	}
-	
-	
+
+	private UploadResponse uploadContent(final String fileName, final File file, final String contentHash)
+			throws RestClientException {
+		final TypeReference<Response<UploadResponse>> responseTypeReference =
+				new TypeReference<Response<UploadResponse>>() { };
+		final UploadResponse status = executor.get(
+				getFormattedUrl(versionedUploadControllerUrl, UPLOAD_CONTENT_URL_FORMAT, contentHash),
+				responseTypeReference);
+		if (status.getUploadKey() != null) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("file " + file.getAbsolutePath() + " was already uploaded with key "
+						+ status.getUploadKey());
+			}
+			return status;
+		}
+
+		final long length = file.length();
+		long offset = status.getUploadedBytes();
+		if (offset == 0 && length <= CloudifyConstants.UPLOAD_CHUNK_SIZE_BYTES) {
+			return executor.postFile(
+					getFormattedUrl(versionedUploadControllerUrl, UPLOAD_CONTENT_FILE_URL_FORMAT, contentHash, fileName),
+					file,
+					CloudifyConstants.UPLOAD_FILE_PARAM_NAME,
+					responseTypeReference);
+		}
+
+		if (offset > 0 && logger.isLoggable(Level.FINE)) {
+			logger.fine("resuming upload of file " + file.getAbsolutePath() + " from offset " + offset);
+		}
+		while (offset < length) {
+			final int chunkLength = (int) Math.min(CloudifyConstants.UPLOAD_CHUNK_SIZE_BYTES, length - offset);
+			final UploadResponse chunkResponse = executor.postFilePart(
+					getFormattedUrl(versionedUploadControllerUrl, UPLOAD_CONTENT_CHUNK_URL_FORMAT,
+							contentHash, fileName, CloudifyConstants.UPLOAD_OFFSET_PARAM_NAME, Long.toString(offset)),
+					file,
+					offset,
+					chunkLength,
+					CloudifyConstants.UPLOAD_FILE_PARAM_NAME,
+					responseTypeReference);
+			offset = chunkResponse.getUploadedBytes();
+		}
+		return executor.post(
+				getFormattedUrl(versionedUploadControllerUrl, UPLOAD_CONTENT_COMPLETE_URL_FORMAT, contentHash, fileName),
+				responseTypeReference);
+	}
+
+	private static String computeContentHash(final File file) throws RestClientException {
+		try {
+			return UploadContentHash.compute(file);
+		} catch (final IOException e) {
+			throw MessagesUtils.createRestClientIOException(
+					RestClientMessageKeys.READ_FILE_FAILURE.getName(), e, file.getAbsolutePath());
+		}
+	}
+
 	/**
 	 * Provides access to life cycle events of a service.
 	 * 
@@ -300,6 +378,36 @@ public class RestClient {
 		});
 	}
 
+	/**
+	 * Provides access to life cycle events of a service, waiting for new events if there are none. If the event at index
+	 * 'from' was not received by the server yet, the server holds the request until it is received or until the
+	 * timeout passes, so callers do not need to poll repeatedly while nothing happens.
+	 * 
+	 * @param deploymentId
+	 *            The deployment id given at installation time.
+	 * @param from
+	 *            The starting event index.
+	 * @param to
+	 *            The last event index. passing -1 means all events (limit to 100 at a time)
+	 * @param timeoutSeconds
+	 *            The maximum number of seconds the server waits for new events. The server may use a lower limit.
+	 * @return The events. May be empty if no new events were received before the timeout.
+	 * @throws RestClientException .
+	 */
+	public DeploymentEvents waitForDeploymentEvents(final String deploymentId, final int from, final int to,
+			final int timeoutSeconds) throws RestClientException {
+		validateDeploymentID(deploymentId, "waitForDeploymentEvents(String,int,int,int)");
+		String url = getFormattedUrl(
+				versionedDeploymentControllerUrl, 
+				WAIT_FOR_DEPLOYMENT_EVENTS_URL_FORMAT, 
+				deploymentId, 
+				String.valueOf(from), 
+				String.valueOf(to),
+				String.valueOf(timeoutSeconds));
+		return executor.get(url, new TypeReference<Response<DeploymentEvents>>() {
+		});
+	}
+
 	private void validateDeploymentID(final String deploymentId, final String methodName) throws RestClientException {
 		if (deploymentId == null) {
 			logger.warning("[" + methodName + "] - deployment ID is missing.");
@@ -440,6 +548,32 @@ public class RestClient {
 
 	}
 
+	/********
+	 * Downloads the dumps of all machines as a single zip file, with an entry for each machine. The file is written as
+	 * it is received from the server.
+	 *
+	 * @param processors
+	 *            comma separated list of dump processors to use.
+	 * @param fileSizeLimit
+	 *            the maximum total size of the dumps, in bytes.
+	 * @param target
+	 *            the file to write the dump to.
+	 * @return the size of the downloaded file.
+	 * @throws RestClientException
+	 *             in case of an error on the rest server.
+	 */
+	public long downloadMachinesDump(final String processors, final long fileSizeLimit, final File target)
+			throws RestClientException {
+		final String encodedProcessors;
+		try {
+			encodedProcessors = URLEncoder.encode(processors, "UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+		final String url = String.format(MACHINES_DUMP_URL_FORMAT, encodedProcessors, Long.toString(fileSizeLimit));
+		return executor.getFile(url, target);
+	}
+
 	/**
 	 * Validate file before uploading.
 	 * @param file 
@@ -472,7 +606,9 @@ public class RestClient {
 		if (HTTPS.equals(url.getProtocol())) {
 			httpClient = getSSLHttpClient(url);
 		} else {
+			// already pools its connections, and also honors the proxy settings of the JVM.
 			httpClient = new SystemDefaultHttpClient();
+			RestHttpClientFactory.configure(httpClient);
 		}
 		final HttpParams httpParams = httpClient.getParams();
 		HttpConnectionParams.setConnectionTimeout(httpParams, CloudifyConstants.DEFAULT_HTTP_CONNECTION_TIMEOUT);
@@ -495,11 +631,9 @@ public class RestClient {
 			SSLContext ctx = SSLContext.getInstance("TLS");
 			ctx.init(null, new TrustManager[]{trustManager}, null);
 			SSLSocketFactory ssf = new SSLSocketFactory(ctx, createHostnameVerifier());
-			AbstractHttpClient base = new DefaultHttpClient();
-			ClientConnectionManager ccm = base.getConnectionManager();
-			SchemeRegistry sr = ccm.getSchemeRegistry();
+			SchemeRegistry sr = SchemeRegistryFactory.createDefault();
 			sr.register(new Scheme(HTTPS, url.getPort(), ssf));
-			return new DefaultHttpClient(ccm, base.getParams());
+			return RestHttpClientFactory.createHttpClient(sr, null);
 		} catch (final Exception e) {
 			throw new RestClientException(FAILED_CREATING_CLIENT, "Failed creating http client",
 					ExceptionUtils.getFullStackTrace(e));
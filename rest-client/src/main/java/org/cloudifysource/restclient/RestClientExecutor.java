@@ -16,17 +16,27 @@
 package org.cloudifysource.restclient;
 
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
@@ -39,6 +49,7 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.ByteArrayBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
@@ -50,6 +61,8 @@ import org.cloudifysource.restclient.exceptions.RestClientIOException;
 import org.cloudifysource.restclient.messages.MessagesUtils;
 import org.cloudifysource.restclient.messages.RestClientMessageKeys;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.type.TypeFactory;
+import org.codehaus.jackson.type.JavaType;
 import org.codehaus.jackson.type.TypeReference;
 
 /**
@@ -63,6 +76,15 @@ public class RestClientExecutor {
     private static final String FORWARD_SLASH = "/";
     private static final int DEFAULT_TRIALS_NUM = 1;
     private static final int GET_TRIALS_NUM = 3;
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final String CONTENT_TYPE_JSON = "application/json";
+    // the length of the start of a response body that could not be parsed, reported in the exception.
+    private static final int MAX_ERROR_BODY_LENGTH = 64 * 1024;
+
+    // ObjectMapper is thread safe once configured, and caches its serializers, so it is shared by all executors.
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ConcurrentMap<Type, JavaType> JAVA_TYPES = new ConcurrentHashMap<Type, JavaType>();
+    private static final JavaType ERROR_RESPONSE_TYPE = getJavaType(new TypeReference<Response<Void>>() { });
 
     private final DefaultHttpClient httpClient;
     private String urlStr;
@@ -105,8 +127,10 @@ public class RestClientExecutor {
 		final HttpEntity stringEntity;
 		String jsonStr;
 		try {
-			jsonStr = new ObjectMapper().writeValueAsString(postBody);
-			stringEntity = new StringEntity(jsonStr, "UTF-8");
+			jsonStr = MAPPER.writeValueAsString(postBody);
+			final StringEntity jsonEntity = new StringEntity(jsonStr, "UTF-8");
+			jsonEntity.setContentType(CONTENT_TYPE_JSON);
+			stringEntity = RestHttpClientFactory.compress(jsonEntity);
 		} catch (final IOException e) {
 			throw  MessagesUtils.createRestClientIOException(
 					RestClientMessageKeys.SERIALIZATION_ERROR.getName(),
@@ -151,6 +175,78 @@ public class RestClientExecutor {
 		return post(relativeUrl, responseTypeReference, multipartEntity);
 	}
 
+	/**
+	 * Executes HTTP post of a part of a file, as a multipart request holding a single part.
+	 *
+	 * @param relativeUrl
+	 *          The URL to post to.
+	 * @param file
+	 * 			The file to post a part of.
+	 * @param offset
+	 * 			The offset of the part in the file.
+	 * @param length
+	 * 			The length of the part.
+	 * @param partName
+	 * 			The name of the request parameter (the posted part) to bind to.
+	 * @param responseTypeReference
+	 *          The type reference of the response.
+	 * @param <T> The type of the response.
+	 * @return The response object from the REST server.
+	 * @throws RestClientException
+	 *             Reporting failure to post the file part.
+	 */
+	public <T> T postFilePart(
+			final String relativeUrl,
+			final File file,
+			final long offset,
+			final int length,
+			final String partName,
+			final TypeReference<Response<T>> responseTypeReference)
+					throws RestClientException {
+		final byte[] part = new byte[length];
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(file, "r");
+			in.seek(offset);
+			in.readFully(part);
+		} catch (final IOException e) {
+			throw MessagesUtils.createRestClientIOException(
+					RestClientMessageKeys.READ_FILE_FAILURE.getName(),
+					e,
+					file.getAbsolutePath());
+		} finally {
+			closeQuietly(in);
+		}
+		final MultipartEntity multipartEntity = new MultipartEntity();
+		multipartEntity.addPart(partName, new ByteArrayBody(part, file.getName()));
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "executing post request to " + relativeUrl
+					+ ", posting " + length + " bytes of file " + file.getName() + " from offset " + offset);
+		}
+		return post(relativeUrl, responseTypeReference, multipartEntity);
+	}
+
+	/**
+	 * Executes HTTP post with no content on the given (relative) URL.
+	 *
+	 * @param relativeUrl
+	 *          The URL to post to.
+	 * @param responseTypeReference
+	 *          The type reference of the response.
+	 * @param <T> The type of the response.
+	 * @return The response object from the REST server.
+	 * @throws RestClientException .
+	 */
+	public <T> T post(
+			final String relativeUrl,
+			final TypeReference<Response<T>> responseTypeReference)
+					throws RestClientException {
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "executing post request to " + relativeUrl);
+		}
+		return post(relativeUrl, responseTypeReference, null);
+	}
+
 	/**
 	 *
 	 * @param relativeUrl
@@ -173,6 +269,81 @@ public class RestClientExecutor {
 		return executeRequest(getRequest, responseTypeReference);
     }
 
+    /**
+     * Executes HTTP get on the given (relative) URL and writes the response body to the given file. The body is
+     * copied as it is received, so large responses are never held in memory.
+     *
+     * @param relativeUrl
+     *          The URL to send the get request to.
+     * @param target
+     *          The file to write the response body to.
+     * @return The number of bytes written.
+     * @throws RestClientException .
+     */
+    public long getFile(final String relativeUrl, final File target) throws RestClientException {
+    	final HttpGet getRequest = new HttpGet(getFullUrl(relativeUrl));
+    	if (logger.isLoggable(Level.FINE)) {
+    		logger.log(Level.FINE, "execute get request to " + relativeUrl + ", downloading to " + target);
+    	}
+    	try {
+    		final HttpResponse httpResponse;
+    		try {
+    			httpResponse = httpClient.execute(getRequest);
+    		} catch (final IOException e) {
+    			throw MessagesUtils.createRestClientIOException(
+    					RestClientMessageKeys.EXECUTION_FAILURE.getName(),
+    					e,
+    					getRequest.getURI());
+    		}
+    		checkForError(httpResponse, getRequest.getURI().toString());
+
+    		final HttpEntity entity = httpResponse.getEntity();
+    		OutputStream out = null;
+    		InputStream in = null;
+    		try {
+    			out = new BufferedOutputStream(new FileOutputStream(target));
+    			long total = 0;
+    			if (entity != null) {
+    				in = entity.getContent();
+    				final byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+    				int read = in.read(buffer);
+    				while (read >= 0) {
+    					out.write(buffer, 0, read);
+    					total += read;
+    					read = in.read(buffer);
+    				}
+    			}
+    			// closed here, so a failure to flush the file is reported.
+    			out.close();
+    			out = null;
+    			return total;
+    		} catch (final IOException e) {
+    			throw MessagesUtils.createRestClientIOException(
+    					RestClientMessageKeys.DOWNLOAD_FILE_FAILURE.getName(),
+    					e,
+    					getRequest.getURI(),
+    					target.getAbsolutePath());
+    		} finally {
+    			closeQuietly(in);
+    			closeQuietly(out);
+    		}
+    	} finally {
+    		getRequest.abort();
+    	}
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+    	if (closeable != null) {
+    		try {
+    			closeable.close();
+    		} catch (final IOException e) {
+    			if (logger.isLoggable(Level.FINE)) {
+    				logger.fine("Failed to close stream: " + e.getMessage());
+    			}
+    		}
+    	}
+    }
+
     /**
      *
      * @param relativeUrl
@@ -245,9 +416,7 @@ public class RestClientExecutor {
 			           final HttpEntity entity)
 			        		   throws RestClientException {
 		final HttpPost postRequest = new HttpPost(getFullUrl(relativeUrl));
-        if (entity instanceof StringEntity) {
-            postRequest.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-        }
+		// the content type of JSON bodies is set on the entity, so it is kept if the body is compressed.
 		postRequest.setEntity(entity);
 		return executeRequest(postRequest, responseTypeReference);
 	}
@@ -340,8 +509,7 @@ public class RestClientExecutor {
 			}
 			try {
 				// this means we managed to read the response
-				final Response<Void> entity =
-						new ObjectMapper().readValue(responseBody, new TypeReference<Response<Void>>() { });
+				final Response<Void> entity = MAPPER.readValue(responseBody, ERROR_RESPONSE_TYPE);
                 // we also have the response in the proper format.
                 // remember, we only got here because some sort of error happened on the server.
 				if (logger.isLoggable(Level.FINE)) {
@@ -401,10 +569,15 @@ public class RestClientExecutor {
 			final TypeReference<Response<T>> typeReference,
 			final HttpResponse httpResponse, final String url)
 					throws RestClientIOException, RestClientHttpException {
-		final String responseBody = getResponseBody(httpResponse);
-		Response<T> response;
+		final HttpEntity entity = httpResponse.getEntity();
+		if (entity == null) {
+			return null;
+		}
+		PrefixRecordingInputStream instream = null;
 		try {
-			response = new ObjectMapper().readValue(responseBody, typeReference);
+			// parsed as it is received, the body is not copied to a string first.
+			instream = new PrefixRecordingInputStream(entity.getContent(), MAX_ERROR_BODY_LENGTH);
+			final Response<T> response = MAPPER.readValue(instream, getJavaType(typeReference));
 			return response.getResponse();
 		} catch (IOException e) {
 			if (logger.isLoggable(Level.WARNING)) {
@@ -419,9 +592,82 @@ public class RestClientExecutor {
             		e,
             		statusLine.getStatusCode(),
             		reasonPhrase,
-            		responseBody,
+            		instream == null ? null : instream.getPrefix(),
             		RestClientMessageKeys.HTTP_FAILURE.getName(), reasonPhrase, url);
+		} finally {
+			closeQuietly(instream);
+		}
+	}
+
+	/**
+	 * Keeps the first bytes read from a stream, so the start of a body that could not be parsed can be reported.
+	 */
+	private static final class PrefixRecordingInputStream extends FilterInputStream {
+
+		private final ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+		private final int maxPrefixLength;
+
+		private PrefixRecordingInputStream(final InputStream in, final int maxPrefixLength) {
+			super(in);
+			this.maxPrefixLength = maxPrefixLength;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1 && prefix.size() < maxPrefixLength) {
+				prefix.write(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				prefix.write(b, off, Math.min(read, maxPrefixLength - prefix.size()));
+			}
+			return read;
+		}
+
+		/**
+		 * Reads the rest of the prefix, if it was not read yet.
+		 *
+		 * @return the first bytes of the stream, as a string.
+		 */
+		private String getPrefix() {
+			final byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+			try {
+				while (prefix.size() < maxPrefixLength && read(buffer, 0, buffer.length) != -1) {
+					// recorded by read
+				}
+			} catch (final IOException e) {
+				// report what was read.
+			}
+			try {
+				return prefix.toString("UTF-8");
+			} catch (final UnsupportedEncodingException e) {
+				return prefix.toString();
+			}
+		}
+	}
+
+	/**
+	 * Returns the resolved type of a type reference. Each call site creates its own type reference, so the resolved
+	 * types are cached by the type they refer to.
+	 *
+	 * @param typeReference
+	 *            the type reference.
+	 * @return the resolved type.
+	 */
+	static JavaType getJavaType(final TypeReference<?> typeReference) {
+		final Type type = typeReference.getType();
+		JavaType javaType = JAVA_TYPES.get(type);
+		if (javaType == null) {
+			javaType = TypeFactory.type(type);
+			JAVA_TYPES.putIfAbsent(type, javaType);
 		}
+		return javaType;
 	}
 
 	/**
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.restclient;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Creates the HTTP clients used to call the REST gateway.
+ *
+ * The clients share their connections through a thread safe pool, and keep idle connections alive so consecutive
+ * requests, such as polling the installation progress, do not open a new connection each time. Compression of
+ * responses and of JSON request bodies can be turned on with system properties. Request compression requires a
+ * server that decodes compressed requests, so it is off by default.
+ *
+ * @since 2.7.0
+ */
+public final class RestHttpClientFactory {
+
+	/**
+	 * System property used to set the maximum number of pooled connections to the REST gateway.
+	 */
+	public static final String MAX_CONNECTIONS_PROPERTY_NAME = "org.cloudifysource.rest-client.max-connections";
+
+	/**
+	 * System property used to set the time, in milliseconds, an idle connection is kept alive if the server does not
+	 * specify it.
+	 */
+	public static final String KEEP_ALIVE_PROPERTY_NAME = "org.cloudifysource.rest-client.keep-alive";
+
+	/**
+	 * System property used to request compressed responses.
+	 */
+	public static final String GZIP_RESPONSES_PROPERTY_NAME = "org.cloudifysource.rest-client.gzip-responses";
+
+	/**
+	 * System property used to compress the JSON request bodies posted to the deployments and templates controllers.
+	 */
+	public static final String GZIP_REQUESTS_PROPERTY_NAME = "org.cloudifysource.rest-client.gzip-requests";
+
+	/**
+	 * Default maximum number of pooled connections.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/**
+	 * Default time, in milliseconds, an idle connection is kept alive.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30 * 1000;
+
+	private static final int MILLIS_IN_SECOND = 1000;
+
+	private RestHttpClientFactory() {
+		// utility class
+	}
+
+	/**
+	 * Creates a HTTP client for plain HTTP.
+	 *
+	 * @return the client.
+	 */
+	public static DefaultHttpClient createHttpClient() {
+		return createHttpClient(SchemeRegistryFactory.createDefault(), null);
+	}
+
+	/**
+	 * Creates a HTTP client that pools its connections.
+	 *
+	 * @param schemeRegistry
+	 *            the supported schemes.
+	 * @param params
+	 *            the client parameters, or null for the defaults.
+	 * @return the client.
+	 */
+	public static DefaultHttpClient createHttpClient(final SchemeRegistry schemeRegistry, final HttpParams params) {
+		final int maxConnections = Integer.getInteger(MAX_CONNECTIONS_PROPERTY_NAME, DEFAULT_MAX_CONNECTIONS);
+		final PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry);
+		connectionManager.setMaxTotal(maxConnections);
+		// all requests of a client go to the same REST gateway.
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+		final DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, params);
+		configure(httpClient);
+		return httpClient;
+	}
+
+	/**
+	 * Sets the keep alive strategy, and compression of responses if enabled, on a HTTP client.
+	 *
+	 * @param httpClient
+	 *            the client.
+	 */
+	public static void configure(final DefaultHttpClient httpClient) {
+		httpClient.setKeepAliveStrategy(new DefaultKeepAliveStrategy(
+				Long.getLong(KEEP_ALIVE_PROPERTY_NAME, DEFAULT_KEEP_ALIVE_MILLIS)));
+		if (Boolean.getBoolean(GZIP_RESPONSES_PROPERTY_NAME)) {
+			httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+			httpClient.addResponseInterceptor(new ResponseContentEncoding());
+		}
+	}
+
+	/**
+	 * Compresses a request body, if compression of requests is enabled.
+	 *
+	 * @param entity
+	 *            the request body.
+	 * @return the body to send.
+	 */
+	public static HttpEntity compress(final HttpEntity entity) {
+		if (Boolean.getBoolean(GZIP_REQUESTS_PROPERTY_NAME)) {
+			return new GzipCompressingEntity(entity);
+		}
+		return entity;
+	}
+
+	/**
+	 * Keeps a connection alive for the time specified by the server, or for a default time if it was not specified.
+	 */
+	private static final class DefaultKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+		private final long defaultKeepAliveMillis;
+
+		private DefaultKeepAliveStrategy(final long defaultKeepAliveMillis) {
+			this.defaultKeepAliveMillis = defaultKeepAliveMillis;
+		}
+
+		@Override
+		public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+			final HeaderElementIterator iterator =
+					new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+			while (iterator.hasNext()) {
+				final HeaderElement element = iterator.nextElement();
+				if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+					try {
+						return Long.parseLong(element.getValue()) * MILLIS_IN_SECOND;
+					} catch (final NumberFormatException e) {
+						// ignore, use the default.
+					}
+				}
+			}
+			return defaultKeepAliveMillis;
+		}
+	}
+}
@@ -69,7 +69,15 @@ public enum RestClientMessageKeys {
 	/**
 	 * Access to the resource is denied, unauthorized.
 	 */
-	UNAUTHORIZED("unauthorized");
+	UNAUTHORIZED("unauthorized"),
+	/**
+	 * Failed to download a file.
+	 */
+	DOWNLOAD_FILE_FAILURE("download_file_failed"),
+	/**
+	 * Failed to read a file.
+	 */
+	READ_FILE_FAILURE("read_file_failed");
 	
 	private final String name;
 	
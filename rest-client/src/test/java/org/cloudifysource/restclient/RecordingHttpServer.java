@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.restclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A HTTP server on a local port that answers each request with the reply set for its method and path, and records
+ * the requests it received. Requests without a reply are answered with 404 and a body that is not JSON, like a server
+ * that does not know the path.
+ *
+ */
+class RecordingHttpServer {
+
+	private final HttpServer server;
+	private final Map<String, String[]> replies = new ConcurrentHashMap<String, String[]>();
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+	RecordingHttpServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final String request = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+				requests.add(request);
+				final InputStream in = exchange.getRequestBody();
+				final byte[] buffer = new byte[4096];
+				while (in.read(buffer) != -1) {
+					// the request body is not checked.
+				}
+				final String[] reply = replies.get(request);
+				final int status = reply == null ? 404 : Integer.parseInt(reply[0]);
+				final byte[] body = (reply == null ? "<html>Not Found</html>" : reply[1]).getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", reply == null ? "text/html" : "application/json");
+				exchange.sendResponseHeaders(status, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Sets the reply to requests with the given method and path.
+	 *
+	 * @param method
+	 *            the request method.
+	 * @param path
+	 *            the request path.
+	 * @param status
+	 *            the status code.
+	 * @param body
+	 *            the response body.
+	 */
+	void reply(final String method, final String path, final int status, final String body) {
+		replies.put(method + " " + path, new String[] { Integer.toString(status), body });
+	}
+
+	/**
+	 * @return the requests received so far, each as the request method and path.
+	 */
+	List<String> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<String>(requests);
+		}
+	}
+
+	URL getUrl() throws IOException {
+		return new URL("http://localhost:" + server.getAddress().getPort() + "/");
+	}
+
+	void stop() {
+		server.stop(0);
+	}
+}
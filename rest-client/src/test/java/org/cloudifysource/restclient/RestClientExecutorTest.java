@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.restclient;
+
+import org.cloudifysource.dsl.rest.response.Response;
+import org.cloudifysource.dsl.rest.response.UploadResponse;
+import org.cloudifysource.restclient.exceptions.RestClientHttpException;
+import org.codehaus.jackson.type.TypeReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RestClientExecutor}, against a local server that records the requests it receives.
+ *
+ */
+public class RestClientExecutorTest {
+
+	private static final String UPLOAD_RESPONSE = "{\"status\":\"Success\",\"response\":"
+			+ "{\"uploadKey\":\"key\",\"uploadedBytes\":0}}";
+
+	private RecordingHttpServer server;
+
+	@Before
+	public void before() throws Exception {
+		server = new RecordingHttpServer();
+	}
+
+	@After
+	public void after() {
+		server.stop();
+	}
+
+	@Test
+	public void testResponseTypeIsResolvedOnce() throws Exception {
+		server.reply("GET", "/upload", 200, UPLOAD_RESPONSE);
+
+		// each call site creates its own type reference, they share the resolved type.
+		final TypeReference<Response<UploadResponse>> first = new TypeReference<Response<UploadResponse>>() { };
+		final TypeReference<Response<UploadResponse>> second = new TypeReference<Response<UploadResponse>>() { };
+		Assert.assertEquals("key", createExecutor().get("upload", first).getUploadKey());
+		Assert.assertSame(RestClientExecutor.getJavaType(first), RestClientExecutor.getJavaType(second));
+	}
+
+	@Test
+	public void testErrorBodyThatIsNotJsonIsKept() throws Exception {
+		final String body = "<html><body>Internal error</body></html>";
+		server.reply("GET", "/upload", 500, body);
+		try {
+			createExecutor().get("upload", new TypeReference<Response<UploadResponse>>() { });
+			Assert.fail("An error status was not reported");
+		} catch (final RestClientHttpException e) {
+			Assert.assertEquals(500, e.getStatusCode());
+			Assert.assertEquals(body, e.getResponseBody());
+		}
+	}
+
+	@Test
+	public void testResponseThatCanNotBeParsedIsKept() throws Exception {
+		// the body is parsed as it is read, and fails half way through.
+		final String body = "{\"status\":\"Success\",\"response\":<html>Proxy error</html>";
+		server.reply("GET", "/upload", 200, body);
+		try {
+			createExecutor().get("upload", new TypeReference<Response<UploadResponse>>() { });
+			Assert.fail("A response that is not JSON was accepted");
+		} catch (final RestClientHttpException e) {
+			Assert.assertEquals(200, e.getStatusCode());
+			Assert.assertEquals(body, e.getResponseBody());
+		}
+	}
+
+	private RestClientExecutor createExecutor() throws Exception {
+		return new RestClientExecutor(RestHttpClientFactory.createHttpClient(), server.getUrl());
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.restclient;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.cloudifysource.dsl.internal.UploadContentHash;
+import org.cloudifysource.dsl.rest.response.UploadResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the uploads of {@link RestClient}, against a local server that records the requests it receives.
+ *
+ */
+public class RestClientTest {
+
+	private static final String VERSION = "2.7.0";
+	private static final String UPLOAD_URL = "/" + VERSION + "/upload/";
+
+	private RecordingHttpServer server;
+	private RestClient client;
+	private File file;
+	private String contentHash;
+
+	@Before
+	public void before() throws Exception {
+		server = new RecordingHttpServer();
+		client = new RestClient(server.getUrl(), null, null, VERSION);
+		file = File.createTempFile("restClientTest", ".zip");
+		writeFile(file, UUID.randomUUID().toString());
+		contentHash = UploadContentHash.compute(file);
+	}
+
+	@After
+	public void after() {
+		server.stop();
+		file.delete();
+	}
+
+	@Test
+	public void testUploadIsSkippedWhenServerHasTheContent() throws Exception {
+		server.reply("GET", UPLOAD_URL + "content/" + contentHash, 200, createUploadResponse(contentHash, 0));
+
+		final UploadResponse response = client.upload("service.zip", file);
+		Assert.assertEquals(contentHash, response.getUploadKey());
+		// the file was not sent.
+		Assert.assertEquals(Arrays.asList("GET " + UPLOAD_URL + "content/" + contentHash), server.getRequests());
+	}
+
+	@Test
+	public void testContentIsUploadedWhenServerDoesNotHaveIt() throws Exception {
+		server.reply("GET", UPLOAD_URL + "content/" + contentHash, 200, createUploadResponse(null, 0));
+		server.reply("POST", UPLOAD_URL + "content/" + contentHash + "/service.zip", 200,
+				createUploadResponse(contentHash, 0));
+
+		final UploadResponse response = client.upload("service.zip", file);
+		Assert.assertEquals(contentHash, response.getUploadKey());
+		Assert.assertEquals(Arrays.asList("GET " + UPLOAD_URL + "content/" + contentHash,
+				"POST " + UPLOAD_URL + "content/" + contentHash + "/service.zip"), server.getRequests());
+	}
+
+	@Test
+	public void testWholeFileIsUploadedToOlderServer() throws Exception {
+		server.reply("POST", UPLOAD_URL + "service.zip", 200, createUploadResponse("key", 0));
+
+		final UploadResponse response = client.upload("service.zip", file);
+		Assert.assertEquals("key", response.getUploadKey());
+		Assert.assertEquals(Arrays.asList("GET " + UPLOAD_URL + "content/" + contentHash,
+				"POST " + UPLOAD_URL + "service.zip"), server.getRequests());
+	}
+
+	private static void writeFile(final File target, final String content) throws IOException {
+		final OutputStream out = new FileOutputStream(target);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String createUploadResponse(final String uploadKey, final long uploadedBytes) {
+		return "{\"status\":\"Success\",\"response\":{\"uploadKey\":"
+				+ (uploadKey == null ? "null" : "\"" + uploadKey + "\"")
+				+ ",\"uploadedBytes\":" + uploadedBytes + "}}";
+	}
+}
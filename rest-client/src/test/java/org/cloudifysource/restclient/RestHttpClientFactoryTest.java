@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.restclient;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RestHttpClientFactory}.
+ *
+ */
+public class RestHttpClientFactoryTest {
+
+	@After
+	public void after() {
+		System.clearProperty(RestHttpClientFactory.MAX_CONNECTIONS_PROPERTY_NAME);
+		System.clearProperty(RestHttpClientFactory.KEEP_ALIVE_PROPERTY_NAME);
+		System.clearProperty(RestHttpClientFactory.GZIP_RESPONSES_PROPERTY_NAME);
+		System.clearProperty(RestHttpClientFactory.GZIP_REQUESTS_PROPERTY_NAME);
+	}
+
+	@Test
+	public void testConnectionsArePooled() {
+		final DefaultHttpClient httpClient = RestHttpClientFactory.createHttpClient();
+		final PoolingClientConnectionManager connectionManager =
+				(PoolingClientConnectionManager) httpClient.getConnectionManager();
+		Assert.assertEquals(RestHttpClientFactory.DEFAULT_MAX_CONNECTIONS, connectionManager.getMaxTotal());
+		// all connections go to the REST gateway, so one route may use the whole pool.
+		Assert.assertEquals(RestHttpClientFactory.DEFAULT_MAX_CONNECTIONS, connectionManager.getDefaultMaxPerRoute());
+		httpClient.getConnectionManager().shutdown();
+
+		System.setProperty(RestHttpClientFactory.MAX_CONNECTIONS_PROPERTY_NAME, "5");
+		final DefaultHttpClient configuredClient = RestHttpClientFactory.createHttpClient();
+		Assert.assertEquals(5, ((PoolingClientConnectionManager) configuredClient.getConnectionManager())
+				.getMaxTotal());
+		configuredClient.getConnectionManager().shutdown();
+	}
+
+	@Test
+	public void testKeepAliveDuration() {
+		final DefaultHttpClient httpClient = RestHttpClientFactory.createHttpClient();
+		final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		Assert.assertEquals(RestHttpClientFactory.DEFAULT_KEEP_ALIVE_MILLIS, httpClient
+				.getConnectionKeepAliveStrategy().getKeepAliveDuration(response, new BasicHttpContext()));
+
+		// the time the server asks for is used.
+		response.setHeader("Keep-Alive", "timeout=5, max=100");
+		Assert.assertEquals(5000, httpClient.getConnectionKeepAliveStrategy()
+				.getKeepAliveDuration(response, new BasicHttpContext()));
+		httpClient.getConnectionManager().shutdown();
+
+		System.setProperty(RestHttpClientFactory.KEEP_ALIVE_PROPERTY_NAME, "1000");
+		final DefaultHttpClient configuredClient = RestHttpClientFactory.createHttpClient();
+		Assert.assertEquals(1000, configuredClient.getConnectionKeepAliveStrategy().getKeepAliveDuration(
+				new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), new BasicHttpContext()));
+		configuredClient.getConnectionManager().shutdown();
+	}
+
+	@Test
+	public void testCompressionIsOffByDefault() throws Exception {
+		final DefaultHttpClient httpClient = RestHttpClientFactory.createHttpClient();
+		Assert.assertFalse(hasRequestInterceptor(httpClient, RequestAcceptEncoding.class));
+		httpClient.getConnectionManager().shutdown();
+
+		final HttpEntity entity = new StringEntity("{}");
+		Assert.assertSame(entity, RestHttpClientFactory.compress(entity));
+	}
+
+	@Test
+	public void testCompressionCanBeTurnedOn() throws Exception {
+		System.setProperty(RestHttpClientFactory.GZIP_RESPONSES_PROPERTY_NAME, "true");
+		System.setProperty(RestHttpClientFactory.GZIP_REQUESTS_PROPERTY_NAME, "true");
+		final DefaultHttpClient httpClient = RestHttpClientFactory.createHttpClient();
+		Assert.assertTrue(hasRequestInterceptor(httpClient, RequestAcceptEncoding.class));
+		httpClient.getConnectionManager().shutdown();
+
+		Assert.assertTrue(RestHttpClientFactory.compress(new StringEntity("{}")) instanceof GzipCompressingEntity);
+	}
+
+	private static boolean hasRequestInterceptor(final DefaultHttpClient httpClient, final Class<?> type) {
+		for (int i = 0; i < httpClient.getRequestInterceptorCount(); i++) {
+			if (type.isInstance(httpClient.getRequestInterceptor(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -40,6 +40,7 @@ public interface ResponseConstants {
 	String USER_IS_NOT_CLOUDADMIN = "user_is_not_cloudadmin";
 	String APPLICATION_NAME_IS_ALREADY_IN_USE = "application_name_is_already_in_use";
 	String NOT_ALL_GSM_INSTANCES_RUNNING = "not_all_gsm_instances_running";
+	String INVALID_TAIL_GREP_PATTERN = "invalid_tail_grep_pattern";
 	
 	
 	int HTTP_OK = 200;
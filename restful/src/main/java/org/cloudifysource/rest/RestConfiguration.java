@@ -26,6 +26,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.cloudifysource.domain.cloud.Cloud;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.rest.util.RestPollingRunnable;
+import org.cloudifysource.rest.util.UsmStateIndex;
 import org.cloudifysource.security.CustomPermissionEvaluator;
 import org.cloudifysource.utilitydomain.data.CloudConfigurationHolder;
 import org.openspaces.admin.Admin;
@@ -50,6 +51,7 @@ public class RestConfiguration {
     private final AtomicInteger lastTemplateFileNum = new AtomicInteger(0);
     private File restTempFolder;
 	private CustomPermissionEvaluator permissionEvaluator;
+    private UsmStateIndex usmStateIndex;
 
 	/**
      * A set containing all of the executed lifecycle events. used to avoid duplicate prints.
@@ -186,4 +188,12 @@ public class RestConfiguration {
 		this.permissionEvaluator = permissionEvaluator;
 	}
 
+    public UsmStateIndex getUsmStateIndex() {
+        return usmStateIndex;
+    }
+
+    public void setUsmStateIndex(final UsmStateIndex usmStateIndex) {
+        this.usmStateIndex = usmStateIndex;
+    }
+
 }
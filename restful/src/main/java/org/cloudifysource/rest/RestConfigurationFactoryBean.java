@@ -25,12 +25,14 @@ import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.DSLException;
 import org.cloudifysource.dsl.internal.ServiceReader;
+import org.cloudifysource.rest.util.UsmStateIndex;
 import org.cloudifysource.security.CustomPermissionEvaluator;
 import org.cloudifysource.utilitydomain.data.CloudConfigurationHolder;
 import org.cloudifysource.utilitydomain.data.reader.ComputeTemplatesReader;
 import org.openspaces.admin.Admin;
 import org.openspaces.core.GigaSpace;
 import org.openspaces.core.context.GigaSpaceContext;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -43,7 +45,7 @@ import org.springframework.stereotype.Component;
  *
  */
 @Component
-public class RestConfigurationFactoryBean implements FactoryBean<RestConfiguration> {
+public class RestConfigurationFactoryBean implements FactoryBean<RestConfiguration>, DisposableBean {
 
     private static final Logger logger = Logger.getLogger(RestConfigurationFactoryBean.class.getName());
 
@@ -76,6 +78,9 @@ public class RestConfigurationFactoryBean implements FactoryBean<RestConfigurati
         config.setGigaSpace(gigaSpace);
         config.setAdmin(admin);
         config.setPermissionEvaluator(permissionEvaluator);
+        final UsmStateIndex usmStateIndex = new UsmStateIndex(admin);
+        usmStateIndex.start();
+        config.setUsmStateIndex(usmStateIndex);
         Cloud cloud = readCloud();
         if (cloud != null) {
         	config.setCloud(cloud);
@@ -178,6 +183,13 @@ public class RestConfigurationFactoryBean implements FactoryBean<RestConfigurati
         return config;
     }
 
+    @Override
+    public void destroy() {
+        if (config != null && config.getUsmStateIndex() != null) {
+            config.getUsmStateIndex().stop();
+        }
+    }
+
     @Override
     public Class<?> getObjectType() {
         return RestConfiguration.class;
@@ -16,22 +16,24 @@ import static org.cloudifysource.rest.ResponseConstants.HTTP_OK;
 import static org.cloudifysource.rest.util.RestUtils.successStatus;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
-import net.jini.core.lease.Lease;
-
 import org.cloudifysource.dsl.utils.ServiceUtils;
 import org.cloudifysource.restDoclet.annotations.JsonRequestExample;
 import org.cloudifysource.restDoclet.annotations.JsonResponseExample;
 import org.cloudifysource.restDoclet.annotations.PossibleResponseStatus;
 import org.cloudifysource.restDoclet.annotations.PossibleResponseStatuses;
+import org.cloudifysource.utilitydomain.kvstorage.AttributesSpaceOperations;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.GlobalCloudifyAttribute;
@@ -47,11 +49,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
-import com.gigaspaces.client.WriteModifiers;
-
 /**
  * @author noak
  * @since 2.2.0
@@ -65,6 +66,23 @@ public class AttributesController {
 
 	private static final Logger logger = Logger.getLogger(AttributesController.class.getName());
 
+	private static final String KEYS_PARAM = "keys";
+	private static final String EXPECTED_VALUE_FIELD = "expectedValue";
+	private static final String NEW_VALUE_FIELD = "newValue";
+	private static final String UPDATED_FIELD = "updated";
+
+	/**
+	 * Moves attributes written by older versions to the space ids the attribute operations expect. Executed by Spring
+	 * once the management space is injected, so the operations themselves never look for such attributes.
+	 */
+	@PostConstruct
+	public void init() {
+		final int migrated = AttributesSpaceOperations.migrateLegacyAttributes(gigaSpace);
+		if (migrated > 0) {
+			logger.info("Migrated " + migrated + " attributes written by an older version");
+		}
+	}
+
 	/**
 	 * Exception handler for all of known internal server exceptions.
 	 *
@@ -443,12 +461,9 @@ public class AttributesController {
 
 		final InstanceCloudifyAttribute attribute =
 				new InstanceCloudifyAttribute(applicationName, serviceName, instanceId, attributeName, null);
-		// take (delete)
-		final InstanceCloudifyAttribute previousValue = gigaSpace.take(attribute);
-		// write
+		// update or write, in a single space operation
 		attribute.setValue(attributeValue);
-		gigaSpace.write(attribute);
-		final Object value = previousValue != null ? previousValue.getValue() : null;
+		final Object value = AttributesSpaceOperations.put(gigaSpace, attribute);
 
 		final Map<String, Object> mapResult = new HashMap<String, Object>();
 		mapResult.put(attributeName, value);
@@ -520,12 +535,9 @@ public class AttributesController {
 
 		final ServiceCloudifyAttribute attribute =
 				new ServiceCloudifyAttribute(applicationName, serviceName, attributeName, null);
-		// take (delete)
-		final ServiceCloudifyAttribute previousValue = gigaSpace.take(attribute);
-		// write
+		// update or write, in a single space operation
 		attribute.setValue(attributeValue);
-		gigaSpace.write(attribute);
-		final Object value = previousValue != null ? previousValue.getValue() : null;
+		final Object value = AttributesSpaceOperations.put(gigaSpace, attribute);
 
 		final Map<String, Object> mapResult = new HashMap<String, Object>();
 		mapResult.put(attributeName, value);
@@ -589,12 +601,9 @@ public class AttributesController {
 
 		final ApplicationCloudifyAttribute attribute =
 				new ApplicationCloudifyAttribute(applicationName, attributeName, null);
-		// take (delete)
-		final ApplicationCloudifyAttribute previousValue = gigaSpace.take(attribute);
-		// write
+		// update or write, in a single space operation
 		attribute.setValue(attributeValue);
-		gigaSpace.write(attribute);
-		final Object value = previousValue != null ? previousValue.getValue() : null;
+		final Object value = AttributesSpaceOperations.put(gigaSpace, attribute);
 
 		final Map<String, Object> mapResult = new HashMap<String, Object>();
 		mapResult.put(attributeName, value);
@@ -633,13 +642,10 @@ public class AttributesController {
 		final AbstractCloudifyAttribute[] attributesToWrite = new AbstractCloudifyAttribute[attributesMap.size()];
 		int i = 0;
 		for (final Entry<String, Object> attrEntry : attributesMap.entrySet()) {
-			final AbstractCloudifyAttribute newAttr = createCloudifyAttribute(applicationName,
-					serviceName, instanceId, attrEntry.getKey(), null);
-			gigaSpace.take(newAttr);
-			newAttr.setValue(attrEntry.getValue());
-			attributesToWrite[i++] = newAttr;
+			attributesToWrite[i++] = createCloudifyAttribute(applicationName,
+					serviceName, instanceId, attrEntry.getKey(), attrEntry.getValue());
 		}
-		gigaSpace.writeMultiple(attributesToWrite, Lease.FOREVER, WriteModifiers.UPDATE_OR_WRITE);
+		AttributesSpaceOperations.putAll(gigaSpace, attributesToWrite);
 	}
 
 	private AbstractCloudifyAttribute createCloudifyAttribute(final String applicationName,
@@ -679,12 +685,9 @@ public class AttributesController {
 		}
 
 		final GlobalCloudifyAttribute attribute = new GlobalCloudifyAttribute(attributeName, null);
-		// take (delete)
-		final GlobalCloudifyAttribute previousValue = gigaSpace.take(attribute);
-		// write
+		// update or write, in a single space operation
 		attribute.setValue(attributeValue);
-		gigaSpace.write(attribute);
-		final Object value = previousValue != null ? previousValue.getValue() : null;
+		final Object value = AttributesSpaceOperations.put(gigaSpace, attribute);
 
 		final Map<String, Object> mapResult = new HashMap<String, Object>();
 		mapResult.put(attributeName, value);
@@ -995,4 +998,411 @@ public class AttributesController {
 		return previousAttributesMap;
 	}
 
+	/**
+	 * Atomically sets an attribute value if its current value equals the expected value, scope: instance attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param instanceId
+	 *            The service instance id.
+	 * @param attributeName
+	 *            The name of the attribute to set.
+	 * @param request
+	 *            The expected value (null if the attribute should not exist) and the new value.
+	 * @return Whether the value was set.
+	 */
+	@JsonRequestExample(requestBody = "{\"expectedValue\":\"value1\",\"newValue\":\"value2\"}")
+	@JsonResponseExample(status = "success", responseBody = "{\"updated\":true}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "instances/{applicationName}/{serviceName}/{instanceId}/{attributeName}/compare-and-set",
+			method = RequestMethod.POST)
+	@ResponseBody
+	public Object compareAndSetInstanceAttribute(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @PathVariable final int instanceId,
+			@PathVariable final String attributeName, @RequestBody final Map<String, Object> request) {
+		return compareAndSet(new InstanceCloudifyAttribute(applicationName, serviceName, instanceId, attributeName,
+				null), request);
+	}
+
+	/**
+	 * Atomically sets an attribute value if its current value equals the expected value, scope: service attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param attributeName
+	 *            The name of the attribute to set.
+	 * @param request
+	 *            The expected value (null if the attribute should not exist) and the new value.
+	 * @return Whether the value was set.
+	 */
+	@JsonRequestExample(requestBody = "{\"expectedValue\":\"value1\",\"newValue\":\"value2\"}")
+	@JsonResponseExample(status = "success", responseBody = "{\"updated\":true}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "services/{applicationName}/{serviceName}/{attributeName}/compare-and-set",
+			method = RequestMethod.POST)
+	@ResponseBody
+	public Object compareAndSetServiceAttribute(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @PathVariable final String attributeName,
+			@RequestBody final Map<String, Object> request) {
+		return compareAndSet(new ServiceCloudifyAttribute(applicationName, serviceName, attributeName, null), request);
+	}
+
+	/**
+	 * Atomically sets an attribute value if its current value equals the expected value, scope: application
+	 * attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param attributeName
+	 *            The name of the attribute to set.
+	 * @param request
+	 *            The expected value (null if the attribute should not exist) and the new value.
+	 * @return Whether the value was set.
+	 */
+	@JsonRequestExample(requestBody = "{\"expectedValue\":\"value1\",\"newValue\":\"value2\"}")
+	@JsonResponseExample(status = "success", responseBody = "{\"updated\":true}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "applications/{applicationName}/{attributeName}/compare-and-set",
+			method = RequestMethod.POST)
+	@ResponseBody
+	public Object compareAndSetApplicationAttribute(@PathVariable final String applicationName,
+			@PathVariable final String attributeName, @RequestBody final Map<String, Object> request) {
+		return compareAndSet(new ApplicationCloudifyAttribute(applicationName, attributeName, null), request);
+	}
+
+	/**
+	 * Atomically sets an attribute value if its current value equals the expected value, scope: global attributes.
+	 *
+	 * @param attributeName
+	 *            The name of the attribute to set.
+	 * @param request
+	 *            The expected value (null if the attribute should not exist) and the new value.
+	 * @return Whether the value was set.
+	 */
+	@JsonRequestExample(requestBody = "{\"expectedValue\":\"value1\",\"newValue\":\"value2\"}")
+	@JsonResponseExample(status = "success", responseBody = "{\"updated\":true}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "globals/{attributeName}/compare-and-set", method = RequestMethod.POST)
+	@ResponseBody
+	public Object compareAndSetGlobalAttribute(@PathVariable final String attributeName,
+			@RequestBody final Map<String, Object> request) {
+		return compareAndSet(new GlobalCloudifyAttribute(attributeName, null), request);
+	}
+
+	private Map<String, Object> compareAndSet(final AbstractCloudifyAttribute attribute,
+			final Map<String, Object> request) {
+		if (logger.isLoggable(Level.FINER)) {
+			logger.finer("received request to compare and set attribute " + attribute.getKey() + ": " + request);
+		}
+		attribute.setValue(request.get(NEW_VALUE_FIELD));
+		final boolean updated =
+				AttributesSpaceOperations.compareAndSet(gigaSpace, attribute, request.get(EXPECTED_VALUE_FIELD));
+
+		final Map<String, Object> mapResult = new HashMap<String, Object>();
+		mapResult.put(UPDATED_FIELD, updated);
+		return mapResult;
+	}
+
+	/**
+	 * Atomically adds to a numeric attribute value, scope: instance attributes. A missing attribute is created with
+	 * the given delta as its value.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param instanceId
+	 *            The service instance id.
+	 * @param attributeName
+	 *            The name of the attribute to increment.
+	 * @param delta
+	 *            The amount to add.
+	 * @return The new value.
+	 * @throws RestErrorException .
+	 */
+	@JsonRequestExample(requestBody = "1")
+	@JsonResponseExample(status = "success", responseBody = "{\"attributeName\":5}",
+			comments = "5 is the value after the increment")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "instances/{applicationName}/{serviceName}/{instanceId}/{attributeName}/increment",
+			method = RequestMethod.POST)
+	@ResponseBody
+	public Object incrementInstanceAttribute(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @PathVariable final int instanceId,
+			@PathVariable final String attributeName, @RequestBody final Object delta) throws RestErrorException {
+		return increment(new InstanceCloudifyAttribute(applicationName, serviceName, instanceId, attributeName, null),
+				delta);
+	}
+
+	/**
+	 * Atomically adds to a numeric attribute value, scope: service attributes. A missing attribute is created with the
+	 * given delta as its value.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param attributeName
+	 *            The name of the attribute to increment.
+	 * @param delta
+	 *            The amount to add.
+	 * @return The new value.
+	 * @throws RestErrorException .
+	 */
+	@JsonRequestExample(requestBody = "1")
+	@JsonResponseExample(status = "success", responseBody = "{\"attributeName\":5}",
+			comments = "5 is the value after the increment")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "services/{applicationName}/{serviceName}/{attributeName}/increment",
+			method = RequestMethod.POST)
+	@ResponseBody
+	public Object incrementServiceAttribute(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @PathVariable final String attributeName,
+			@RequestBody final Object delta) throws RestErrorException {
+		return increment(new ServiceCloudifyAttribute(applicationName, serviceName, attributeName, null), delta);
+	}
+
+	/**
+	 * Atomically adds to a numeric attribute value, scope: application attributes. A missing attribute is created
+	 * with the given delta as its value.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param attributeName
+	 *            The name of the attribute to increment.
+	 * @param delta
+	 *            The amount to add.
+	 * @return The new value.
+	 * @throws RestErrorException .
+	 */
+	@JsonRequestExample(requestBody = "1")
+	@JsonResponseExample(status = "success", responseBody = "{\"attributeName\":5}",
+			comments = "5 is the value after the increment")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "applications/{applicationName}/{attributeName}/increment", method = RequestMethod.POST)
+	@ResponseBody
+	public Object incrementApplicationAttribute(@PathVariable final String applicationName,
+			@PathVariable final String attributeName, @RequestBody final Object delta) throws RestErrorException {
+		return increment(new ApplicationCloudifyAttribute(applicationName, attributeName, null), delta);
+	}
+
+	/**
+	 * Atomically adds to a numeric attribute value, scope: global attributes. A missing attribute is created with the
+	 * given delta as its value.
+	 *
+	 * @param attributeName
+	 *            The name of the attribute to increment.
+	 * @param delta
+	 *            The amount to add.
+	 * @return The new value.
+	 * @throws RestErrorException .
+	 */
+	@JsonRequestExample(requestBody = "1")
+	@JsonResponseExample(status = "success", responseBody = "{\"attributeName\":5}",
+			comments = "5 is the value after the increment")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "globals/{attributeName}/increment", method = RequestMethod.POST)
+	@ResponseBody
+	public Object incrementGlobalAttribute(@PathVariable final String attributeName,
+			@RequestBody final Object delta) throws RestErrorException {
+		return increment(new GlobalCloudifyAttribute(attributeName, null), delta);
+	}
+
+	private Map<String, Object> increment(final AbstractCloudifyAttribute attribute, final Object delta)
+			throws RestErrorException {
+		if (logger.isLoggable(Level.FINER)) {
+			logger.finer("received request to increment attribute " + attribute.getKey() + " by " + delta);
+		}
+		if (!(delta instanceof Number)) {
+			throw new RestErrorException("attribute_increment_not_a_number", attribute.getKey(), delta);
+		}
+		final Number value = AttributesSpaceOperations.increment(gigaSpace, attribute, (Number) delta);
+
+		final Map<String, Object> mapResult = new HashMap<String, Object>();
+		mapResult.put(attribute.getKey(), value);
+		return mapResult;
+	}
+
+	/**
+	 * Gets the given attributes' values in a single space operation, scope: instance attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param instanceId
+	 *            The service instance id.
+	 * @param keys
+	 *            Comma separated names of the attributes to get.
+	 * @return a Map containing the names and values of the attributes that exist.
+	 */
+	@JsonResponseExample(status = "success",
+			responseBody = "{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "instances/{applicationName}/{serviceName}/{instanceId}", method = RequestMethod.GET,
+			params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> getInstanceAttributesByKeys(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @PathVariable final int instanceId,
+			@RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.getAll(gigaSpace,
+				new InstanceCloudifyAttribute(applicationName, serviceName, instanceId, null, null), splitKeys(keys));
+	}
+
+	/**
+	 * Gets the given attributes' values in a single space operation, scope: service attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param keys
+	 *            Comma separated names of the attributes to get.
+	 * @return a Map containing the names and values of the attributes that exist.
+	 */
+	@JsonResponseExample(status = "success",
+			responseBody = "{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "services/{applicationName}/{serviceName}", method = RequestMethod.GET,
+			params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> getServiceAttributesByKeys(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.getAll(gigaSpace,
+				new ServiceCloudifyAttribute(applicationName, serviceName, null, null), splitKeys(keys));
+	}
+
+	/**
+	 * Gets the given attributes' values in a single space operation, scope: application attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param keys
+	 *            Comma separated names of the attributes to get.
+	 * @return a Map containing the names and values of the attributes that exist.
+	 */
+	@JsonResponseExample(status = "success",
+			responseBody = "{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "applications/{applicationName}", method = RequestMethod.GET, params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> getApplicationAttributesByKeys(@PathVariable final String applicationName,
+			@RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.getAll(gigaSpace,
+				new ApplicationCloudifyAttribute(applicationName, null, null), splitKeys(keys));
+	}
+
+	/**
+	 * Gets the given attributes' values in a single space operation, scope: global attributes.
+	 *
+	 * @param keys
+	 *            Comma separated names of the attributes to get.
+	 * @return a Map containing the names and values of the attributes that exist.
+	 */
+	@JsonResponseExample(status = "success",
+			responseBody = "{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "globals", method = RequestMethod.GET, params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> getGlobalAttributesByKeys(@RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.getAll(gigaSpace, new GlobalCloudifyAttribute(), splitKeys(keys));
+	}
+
+	/**
+	 * Deletes the given attributes in a single space operation, scope: instance attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param instanceId
+	 *            The service instance id.
+	 * @param keys
+	 *            Comma separated names of the attributes to delete.
+	 * @return A map of the previous values of the attributes that existed.
+	 */
+	@JsonResponseExample(status = "success", responseBody =
+			"{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}",
+			comments = "attribute1Value and attribute2Value are the previous values (before deleted)")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "instances/{applicationName}/{serviceName}/{instanceId}", method = RequestMethod.DELETE,
+			params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> deleteInstanceAttributesByKeys(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @PathVariable final int instanceId,
+			@RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.removeAll(gigaSpace,
+				new InstanceCloudifyAttribute(applicationName, serviceName, instanceId, null, null), splitKeys(keys));
+	}
+
+	/**
+	 * Deletes the given attributes in a single space operation, scope: service attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param keys
+	 *            Comma separated names of the attributes to delete.
+	 * @return A map of the previous values of the attributes that existed.
+	 */
+	@JsonResponseExample(status = "success", responseBody =
+			"{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}",
+			comments = "attribute1Value and attribute2Value are the previous values (before deleted)")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "services/{applicationName}/{serviceName}", method = RequestMethod.DELETE,
+			params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> deleteServiceAttributesByKeys(@PathVariable final String applicationName,
+			@PathVariable final String serviceName, @RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.removeAll(gigaSpace,
+				new ServiceCloudifyAttribute(applicationName, serviceName, null, null), splitKeys(keys));
+	}
+
+	/**
+	 * Deletes the given attributes in a single space operation, scope: application attributes.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param keys
+	 *            Comma separated names of the attributes to delete.
+	 * @return A map of the previous values of the attributes that existed.
+	 */
+	@JsonResponseExample(status = "success", responseBody =
+			"{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}",
+			comments = "attribute1Value and attribute2Value are the previous values (before deleted)")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "applications/{applicationName}", method = RequestMethod.DELETE, params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> deleteApplicationAttributesByKeys(@PathVariable final String applicationName,
+			@RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.removeAll(gigaSpace,
+				new ApplicationCloudifyAttribute(applicationName, null, null), splitKeys(keys));
+	}
+
+	/**
+	 * Deletes the given attributes in a single space operation, scope: global attributes.
+	 *
+	 * @param keys
+	 *            Comma separated names of the attributes to delete.
+	 * @return A map of the previous values of the attributes that existed.
+	 */
+	@JsonResponseExample(status = "success", responseBody =
+			"{\"attribute1Name\":\"attribute1Value\",\"attribute2Name\":\"attribute2Value\"}",
+			comments = "attribute1Value and attribute2Value are the previous values (before deleted)")
+	@PossibleResponseStatuses(responseStatuses = { @PossibleResponseStatus(code = HTTP_OK, description = "success") })
+	@RequestMapping(value = "globals", method = RequestMethod.DELETE, params = KEYS_PARAM)
+	@ResponseBody
+	public Map<String, Object> deleteGlobalAttributesByKeys(@RequestParam(KEYS_PARAM) final String keys) {
+		return AttributesSpaceOperations.removeAll(gigaSpace, new GlobalCloudifyAttribute(), splitKeys(keys));
+	}
+
+	private static List<String> splitKeys(final String keys) {
+		return Arrays.asList(keys.split(","));
+	}
+
 }
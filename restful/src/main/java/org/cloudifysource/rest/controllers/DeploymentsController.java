@@ -16,25 +16,34 @@ import static org.cloudifysource.rest.ResponseConstants.FAILED_TO_LOCATE_LUS;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletResponse;
 
 import net.jini.core.discovery.LookupLocator;
 
@@ -74,6 +83,7 @@ import org.cloudifysource.dsl.rest.response.ServiceDetails;
 import org.cloudifysource.dsl.rest.response.ServiceInstanceDetails;
 import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsData;
 import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsResponse;
+import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsStatus;
 import org.cloudifysource.dsl.rest.response.ServiceMetricsResponse;
 import org.cloudifysource.dsl.rest.response.UninstallApplicationResponse;
 import org.cloudifysource.dsl.rest.response.UninstallServiceResponse;
@@ -94,12 +104,14 @@ import org.cloudifysource.rest.events.cache.AdminBasedGridServiceContainerProvid
 import org.cloudifysource.rest.events.cache.EventsCache;
 import org.cloudifysource.rest.events.cache.EventsCacheKey;
 import org.cloudifysource.rest.events.cache.EventsCacheValue;
+import org.cloudifysource.rest.events.cache.EventsLog;
 import org.cloudifysource.rest.exceptions.ResourceNotFoundException;
 import org.cloudifysource.rest.repo.UploadRepo;
 import org.cloudifysource.rest.util.ApplicationDescriptionFactory;
 import org.cloudifysource.rest.util.IsolationUtils;
 import org.cloudifysource.rest.util.LifecycleEventsContainer;
 import org.cloudifysource.rest.util.RestPollingRunnable;
+import org.cloudifysource.rest.util.ServiceMetricsCollector;
 import org.cloudifysource.rest.validators.InstallApplicationValidationContext;
 import org.cloudifysource.rest.validators.InstallApplicationValidator;
 import org.cloudifysource.rest.validators.InstallServiceValidationContext;
@@ -116,6 +128,7 @@ import org.cloudifysource.utilitydomain.data.ServiceInstanceAttemptData;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.jgrapht.DirectedGraph;
 import org.jgrapht.alg.CycleDetector;
 import org.jgrapht.graph.DefaultDirectedGraph;
@@ -179,7 +192,17 @@ public class DeploymentsController extends BaseRestController {
 
 	private static final Logger logger = Logger.getLogger(DeploymentsController.class.getName());
 	private static final int MAX_NUMBER_OF_EVENTS = 100;
+	// thread safe, see http://wiki.fasterxml.com/JacksonFAQ
+	private static final ObjectMapper EVENTS_MAPPER = new ObjectMapper();
 	private static final int REFRESH_INTERVAL_MILLIS = 500;
+	private static final int MAX_EVENTS_WAIT_SECONDS = 30;
+	private static final int MAX_EVENTS_STREAM_SECONDS = 300;
+	// each waiting request holds a servlet thread, so only this many requests may wait for events at once.
+	private static final int MAX_EVENTS_WAITERS = 50;
+	private static final int EVENTS_STREAM_RETRY_AFTER_SECONDS = 5;
+	private static final String EVENTS_STREAM_CONTENT_TYPE = "application/x-json-stream";
+	private static final String EVENTS_STREAM_ENCODING = "UTF-8";
+	private static final long MAX_SERVICE_METRICS_TIMEOUT_MILLIS = 30 * 1000;
 	private static final int DEPLOYMENT_TIMEOUT_SECONDS = 60;
 	private static final int WAIT_FOR_MANAGED_TIMEOUT_SECONDS = 10;
 	private static final int LOCAL_CLOUD_INSTANCE_MEMORY_MB = 512;
@@ -204,7 +227,20 @@ public class DeploymentsController extends BaseRestController {
 	private CustomPermissionEvaluator permissionEvaluator;
 	private final ExecutorService serviceUndeployExecutor = Executors.newFixedThreadPool(10);
 	private EventsCache eventsCache;
+	private final Semaphore eventsWaiters = new Semaphore(MAX_EVENTS_WAITERS);
+	private final Set<EventsCacheKey> eventsRefreshes =
+			Collections.newSetFromMap(new ConcurrentHashMap<EventsCacheKey, Boolean>());
+	private final ExecutorService eventsRefreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "DeploymentEventsRefresher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 	private ControllerHelper controllerHelper;
+	private ServiceMetricsCollector metricsCollector;
 
 	/**
 	 * Initialization.
@@ -216,6 +252,17 @@ public class DeploymentsController extends BaseRestController {
 		this.admin = restConfig.getAdmin();
 		this.eventsCache = new EventsCache(admin);
 		this.controllerHelper = new ControllerHelper(gigaSpace, admin);
+		this.metricsCollector = new ServiceMetricsCollector(restConfig.getUsmStateIndex());
+	}
+
+	/**
+	 * Releases the resources of the controller.
+	 */
+	@PreDestroy
+	public void destroy() {
+		metricsCollector.shutdown();
+		eventsRefreshExecutor.shutdownNow();
+		eventsCache.close();
 	}
 
 	/**
@@ -310,7 +357,11 @@ public class DeploymentsController extends BaseRestController {
 	 * @param from
 	 *            The starting index.
 	 * @param to
-	 *            The finish index.
+	 *            The finish index. At most {@value #MAX_NUMBER_OF_EVENTS} events are returned.
+	 * @param timeout
+	 *            If positive, and the event at index 'from' was not received yet, the request waits up to this number
+	 *            of seconds (limited to {@value #MAX_EVENTS_WAIT_SECONDS}) for it before returning. When
+	 *            {@value #MAX_EVENTS_WAITERS} requests already wait, the request returns without waiting.
 	 * @return {@link org.cloudifysource.dsl.rest.response.DeploymentEvents} - The deployment events.
 	 * @throws Throwable
 	 *             Thrown in case of any error.
@@ -319,7 +370,8 @@ public class DeploymentsController extends BaseRestController {
 	public DeploymentEvents getDeploymentEvents(
 			@PathVariable final String deploymentId,
 			@RequestParam(required = false, defaultValue = "0") final int from,
-			@RequestParam(required = false, defaultValue = "-1") final int to)
+			@RequestParam(required = false, defaultValue = "-1") final int to,
+			@RequestParam(required = false, defaultValue = "0") final int timeout)
 			throws Throwable {
 
 		if (deploymentId == null) {
@@ -327,40 +379,173 @@ public class DeploymentsController extends BaseRestController {
 		}
 		verifyDeploymentIdExists(deploymentId);
 		
-		// limit the default number of events returned to the client.
-		int actualTo = to;
-		if (to == -1) {
-			actualTo = from + MAX_NUMBER_OF_EVENTS;
+		// limit the number of events returned to the client.
+		int actualTo = from + MAX_NUMBER_OF_EVENTS - 1;
+		if (to != -1) {
+			actualTo = Math.min(to, actualTo);
 		}
 
 		EventsCacheKey key = new EventsCacheKey(deploymentId);
 		logger.fine(EventsUtils.getThreadId()
 				+ " Received request for events [" + from + "]-[" + to + "] . key : " + key);
-		EventsCacheValue value;
+		EventsCacheValue value = getEventsCacheValue(key);
+
+		// the events log supports concurrent reads, so no locking is needed here.
+		final EventsLog eventsLog = value.getEventsLog();
+		if (timeout > 0 && eventsWaiters.tryAcquire()) {
+			try {
+				waitForEvent(key, value, from, TimeUnit.SECONDS.toMillis(Math.min(timeout, MAX_EVENTS_WAIT_SECONDS)));
+			} finally {
+				eventsWaiters.release();
+			}
+		}
+		if (!eventsLog.contains(actualTo)) {
+			logger.fine(EventsUtils.getThreadId() + " Some events are missing from cache.");
+			refreshIfStale(key, value);
+		} else {
+			logger.fine(EventsUtils.getThreadId() + " Found all relevant events in cache.");
+		}
+
+		// return the events. this MAY or MAY NOT be the complete set of events requested.
+		// request for specific events is treated as best effort. no guarantees all events are returned.
+		// events that are no longer kept are reported using DeploymentEvents.getTruncatedBeforeIndex().
+		return eventsLog.getRange(from, actualTo);
+	}
+
+	/**
+	 * Streams the events of a deployment as they are received. Each line of the response body is a JSON
+	 * {@link DeploymentEvents} object holding the events received since the previous line. The response body is written
+	 * in chunks, and ends when the timeout passes; the client may then reconnect starting from the index that follows
+	 * the last event it received. When {@value #MAX_EVENTS_WAITERS} requests already wait for events, the request is
+	 * answered with status 503 and a Retry-After header.
+	 *
+	 * @param deploymentId
+	 *            The deployment id given at install time.
+	 * @param from
+	 *            The index of the first event to stream, must not be negative.
+	 * @param timeout
+	 *            The number of seconds to stream events for, limited to {@value #MAX_EVENTS_STREAM_SECONDS}.
+	 * @param response
+	 *            The HTTP response the events are written to.
+	 * @throws Throwable
+	 *             Thrown in case of any error before streaming started.
+	 */
+	@RequestMapping(value = "{deploymentId}/events/stream", method = RequestMethod.GET)
+	public void streamDeploymentEvents(
+			@PathVariable final String deploymentId,
+			@RequestParam(required = false, defaultValue = "0") final int from,
+			@RequestParam(required = false, defaultValue = "60") final int timeout,
+			final HttpServletResponse response)
+			throws Throwable {
+
+		if (deploymentId == null) {
+			throw new RestErrorException(CloudifyErrorMessages.MISSING_DEPLOYMENT_ID.getName(),
+					"streamDeploymentEvents");
+		}
+		// a negative index is always received, so the stream would never wait.
+		if (from < 0) {
+			throw new RestErrorException(CloudifyErrorMessages.INVALID_EVENTS_INDEX.getName(), from);
+		}
+		verifyDeploymentIdExists(deploymentId);
+
+		final EventsCacheKey key = new EventsCacheKey(deploymentId);
+		final EventsCacheValue value = getEventsCacheValue(key);
+		final EventsLog eventsLog = value.getEventsLog();
+		if (!eventsWaiters.tryAcquire()) {
+			response.setHeader("Retry-After", Integer.toString(EVENTS_STREAM_RETRY_AFTER_SECONDS));
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					"Too many clients are waiting for deployment events");
+			return;
+		}
+		final long end = System.currentTimeMillis()
+				+ TimeUnit.SECONDS.toMillis(Math.min(timeout, MAX_EVENTS_STREAM_SECONDS));
+
+		response.setContentType(EVENTS_STREAM_CONTENT_TYPE);
+		response.setCharacterEncoding(EVENTS_STREAM_ENCODING);
+		final OutputStream out = response.getOutputStream();
+		int next = from;
+		try {
+			while (System.currentTimeMillis() < end) {
+				waitForEvent(key, value, next, end - System.currentTimeMillis());
+				final DeploymentEvents events = eventsLog.getRange(next, next + MAX_NUMBER_OF_EVENTS - 1);
+				final List<DeploymentEvent> eventsList = events.getEvents();
+				if (!eventsList.isEmpty()) {
+					next = eventsList.get(eventsList.size() - 1).getIndex() + 1;
+				} else if (events.getTruncatedBeforeIndex() >= 0) {
+					next = events.getTruncatedBeforeIndex();
+				} else {
+					continue;
+				}
+				out.write(EVENTS_MAPPER.writeValueAsString(events).getBytes(EVENTS_STREAM_ENCODING));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (final IOException e) {
+			// the client went away.
+			logger.fine(EventsUtils.getThreadId() + " Stopped streaming events of " + deploymentId + ": "
+					+ e.getMessage());
+		} finally {
+			eventsWaiters.release();
+		}
+	}
+
+	private EventsCacheValue getEventsCacheValue(final EventsCacheKey key) throws Throwable {
 		try {
 			logger.fine(EventsUtils.getThreadId() + " Retrieving events from cache for key : " + key);
-			value = eventsCache.get(key);
+			return eventsCache.get(key);
 		} catch (final ExecutionException e) {
 			throw e.getCause();
 		}
+	}
+
+	/**
+	 * Parks the calling request until the event with the given index is received, or the timeout passes. Events are
+	 * only received when the cache entry is refreshed, so the entry is refreshed at most once per
+	 * {@value #REFRESH_INTERVAL_MILLIS} milliseconds while waiting, no matter how many requests wait on it. The refresh
+	 * runs in the background, so that a slow container does not hold the waiting requests past their timeout.
+	 */
+	private void waitForEvent(final EventsCacheKey key, final EventsCacheValue value, final int index,
+			final long timeoutMillis) throws InterruptedException {
+		final EventsLog eventsLog = value.getEventsLog();
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		long remaining = end - System.currentTimeMillis();
+		while (!eventsLog.contains(index) && remaining > 0) {
+			refreshInBackground(key, value);
+			eventsLog.awaitIndex(index, Math.min(REFRESH_INTERVAL_MILLIS, remaining));
+			remaining = end - System.currentTimeMillis();
+		}
+	}
+
+	private void refreshInBackground(final EventsCacheKey key, final EventsCacheValue value) {
+		if (System.currentTimeMillis() - value.getLastRefreshedTimestamp() <= REFRESH_INTERVAL_MILLIS
+				|| !eventsRefreshes.add(key)) {
+			return;
+		}
+		try {
+			eventsRefreshExecutor.execute(new Runnable() {
 
-		// we don't want another request to modify our object during this calculation.
-		synchronized (value.getMutex()) {
-			if (!EventsUtils.eventsPresent(value.getEvents(), from, actualTo)) {
-				// enforce time restriction on refresh operations.
-				long now = System.currentTimeMillis();
-				if (now - value.getLastRefreshedTimestamp() > REFRESH_INTERVAL_MILLIS) {
-					logger.fine(EventsUtils.getThreadId() + " Some events are missing from cache. Refreshing...");
-					// refresh the cache for this deployment.
-					eventsCache.refresh(key);
+				@Override
+				public void run() {
+					try {
+						refreshIfStale(key, value);
+					} finally {
+						eventsRefreshes.remove(key);
+					}
 				}
-			} else {
-				logger.fine(EventsUtils.getThreadId() + " Found all relevant events in cache.");
-			}
+			});
+		} catch (final RejectedExecutionException e) {
+			// the controller is shutting down.
+			eventsRefreshes.remove(key);
+		}
+	}
 
-			// return the events. this MAY or MAY NOT be the complete set of events requested.
-			// request for specific events is treated as best effort. no guarantees all events are returned.
-			return EventsUtils.extractDesiredEvents(value.getEvents(), from, actualTo);
+	private void refreshIfStale(final EventsCacheKey key, final EventsCacheValue value) {
+		// enforce time restriction on refresh operations.
+		long now = System.currentTimeMillis();
+		if (now - value.getLastRefreshedTimestamp() > REFRESH_INTERVAL_MILLIS) {
+			logger.fine(EventsUtils.getThreadId() + " Refreshing events cache for key : " + key);
+			// refresh the cache for this deployment.
+			eventsCache.refresh(key);
 		}
 	}
 
@@ -387,22 +572,13 @@ public class DeploymentsController extends BaseRestController {
 		EventsCacheKey key = new EventsCacheKey(deploymentId);
 		logger.fine(EventsUtils.getThreadId()
 				+ " Received request for last event of key : " + key);
-		EventsCacheValue value;
-		try {
-			logger.fine(EventsUtils.getThreadId() + " Retrieving events from cache for key : " + key);
-			value = eventsCache.get(key);
-		} catch (final ExecutionException e) {
-			throw e.getCause();
-		}
+		EventsCacheValue value = getEventsCacheValue(key);
 
-		// we don't want another request to modify our object during this calculation.
-		synchronized (value.getMutex()) {
-			eventsCache.refresh(key);
-			int lastEventId = value.getLastEventIndex();
-			// return the events. this MAY or MAY NOT be the complete set of events requested.
-			// request for specific events is treated as best effort. no guarantees all events are returned.
-			return EventsUtils.extractDesiredEvents(value.getEvents(), lastEventId, lastEventId);
-		}
+		eventsCache.refresh(key);
+		int lastEventId = value.getLastEventIndex();
+		// return the events. this MAY or MAY NOT be the complete set of events requested.
+		// request for specific events is treated as best effort. no guarantees all events are returned.
+		return value.getEventsLog().getRange(lastEventId, lastEventId);
 	}
 
 	private void verifyDeploymentIdExists(final String deploymentId) 
@@ -686,6 +862,25 @@ public class DeploymentsController extends BaseRestController {
 			@PathVariable final String appName,
 			@RequestBody final InstallApplicationRequest request)
 			throws RestErrorException {
+		// keep the uploaded files until the services are installed, the installation may run in the background.
+		final List<String> uploadKeys = acquireUploads(request.getApplcationFileUploadKey(),
+				request.getApplicationOverridesUploadKey(), request.getCloudOverridesUploadKey(),
+				request.getCloudConfigurationUploadKey());
+		boolean installing = false;
+		try {
+			final InstallApplicationResponse response = installApplicationFromRepo(appName, request, uploadKeys);
+			installing = true;
+			return response;
+		} finally {
+			if (!installing) {
+				releaseUploads(uploadKeys);
+			}
+		}
+	}
+
+	private InstallApplicationResponse installApplicationFromRepo(final String appName,
+			final InstallApplicationRequest request, final List<String> uploadKeys)
+			throws RestErrorException {
 		// get the application file
 		final String applcationFileUploadKey = request.getApplcationFileUploadKey();
 		final File applicationFile = getFromRepo(applcationFileUploadKey,
@@ -732,11 +927,23 @@ public class DeploymentsController extends BaseRestController {
 						deploymentID,
 						applicationOverridesFile);
 
+		final Runnable installTask = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					installer.run();
+				} finally {
+					releaseUploads(uploadKeys);
+				}
+			}
+		};
+
 		// start install thread.
 		if (installer.isAsyncInstallPossibleForApplication()) {
-			installer.run();
+			installTask.run();
 		} else {
-			restConfig.getExecutorService().execute(installer);
+			restConfig.getExecutorService().execute(installTask);
 		}
 		// creating response
 		final InstallApplicationResponse response = new InstallApplicationResponse();
@@ -768,7 +975,8 @@ public class DeploymentsController extends BaseRestController {
 			@PathVariable final String appName)
 			throws ResourceNotFoundException {
 		final ApplicationDescriptionFactory appDescriptionFactory =
-				new ApplicationDescriptionFactory(restConfig.getAdmin());
+				new ApplicationDescriptionFactory(restConfig.getAdmin(),
+						restConfig.getUsmStateIndex());
 
 		// Check that Application exists
 		final org.openspaces.admin.application.Application app = this.restConfig.getAdmin().getApplications()
@@ -807,7 +1015,8 @@ public class DeploymentsController extends BaseRestController {
 	public List<ApplicationDescription> getApplicationDescriptions() {
 		//TODO noak: handle auth groups (postFilter)
 		final ApplicationDescriptionFactory appDescriptionFactory =
-				new ApplicationDescriptionFactory(restConfig.getAdmin());
+				new ApplicationDescriptionFactory(restConfig.getAdmin(),
+						restConfig.getUsmStateIndex());
 
 		return appDescriptionFactory.getApplicationDescriptions();
 	}
@@ -1001,6 +1210,20 @@ public class DeploymentsController extends BaseRestController {
 		String effectiveAuthGroups = getEffectiveAuthGroups(request.getAuthGroups());
 		request.setAuthGroups(effectiveAuthGroups);
 
+		// keep the uploaded files while the service is installed, the service folder may be reused by the next
+		// install.
+		final List<String> uploadKeys = acquireUploads(uploadKey, request.getServiceOverridesUploadKey(),
+				request.getCloudOverridesUploadKey(), request.getCloudConfigurationUploadKey());
+		try {
+			return installServiceFromRepo(appName, serviceName, request, absolutePuName, uploadKey);
+		} finally {
+			releaseUploads(uploadKeys);
+		}
+	}
+
+	private InstallServiceResponse installServiceFromRepo(final String appName, final String serviceName,
+			final InstallServiceRequest request, final String absolutePuName, final String uploadKey)
+			throws RestErrorException {
 		// get service folder
 		final File packedFile = getFromRepo(uploadKey,
 				CloudifyMessageKeys.WRONG_SERVICE_FOLDER_UPLOAD_KEY.getName(),
@@ -1182,7 +1405,8 @@ public class DeploymentsController extends BaseRestController {
 			throws ResourceNotFoundException {
 
 		final ApplicationDescriptionFactory appDescriptionFactory =
-				new ApplicationDescriptionFactory(restConfig.getAdmin());
+				new ApplicationDescriptionFactory(restConfig.getAdmin(),
+						restConfig.getUsmStateIndex());
 
 		return appDescriptionFactory.
 				getServiceDescription(ServiceUtils.getAbsolutePUName(appName, serviceName));
@@ -1208,7 +1432,8 @@ public class DeploymentsController extends BaseRestController {
 		verifyDeploymentIdExists(deploymentId);
 		
 		final ApplicationDescriptionFactory appDescriptionFactory =
-				new ApplicationDescriptionFactory(restConfig.getAdmin());
+				new ApplicationDescriptionFactory(restConfig.getAdmin(),
+						restConfig.getUsmStateIndex());
 		List<ServiceDescription> descriptions = new ArrayList<ServiceDescription>();
 		EventsCacheValue value = eventsCache.getIfExists(new EventsCacheKey(deploymentId));
 		if (value != null) {
@@ -1562,6 +1787,7 @@ public class DeploymentsController extends BaseRestController {
 				minutes);
 		restPollingRunnable.addService(serviceName, plannedNumberOfInstances);
 		restPollingRunnable.setAdmin(restConfig.getAdmin());
+		restPollingRunnable.setUsmStateIndex(restConfig.getUsmStateIndex());
 		restPollingRunnable.setIsServiceInstall(isServiceInstall);
 		restPollingRunnable.setLifecycleEventsContainer(lifecycleEventsContainer);
 		restPollingRunnable.setEndTime(timeout, TimeUnit.MINUTES);
@@ -1664,6 +1890,26 @@ public class DeploymentsController extends BaseRestController {
 		return templateName;
 	}
 
+	private List<String> acquireUploads(final String... uploadKeys) {
+		final List<String> acquired = new ArrayList<String>();
+		for (final String uploadKey : uploadKeys) {
+			if (!StringUtils.isBlank(uploadKey) && repo.acquire(uploadKey)) {
+				acquired.add(uploadKey);
+			}
+		}
+		return acquired;
+	}
+
+	private void releaseUploads(final List<String> uploadKeys) {
+		// the keys are released once, whichever thread finishes the installation.
+		synchronized (uploadKeys) {
+			for (final String uploadKey : uploadKeys) {
+				repo.release(uploadKey);
+			}
+			uploadKeys.clear();
+		}
+	}
+
 	private File getFromRepo(final String uploadKey, final String errorDesc, final String absolutePuName)
 			throws RestErrorException {
 		if (StringUtils.isBlank(uploadKey)) {
@@ -2085,37 +2331,47 @@ public class DeploymentsController extends BaseRestController {
 	}
 
 	/**
-	 * Retrieves USM metric details about the service.
+	 * Retrieves USM metric details about the service. The instances are queried concurrently, and instances that do
+	 * not answer in time are reported with a {@link ServiceInstanceMetricsStatus#TIMED_OUT} status.
 	 * 
 	 * @param appName
 	 *            The application name.
 	 * @param serviceName
 	 *            The service name.
+	 * @param metrics
+	 *            Comma separated names of the metrics to return. All metrics are returned if not set.
+	 * @param timeout
+	 *            The time to wait for the instances, in milliseconds. Limited to 30 seconds.
 	 * @return Various USM metric details about the service
 	 * @throws ResourceNotFoundException .
 	 */
 	@RequestMapping(value = "/{appName}/service/{serviceName}/metrics", method = RequestMethod.GET)
 	public ServiceMetricsResponse getServiceMetrics(
 			@PathVariable final String appName,
-			@PathVariable final String serviceName)
+			@PathVariable final String serviceName,
+			@RequestParam(required = false) final String metrics,
+			@RequestParam(required = false, defaultValue = "5000") final long timeout)
 			throws ResourceNotFoundException {
 
-		// service instances metrics data
-		final List<ServiceInstanceMetricsData> serviceInstanceMetricsDatas =
-				new ArrayList<ServiceInstanceMetricsData>();
-
 		// get service
 		final ProcessingUnit service = controllerHelper.getService(appName, serviceName);
 
-		// set metrics for every instance
-		for (final ProcessingUnitInstance serviceInstance : service.getInstances()) {
+		Set<String> metricNames = null;
+		if (!StringUtils.isBlank(metrics)) {
+			metricNames = new HashSet<String>();
+			for (final String metricName : metrics.split(",")) {
+				if (!StringUtils.isBlank(metricName)) {
+					metricNames.add(metricName.trim());
+				}
+			}
+		}
 
-			final Map<String, Object> metrics = serviceInstance.getStatistics()
-					.getMonitors().get("USM").getMonitors();
-			serviceInstanceMetricsDatas.add(new ServiceInstanceMetricsData(
-					serviceInstance.getInstanceId(), metrics));
+		// a request must not hold the collector threads for longer than the server allows.
+		final long timeoutMillis = Math.min(Math.max(timeout, 0), MAX_SERVICE_METRICS_TIMEOUT_MILLIS);
 
-		}
+		// service instances metrics data
+		final List<ServiceInstanceMetricsData> serviceInstanceMetricsDatas =
+				metricsCollector.collect(service, metricNames, timeoutMillis);
 
 		// create response instance
 		final ServiceMetricsResponse smr = new ServiceMetricsResponse();
@@ -2152,7 +2408,8 @@ public class DeploymentsController extends BaseRestController {
 				controllerHelper.getServiceInstance(appName, serviceName, instanceId);
 
 		// get metrics data
-		final Map<String, Object> metrics = serviceInstance.getStatistics().getMonitors().get("USM").getMonitors();
+		final Map<String, Object> metrics =
+				restConfig.getUsmStateIndex().getInstanceState(serviceInstance).getUsmMonitors();
 
 		final ServiceInstanceMetricsData serviceInstanceMetricsData =
 				new ServiceInstanceMetricsData(instanceId, metrics);
@@ -58,12 +58,15 @@ import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -110,6 +113,8 @@ import org.cloudifysource.rest.util.ApplicationDescriptionFactory;
 import org.cloudifysource.rest.util.ApplicationInstallerRunnable;
 import org.cloudifysource.rest.util.IsolationUtils;
 import org.cloudifysource.rest.util.LifecycleEventsContainer;
+import org.cloudifysource.rest.util.LogTailFollower;
+import org.cloudifysource.rest.util.MachineDumpStreamer;
 import org.cloudifysource.rest.util.RestPollingRunnable;
 import org.cloudifysource.rest.util.RestUtils;
 import org.cloudifysource.restDoclet.annotations.InternalMethod;
@@ -213,6 +218,9 @@ public class ServiceController implements ServiceDetailsProvider {
 	private static final int THREAD_POOL_SIZE = 20;
 	private static final int PU_DISCOVERY_TIMEOUT_SEC = 8;
 	private static final int LIFECYCLE_EVENT_POLLING_INTERVAL_SEC = 4;
+	private static final int MAX_LIFECYCLE_EVENTS_WAIT_SECONDS = 30;
+	// each waiting request holds a servlet thread, so only this many requests may wait for events at once.
+	private static final int MAX_LIFECYCLE_EVENTS_WAITERS = 50;
 	private static final long LIFECYCLE_EVENT_CLEANUP_INTERVAL_SEC = 60;
 	private static final long MINIMAL_POLLING_TASK_EXPIRATION = 5 * 60 * 1000;
 	private static final String LOCALCLOUD_ZONE = "localcloud";
@@ -223,17 +231,21 @@ public class ServiceController implements ServiceDetailsProvider {
 	private static final Logger logger = Logger.getLogger(ServiceController.class.getName());
 	private static final long DEFAULT_DUMP_FILE_SIZE_LIMIT = 5 * 1024 * 1024;
 	private static final String DEFAULT_DUMP_PROCESSORS = "summary, network, thread, log";
+	private static final int MACHINE_DUMP_THREAD_POOL_SIZE = 10;
 	protected static final int MANAGEMENT_AGENT_SHUTDOWN_INTERNAL_SECONDS = 5;
 
 	private final Map<UUID, RestPollingRunnable> lifecyclePollingThreadContainer =
 			new ConcurrentHashMap<UUID, RestPollingRunnable>();
 	private final ExecutorService serviceUndeployExecutor = Executors
 			.newFixedThreadPool(10);
+	private final Semaphore lifecycleEventsWaiters = new Semaphore(MAX_LIFECYCLE_EVENTS_WAITERS);
 	/**
 	 * A set containing all of the executed lifecycle events. used to avoid duplicate prints.
 	 */
 	private final Set<String> eventsSet = new HashSet<String>();
 
+	private final LogTailFollower logTailFollower = new LogTailFollower();
+
 	@Autowired
 	private RestConfiguration restConfig;
 	
@@ -304,6 +316,7 @@ public class ServiceController implements ServiceDetailsProvider {
 		this.executorService.shutdownNow();
 		this.scheduledExecutor.shutdownNow();
 		this.lifecycleEventsCleaner.shutdownNow();
+		this.machineDumpExecutor.shutdownNow();
 	}
 
 	/**
@@ -340,6 +353,56 @@ public class ServiceController implements ServiceDetailsProvider {
 		return getMachineDumpFile(null, processors, fileSizeLimit);
 	}
 
+	/**
+	 * Streams the dumps of all the machines as a single zip file, with an entry named &lt;machine ip&gt;.zip for each
+	 * machine. Dumps are generated concurrently and written to the response as they become available, in machine
+	 * order. Dumps that could not be generated, or that were not generated or added as the size limit was reached, are
+	 * listed in a {@value MachineDumpStreamer#SUMMARY_ENTRY_NAME} entry.
+	 *
+	 * @param processors
+	 *            The list of processors to be used.
+	 * @param fileSizeLimit
+	 *            The maximum total size of the dumps, in bytes.
+	 * @param response
+	 *            The response the zip file is written to.
+	 * @throws IOException .
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the dumps.
+	 */
+	@JsonRequestExample(requestBody = "{\"fileSizeLimit\" : 50000000, \"processors\" : \"summary, thread, log\"}")
+	@JsonResponseExample(status = "success", responseBody = "&ltzip file containing a dump file for each machine&gt;")
+	@PossibleResponseStatuses(responseStatuses = {
+			@PossibleResponseStatus(code = HTTP_OK, description = "success"),
+			@PossibleResponseStatus(code = HTTP_INTERNAL_SERVER_ERROR, description = "IOException") })
+	@RequestMapping(value = "/dump/machines/stream", method = RequestMethod.GET)
+	@PreAuthorize("isFullyAuthenticated() and hasRole('ROLE_CLOUDADMINS')")
+	public void streamMachinesDump(
+			@RequestParam(defaultValue = DEFAULT_DUMP_PROCESSORS) final String processors,
+			@RequestParam(defaultValue = "" + DEFAULT_DUMP_FILE_SIZE_LIMIT) final long fileSizeLimit,
+			final HttpServletResponse response)
+			throws IOException, InterruptedException {
+		final String[] actualProcessors = getProcessorsFromRequest(processors);
+		long actualFileSizeLimit = DEFAULT_DUMP_FILE_SIZE_LIMIT;
+		if (fileSizeLimit != 0) {
+			actualFileSizeLimit = fileSizeLimit;
+		}
+
+		final MachineDumpStreamer streamer =
+				new MachineDumpStreamer(machineDumpExecutor, restTemporaryFolder, actualProcessors);
+		try {
+			streamer.start(Arrays.asList(this.admin.getMachines().getMachines()), actualFileSizeLimit);
+
+			response.setContentType("application/zip");
+			response.setHeader("Content-Disposition", "attachment; filename=machines-dump.zip");
+			final ServletOutputStream outputStream = response.getOutputStream();
+			final long totalSize = streamer.writeTo(outputStream);
+			outputStream.flush();
+			logger.fine("Streamed machine dumps of total size " + totalSize);
+		} finally {
+			streamer.close();
+		}
+	}
+
 	/**
 	 * Get the dump of a given machine, by its ip.
 	 *
@@ -598,6 +661,21 @@ public class ServiceController implements ServiceDetailsProvider {
 				}
 			});
 
+	// Generates machine dumps for streamed dump requests.
+	private final ExecutorService machineDumpExecutor = Executors
+			.newFixedThreadPool(MACHINE_DUMP_THREAD_POOL_SIZE, new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r,
+							"MachineDumpExecutor-"
+									+ threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	// Set up a small thread pool with daemon threads.
 	private final ExecutorService executorService = Executors
 			.newFixedThreadPool(THREAD_POOL_SIZE, new ThreadFactory() {
@@ -746,7 +824,8 @@ public class ServiceController implements ServiceDetailsProvider {
 
 		final Applications apps = admin.getApplications();
 		final List<ApplicationDescription> appDescriptions = new ArrayList<ApplicationDescription>();
-		final ApplicationDescriptionFactory applicationDescriptionFactory = new ApplicationDescriptionFactory(admin);
+		final ApplicationDescriptionFactory applicationDescriptionFactory = new ApplicationDescriptionFactory(admin,
+				restConfig.getUsmStateIndex());
 		for (final Application app : apps) {
 			if (!app.getName().equals(CloudifyConstants.MANAGEMENT_APPLICATION_NAME)) {
 				final ApplicationDescription applicationDescription = applicationDescriptionFactory
@@ -788,7 +867,8 @@ public class ServiceController implements ServiceDetailsProvider {
 		if (app == null) {
 			throw new RestErrorException(FAILED_TO_LOCATE_APP, applicationName);
 		}
-		final ApplicationDescriptionFactory appDescriptionFactory = new ApplicationDescriptionFactory(admin);
+		final ApplicationDescriptionFactory appDescriptionFactory = new ApplicationDescriptionFactory(admin,
+				restConfig.getUsmStateIndex());
 		final ApplicationDescription applicationDescription = appDescriptionFactory.getApplicationDescription(app);
 		final List<ApplicationDescription> applicationDescriptionList = new ArrayList<ApplicationDescription>();
 		applicationDescriptionList.add(applicationDescription);
@@ -1283,6 +1363,7 @@ public class ServiceController implements ServiceDetailsProvider {
 		restPollingRunnable.addService(serviceName, 0);
 		restPollingRunnable.setIsServiceInstall(false);
 		restPollingRunnable.setAdmin(admin);
+		restPollingRunnable.setUsmStateIndex(restConfig.getUsmStateIndex());
 		restPollingRunnable.setLifecycleEventsContainer(lifecycleEventsContainer);
 		restPollingRunnable.setIsUninstall(true);
 		restPollingRunnable.setUndeployTask(undeployTask);
@@ -1988,6 +2069,7 @@ public class ServiceController implements ServiceDetailsProvider {
 		}
 		restPollingRunnable.setIsServiceInstall(false);
 		restPollingRunnable.setAdmin(admin);
+		restPollingRunnable.setUsmStateIndex(restConfig.getUsmStateIndex());
 		restPollingRunnable.setLifecycleEventsContainer(lifecycleEventsContainer);
 		restPollingRunnable.setIsUninstall(true);
 		restPollingRunnable.setUndeployTask(undeployTask);
@@ -2022,6 +2104,7 @@ public class ServiceController implements ServiceDetailsProvider {
 				minutes);
 		restPollingRunnable.addService(serviceName, plannedNumberOfInstances);
 		restPollingRunnable.setAdmin(admin);
+		restPollingRunnable.setUsmStateIndex(restConfig.getUsmStateIndex());
 		restPollingRunnable.setIsServiceInstall(isServiceInstall);
 		restPollingRunnable.setLifecycleEventsContainer(lifecycleEventsContainer);
 		restPollingRunnable.setEndTime(timeout, TimeUnit.MINUTES);
@@ -2056,6 +2139,7 @@ public class ServiceController implements ServiceDetailsProvider {
 		restPollingRunnable.setIsServiceInstall(false);
 		restPollingRunnable.setLifecycleEventsContainer(lifecycleEventsContainer);
 		restPollingRunnable.setAdmin(admin);
+		restPollingRunnable.setUsmStateIndex(restConfig.getUsmStateIndex());
 		restPollingRunnable.setEndTime(timeout, TimeUnit.MINUTES);
 		this.lifecyclePollingThreadContainer.put(lifecycleEventsContainerUUID,
 				restPollingRunnable);
@@ -2077,9 +2161,15 @@ public class ServiceController implements ServiceDetailsProvider {
 	 *            the unique task ID.
 	 * @param cursor
 	 *            event entry cursor
+	 * @param timeout
+	 *            if positive, and there are no events after the cursor position, the request waits up to this number
+	 *            of seconds for new events or for the task to end before returning. When
+	 *            {@value #MAX_LIFECYCLE_EVENTS_WAITERS} requests already wait, the request returns without waiting.
 	 * @return a map containing the events and the task state.
 	 * @throws RestErrorException
 	 *             When polling task has expired or if the task ended unexpectedly.
+	 * @throws InterruptedException
+	 *             When interrupted while waiting for events.
 	 */
 	@JsonResponseExample(status = "success", responseBody =
 			"{\"isDone\":false,\"lifecycleLogs\":[\"[service1] Deployed 1 planned 1\","
@@ -2095,7 +2185,9 @@ public class ServiceController implements ServiceDetailsProvider {
 	@ResponseBody
 	public Object getLifecycleEvents(
 			@PathVariable final String lifecycleEventContainerID,
-			@PathVariable final int cursor) throws RestErrorException {
+			@PathVariable final int cursor,
+			@RequestParam(required = false, defaultValue = "0") final int timeout)
+			throws RestErrorException, InterruptedException {
 		final Map<String, Object> resultsMap = new HashMap<String, Object>();
 
 		if (!this.lifecyclePollingThreadContainer.containsKey(UUID
@@ -2110,6 +2202,14 @@ public class ServiceController implements ServiceDetailsProvider {
 
 		final LifecycleEventsContainer container = restPollingRunnable
 				.getLifecycleEventsContainer();
+		if (timeout > 0 && lifecycleEventsWaiters.tryAcquire()) {
+			try {
+				waitForLifecycleEvents(restPollingRunnable, container, cursor,
+						TimeUnit.SECONDS.toMillis(Math.min(timeout, MAX_LIFECYCLE_EVENTS_WAIT_SECONDS)));
+			} finally {
+				lifecycleEventsWaiters.release();
+			}
+		}
 		final boolean done = restPollingRunnable.isDone();
 		if (!done) {
 			extendThreadTimeout(restPollingRunnable,
@@ -2145,6 +2245,21 @@ public class ServiceController implements ServiceDetailsProvider {
 		return successStatus(resultsMap);
 	}
 
+	// the polling task does not signal when it ends, so the wait is split to the task's polling interval.
+	private void waitForLifecycleEvents(final RestPollingRunnable restPollingRunnable,
+			final LifecycleEventsContainer container, final int cursor, final long timeoutMillis)
+			throws InterruptedException {
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (remaining > 0 && !restPollingRunnable.isDone()) {
+			if (container.waitForLifecycleEvents(cursor,
+					Math.min(remaining, TimeUnit.SECONDS.toMillis(LIFECYCLE_EVENT_POLLING_INTERVAL_SEC)))) {
+				return;
+			}
+			remaining = end - System.currentTimeMillis();
+		}
+	}
+
 	private void extendThreadTimeout(final RestPollingRunnable pollingRunnable,
 			final int timeoutInMinutes) {
 		final long taskExpiration = pollingRunnable.getEndTime()
@@ -3729,6 +3844,63 @@ public class ServiceController implements ServiceDetailsProvider {
 		return successStatus(stringBuilder.toString());
 	}
 
+	/**
+	 * Follows the logs of all of the specified service's instances, like tail -f. The first request returns the last
+	 * lines of each instance and a follow id. Requests that pass the follow id return only the lines logged since the
+	 * previous request. Each line is prefixed with the id of its instance.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param followId
+	 *            The follow id returned by the previous request, or none to start following.
+	 * @param numLines
+	 *            The number of lines to return from each instance on the first request.
+	 * @param grep
+	 *            A regular expression the returned lines must contain. Set on the first request.
+	 * @return The follow id and the new log lines.
+	 * @throws RestErrorException .
+	 */
+	@JsonResponseExample(status = "success",
+			responseBody = "{\"followId\":\"2b7ca8f6-0dd1-4b76-a2e6-6cbb5e5fcd34\",\"lines\":[\"[1] log line\"]}")
+	@PossibleResponseStatuses(responseStatuses = {
+			@PossibleResponseStatus(code = HTTP_OK, description = ""),
+			@PossibleResponseStatus(code = HTTP_INTERNAL_SERVER_ERROR, description = "failed_to_locate_service"),
+			@PossibleResponseStatus(code = HTTP_INTERNAL_SERVER_ERROR, description = "invalid_tail_grep_pattern") })
+	@RequestMapping(value = "applications/{applicationName}/services/{serviceName}"
+			+ "/tail/follow", method = RequestMethod.GET)
+	@ResponseBody
+	public Map<String, Object> followLogTailByServiceName(
+			@PathVariable final String applicationName,
+			@PathVariable final String serviceName,
+			@RequestParam(value = CloudifyConstants.TAIL_FOLLOW_ID, required = false) final String followId,
+			@RequestParam(value = "numLines", required = false, defaultValue = "10") final int numLines,
+			@RequestParam(value = CloudifyConstants.TAIL_GREP_PARAM_NAME, required = false) final String grep)
+			throws RestErrorException {
+
+		final ProcessingUnit processingUnit = getProcessingUnit(
+				applicationName, serviceName);
+		if (processingUnit == null) {
+			final String absolutePuName = ServiceUtils.getAbsolutePUName(
+					applicationName, serviceName);
+			logger.severe("Could not find service " + absolutePuName);
+			return unavailableServiceError(absolutePuName);
+		}
+		final String effectiveGrep = StringUtils.isEmpty(grep) ? null : grep;
+		if (effectiveGrep != null) {
+			try {
+				Pattern.compile(effectiveGrep);
+			} catch (final PatternSyntaxException e) {
+				throw new RestErrorException(ResponseConstants.INVALID_TAIL_GREP_PATTERN, effectiveGrep,
+						e.getDescription());
+			}
+		}
+
+		return successStatus(logTailFollower.follow(processingUnit, followId,
+				Math.min(numLines, MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED), effectiveGrep));
+	}
+
 	private String getLogTailFromContainer(
 			final GridServiceContainer container, final int numLines) {
 		int numberOfLinesToTail;
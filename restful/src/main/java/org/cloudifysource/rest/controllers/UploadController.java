@@ -116,4 +116,114 @@ public class UploadController extends BaseRestController {
         response.setUploadKey(uploadKey);
         return response;
     }
+
+    /**
+     * Checks whether a file was already uploaded, by the hex encoded SHA-256 digest of its content.
+     * @param contentHash
+     *            The content hash of the file.
+     * @return {@link UploadResponse} - contains the upload key if the file was uploaded, otherwise the number of
+     *         bytes received so far by an unfinished chunked upload.
+     * @throws RestErrorException .
+     */
+    @PreAuthorize("isFullyAuthenticated() and hasPermission(#authGroups, 'deploy')")
+    @RequestMapping(value = "/content/{contentHash}", method = RequestMethod.GET)
+    public UploadResponse getContentUpload(@PathVariable final String contentHash)
+            throws RestErrorException {
+        final UploadResponse response = new UploadResponse();
+        response.setUploadKey(uploadRepo.getContentKey(contentHash));
+        if (response.getUploadKey() == null) {
+            response.setUploadedBytes(uploadRepo.getPartialContentSize(contentHash));
+        }
+        return response;
+    }
+
+    /**
+     * Uploads a file by its content hash. If a file with the same content was already uploaded, its key is returned.
+     * @param contentHash
+     *            The hex encoded SHA-256 digest of the file.
+     * @param fileName
+     *            The name of the file to upload.
+     * @param file
+     *            The file to upload.
+     * @return {@link UploadResponse} - contains the uploaded file's key.
+     * @throws RestErrorException .
+     */
+    @PreAuthorize("isFullyAuthenticated() and hasPermission(#authGroups, 'deploy')")
+    @RequestMapping(value = "/content/{contentHash}/{fileName:.+}", method = RequestMethod.POST)
+    public UploadResponse uploadContent(
+            @PathVariable final String contentHash,
+            @PathVariable final String fileName,
+            @RequestParam(value = CloudifyConstants.UPLOAD_FILE_PARAM_NAME, required = true) final MultipartFile file)
+            throws RestErrorException {
+        final UploadResponse response = new UploadResponse();
+        try {
+            response.setUploadKey(uploadRepo.putContent(contentHash, fileName, file));
+        } catch (final IOException e) {
+            throw uploadFailed(fileName, e);
+        }
+        return response;
+    }
+
+    /**
+     * Uploads a chunk of a file by its content hash.
+     * Chunks must be uploaded in order, and the upload completed with
+     * {@link #completeContentUpload(String, String)}.
+     * @param contentHash
+     *            The hex encoded SHA-256 digest of the whole file.
+     * @param fileName
+     *            The name of the file to upload.
+     * @param offset
+     *            The offset of the chunk in the file.
+     * @param file
+     *            The chunk.
+     * @return {@link UploadResponse} - contains the number of bytes received so far.
+     * @throws RestErrorException .
+     */
+    @PreAuthorize("isFullyAuthenticated() and hasPermission(#authGroups, 'deploy')")
+    @RequestMapping(value = "/content/{contentHash}/{fileName:.+}/chunk", method = RequestMethod.POST)
+    public UploadResponse uploadContentChunk(
+            @PathVariable final String contentHash,
+            @PathVariable final String fileName,
+            @RequestParam(value = CloudifyConstants.UPLOAD_OFFSET_PARAM_NAME, required = true) final long offset,
+            @RequestParam(value = CloudifyConstants.UPLOAD_FILE_PARAM_NAME, required = true) final MultipartFile file)
+            throws RestErrorException {
+        final UploadResponse response = new UploadResponse();
+        try {
+            response.setUploadedBytes(uploadRepo.putContentChunk(contentHash, offset, file));
+        } catch (final IOException e) {
+            throw uploadFailed(fileName, e);
+        }
+        return response;
+    }
+
+    /**
+     * Completes a chunked upload, after its last chunk was uploaded.
+     * @param contentHash
+     *            The hex encoded SHA-256 digest of the file.
+     * @param fileName
+     *            The name of the uploaded file.
+     * @return {@link UploadResponse} - contains the uploaded file's key.
+     * @throws RestErrorException .
+     */
+    @PreAuthorize("isFullyAuthenticated() and hasPermission(#authGroups, 'deploy')")
+    @RequestMapping(value = "/content/{contentHash}/{fileName:.+}/complete", method = RequestMethod.POST)
+    public UploadResponse completeContentUpload(
+            @PathVariable final String contentHash,
+            @PathVariable final String fileName)
+            throws RestErrorException {
+        final UploadResponse response = new UploadResponse();
+        try {
+            response.setUploadKey(uploadRepo.completeContent(contentHash, fileName));
+        } catch (final IOException e) {
+            throw uploadFailed(fileName, e);
+        }
+        return response;
+    }
+
+    private RestErrorException uploadFailed(final String fileName, final IOException e) {
+        if (logger.isLoggable(Level.WARNING)) {
+            logger.warning("could not upload file " + fileName + " error was - " + e.getMessage());
+        }
+        return new RestErrorException(CloudifyMessageKeys.UPLOAD_FAILED.getName(), fileName, e.getMessage());
+    }
 }
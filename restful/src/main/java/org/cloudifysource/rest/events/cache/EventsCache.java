@@ -18,7 +18,6 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import org.cloudifysource.dsl.rest.response.DeploymentEvent;
-import org.cloudifysource.dsl.rest.response.DeploymentEvents;
 import org.cloudifysource.rest.events.LogEntryMatcherProvider;
 import org.openspaces.admin.Admin;
 
@@ -35,6 +34,7 @@ import java.util.logging.Logger;
  *
  * This class is the cache implementation for life cycle events.
  * Cache entries are deleted automatically in they haven't been accessed to in more than 5 minutes.
+ * Each entry keeps a bounded number of events, see {@link EventsCacheValue#RETENTION_PROPERTY_NAME}.
  *
  * Events are populated using a guava based {@link com.google.common.cache.CacheLoader}.
  *
@@ -47,6 +47,7 @@ public class EventsCache {
 
     private static final int CACHE_EXPIRATION_MINUTES = 5;
 
+    private final EventsCacheLoader loader;
     private final LoadingCache<EventsCacheKey, EventsCacheValue> eventsLoadingCache;
     private final LogEntryMatcherProvider matcherProvider;
     private int cacheExpirationPeriod = CACHE_EXPIRATION_MINUTES;
@@ -62,7 +63,7 @@ public class EventsCache {
 
     public EventsCache(final Admin admin) {
 
-        final EventsCacheLoader loader = new EventsCacheLoader(new AdminBasedGridServiceContainerProvider(admin));
+        this.loader = new EventsCacheLoader(new AdminBasedGridServiceContainerProvider(admin));
 
         this.matcherProvider = loader.getMatcherProvider();
         this.eventsLoadingCache = CacheBuilder.newBuilder()
@@ -86,6 +87,13 @@ public class EventsCache {
                 .build(loader);
     }
 
+    /**
+     * Stops loading events. Requests for container logs that did not end are interrupted.
+     */
+    public void close() {
+        loader.close();
+    }
+
     /**
      * Refresh the cache. this results in a call to {@link EventsCacheLoader#reload(EventsCacheKey, EventsCacheValue)}.
      * @param key The key to refresh.
@@ -132,8 +140,6 @@ public class EventsCache {
      */
     public void add(final EventsCacheKey key, final DeploymentEvent event) {
     	EventsCacheValue eventsCacheValue = eventsLoadingCache.asMap().get(key);
-		DeploymentEvents events = eventsCacheValue.getEvents();
-        event.setIndex(eventsCacheValue.getLastEventIndex() + 1);
-    	events.getEvents().add(event);
+    	eventsCacheValue.getEventsLog().append(event);
     }
 }
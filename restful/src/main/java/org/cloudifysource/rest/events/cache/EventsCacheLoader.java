@@ -12,12 +12,27 @@
  *******************************************************************************/
 package org.cloudifysource.rest.events.cache;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.cloudifysource.dsl.rest.response.DeploymentEvent;
-import org.cloudifysource.dsl.rest.response.DeploymentEvents;
 import org.cloudifysource.rest.events.EventsUtils;
 import org.cloudifysource.rest.events.LogEntryMatcherProvider;
 import org.cloudifysource.rest.events.LogEntryMatcherProviderKey;
@@ -42,6 +57,11 @@ import com.google.common.util.concurrent.ListenableFuture;
  * Load and reload operation will execute a remote call to fetch container logs.
  * These logs are then translated to events and saved inside the cache.
  *
+ * The logs of all containers are requested concurrently, and events are indexed in the order of their log time stamps.
+ * A container that does not answer within the log request timeout is marked as lagging: its request is left running,
+ * and its events are added by the first load or reload that finds the request done. Reloads do not wait for lagging
+ * containers, and drop the requests of containers that are no longer part of the deployment.
+ *
  * @see org.cloudifysource.dsl.rest.response.DeploymentEvents
  *
  */
@@ -49,13 +69,44 @@ public class EventsCacheLoader extends CacheLoader<EventsCacheKey, EventsCacheVa
 
     private static final Logger logger = Logger.getLogger(EventsCacheLoader.class.getName());
 
+    private static final int DEFAULT_LOG_REQUEST_THREADS = 20;
+    private static final long DEFAULT_LOG_REQUEST_TIMEOUT_MILLIS = 5000;
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
     private final LogEntryMatcherProvider matcherProvider;
     private final GridServiceContainerProvider containerProvider;
+    private final ThreadPoolExecutor logRequestExecutor;
+    private long logRequestTimeoutMillis = DEFAULT_LOG_REQUEST_TIMEOUT_MILLIS;
 
     public EventsCacheLoader(final GridServiceContainerProvider containerProvider) {
+        this(containerProvider, DEFAULT_LOG_REQUEST_THREADS);
+    }
+
+    /**
+     * @param containerProvider Provides the containers of a deployment.
+     * @param logRequestThreads The maximum number of containers whose logs are requested at once.
+     */
+    public EventsCacheLoader(final GridServiceContainerProvider containerProvider, final int logRequestThreads) {
 
         this.matcherProvider = new LogEntryMatcherProvider();
         this.containerProvider = containerProvider;
+        this.logRequestExecutor = new ThreadPoolExecutor(logRequestThreads, logRequestThreads,
+                IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "EventsCacheLoader-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.logRequestExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setLogRequestTimeoutMillis(final long logRequestTimeoutMillis) {
+        this.logRequestTimeoutMillis = logRequestTimeoutMillis;
     }
 
     @Override
@@ -64,33 +115,15 @@ public class EventsCacheLoader extends CacheLoader<EventsCacheKey, EventsCacheVa
         logger.fine(EventsUtils.getThreadId() + "Could not find events for key " + key
                 + " in cache. Loading from container logs...");
 
-        DeploymentEvents events = new DeploymentEvents();
+        EventsCacheValue value = new EventsCacheValue();
 
         // initial load. no events are present in the cache for this deployment.
         // iterate over all container and retrieve logs from logs cache.
         Set<GridServiceContainer> containersForDeployment = containerProvider.getContainersForDeployment(
                 key.getDeploymentId());
 
-        int index = -1;
-        for (GridServiceContainer container : containersForDeployment) {
-
-            LogEntryMatcherProviderKey logEntryMatcherProviderKey = createKey(container, key);
-
-            LogEntries logEntries = container.logEntries(matcherProvider.get(logEntryMatcherProviderKey));
-            for (LogEntry logEntry : logEntries) {
-                if (logEntry.isLog()) {
-                    DeploymentEvent event = EventsUtils.logToEvent(logEntry,
-                            logEntries.getHostName(), logEntries.getHostAddress());
-                    event.setIndex(++index);
-                    events.getEvents().add(event);
-                }
-            }
-
-        }
+        harvestEvents(key, value, containersForDeployment);
 
-        EventsCacheValue value = new EventsCacheValue();
-        value.setLastEventIndex(index);
-        value.setEvents(events);
         value.setLastRefreshedTimestamp(System.currentTimeMillis());
         return value;
     }
@@ -112,28 +145,13 @@ public class EventsCacheLoader extends CacheLoader<EventsCacheKey, EventsCacheVa
         	// uninstall process is taking place.
         	containersForDeployment.addAll(containers);
         }
-        if (!containersForDeployment.isEmpty()) {
-            int index = oldValue.getLastEventIndex() + 1;
-            for (GridServiceContainer container : containersForDeployment) {
-
-                // this will give us just the new logs.
-                LogEntryMatcherProviderKey logEntryMatcherProviderKey = createKey(container, key);
-                LogEntryMatcher matcher = matcherProvider.get(logEntryMatcherProviderKey);
-                LogEntries logEntries = container.logEntries(matcher);
-
-                for (LogEntry logEntry : logEntries) {
-                    if (logEntry.isLog()) {
-                        DeploymentEvent event = EventsUtils.logToEvent(
-                                logEntry, logEntries.getHostName(), logEntries.getHostAddress());
-                        event.setIndex(index++);
-                        oldValue.getEvents().getEvents().add(event);
-                    }
-                }
-            }
+        if (!containersForDeployment.isEmpty() || !oldValue.getPendingLogRequests().isEmpty()) {
+
+            // this will give us just the new logs.
+            harvestEvents(key, oldValue, containersForDeployment);
 
             // update refresh time.
             oldValue.setLastRefreshedTimestamp(System.currentTimeMillis());
-            oldValue.setLastEventIndex(index - 1);
         }
         return Futures.immediateFuture(oldValue);
     }
@@ -142,6 +160,111 @@ public class EventsCacheLoader extends CacheLoader<EventsCacheKey, EventsCacheVa
         return matcherProvider;
     }
 
+    /**
+     * Stops the threads that request container logs. Requests that did not end are interrupted.
+     */
+    public void close() {
+        logRequestExecutor.shutdownNow();
+    }
+
+    /**
+     * Requests the new logs of all containers concurrently, and appends the events found to the value's events log in
+     * time stamp order. A container has at most one outstanding request, since its matcher tracks the position of the
+     * last log entry that was read.
+     */
+    private void harvestEvents(final EventsCacheKey key, final EventsCacheValue value,
+                               final Set<GridServiceContainer> containers) {
+
+        final Map<GridServiceContainer, Future<List<TimestampedEvent>>> requests = value.getPendingLogRequests();
+        final Iterator<Map.Entry<GridServiceContainer, Future<List<TimestampedEvent>>>> iterator =
+                requests.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<GridServiceContainer, Future<List<TimestampedEvent>>> entry = iterator.next();
+            if (!containers.contains(entry.getKey())) {
+                // the container is no longer part of the deployment.
+                entry.getValue().cancel(true);
+                iterator.remove();
+                value.getLaggingContainers().remove(entry.getKey());
+            }
+        }
+
+        for (final GridServiceContainer container : containers) {
+            if (!requests.containsKey(container)) {
+                final LogEntryMatcher matcher = matcherProvider.get(createKey(container, key));
+                requests.put(container, logRequestExecutor.submit(new Callable<List<TimestampedEvent>>() {
+
+                    @Override
+                    public List<TimestampedEvent> call() throws Exception {
+                        return getEvents(container, matcher);
+                    }
+                }));
+            }
+        }
+
+        final long end = System.currentTimeMillis() + logRequestTimeoutMillis;
+        final List<TimestampedEvent> events = new ArrayList<TimestampedEvent>();
+        for (final Map.Entry<GridServiceContainer, Future<List<TimestampedEvent>>> entry
+                : new ArrayList<Map.Entry<GridServiceContainer, Future<List<TimestampedEvent>>>>(
+                        requests.entrySet())) {
+            final GridServiceContainer container = entry.getKey();
+            final Future<List<TimestampedEvent>> request = entry.getValue();
+            try {
+                if (value.getLaggingContainers().contains(container)) {
+                    // a lagging container already had its chance, its events are added once it answers.
+                    if (!request.isDone()) {
+                        continue;
+                    }
+                    events.addAll(request.get());
+                } else {
+                    final long remaining = Math.max(0, end - System.currentTimeMillis());
+                    events.addAll(request.get(remaining, TimeUnit.MILLISECONDS));
+                }
+                requests.remove(container);
+                value.getLaggingContainers().remove(container);
+            } catch (final TimeoutException e) {
+                if (value.getLaggingContainers().add(container)) {
+                    logger.warning(EventsUtils.getThreadId() + "Container " + container.getUid()
+                            + " did not return its logs within " + logRequestTimeoutMillis
+                            + " milliseconds. Its events for key " + key + " will be added when it does.");
+                }
+            } catch (final ExecutionException e) {
+                requests.remove(container);
+                value.getLaggingContainers().remove(container);
+                logger.log(Level.FINE, EventsUtils.getThreadId() + "Failed to retrieve logs of container "
+                        + container.getUid() + " for key " + key, e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // the sort is stable, so the events of each container keep their order.
+        Collections.sort(events, new Comparator<TimestampedEvent>() {
+
+            @Override
+            public int compare(final TimestampedEvent e1, final TimestampedEvent e2) {
+                return e1.timestamp < e2.timestamp ? -1 : (e1.timestamp == e2.timestamp ? 0 : 1);
+            }
+        });
+        for (final TimestampedEvent event : events) {
+            value.getEventsLog().append(event.event);
+        }
+    }
+
+    private static List<TimestampedEvent> getEvents(final GridServiceContainer container,
+                                                    final LogEntryMatcher matcher) {
+        final List<TimestampedEvent> events = new ArrayList<TimestampedEvent>();
+        final LogEntries logEntries = container.logEntries(matcher);
+        for (LogEntry logEntry : logEntries) {
+            if (logEntry.isLog()) {
+                DeploymentEvent event = EventsUtils.logToEvent(logEntry,
+                        logEntries.getHostName(), logEntries.getHostAddress());
+                events.add(new TimestampedEvent(logEntry.getTimestamp(), event));
+            }
+        }
+        return events;
+    }
+
     private LogEntryMatcherProviderKey createKey(final GridServiceContainer container,
                                                  final EventsCacheKey key) {
         LogEntryMatcherProviderKey logEntryMatcherProviderKey = new LogEntryMatcherProviderKey();
@@ -149,4 +272,18 @@ public class EventsCacheLoader extends CacheLoader<EventsCacheKey, EventsCacheVa
         logEntryMatcherProviderKey.setContainer(container);
         return logEntryMatcherProviderKey;
     }
+
+    /**
+     * An event, and the time stamp of the log entry it was created from.
+     */
+    static final class TimestampedEvent {
+
+        private final long timestamp;
+        private final DeploymentEvent event;
+
+        TimestampedEvent(final long timestamp, final DeploymentEvent event) {
+            this.timestamp = timestamp;
+            this.event = event;
+        }
+    }
 }
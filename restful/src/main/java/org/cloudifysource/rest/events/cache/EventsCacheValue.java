@@ -12,12 +12,16 @@
  *******************************************************************************/
 package org.cloudifysource.rest.events.cache;
 
-import org.cloudifysource.dsl.rest.response.DeploymentEvents;
 import org.openspaces.admin.gsc.GridServiceContainer;
 import org.openspaces.admin.pu.ProcessingUnit;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 /**
  * Created with IntelliJ IDEA.
@@ -27,26 +31,44 @@ import java.util.Set;
  * <br/><br/>
  *
  * Value for the events cache. containing the actual events plus some implementation specific information.
+ * The events are kept in a bounded {@link EventsLog}, its capacity is set by the
+ * {@value #RETENTION_PROPERTY_NAME} system property.
  */
 public class EventsCacheValue {
 
-    private DeploymentEvents events = new DeploymentEvents();
-    private long lastRefreshedTimestamp;
-    private int lastEventIndex;
-    private volatile Object mutex = new Object();
+    /**
+     * System property used to set the maximum number of events kept for each deployment.
+     */
+    public static final String RETENTION_PROPERTY_NAME = "org.cloudifysource.rest.events-retention";
+
+    private static final int DEFAULT_RETENTION = 5000;
+
+    private final EventsLog eventsLog;
+    private volatile long lastRefreshedTimestamp;
     private Set<ProcessingUnit> processingUnits = new HashSet<ProcessingUnit>();
     private Set<GridServiceContainer> containers = new HashSet<GridServiceContainer>();
+    private final Map<GridServiceContainer, Future<List<EventsCacheLoader.TimestampedEvent>>> pendingLogRequests =
+            new ConcurrentHashMap<GridServiceContainer, Future<List<EventsCacheLoader.TimestampedEvent>>>();
+    private final Set<GridServiceContainer> laggingContainers =
+            Collections.newSetFromMap(new ConcurrentHashMap<GridServiceContainer, Boolean>());
 
-    public Set<ProcessingUnit> getProcessingUnits() {
-        return processingUnits;
+    public EventsCacheValue() {
+        this(Integer.getInteger(RETENTION_PROPERTY_NAME, DEFAULT_RETENTION));
     }
 
-    public DeploymentEvents getEvents() {
-        return events;
+    /**
+     * @param retention The maximum number of events kept for the deployment.
+     */
+    public EventsCacheValue(final int retention) {
+        this.eventsLog = new EventsLog(retention);
+    }
+
+    public Set<ProcessingUnit> getProcessingUnits() {
+        return processingUnits;
     }
 
-    public void setEvents(final DeploymentEvents events) {
-        this.events = events;
+    public EventsLog getEventsLog() {
+        return eventsLog;
     }
 
     public long getLastRefreshedTimestamp() {
@@ -58,22 +80,24 @@ public class EventsCacheValue {
     }
 
     public int getLastEventIndex() {
-        return lastEventIndex;
+        return eventsLog.getLastIndex();
     }
 
-    public void setLastEventIndex(final int lastEventIndex) {
-        this.lastEventIndex = lastEventIndex;
+    Map<GridServiceContainer, Future<List<EventsCacheLoader.TimestampedEvent>>> getPendingLogRequests() {
+        return pendingLogRequests;
     }
 
-    public Object getMutex() {
-        return mutex;
+    /**
+     * @return The containers that did not return their logs in time on the last refresh.
+     */
+    public Set<GridServiceContainer> getLaggingContainers() {
+        return laggingContainers;
     }
 
     @Override
     public String toString() {
-        return "EventsCacheValue{" + "events=" + events
-                + ", lastRefreshedTimestamp=" + lastRefreshedTimestamp
-                + ", lastEventIndex=" + lastEventIndex + ", mutex=" + mutex + '}';
+        return "EventsCacheValue{" + "events=" + eventsLog
+                + ", lastRefreshedTimestamp=" + lastRefreshedTimestamp + '}';
     }
 
 	public Set<GridServiceContainer> getContainers() {
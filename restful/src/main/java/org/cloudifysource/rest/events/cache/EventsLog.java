@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+
+package org.cloudifysource.rest.events.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.cloudifysource.dsl.rest.response.DeploymentEvent;
+import org.cloudifysource.dsl.rest.response.DeploymentEvents;
+
+/**
+ * A bounded, append only log of the events of a single deployment.
+ * Events are indexed from 0 in the order they are appended, and are kept in a ring buffer so an event is found by its
+ * index in constant time. Once the log is full, each new event overwrites the oldest one.
+ *
+ * Appends are serialized. Reads do not lock: an event is published by writing its slot before advancing the last
+ * index, and a reader that finds a slot already overwritten by a newer event treats the older events as truncated.
+ * Readers may also park until an event is appended, see {@link #awaitIndex(int, long)}.
+ */
+public class EventsLog {
+
+    private final int capacity;
+    private final AtomicReferenceArray<DeploymentEvent> slots;
+    private volatile int lastIndex = -1;
+
+    /**
+     * @param capacity The maximum number of events kept by the log.
+     */
+    public EventsLog(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Events log capacity must be positive, got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<DeploymentEvent>(capacity);
+    }
+
+    /**
+     * Appends an event to the log, setting its index.
+     * @param event The event.
+     * @return The index given to the event.
+     */
+    public synchronized int append(final DeploymentEvent event) {
+        final int index = lastIndex + 1;
+        event.setIndex(index);
+        slots.set(index % capacity, event);
+        lastIndex = index;
+        notifyAll();
+        return index;
+    }
+
+    /**
+     * @return The index of the last event appended to the log, or -1 if the log is empty.
+     */
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * @return The index of the oldest event still kept by the log. Events with a lower index were discarded.
+     */
+    public int getFirstIndex() {
+        return getFirstIndex(lastIndex);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Retrieves a single event.
+     * @param index The event index.
+     * @return The event, or null if it was not appended yet or was already discarded.
+     */
+    public DeploymentEvent get(final int index) {
+        if (index < 0 || index > lastIndex) {
+            return null;
+        }
+        final DeploymentEvent event = slots.get(index % capacity);
+        if (event == null || event.getIndex() != index) {
+            return null;
+        }
+        return event;
+    }
+
+    /**
+     * Waits until an event with the given index is appended to the log.
+     * @param index The event index.
+     * @param timeoutMillis The maximum time to wait, in milliseconds.
+     * @return true if the event was appended, false if the timeout passed first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitIndex(final int index, final long timeoutMillis) throws InterruptedException {
+        if (index <= lastIndex) {
+            return true;
+        }
+        final long end = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            long remaining = timeoutMillis;
+            while (index > lastIndex && remaining > 0) {
+                wait(remaining);
+                remaining = end - System.currentTimeMillis();
+            }
+            return index <= lastIndex;
+        }
+    }
+
+    /**
+     * Checks whether the log may still receive events in the given range.
+     * Unlike {@link org.cloudifysource.rest.events.EventsUtils#eventsPresent(DeploymentEvents, int, int)},
+     * events that were discarded are not considered missing, since reloading the log will not bring them back.
+     *
+     * @param to The end index.
+     * @return true if all events up to the given index were appended.
+     */
+    public boolean contains(final int to) {
+        return to <= lastIndex;
+    }
+
+    /**
+     * Retrieves the events in the given range.
+     * If some of the requested events were already discarded, the response holds the events that are still kept
+     * and reports the index of the oldest of them as {@link DeploymentEvents#getTruncatedBeforeIndex()}.
+     *
+     * @param from The start index.
+     * @param to The end index.
+     * @return The requested events.
+     */
+    public DeploymentEvents getRange(final int from, final int to) {
+        final DeploymentEvents result = new DeploymentEvents();
+        final int last = lastIndex;
+        final int end = Math.min(to, last);
+
+        int start = Math.max(from, getFirstIndex(last));
+        int i = start;
+        while (i <= end) {
+            final DeploymentEvent event = slots.get(i % capacity);
+            if (event == null || event.getIndex() != i) {
+                // overwritten by an append since we read the last index, and so were all events before it.
+                result.getEvents().clear();
+                start = i + 1;
+            } else {
+                result.getEvents().add(event);
+            }
+            i++;
+        }
+
+        if (from < start && start > 0) {
+            result.setTruncatedBeforeIndex(start);
+        }
+        return result;
+    }
+
+    private int getFirstIndex(final int last) {
+        return Math.max(0, last - capacity + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "EventsLog{" + "capacity=" + capacity + ", firstIndex=" + getFirstIndex()
+                + ", lastIndex=" + lastIndex + '}';
+    }
+}
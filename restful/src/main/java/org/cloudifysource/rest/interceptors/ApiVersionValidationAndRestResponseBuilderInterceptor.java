@@ -98,6 +98,10 @@ public class ApiVersionValidationAndRestResponseBuilderInterceptor extends Handl
     		// but it is not a template controller and it will be processed in the VersionValidateInterceptor)
     		return;
     	}
+    	if (modelAndView == null) {
+    		// the controller wrote the response itself (for example, a stream of events).
+    		return;
+    	}
     	if (logger.isLoggable(Level.FINEST)) {
     		logger.finest("post handle request from " + request.getRequestURI() + " with model " 
     				+ modelAndView.getModel().toString() + " and view " + modelAndView.getView().toString());
@@ -15,37 +15,35 @@ package org.cloudifysource.rest.repo;
 import java.io.File;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.FileUtils;
-
 /**
- * Cleaning the upload directory.
+ * Cleaning the upload directory, deleting the uploads that are no longer referenced.
+ * See {@link UploadRepo} for the references kept to each upload.
  * @author yael
  *
  */
 public class CleanUploadDirRunnable implements Runnable {
 	private static final Logger logger = Logger.getLogger(CleanUploadDirRunnable.class.getName());
 
-	private File restUploadDir;
-	private long cleanupTimeoutMillis;
+	private final UploadRepo repo;
 	
-	public CleanUploadDirRunnable(final File restUploadDir, final long cleanupTimeoutMillis) {
-		this.restUploadDir = restUploadDir;
-		this.cleanupTimeoutMillis = cleanupTimeoutMillis;
+	public CleanUploadDirRunnable(final UploadRepo repo) {
+		this.repo = repo;
 	}
 	
 	@Override
 	public void run() {
-		logger.finest("cleaning all the folders in upload directory that are in the system more than " 
-				+ cleanupTimeoutMillis + " millis.");
+		logger.finest("cleaning all the folders in upload directory that are no longer referenced.");
+		final File restUploadDir = repo.getRestUploadDir();
 		if (restUploadDir != null) {
 			File[] listFiles = restUploadDir.listFiles();
+			if (listFiles == null) {
+				return;
+			}
 			for (File file : listFiles) {
-				if (System.currentTimeMillis() - file.lastModified() >= cleanupTimeoutMillis) {
-					logger.finer("delete folder " + file.getName());
-					FileUtils.deleteQuietly(file);
+				if (repo.deleteIfExpired(file)) {
+					logger.finer("deleted " + file.getName());
 				} else {
-					logger.finest("Folder " + file.getName() + " was not deleted (in the system for " 
-							+ (System.currentTimeMillis() - file.lastModified()) + "millis).");
+					logger.finest(file.getName() + " was not deleted, it is still referenced.");
 				}
 			}
 		}
@@ -13,12 +13,19 @@
 package org.cloudifysource.rest.repo;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,8 +33,11 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyMessageKeys;
+import org.cloudifysource.dsl.internal.UploadContentHash;
 import org.cloudifysource.rest.controllers.RestErrorException;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
@@ -35,6 +45,16 @@ import org.springframework.web.multipart.MultipartFile;
 /**
  * A class for uploading files and getting uploaded files.
  * 
+ * Files are either stored under a random key (see {@link #put(String, MultipartFile)}), or under the hex encoded
+ * SHA-256 digest of their content, so a client can check whether the server already has a file before uploading it
+ * (see {@link #getContentKey(String)}). Content addressed files may be uploaded in chunks, and an interrupted upload
+ * is resumed from the last chunk received.
+ * 
+ * Each stored file is kept while it is referenced. Storing, finding or getting a file references it for
+ * {@link #cleanupTimeoutMillis} millis, and {@link #acquire(String)} references it until released. Unreferenced
+ * files, and partial uploads that did not receive a chunk for {@link #cleanupTimeoutMillis} millis, are deleted by a
+ * periodic {@link CleanUploadDirRunnable}.
+ * 
  * @author yael
  * 
  */
@@ -48,6 +68,13 @@ public class UploadRepo {
 	private ScheduledExecutorService executor;
 	private File restUploadDir;
 
+	private static final String PARTIAL_UPLOAD_SUFFIX = ".part";
+
+	private final Object lock = new Object();
+	private final Map<String, UploadEntry> entries = new ConcurrentHashMap<String, UploadEntry>();
+	// the locks of the uploads requests are running for, removed once no request uses them.
+	private final Map<String, PartialUploadLock> partialUploadLocks = new HashMap<String, PartialUploadLock>();
+
 	/**
 	 * creating the upload directory and initializing scheduled thread.
 	 * 
@@ -74,7 +101,7 @@ public class UploadRepo {
 
 	private void createScheduledExecutor() {
 		final CleanUploadDirRunnable cleanupThread =
-				new CleanUploadDirRunnable(restUploadDir, cleanupTimeoutMillis);
+				new CleanUploadDirRunnable(this);
 		executor = Executors.newSingleThreadScheduledExecutor();
 		try {
 			executor.scheduleAtFixedRate(cleanupThread, 0, cleanupTimeoutMillis, TimeUnit.MILLISECONDS);
@@ -128,7 +155,6 @@ public class UploadRepo {
 			return;
 		}
 		srcFile.transferTo(storedFile);
-		storedFile.deleteOnExit();
 	}
 
 	/**
@@ -171,6 +197,7 @@ public class UploadRepo {
 			logger.log(Level.FINER, "Uploading file to " + storedFile.getAbsolutePath());
 		}
 		copyMultipartFileToLocalFile(multipartFile, storedFile);
+		renew(dirName);
 		if (logger.isLoggable(Level.FINER)) {
 			logger.log(Level.FINER, "File [" + storedFile.getAbsolutePath() + "] uploaded successfully.");
 		}
@@ -222,6 +249,7 @@ public class UploadRepo {
 			final File[] listFiles = dir.listFiles();
 			if (listFiles.length > 0) {
 				final File uploadedFile = listFiles[0];
+				renew(key);
 				if (logger.isLoggable(Level.FINE)) {
 					logger.fine("Returning the found uploaded file [" + uploadedFile.getAbsolutePath() + "].");
 				}
@@ -238,6 +266,293 @@ public class UploadRepo {
 		return null;
 	}
 
+	/**
+	 * Finds a file uploaded by its content hash.
+	 * 
+	 * @param contentHash
+	 *            The hex encoded SHA-256 digest of the file.
+	 * @return the upload key of the file, or null if it was not uploaded.
+	 * @throws RestErrorException
+	 *             if the content hash is not a hex encoded SHA-256 digest.
+	 */
+	public String getContentKey(final String contentHash)
+			throws RestErrorException {
+		validateContentHash(contentHash);
+		synchronized (lock) {
+			if (!new File(restUploadDir, contentHash).isDirectory()) {
+				return null;
+			}
+			renew(contentHash);
+			return contentHash;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes received so far by an unfinished content addressed upload.
+	 * 
+	 * @param contentHash
+	 *            The hex encoded SHA-256 digest of the file.
+	 * @return the number of bytes received, 0 if no chunk was received.
+	 * @throws RestErrorException
+	 *             if the content hash is not a hex encoded SHA-256 digest.
+	 */
+	public long getPartialContentSize(final String contentHash)
+			throws RestErrorException {
+		validateContentHash(contentHash);
+		return getPartialFile(contentHash).length();
+	}
+
+	/**
+	 * Stores a file under its content hash. If a file with the same content was already uploaded, the new file is
+	 * discarded and the key of the existing one is returned.
+	 * 
+	 * @param contentHash
+	 *            The hex encoded SHA-256 digest of the file.
+	 * @param fileName
+	 *            The name of the uploaded file.
+	 * @param multipartFile
+	 *            The file to upload.
+	 * @return the upload key.
+	 * @throws RestErrorException
+	 *             if the file is too large or does not match the content hash.
+	 * @throws IOException .
+	 */
+	public String putContent(final String contentHash, final String fileName, final MultipartFile multipartFile)
+			throws IOException, RestErrorException {
+		validateContentHash(contentHash);
+		final PartialUploadLock partialUploadLock = lockPartialUpload(contentHash);
+		try {
+			final String existingKey = getContentKey(contentHash);
+			if (existingKey != null) {
+				return existingKey;
+			}
+			FileUtils.deleteQuietly(getPartialFile(contentHash));
+			putContentChunk(contentHash, 0, multipartFile);
+			return completeContent(contentHash, fileName);
+		} finally {
+			unlockPartialUpload(contentHash, partialUploadLock);
+		}
+	}
+
+	/**
+	 * Appends a chunk to an unfinished content addressed upload. Chunks must be sent in order, the offset of each
+	 * chunk being the number of bytes received so far (see {@link #getPartialContentSize(String)}).
+	 * 
+	 * @param contentHash
+	 *            The hex encoded SHA-256 digest of the whole file.
+	 * @param offset
+	 *            The offset of the chunk in the file.
+	 * @param chunk
+	 *            The chunk.
+	 * @return the number of bytes received so far.
+	 * @throws RestErrorException
+	 *             if the offset does not match the bytes received so far, or the file becomes too large.
+	 * @throws IOException .
+	 */
+	public long putContentChunk(final String contentHash, final long offset, final MultipartFile chunk)
+			throws IOException, RestErrorException {
+		validateContentHash(contentHash);
+		final PartialUploadLock partialUploadLock = lockPartialUpload(contentHash);
+		try {
+			final File partialFile = getPartialFile(contentHash);
+			final long size = partialFile.length();
+			if (offset != size) {
+				throw new RestErrorException(
+						CloudifyMessageKeys.UPLOAD_CHUNK_OFFSET_MISMATCH.getName(), contentHash, offset, size);
+			}
+			final long newSize = size + chunk.getSize();
+			if (newSize > getUploadSizeLimitBytes()) {
+				FileUtils.deleteQuietly(partialFile);
+				throw new RestErrorException(
+						CloudifyMessageKeys.UPLOAD_FILE_SIZE_LIMIT_EXCEEDED.getName(),
+						contentHash, newSize, getUploadSizeLimitBytes());
+			}
+			InputStream in = null;
+			OutputStream out = null;
+			try {
+				in = chunk.getInputStream();
+				out = new FileOutputStream(partialFile, true);
+				IOUtils.copyLarge(in, out);
+				out.close();
+				out = null;
+			} finally {
+				IOUtils.closeQuietly(in);
+				IOUtils.closeQuietly(out);
+			}
+			if (logger.isLoggable(Level.FINER)) {
+				logger.finer("Received " + chunk.getSize() + " bytes of upload " + contentHash
+						+ ", " + partialFile.length() + " bytes received so far.");
+			}
+			return partialFile.length();
+		} finally {
+			unlockPartialUpload(contentHash, partialUploadLock);
+		}
+	}
+
+	/**
+	 * Completes a content addressed upload after its last chunk was received.
+	 * 
+	 * @param contentHash
+	 *            The hex encoded SHA-256 digest of the file.
+	 * @param fileName
+	 *            The name of the uploaded file.
+	 * @return the upload key.
+	 * @throws RestErrorException
+	 *             if the received content does not match the content hash. The received chunks are discarded.
+	 * @throws IOException .
+	 */
+	public String completeContent(final String contentHash, final String fileName)
+			throws IOException, RestErrorException {
+		validateContentHash(contentHash);
+		final PartialUploadLock partialUploadLock = lockPartialUpload(contentHash);
+		try {
+			final File partialFile = getPartialFile(contentHash);
+			final String existingKey = getContentKey(contentHash);
+			if (existingKey != null) {
+				FileUtils.deleteQuietly(partialFile);
+				return existingKey;
+			}
+
+			final String receivedHash = UploadContentHash.compute(partialFile);
+			if (!contentHash.equals(receivedHash)) {
+				FileUtils.deleteQuietly(partialFile);
+				throw new RestErrorException(
+						CloudifyMessageKeys.UPLOAD_CONTENT_HASH_MISMATCH.getName(), fileName, contentHash, receivedHash);
+			}
+
+			// the file name is only kept for the extension, drop any path.
+			final String name = StringUtils.isBlank(fileName) ? contentHash : new File(fileName).getName();
+			synchronized (lock) {
+				final File contentDir = new File(restUploadDir, contentHash);
+				contentDir.mkdirs();
+				final File storedFile = new File(contentDir, name);
+				if (!partialFile.renameTo(storedFile)) {
+					FileUtils.deleteQuietly(contentDir);
+					throw new IOException("Failed to move " + partialFile + " to " + storedFile);
+				}
+				renew(contentHash);
+			}
+			if (logger.isLoggable(Level.FINER)) {
+				logger.finer("File [" + name + "] uploaded successfully with key " + contentHash);
+			}
+			return contentHash;
+		} finally {
+			unlockPartialUpload(contentHash, partialUploadLock);
+		}
+	}
+
+	/**
+	 * Keeps an uploaded file until {@link #release(String)} is called with the same key. Files that were not
+	 * uploaded, or were already deleted, are not referenced.
+	 * 
+	 * @param key
+	 *            The upload key.
+	 * @return true if the file was referenced, and must be released.
+	 */
+	public boolean acquire(final String key) {
+		synchronized (lock) {
+			if (restUploadDir == null || !new File(restUploadDir, key).isDirectory()) {
+				return false;
+			}
+			getEntry(key).references++;
+			renew(key);
+			return true;
+		}
+	}
+
+	/**
+	 * Releases an uploaded file referenced by {@link #acquire(String)}. The file is kept for
+	 * {@link #cleanupTimeoutMillis} millis after its last reference is released.
+	 * 
+	 * @param key
+	 *            The upload key.
+	 */
+	public void release(final String key) {
+		synchronized (lock) {
+			final UploadEntry entry = entries.get(key);
+			if (entry != null && entry.references > 0) {
+				entry.references--;
+				renew(key);
+			}
+		}
+	}
+
+	/**
+	 * Deletes a file or directory in the upload directory if it is no longer referenced.
+	 * 
+	 * @param file
+	 *            The file or directory.
+	 * @return true if it was deleted.
+	 */
+	boolean deleteIfExpired(final File file) {
+		final long now = System.currentTimeMillis();
+		synchronized (lock) {
+			final String name = file.getName();
+			final UploadEntry entry = entries.get(name);
+			if (entry != null) {
+				if (entry.references > 0 || now < entry.expiresAt) {
+					return false;
+				}
+				entries.remove(name);
+			} else if (now - file.lastModified() < cleanupTimeoutMillis) {
+				// partial uploads and files left by a previous run are deleted when idle.
+				return false;
+			}
+			FileUtils.deleteQuietly(file);
+			return true;
+		}
+	}
+
+	private void validateContentHash(final String contentHash)
+			throws RestErrorException {
+		if (!UploadContentHash.isValid(contentHash)) {
+			throw new RestErrorException(CloudifyMessageKeys.UPLOAD_INVALID_CONTENT_HASH.getName(), contentHash);
+		}
+	}
+
+	private File getPartialFile(final String contentHash) {
+		return new File(restUploadDir, contentHash + PARTIAL_UPLOAD_SUFFIX);
+	}
+
+	private PartialUploadLock lockPartialUpload(final String contentHash) {
+		PartialUploadLock partialUploadLock;
+		synchronized (partialUploadLocks) {
+			partialUploadLock = partialUploadLocks.get(contentHash);
+			if (partialUploadLock == null) {
+				partialUploadLock = new PartialUploadLock();
+				partialUploadLocks.put(contentHash, partialUploadLock);
+			}
+			partialUploadLock.users++;
+		}
+		partialUploadLock.lock();
+		return partialUploadLock;
+	}
+
+	private void unlockPartialUpload(final String contentHash, final PartialUploadLock partialUploadLock) {
+		partialUploadLock.unlock();
+		synchronized (partialUploadLocks) {
+			// completed, abandoned and expired uploads keep no lock.
+			if (--partialUploadLock.users == 0) {
+				partialUploadLocks.remove(contentHash);
+			}
+		}
+	}
+
+	private UploadEntry getEntry(final String key) {
+		UploadEntry entry = entries.get(key);
+		if (entry == null) {
+			entry = new UploadEntry();
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+
+	private void renew(final String key) {
+		synchronized (lock) {
+			getEntry(key).expiresAt = System.currentTimeMillis() + cleanupTimeoutMillis;
+		}
+	}
+
 	public File getRestUploadDir() {
 		return restUploadDir;
 	}
@@ -279,4 +594,21 @@ public class UploadRepo {
 	public void setUploadSizeLimitBytes(final int uploadSizeLimitBytes) {
 		this.uploadSizeLimitBytes = uploadSizeLimitBytes;
 	}
+
+	/**
+	 * The references to a stored upload. Guarded by {@link UploadRepo#lock}.
+	 */
+	private static class UploadEntry {
+		private int references;
+		private long expiresAt;
+	}
+
+	/**
+	 * Serializes the requests of a content addressed upload. {@link #users} counts the requests holding or waiting for
+	 * the lock, guarded by {@link UploadRepo#partialUploadLocks}.
+	 */
+	private static class PartialUploadLock extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+		private int users;
+	}
 }
@@ -34,12 +34,10 @@ import org.openspaces.admin.internal.pu.DefaultProcessingUnit;
 import org.openspaces.admin.pu.DeploymentStatus;
 import org.openspaces.admin.pu.ProcessingUnit;
 import org.openspaces.admin.pu.ProcessingUnitInstance;
-import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
 import org.openspaces.admin.pu.ProcessingUnitType;
 import org.openspaces.admin.pu.ProcessingUnits;
 import org.openspaces.admin.zone.Zone;
 import org.openspaces.admin.zone.Zones;
-import org.openspaces.pu.service.ServiceMonitors;
 
 /**
  * This factory class is responsible for manufacturing an application description POJO. The application description will
@@ -51,6 +49,7 @@ import org.openspaces.pu.service.ServiceMonitors;
  */
 public class ApplicationDescriptionFactory {
     private final Admin admin;
+    private final UsmStateIndex usmStateIndex;
 
     private static final Logger logger = Logger
             .getLogger(ApplicationDescriptionFactory.class.getName());
@@ -58,7 +57,16 @@ public class ApplicationDescriptionFactory {
     private static final String NOT_AVAILABLE_STATE = "NA";
     
     public ApplicationDescriptionFactory(final Admin admin) {
+        this(admin, null);
+    }
+
+    /**
+     * @param admin The admin.
+     * @param usmStateIndex The index to read USM states from, or null to read them from each instance.
+     */
+    public ApplicationDescriptionFactory(final Admin admin, final UsmStateIndex usmStateIndex) {
         this.admin = admin;
+        this.usmStateIndex = usmStateIndex;
     }
     
     /**
@@ -474,24 +482,10 @@ public class ApplicationDescriptionFactory {
      * @return the USM state of the specified PU instance
      */
     private USMState getInstanceUsmState(final ProcessingUnitInstance pui) {
-        final ProcessingUnitInstanceStatistics statistics = pui.getStatistics();
-        if (statistics == null) {
-            return null;
+        if (usmStateIndex != null) {
+            return usmStateIndex.getUsmState(pui);
         }
-        final Map<String, ServiceMonitors> puMonitors = statistics.getMonitors();
-        if (puMonitors == null) {
-            return null;
-        }
-        final ServiceMonitors serviceMonitors = puMonitors.get("USM");
-        if (serviceMonitors == null) {
-            return null;
-        }
-        final Map<String, Object> monitors = serviceMonitors.getMonitors();
-        if (monitors == null) {
-            return null;
-        }
-
-        return USMState.values()[(Integer) monitors.get(CloudifyConstants.USM_MONITORS_STATE_ID)];
+        return UsmStateIndex.getUsmState(UsmStateIndex.getUsmMonitors(pui.getStatistics()));
     }
 
     private String getApplicationAuthorizationGroups(final Application application) {
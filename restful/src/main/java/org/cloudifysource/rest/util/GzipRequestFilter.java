@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Decompresses request bodies sent with a gzip content encoding, so the REST client can compress the JSON bodies it
+ * posts. Only requests to the paths the REST client compresses are decompressed, others are passed on as they are.
+ *
+ * The body is decompressed before the request is passed on, and a body that decompresses to more than the limit is
+ * answered with status 413, so a small compressed body can not fill the heap. Filter parameters:
+ * <ul>
+ * <li>{@value #PATH_PATTERN_PARAM} - a regular expression matching the paths, relative to the context path, of the
+ * requests that are decompressed. Defaults to the deployments and templates controllers.</li>
+ * <li>{@value #MAX_INFLATED_SIZE_PARAM} - the maximum size of a decompressed body, in bytes. Defaults to
+ * {@value #DEFAULT_MAX_INFLATED_SIZE}.</li>
+ * </ul>
+ *
+ * @since 2.7.0
+ */
+public class GzipRequestFilter implements Filter {
+
+	/**
+	 * The filter parameter holding the pattern of the paths whose request bodies are decompressed.
+	 */
+	public static final String PATH_PATTERN_PARAM = "pathPattern";
+
+	/**
+	 * The filter parameter holding the maximum size of a decompressed body, in bytes.
+	 */
+	public static final String MAX_INFLATED_SIZE_PARAM = "maxInflatedSize";
+
+	/**
+	 * The default pattern of the paths whose request bodies are decompressed.
+	 */
+	public static final String DEFAULT_PATH_PATTERN = "/[^/]+/(deployments|templates)(/.*)?";
+
+	/**
+	 * The default maximum size of a decompressed body, in bytes.
+	 */
+	public static final int DEFAULT_MAX_INFLATED_SIZE = 10 * 1024 * 1024;
+
+	private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+	private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+	private static final String GZIP_ENCODING = "gzip";
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final Logger logger = Logger.getLogger(GzipRequestFilter.class.getName());
+
+	private Pattern pathPattern = Pattern.compile(DEFAULT_PATH_PATTERN);
+	private int maxInflatedSize = DEFAULT_MAX_INFLATED_SIZE;
+
+	@Override
+	public void init(final FilterConfig filterConfig) throws ServletException {
+		final String pathPatternParam = filterConfig.getInitParameter(PATH_PATTERN_PARAM);
+		if (pathPatternParam != null) {
+			pathPattern = Pattern.compile(pathPatternParam.trim());
+		}
+		final String maxInflatedSizeParam = filterConfig.getInitParameter(MAX_INFLATED_SIZE_PARAM);
+		if (maxInflatedSizeParam != null) {
+			try {
+				maxInflatedSize = Integer.parseInt(maxInflatedSizeParam.trim());
+			} catch (final NumberFormatException e) {
+				throw new ServletException("Invalid " + MAX_INFLATED_SIZE_PARAM + ": " + maxInflatedSizeParam, e);
+			}
+		}
+	}
+
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+			throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest) || !isCompressed((HttpServletRequest) request)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		final byte[] body;
+		try {
+			body = inflate(request.getInputStream());
+		} catch (final IOException e) {
+			logger.fine("Failed to decompress the request body: " + e.getMessage());
+			((HttpServletResponse) response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"Failed to decompress the request body");
+			return;
+		}
+		if (body == null) {
+			((HttpServletResponse) response).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+					"The decompressed request body is larger than " + maxInflatedSize + " bytes");
+			return;
+		}
+		chain.doFilter(new GzipRequestWrapper((HttpServletRequest) request, body), response);
+	}
+
+	@Override
+	public void destroy() {
+		// nothing to release
+	}
+
+	private boolean isCompressed(final HttpServletRequest request) {
+		if (!GZIP_ENCODING.equalsIgnoreCase(request.getHeader(CONTENT_ENCODING_HEADER))) {
+			return false;
+		}
+		final String uri = request.getRequestURI();
+		final String contextPath = request.getContextPath();
+		final String path = contextPath != null && uri.startsWith(contextPath)
+				? uri.substring(contextPath.length()) : uri;
+		return pathPattern.matcher(path).matches();
+	}
+
+	/**
+	 * @return the decompressed body, or null if it is larger than the limit.
+	 */
+	private byte[] inflate(final InputStream compressed) throws IOException {
+		final InputStream in = new GZIPInputStream(compressed);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read = in.read(buffer);
+			while (read != -1) {
+				if (out.size() + read > maxInflatedSize) {
+					return null;
+				}
+				out.write(buffer, 0, read);
+				read = in.read(buffer);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * A request whose body was decompressed.
+	 */
+	private static final class GzipRequestWrapper extends HttpServletRequestWrapper {
+
+		private final byte[] body;
+		private ServletInputStream inputStream;
+
+		private GzipRequestWrapper(final HttpServletRequest request, final byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public synchronized ServletInputStream getInputStream() {
+			if (inputStream == null) {
+				inputStream = new ByteArrayServletInputStream(new ByteArrayInputStream(body));
+			}
+			return inputStream;
+		}
+
+		@Override
+		public String getHeader(final String name) {
+			if (CONTENT_ENCODING_HEADER.equalsIgnoreCase(name)) {
+				return null;
+			}
+			if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+				return Integer.toString(body.length);
+			}
+			return super.getHeader(name);
+		}
+
+		@Override
+		public int getContentLength() {
+			return body.length;
+		}
+	}
+
+	/**
+	 * Adapts a stream of the decompressed body to the servlet API.
+	 */
+	private static final class ByteArrayServletInputStream extends ServletInputStream {
+
+		private final InputStream in;
+
+		private ByteArrayServletInputStream(final InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			return in.read(b, off, len);
+		}
+	}
+}
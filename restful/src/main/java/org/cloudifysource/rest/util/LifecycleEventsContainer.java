@@ -78,6 +78,29 @@ public class LifecycleEventsContainer {
 		}
 	}
 
+	/**
+	 * Waits until there are events after the given cursor position.
+	 * 
+	 * @param cursor
+	 *            the cursor position
+	 * @param timeoutMillis
+	 *            the maximum time to wait, in milliseconds
+	 * @return true if there are events after the cursor position
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean waitForLifecycleEvents(final int cursor, final long timeoutMillis) throws InterruptedException {
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized (this.lock) {
+			long remaining = timeoutMillis;
+			while (cursor >= this.eventsList.size() && remaining > 0) {
+				this.lock.wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+			return cursor < this.eventsList.size();
+		}
+	}
+
 	/**
 	 * Checks if the lifecycle event already exists in the set of events. If
 	 * not, adds the formatted event message into the eventsList.
@@ -109,6 +132,7 @@ public class LifecycleEventsContainer {
 					}
 				}
 			}
+			this.lock.notifyAll();
 		}
 	}
 
@@ -131,6 +155,7 @@ public class LifecycleEventsContainer {
 				if (logger.isLoggable(Level.FINE)) {
 					logger.fine("Instance Count Event: " + event);
 				}
+				this.lock.notifyAll();
 			}
 		}
 	}
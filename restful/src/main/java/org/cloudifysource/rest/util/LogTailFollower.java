@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import static com.gigaspaces.log.LogEntryMatchers.lastN;
+import static com.gigaspaces.log.LogEntryMatchers.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.openspaces.admin.AdminException;
+import org.openspaces.admin.gsc.GridServiceContainer;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+
+import com.gigaspaces.log.ContinuousLogEntryMatcher;
+import com.gigaspaces.log.LogEntries;
+import com.gigaspaces.log.LogEntry;
+import com.gigaspaces.log.LogEntryMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Follows the logs of all instances of a service, like tail -f.
+ *
+ * Each follower is identified by a follow id, and keeps a continuous matcher for every container it reads from, so
+ * every request returns only the lines logged since the previous request. Lines are filtered by the containers, so
+ * only matching lines are sent to the REST gateway and from it to the client. Followers that are not polled are
+ * dropped after a timeout.
+ *
+ * @since 2.7.0
+ */
+public class LogTailFollower {
+
+	/**
+	 * System property used to set the time, in milliseconds, a follower that is not polled is kept.
+	 */
+	public static final String FOLLOW_TIMEOUT_PROPERTY_NAME = "org.cloudifysource.rest.tail-follow-timeout";
+
+	/**
+	 * Default time, in milliseconds, a follower that is not polled is kept.
+	 */
+	public static final long DEFAULT_FOLLOW_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	private static final int MAX_FOLLOWERS = 1000;
+	// log entries may span several lines, such as a stack trace, and must match as a whole.
+	private static final String ALL_LINES_REGEX = "(?s).*";
+
+	private static final Logger logger = Logger.getLogger(LogTailFollower.class.getName());
+
+	private static final Comparator<ProcessingUnitInstance> INSTANCE_ID_COMPARATOR =
+			new Comparator<ProcessingUnitInstance>() {
+
+				@Override
+				public int compare(final ProcessingUnitInstance o1, final ProcessingUnitInstance o2) {
+					return o1.getInstanceId() < o2.getInstanceId() ? -1
+							: o1.getInstanceId() == o2.getInstanceId() ? 0 : 1;
+				}
+			};
+
+	private final Cache<String, Follower> followers;
+
+	/**
+	 * Constructor.
+	 */
+	public LogTailFollower() {
+		this(Long.getLong(FOLLOW_TIMEOUT_PROPERTY_NAME, DEFAULT_FOLLOW_TIMEOUT_MILLIS));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param followTimeoutMillis
+	 *            the time, in milliseconds, a follower that is not polled is kept.
+	 */
+	public LogTailFollower(final long followTimeoutMillis) {
+		this.followers = CacheBuilder.newBuilder()
+				.expireAfterAccess(followTimeoutMillis, TimeUnit.MILLISECONDS)
+				.maximumSize(MAX_FOLLOWERS)
+				.build();
+	}
+
+	/**
+	 * Returns the lines logged by the instances of a service since the previous request of the same follower. The
+	 * first request of a follower returns the last lines of each instance, and so does the first request for an
+	 * instance added later.
+	 *
+	 * @param service
+	 *            the service.
+	 * @param followId
+	 *            the id returned by the previous request, or null to start following.
+	 * @param numLines
+	 *            the number of lines to return from each instance on the first request.
+	 * @param grep
+	 *            a regular expression the returned lines must contain, or null for all lines. Only used when the
+	 *            follower starts.
+	 * @return a map holding the follow id to use in the next request under {@link CloudifyConstants#TAIL_FOLLOW_ID},
+	 *         and the new lines, each prefixed with its instance id, under {@link CloudifyConstants#TAIL_LINES}.
+	 */
+	public Map<String, Object> follow(final ProcessingUnit service, final String followId, final int numLines,
+			final String grep) {
+		Follower follower = followId == null ? null : followers.getIfPresent(followId);
+		if (follower == null) {
+			follower = new Follower(UUID.randomUUID().toString(), numLines, grep);
+			followers.put(follower.followId, follower);
+			if (followId != null) {
+				logger.fine("Follower " + followId + " of " + service.getName() + " expired, started "
+						+ follower.followId);
+			}
+		}
+
+		final Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put(CloudifyConstants.TAIL_FOLLOW_ID, follower.followId);
+		result.put(CloudifyConstants.TAIL_LINES, follower.readNewLines(service));
+		return result;
+	}
+
+	/**
+	 * Creates the regular expression log entries are matched with. Log entry regex matchers match the whole entry, so
+	 * the expression matches any entry containing the grep pattern, including entries of several lines.
+	 *
+	 * @param grep
+	 *            the pattern the entries must contain, or null for all entries.
+	 * @return the regular expression.
+	 */
+	static String createRegex(final String grep) {
+		return grep == null ? ALL_LINES_REGEX : "(?s).*(?:" + grep + ").*";
+	}
+
+	/**
+	 * A single follower, with the matchers holding its position in the log of each container.
+	 */
+	private static final class Follower {
+
+		private final String followId;
+		private final int numLines;
+		private final String regex;
+		private final Map<String, ContinuousLogEntryMatcher> matchers =
+				new HashMap<String, ContinuousLogEntryMatcher>();
+
+		private Follower(final String followId, final int numLines, final String grep) {
+			this.followId = followId;
+			this.numLines = numLines;
+			this.regex = createRegex(grep);
+		}
+
+		private synchronized List<String> readNewLines(final ProcessingUnit service) {
+			final ProcessingUnitInstance[] instances = service.getInstances();
+			Arrays.sort(instances, INSTANCE_ID_COMPARATOR);
+
+			final List<String> lines = new ArrayList<String>();
+			final Set<String> containerUids = new HashSet<String>();
+			for (final ProcessingUnitInstance instance : instances) {
+				final GridServiceContainer container = instance.getGridServiceContainer();
+				if (container == null) {
+					continue;
+				}
+				containerUids.add(container.getUid());
+				ContinuousLogEntryMatcher matcher = matchers.get(container.getUid());
+				if (matcher == null) {
+					final LogEntryMatcher initialMatcher = lastN(numLines, regex(regex));
+					matcher = new ContinuousLogEntryMatcher(initialMatcher, regex(regex));
+					matchers.put(container.getUid(), matcher);
+				}
+
+				final LogEntries logEntries;
+				try {
+					logEntries = container.logEntries(matcher);
+				} catch (final AdminException e) {
+					logger.log(Level.FINE, "Failed to read the log of instance " + instance.getInstanceId() + " of "
+							+ service.getName(), e);
+					continue;
+				}
+				final String prefix = "[" + instance.getInstanceId() + "] ";
+				for (final LogEntry logEntry : logEntries) {
+					if (logEntry.isLog()) {
+						lines.add(prefix + logEntry.getText());
+					}
+				}
+			}
+			// forget containers that no longer hold an instance.
+			matchers.keySet().retainAll(containerUids);
+			return lines;
+		}
+	}
+}
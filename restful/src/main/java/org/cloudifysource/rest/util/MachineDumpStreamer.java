@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.openspaces.admin.dump.DumpResult;
+import org.openspaces.admin.machine.Machine;
+
+/**
+ * Generates the dumps of several machines concurrently and writes them, in machine order, as entries of a single zip
+ * stream. Each dump is downloaded to a temporary file by a worker thread and copied to the stream with a fixed size
+ * buffer, so dump contents are never held in memory. A dump is not generated once the dumps generated before it reach
+ * the size limit, and a dump that would take the stream over the limit is not added. Such dumps are listed in a summary
+ * entry together with dumps that could not be generated. Temporary files are deleted as soon as they are streamed, and
+ * the rest of them by {@link #close()}.
+ *
+ * @since 2.7.0
+ */
+public class MachineDumpStreamer {
+
+	/**
+	 * Name of the zip entry that lists the machines whose dumps were not added to the stream.
+	 */
+	public static final String SUMMARY_ENTRY_NAME = "dump-summary.txt";
+
+	private static final Logger logger = Logger.getLogger(MachineDumpStreamer.class.getName());
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String NEW_LINE = System.getProperty("line.separator");
+
+	private final ExecutorService executor;
+	private final File tempFolder;
+	private final String[] processors;
+
+	private final List<Machine> machines = new ArrayList<Machine>();
+	private final List<Future<File>> dumps = new ArrayList<Future<File>>();
+	private final Set<File> tempFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+	private final AtomicLong generatedSize = new AtomicLong();
+	private long sizeLimit;
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param executor
+	 *            the executor used to generate the dumps. Its size bounds the number of dumps generated at once.
+	 * @param tempFolder
+	 *            folder for the temporary dump files.
+	 * @param processors
+	 *            the dump processors.
+	 */
+	public MachineDumpStreamer(final ExecutorService executor, final File tempFolder, final String[] processors) {
+		this.executor = executor;
+		this.tempFolder = tempFolder;
+		this.processors = processors;
+	}
+
+	/**
+	 * Starts generating the dumps of the given machines.
+	 *
+	 * @param machinesToDump
+	 *            the machines.
+	 * @param sizeLimit
+	 *            the maximum total size, in bytes, of the dumps.
+	 */
+	public void start(final List<Machine> machinesToDump, final long sizeLimit) {
+		this.sizeLimit = sizeLimit;
+		for (final Machine machine : machinesToDump) {
+			machines.add(machine);
+			dumps.add(executor.submit(new Callable<File>() {
+
+				@Override
+				public File call() throws Exception {
+					return generateDump(machine);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Waits for the dump of the machine at the given position.
+	 *
+	 * @param index
+	 *            the position of the machine, in the order given to {@link #start(List, long)}.
+	 * @return the temporary dump file.
+	 * @throws IOException
+	 *             if the dump could not be generated or downloaded, or was not generated as the size limit was
+	 *             reached.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	public File getDump(final int index) throws IOException, InterruptedException {
+		try {
+			return dumps.get(index).get();
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Failed to generate dump of machine " + machines.get(index).getHostAddress()
+					+ ": " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Writes all dumps to the given stream as a zip file. The stream is not closed.
+	 *
+	 * @param out
+	 *            the target stream.
+	 * @return the total size of the dumps added to the stream.
+	 * @throws IOException
+	 *             if writing to the stream failed.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a dump.
+	 */
+	public long writeTo(final OutputStream out) throws IOException, InterruptedException {
+		final ZipOutputStream zos = new ZipOutputStream(out);
+		// the dumps are zip files already.
+		zos.setLevel(Deflater.NO_COMPRESSION);
+
+		final StringBuilder summary = new StringBuilder();
+		long totalSize = 0;
+		for (int i = 0; i < machines.size(); i++) {
+			final String hostAddress = machines.get(i).getHostAddress();
+			File dump;
+			try {
+				dump = getDump(i);
+			} catch (final SizeLimitReachedException e) {
+				summary.append(hostAddress).append(": skipped - ").append(e.getMessage()).append(NEW_LINE);
+				continue;
+			} catch (final IOException e) {
+				logger.log(Level.WARNING, "Failed to generate dump of machine " + hostAddress, e);
+				summary.append(hostAddress).append(": failed - ").append(ExceptionUtils.getRootCauseMessage(e))
+						.append(NEW_LINE);
+				continue;
+			}
+
+			if (totalSize + dump.length() > sizeLimit) {
+				summary.append(hostAddress).append(": skipped - dump size ").append(dump.length())
+						.append(" would exceed the size limit of ").append(sizeLimit).append(NEW_LINE);
+				deleteTempFile(dump);
+				continue;
+			}
+
+			zos.putNextEntry(new ZipEntry(hostAddress + ".zip"));
+			copyFile(dump, zos);
+			zos.closeEntry();
+			zos.flush();
+			totalSize += dump.length();
+			deleteTempFile(dump);
+		}
+
+		if (summary.length() > 0) {
+			zos.putNextEntry(new ZipEntry(SUMMARY_ENTRY_NAME));
+			zos.write(summary.toString().getBytes("UTF-8"));
+			zos.closeEntry();
+		}
+		zos.finish();
+		zos.flush();
+		return totalSize;
+	}
+
+	/**
+	 * Cancels dumps that are still being generated and deletes all temporary files.
+	 */
+	public void close() {
+		this.closed = true;
+		for (final Future<File> dump : dumps) {
+			dump.cancel(true);
+		}
+		for (final File file : tempFiles) {
+			deleteTempFile(file);
+		}
+	}
+
+	private File generateDump(final Machine machine) throws IOException {
+		if (closed) {
+			throw new IOException("The dump request ended before the dump of machine " + machine.getHostAddress()
+					+ " was generated");
+		}
+		if (generatedSize.get() >= sizeLimit) {
+			throw new SizeLimitReachedException("the dumps generated before it reached the size limit of "
+					+ sizeLimit);
+		}
+
+		final File target = File.createTempFile("dump", ".zip", tempFolder);
+		tempFiles.add(target);
+		try {
+			final DumpResult dump = machine.generateDump("Rest_API", null, processors);
+			dump.download(target, null);
+		} catch (final IOException e) {
+			deleteTempFile(target);
+			throw e;
+		} catch (final RuntimeException e) {
+			deleteTempFile(target);
+			throw e;
+		}
+		generatedSize.addAndGet(target.length());
+		if (closed) {
+			// the request ended while this dump was generated.
+			deleteTempFile(target);
+		}
+		return target;
+	}
+
+	private void deleteTempFile(final File file) {
+		tempFiles.remove(file);
+		if (file.exists() && !file.delete()) {
+			logger.warning("Failed to delete temporary dump file: " + file);
+		}
+	}
+
+	private static void copyFile(final File file, final OutputStream out) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read = in.read(buffer);
+			while (read >= 0) {
+				out.write(buffer, 0, read);
+				read = in.read(buffer);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Thrown instead of generating a dump, when the dumps generated before it already reached the size limit.
+	 */
+	private static class SizeLimitReachedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		SizeLimitReachedException(final String message) {
+			super(message);
+		}
+	}
+}
@@ -35,7 +35,6 @@ import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
 import org.cloudifysource.dsl.internal.EventLogConstants;
 import org.cloudifysource.dsl.utils.ServiceUtils;
@@ -46,10 +45,8 @@ import org.openspaces.admin.gsc.GridServiceContainer;
 import org.openspaces.admin.internal.pu.DefaultProcessingUnit;
 import org.openspaces.admin.pu.ProcessingUnit;
 import org.openspaces.admin.pu.ProcessingUnitInstance;
-import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
 import org.openspaces.admin.pu.ProcessingUnitType;
 import org.openspaces.admin.zone.Zone;
-import org.openspaces.pu.service.ServiceMonitors;
 
 import com.gigaspaces.log.LogEntries;
 import com.gigaspaces.log.LogEntry;
@@ -81,6 +78,8 @@ public class RestPollingRunnable implements Runnable {
 
 	private Admin admin;
 
+	private UsmStateIndex usmStateIndex;
+
 	private long endTime;
 
 	private static final String USM_EVENT_LOGGER_NAME = ".*.USMEventLogger.{0}\\].*";
@@ -149,6 +148,17 @@ public class RestPollingRunnable implements Runnable {
 		this.admin = admin;
 	}
 
+	/**
+	 * sets the index to read USM states from. If not set, the states are read
+	 * from each instance.
+	 * 
+	 * @param usmStateIndex
+	 *            the USM state index.
+	 */
+	public void setUsmStateIndex(final UsmStateIndex usmStateIndex) {
+		this.usmStateIndex = usmStateIndex;
+	}
+
 	/**
 	 * sets the current lifecycleEventsContainer to be updated by the callable
 	 * task.
@@ -610,28 +620,14 @@ public class RestPollingRunnable implements Runnable {
 
 	private boolean isUsmInState(final ProcessingUnitInstance pui,
 			final USMState state) {
-		final ProcessingUnitInstanceStatistics statistics = pui.getStatistics();
-		if (statistics == null) {
-			return false;
-		}
-		final Map<String, ServiceMonitors> puMonitors = statistics
-				.getMonitors();
-		if (puMonitors == null) {
-			return false;
-		}
-		final ServiceMonitors serviceMonitors = puMonitors.get("USM");
-		if (serviceMonitors == null) {
-			return false;
-		}
-		final Map<String, Object> monitors = serviceMonitors.getMonitors();
-		if (monitors == null) {
-			return false;
+		final USMState instanceState;
+		if (usmStateIndex != null) {
+			instanceState = usmStateIndex.getUsmState(pui);
+		} else {
+			instanceState = UsmStateIndex.getUsmState(UsmStateIndex
+					.getUsmMonitors(pui.getStatistics()));
 		}
-
-		@SuppressWarnings("boxing")
-		final int instanceState = (Integer) monitors
-				.get(CloudifyConstants.USM_MONITORS_STATE_ID);
-		return (CloudifyConstants.USMState.values()[instanceState] == state);
+		return instanceState == state;
 	}
 
 	/**
@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsData;
+import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsStatus;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+
+/**
+ * Collects the USM metrics of all instances of a service.
+ *
+ * The instances are read concurrently, and instances that do not answer before the request deadline are reported as
+ * timed out rather than failing the whole request. Results are kept for a short time, so concurrent requests for the
+ * same service, such as several open dashboards, share a single collection. Results in which an instance timed out
+ * are only shared by the requests that waited for them, and are not reused by later requests, which may allow a
+ * longer timeout or find the instance responsive again.
+ *
+ * @since 2.7.0
+ */
+public class ServiceMetricsCollector {
+
+	/**
+	 * System property used to set the time, in milliseconds, collected metrics are reused.
+	 */
+	public static final String CACHE_TTL_PROPERTY_NAME = "org.cloudifysource.rest.service-metrics-cache-ttl";
+
+	/**
+	 * Default time, in milliseconds, collected metrics are reused.
+	 */
+	public static final long DEFAULT_CACHE_TTL_MILLIS = 2000;
+
+	private static final int THREAD_POOL_SIZE = 20;
+
+	private static final Logger logger = Logger.getLogger(ServiceMetricsCollector.class.getName());
+
+	private static final Comparator<ServiceInstanceMetricsData> INSTANCE_ID_COMPARATOR =
+			new Comparator<ServiceInstanceMetricsData>() {
+
+				@Override
+				public int compare(final ServiceInstanceMetricsData o1, final ServiceInstanceMetricsData o2) {
+					return o1.getInstanceId() < o2.getInstanceId() ? -1
+							: o1.getInstanceId() == o2.getInstanceId() ? 0 : 1;
+				}
+			};
+
+	private final UsmStateIndex usmStateIndex;
+	private final long cacheTtlMillis;
+	private final Map<String, CachedMetrics> cache = new ConcurrentHashMap<String, CachedMetrics>();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE, new ThreadFactory() {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "ServiceMetricsCollector-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Constructor.
+	 *
+	 * @param usmStateIndex
+	 *            the index to read the metrics from, or null to read them from each instance.
+	 */
+	public ServiceMetricsCollector(final UsmStateIndex usmStateIndex) {
+		this(usmStateIndex, Long.getLong(CACHE_TTL_PROPERTY_NAME, DEFAULT_CACHE_TTL_MILLIS));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param usmStateIndex
+	 *            the index to read the metrics from, or null to read them from each instance.
+	 * @param cacheTtlMillis
+	 *            the time, in milliseconds, collected metrics are reused. 0 disables reuse.
+	 */
+	public ServiceMetricsCollector(final UsmStateIndex usmStateIndex, final long cacheTtlMillis) {
+		this.usmStateIndex = usmStateIndex;
+		this.cacheTtlMillis = cacheTtlMillis;
+	}
+
+	/**
+	 * Collects the metrics of all instances of a service.
+	 *
+	 * @param service
+	 *            the service.
+	 * @param metricNames
+	 *            the names of the metrics to return, or null to return all metrics.
+	 * @param timeoutMillis
+	 *            the time to wait for the instances, in milliseconds.
+	 * @return the metrics of each instance, ordered by instance id, with the status of each instance.
+	 */
+	public List<ServiceInstanceMetricsData> collect(final ProcessingUnit service, final Set<String> metricNames,
+			final long timeoutMillis) {
+		if (cacheTtlMillis <= 0) {
+			return collectNow(service, metricNames, timeoutMillis);
+		}
+
+		final String key = createKey(service, metricNames);
+		CachedMetrics cached = cache.get(key);
+		if (cached == null || cached.isExpired()) {
+			removeExpired();
+			final FutureTask<List<ServiceInstanceMetricsData>> task =
+					new FutureTask<List<ServiceInstanceMetricsData>>(
+							new Callable<List<ServiceInstanceMetricsData>>() {
+
+								@Override
+								public List<ServiceInstanceMetricsData> call() {
+									return collectNow(service, metricNames, timeoutMillis);
+								}
+							});
+			final CachedMetrics created = new CachedMetrics(task);
+			synchronized (cache) {
+				cached = cache.get(key);
+				if (cached == null || cached.isExpired()) {
+					cache.put(key, created);
+					cached = created;
+				}
+			}
+			if (cached == created) {
+				task.run();
+				if (!created.isComplete()) {
+					synchronized (cache) {
+						if (cache.get(key) == created) {
+							cache.remove(key);
+						}
+					}
+				}
+			}
+		}
+		return cached.get(service, timeoutMillis);
+	}
+
+	/**
+	 * Stops the collector threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		cache.clear();
+	}
+
+	private List<ServiceInstanceMetricsData> collectNow(final ProcessingUnit service, final Set<String> metricNames,
+			final long timeoutMillis) {
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		final ProcessingUnitInstance[] instances = service.getInstances();
+		final List<Future<ServiceInstanceMetricsData>> futures =
+				new ArrayList<Future<ServiceInstanceMetricsData>>(instances.length);
+		for (final ProcessingUnitInstance instance : instances) {
+			futures.add(executor.submit(new Callable<ServiceInstanceMetricsData>() {
+
+				@Override
+				public ServiceInstanceMetricsData call() {
+					return readMetrics(instance, metricNames);
+				}
+			}));
+		}
+
+		final List<ServiceInstanceMetricsData> result = new ArrayList<ServiceInstanceMetricsData>(instances.length);
+		boolean interrupted = false;
+		for (int i = 0; i < instances.length; i++) {
+			final int instanceId = instances[i].getInstanceId();
+			final Future<ServiceInstanceMetricsData> future = futures.get(i);
+			ServiceInstanceMetricsStatus status = ServiceInstanceMetricsStatus.TIMED_OUT;
+			try {
+				if (!interrupted) {
+					final long remaining = Math.max(0, end - System.currentTimeMillis());
+					result.add(future.get(remaining, TimeUnit.MILLISECONDS));
+					continue;
+				}
+			} catch (final TimeoutException e) {
+				logger.fine("Metrics of instance " + instanceId + " of " + service.getName()
+						+ " were not retrieved within " + timeoutMillis + " ms");
+			} catch (final ExecutionException e) {
+				logger.log(Level.WARNING, "Failed to retrieve metrics of instance " + instanceId + " of "
+						+ service.getName(), e.getCause());
+				status = ServiceInstanceMetricsStatus.FAILED;
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+			future.cancel(true);
+			result.add(new ServiceInstanceMetricsData(instanceId, null, status));
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		Collections.sort(result, INSTANCE_ID_COMPARATOR);
+		return result;
+	}
+
+	private ServiceInstanceMetricsData readMetrics(final ProcessingUnitInstance instance,
+			final Set<String> metricNames) {
+		final Map<String, Object> monitors;
+		if (usmStateIndex != null) {
+			monitors = usmStateIndex.getInstanceState(instance).getUsmMonitors();
+		} else {
+			monitors = UsmStateIndex.getUsmMonitors(instance.getStatistics());
+		}
+		if (monitors == null) {
+			return new ServiceInstanceMetricsData(instance.getInstanceId(), null,
+					ServiceInstanceMetricsStatus.NO_METRICS);
+		}
+
+		Map<String, Object> metrics = monitors;
+		if (metricNames != null) {
+			metrics = new HashMap<String, Object>();
+			for (final String metricName : metricNames) {
+				if (monitors.containsKey(metricName)) {
+					metrics.put(metricName, monitors.get(metricName));
+				}
+			}
+		}
+		return new ServiceInstanceMetricsData(instance.getInstanceId(), metrics, ServiceInstanceMetricsStatus.OK);
+	}
+
+	private void removeExpired() {
+		final Iterator<CachedMetrics> iterator = cache.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isExpired()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static String createKey(final ProcessingUnit service, final Set<String> metricNames) {
+		if (metricNames == null) {
+			return service.getName();
+		}
+		return service.getName() + "|" + new TreeSet<String>(metricNames);
+	}
+
+	private static List<ServiceInstanceMetricsData> timedOut(final ProcessingUnit service) {
+		final List<ServiceInstanceMetricsData> result = new ArrayList<ServiceInstanceMetricsData>();
+		for (final ProcessingUnitInstance instance : service.getInstances()) {
+			result.add(new ServiceInstanceMetricsData(instance.getInstanceId(), null,
+					ServiceInstanceMetricsStatus.TIMED_OUT));
+		}
+		Collections.sort(result, INSTANCE_ID_COMPARATOR);
+		return result;
+	}
+
+	/**
+	 * Metrics collected, or being collected, for one request.
+	 */
+	private final class CachedMetrics {
+
+		private final FutureTask<List<ServiceInstanceMetricsData>> task;
+		private final long createdAt = System.currentTimeMillis();
+
+		private CachedMetrics(final FutureTask<List<ServiceInstanceMetricsData>> task) {
+			this.task = task;
+		}
+
+		private boolean isExpired() {
+			return task.isDone() && System.currentTimeMillis() - createdAt > cacheTtlMillis;
+		}
+
+		/**
+		 * @return true if the collection ended and no instance timed out.
+		 */
+		private boolean isComplete() {
+			if (!task.isDone()) {
+				return false;
+			}
+			try {
+				for (final ServiceInstanceMetricsData data : task.get()) {
+					if (data.getStatus() == ServiceInstanceMetricsStatus.TIMED_OUT) {
+						return false;
+					}
+				}
+				return true;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (final ExecutionException e) {
+				return false;
+			}
+		}
+
+		private List<ServiceInstanceMetricsData> get(final ProcessingUnit service, final long timeoutMillis) {
+			try {
+				// the collecting request is itself bounded by its deadline, allow it to finish.
+				return task.get(timeoutMillis * 2, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException e) {
+				logger.log(Level.WARNING, "Failed to collect metrics of " + service.getName(), e.getCause());
+			} catch (final TimeoutException e) {
+				logger.fine("Metrics of " + service.getName() + " were not collected within " + timeoutMillis + " ms");
+			}
+			return timedOut(service);
+		}
+	}
+}
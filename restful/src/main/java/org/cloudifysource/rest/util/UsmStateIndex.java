@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
+import org.cloudifysource.dsl.utils.MBeanUtils;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.machine.Machine;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.admin.pu.ProcessingUnitType;
+import org.openspaces.admin.pu.events.ProcessingUnitAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceRemovedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEvent;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitRemovedEventListener;
+import org.openspaces.pu.service.ServiceMonitors;
+
+/**
+ * An in-memory index of the USM state of every service instance, so listing applications and polling installation
+ * progress do not call each instance for its statistics on every request.
+ *
+ * The index is fed by the statistics monitor of the Admin API, which polls the instances of USM processing units in
+ * the background and delivers the statistics on the single Admin event thread. Readers get the indexed state unless
+ * it is older than the staleness bound, in which case the instance statistics are read directly and the index is
+ * updated, unless the index already holds newer statistics. The age of the oldest indexed state, and the number of
+ * direct reads, tell how far the index lags behind; they are published, while the index is started, as an MBean of
+ * type UsmStateIndex.
+ *
+ * The statistics monitor of a processing unit is shared by all Admin API users. The index only starts the monitors
+ * that are not running, and only stops those it started.
+ *
+ * @since 2.7.0
+ */
+public class UsmStateIndex {
+
+	/**
+	 * System property used to set the maximum age, in milliseconds, of a state returned from the index.
+	 */
+	public static final String MAX_STALENESS_PROPERTY_NAME = "org.cloudifysource.rest.usm-state-max-staleness";
+
+	/**
+	 * Default maximum age of a state returned from the index, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_STALENESS_MILLIS = 15 * 1000;
+
+	private static final Logger logger = Logger.getLogger(UsmStateIndex.class.getName());
+
+	private final Admin admin;
+	private final long maxStalenessMillis;
+	private final ConcurrentMap<String, InstanceState> states = new ConcurrentHashMap<String, InstanceState>();
+	private final Set<ProcessingUnit> monitoredProcessingUnits =
+			Collections.newSetFromMap(new ConcurrentHashMap<ProcessingUnit, Boolean>());
+	// the processing units whose statistics monitor was started by this index.
+	private final Set<ProcessingUnit> startedMonitors =
+			Collections.newSetFromMap(new ConcurrentHashMap<ProcessingUnit, Boolean>());
+	private ObjectName mbeanName;
+
+	private final AtomicLong indexReads = new AtomicLong();
+	private final AtomicLong directReads = new AtomicLong();
+
+	private final ProcessingUnitAddedEventListener processingUnitAddedListener =
+			new ProcessingUnitAddedEventListener() {
+
+				@Override
+				public void processingUnitAdded(final ProcessingUnit processingUnit) {
+					if (processingUnit.getType() == ProcessingUnitType.UNIVERSAL
+							&& monitoredProcessingUnits.add(processingUnit) && !processingUnit.isMonitoring()) {
+						startedMonitors.add(processingUnit);
+						processingUnit.startStatisticsMonitor();
+					}
+				}
+			};
+
+	private final ProcessingUnitRemovedEventListener processingUnitRemovedListener =
+			new ProcessingUnitRemovedEventListener() {
+
+				@Override
+				public void processingUnitRemoved(final ProcessingUnit processingUnit) {
+					monitoredProcessingUnits.remove(processingUnit);
+					if (startedMonitors.remove(processingUnit)) {
+						processingUnit.stopStatisticsMonitor();
+					}
+				}
+			};
+
+	private final ProcessingUnitInstanceStatisticsChangedEventListener statisticsChangedListener =
+			new ProcessingUnitInstanceStatisticsChangedEventListener() {
+
+				@Override
+				public void processingUnitInstanceStatisticsChanged(
+						final ProcessingUnitInstanceStatisticsChangedEvent event) {
+					final ProcessingUnitInstance pui = event.getProcessingUnitInstance();
+					if (monitoredProcessingUnits.contains(pui.getProcessingUnit())) {
+						update(pui, event.getStatistics());
+					}
+				}
+			};
+
+	private final ProcessingUnitInstanceRemovedEventListener instanceRemovedListener =
+			new ProcessingUnitInstanceRemovedEventListener() {
+
+				@Override
+				public void processingUnitInstanceRemoved(final ProcessingUnitInstance pui) {
+					states.remove(pui.getUid());
+				}
+			};
+
+	/**
+	 * The statistics published over JMX.
+	 */
+	public interface StatisticsMBean {
+
+		/** @return the number of indexed states. */
+		int getSize();
+
+		/** @return the age, in milliseconds, of the oldest indexed state. */
+		long getIndexLagMillis();
+
+		/** @return the number of states returned from the index. */
+		long getIndexReads();
+
+		/** @return the number of states read directly from a service instance. */
+		long getDirectReads();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param admin
+	 *            the admin.
+	 */
+	public UsmStateIndex(final Admin admin) {
+		this(admin, Long.getLong(MAX_STALENESS_PROPERTY_NAME, DEFAULT_MAX_STALENESS_MILLIS));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param admin
+	 *            the admin.
+	 * @param maxStalenessMillis
+	 *            the maximum age, in milliseconds, of a state returned from the index.
+	 */
+	public UsmStateIndex(final Admin admin, final long maxStalenessMillis) {
+		this.admin = admin;
+		this.maxStalenessMillis = maxStalenessMillis;
+	}
+
+	/**
+	 * Starts monitoring the statistics of USM processing units, existing and new.
+	 */
+	public void start() {
+		admin.getProcessingUnits().getProcessingUnitAdded().add(processingUnitAddedListener);
+		admin.getProcessingUnits().getProcessingUnitRemoved().add(processingUnitRemovedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceStatisticsChanged().add(statisticsChangedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceRemoved().add(instanceRemovedListener);
+		mbeanName = MBeanUtils.register("UsmStateIndex", "rest", new StatisticsMBean() {
+
+			@Override
+			public int getSize() {
+				return size();
+			}
+
+			@Override
+			public long getIndexLagMillis() {
+				return UsmStateIndex.this.getIndexLagMillis();
+			}
+
+			@Override
+			public long getIndexReads() {
+				return UsmStateIndex.this.getIndexReads();
+			}
+
+			@Override
+			public long getDirectReads() {
+				return UsmStateIndex.this.getDirectReads();
+			}
+		}, StatisticsMBean.class);
+		logger.fine("USM state index started, maximum staleness is " + maxStalenessMillis + " ms");
+	}
+
+	/**
+	 * Stops monitoring statistics and clears the index.
+	 */
+	public void stop() {
+		admin.getProcessingUnits().getProcessingUnitAdded().remove(processingUnitAddedListener);
+		admin.getProcessingUnits().getProcessingUnitRemoved().remove(processingUnitRemovedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceStatisticsChanged().remove(statisticsChangedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceRemoved().remove(instanceRemovedListener);
+		MBeanUtils.unregister(mbeanName);
+		mbeanName = null;
+		for (final ProcessingUnit processingUnit : startedMonitors) {
+			try {
+				processingUnit.stopStatisticsMonitor();
+			} catch (final RuntimeException e) {
+				logger.log(Level.FINE, "Failed to stop statistics monitor of " + processingUnit.getName(), e);
+			}
+		}
+		startedMonitors.clear();
+		monitoredProcessingUnits.clear();
+		states.clear();
+	}
+
+	/**
+	 * Returns the state of a service instance, reading its statistics directly if the indexed state is missing or
+	 * older than the staleness bound. If the statistics read are older than those the index received meanwhile, the
+	 * indexed state is returned.
+	 *
+	 * @param pui
+	 *            the service instance.
+	 * @return the indexed state.
+	 */
+	public InstanceState getInstanceState(final ProcessingUnitInstance pui) {
+		final InstanceState state = states.get(pui.getUid());
+		if (state != null && state.getAge() <= maxStalenessMillis) {
+			indexReads.incrementAndGet();
+			return state;
+		}
+		directReads.incrementAndGet();
+		return update(pui, pui.getStatistics());
+	}
+
+	/**
+	 * Returns the USM state of a service instance.
+	 *
+	 * @param pui
+	 *            the service instance.
+	 * @return the USM state, or null if the instance did not report it yet.
+	 */
+	public USMState getUsmState(final ProcessingUnitInstance pui) {
+		return getInstanceState(pui).getUsmState();
+	}
+
+	/**
+	 * @return the age, in milliseconds, of the oldest state in the index, or 0 if the index is empty.
+	 */
+	public long getIndexLagMillis() {
+		long lag = 0;
+		for (final InstanceState state : states.values()) {
+			lag = Math.max(lag, state.getAge());
+		}
+		return lag;
+	}
+
+	/**
+	 * @return the number of states returned from the index.
+	 */
+	public long getIndexReads() {
+		return indexReads.get();
+	}
+
+	/**
+	 * @return the number of states read directly from a service instance, as the indexed state was missing or stale.
+	 */
+	public long getDirectReads() {
+		return directReads.get();
+	}
+
+	public int size() {
+		return states.size();
+	}
+
+	public long getMaxStalenessMillis() {
+		return maxStalenessMillis;
+	}
+
+	/**
+	 * Indexes the state in the given statistics, unless the index holds a state taken from newer statistics. Direct
+	 * reads and statistics events update the index concurrently, so a slow direct read may return statistics older
+	 * than those of an event that arrived while it ran.
+	 */
+	private InstanceState update(final ProcessingUnitInstance pui, final ProcessingUnitInstanceStatistics statistics) {
+		final Machine machine = pui.getMachine();
+		final InstanceState state = new InstanceState(getUsmMonitors(statistics),
+				machine == null ? null : machine.getHostName(), machine == null ? null : machine.getHostAddress(),
+				statistics == null ? 0 : statistics.getTimestamp());
+		final String uid = pui.getUid();
+		while (true) {
+			final InstanceState current = states.get(uid);
+			if (current == null) {
+				if (states.putIfAbsent(uid, state) == null) {
+					return state;
+				}
+			} else if (current.getStatisticsTimestamp() > state.getStatisticsTimestamp()) {
+				return current;
+			} else if (states.replace(uid, current, state)) {
+				return state;
+			}
+		}
+	}
+
+	/**
+	 * Extracts the USM monitors from the statistics of a service instance.
+	 *
+	 * @param statistics
+	 *            the statistics.
+	 * @return the USM monitors, or null if they were not reported.
+	 */
+	public static Map<String, Object> getUsmMonitors(final ProcessingUnitInstanceStatistics statistics) {
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, ServiceMonitors> puMonitors = statistics.getMonitors();
+		if (puMonitors == null) {
+			return null;
+		}
+		final ServiceMonitors serviceMonitors = puMonitors.get(CloudifyConstants.USM_MONITORS_SERVICE_ID);
+		if (serviceMonitors == null) {
+			return null;
+		}
+		return serviceMonitors.getMonitors();
+	}
+
+	/**
+	 * Extracts the USM state from the USM monitors of a service instance.
+	 *
+	 * @param monitors
+	 *            the USM monitors.
+	 * @return the USM state, or null if it was not reported.
+	 */
+	public static USMState getUsmState(final Map<String, Object> monitors) {
+		if (monitors == null) {
+			return null;
+		}
+		final Integer state = (Integer) monitors.get(CloudifyConstants.USM_MONITORS_STATE_ID);
+		if (state == null) {
+			return null;
+		}
+		return USMState.values()[state];
+	}
+
+	/**
+	 * The state of a service instance, as last reported by its statistics.
+	 */
+	public static class InstanceState {
+
+		private final Map<String, Object> usmMonitors;
+		private final USMState usmState;
+		private final String hostName;
+		private final String hostAddress;
+		private final long statisticsTimestamp;
+		private final long timestamp = System.currentTimeMillis();
+
+		InstanceState(final Map<String, Object> usmMonitors, final String hostName, final String hostAddress,
+				final long statisticsTimestamp) {
+			this.usmMonitors = usmMonitors;
+			this.usmState = getUsmState(usmMonitors);
+			this.hostName = hostName;
+			this.hostAddress = hostAddress;
+			this.statisticsTimestamp = statisticsTimestamp;
+		}
+
+		/**
+		 * @return the USM monitors, or null if the instance did not report them yet.
+		 */
+		public Map<String, Object> getUsmMonitors() {
+			return usmMonitors;
+		}
+
+		/**
+		 * @return the USM state, or null if the instance did not report it yet.
+		 */
+		public USMState getUsmState() {
+			return usmState;
+		}
+
+		public String getHostName() {
+			return hostName;
+		}
+
+		public String getHostAddress() {
+			return hostAddress;
+		}
+
+		/**
+		 * @return the time the statistics the state was taken from were collected, or 0 if there were none.
+		 */
+		public long getStatisticsTimestamp() {
+			return statisticsTimestamp;
+		}
+
+		/**
+		 * @return the time the state was last updated.
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		long getAge() {
+			return System.currentTimeMillis() - timestamp;
+		}
+	}
+}
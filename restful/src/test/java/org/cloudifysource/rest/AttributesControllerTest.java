@@ -12,6 +12,7 @@
  ******************************************************************************/
 package org.cloudifysource.rest;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,6 +46,7 @@ public class AttributesControllerTest extends ControllerTest {
     private static final String INSTANCE_ID = "1";
     private static final String ATTRIBUTE_NAME = "myAttr";
 
+    private AttributesController controller;
     private List<String> singleAttributeUris;
     private List<String> multipleAttributesUris;
     private HashMap<String, HashMap<RequestMethod, HandlerMethod>> controllerMapping;
@@ -64,7 +66,7 @@ public class AttributesControllerTest extends ControllerTest {
      */
     @Before
     public void init() throws NoSuchMethodException {
-        AttributesController controller = applicationContext.getBean(AttributesController.class);
+        controller = applicationContext.getBean(AttributesController.class);
 
         singleAttributeUris = new LinkedList<String>();
         multipleAttributesUris = new LinkedList<String>();
@@ -196,6 +198,19 @@ public class AttributesControllerTest extends ControllerTest {
         controllerMapping.put(multipleServiceAttributesUri, multipleServiceAttributesHandlers);
         controllerMapping.put(multipleInstanceAttributesUri, multipleInstanceAttributesHandlers);
 
+        // atomic operations
+        final HashMap<RequestMethod, HandlerMethod> globalCompareAndSetHandlers =
+                new HashMap<RequestMethod, HandlerMethod>();
+        globalCompareAndSetHandlers.put(RequestMethod.POST, new HandlerMethod(
+                controller, "compareAndSetGlobalAttribute", String.class, Map.class));
+        controllerMapping.put(singleGlobalAttributeUri + "/compare-and-set", globalCompareAndSetHandlers);
+        final HashMap<RequestMethod, HandlerMethod> instanceIncrementHandlers =
+                new HashMap<RequestMethod, HandlerMethod>();
+        instanceIncrementHandlers.put(RequestMethod.POST, new HandlerMethod(
+                controller, "incrementInstanceAttribute", String.class, String.class,
+                int.class, String.class, Object.class));
+        controllerMapping.put(singleInstanceAttributeUri + "/increment", instanceIncrementHandlers);
+
         // TODO: fix license
     }
 
@@ -251,6 +266,40 @@ public class AttributesControllerTest extends ControllerTest {
         }
     }
 
+    /**
+     * Test the compare-and-set and increment calls, and getting and deleting attributes by keys.
+     *
+     * @throws Exception
+     *             Indicates a call failed.
+     */
+    @Test
+    public void testAtomicOperations() throws Exception {
+
+        // compare and set
+        final String compareAndSetUri = "/attributes/globals/" + ATTRIBUTE_NAME + "/compare-and-set";
+        testPost(compareAndSetUri, "{\"expectedValue\":null,\"newValue\":\"v1\"}", "{\"updated\":true}");
+        testPost(compareAndSetUri, "{\"expectedValue\":null,\"newValue\":\"v2\"}", "{\"updated\":false}");
+        testPost(compareAndSetUri, "{\"expectedValue\":\"wrong\",\"newValue\":\"v2\"}", "{\"updated\":false}");
+        testPost(compareAndSetUri, "{\"expectedValue\":\"v1\",\"newValue\":\"v2\"}", "{\"updated\":true}");
+
+        // increment
+        final String incrementUri = "/attributes/instances/" + APPLICATION_NAME + "/" + SERVICE_NAME + "/"
+                + INSTANCE_ID + "/counter/increment";
+        testPost(incrementUri, "2", "{\"counter\":2}");
+        testPost(incrementUri, "3", "{\"counter\":5}");
+
+        // get and delete by keys
+        Map<String, Object> values = controller.getGlobalAttributesByKeys(ATTRIBUTE_NAME + ",missing");
+        Assert.assertEquals(1, values.size());
+        Assert.assertEquals("v2", values.get(ATTRIBUTE_NAME));
+        values = controller.deleteInstanceAttributesByKeys(APPLICATION_NAME, SERVICE_NAME,
+                Integer.parseInt(INSTANCE_ID), "counter");
+        Assert.assertEquals(Arrays.asList("counter"), new LinkedList<String>(values.keySet()));
+        values = controller.deleteGlobalAttributesByKeys(ATTRIBUTE_NAME);
+        Assert.assertEquals("v2", values.get(ATTRIBUTE_NAME));
+        Assert.assertTrue(controller.getGlobalAttributesByKeys(ATTRIBUTE_NAME).isEmpty());
+    }
+
     private void testUriForSingleAttribute(final String requestUri,
                                            final Object attrInitialValue, final Object attrUpdatedValue)
             throws Exception {
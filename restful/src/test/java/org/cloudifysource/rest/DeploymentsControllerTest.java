@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.rest;
+
+import java.util.concurrent.Semaphore;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Assert;
+
+import org.cloudifysource.dsl.internal.CloudifyErrorMessages;
+import org.cloudifysource.dsl.rest.response.DeploymentEvent;
+import org.cloudifysource.dsl.rest.response.DeploymentEvents;
+import org.cloudifysource.rest.controllers.DeploymentsController;
+import org.cloudifysource.rest.controllers.RestErrorException;
+import org.cloudifysource.rest.events.cache.EventsCache;
+import org.cloudifysource.rest.events.cache.EventsCacheKey;
+import org.cloudifysource.rest.events.cache.EventsCacheValue;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests for the deployment events requests of {@link DeploymentsController}. The events cache is mocked, so events
+ * are only received when a test appends them to the events log.
+ *
+ */
+public class DeploymentsControllerTest {
+
+	private static final String DEPLOYMENT_ID = "deployment";
+	private static final int RETENTION = 10;
+	// the limits of DeploymentsController.
+	private static final int MAX_EVENTS_WAIT_SECONDS = 30;
+	private static final int MAX_EVENTS_WAITERS = 50;
+
+	private DeploymentsController controller;
+	private EventsCacheValue value;
+
+	@Before
+	public void before() throws Exception {
+		value = new EventsCacheValue(RETENTION);
+		final EventsCache eventsCache = Mockito.mock(EventsCache.class);
+		Mockito.when(eventsCache.getIfExists(Mockito.any(EventsCacheKey.class))).thenReturn(value);
+		Mockito.when(eventsCache.get(Mockito.any(EventsCacheKey.class))).thenReturn(value);
+
+		controller = new DeploymentsController();
+		ReflectionTestUtils.setField(controller, "eventsCache", eventsCache);
+	}
+
+	@Test
+	public void testGetEventsWaitsForMissingEvent() throws Throwable {
+		appendEvents(1);
+		appendInBackground(500);
+
+		final long start = System.currentTimeMillis();
+		final DeploymentEvents events = controller.getDeploymentEvents(DEPLOYMENT_ID, 1, -1, 10);
+		Assert.assertEquals(1, events.getEvents().size());
+		Assert.assertEquals(1, events.getEvents().get(0).getIndex());
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+
+	@Test
+	public void testGetEventsDoesNotWaitOverWaiterLimit() throws Throwable {
+		final Semaphore waiters = (Semaphore) ReflectionTestUtils.getField(controller, "eventsWaiters");
+		Assert.assertEquals(MAX_EVENTS_WAITERS, waiters.drainPermits());
+
+		final long start = System.currentTimeMillis();
+		final DeploymentEvents events = controller.getDeploymentEvents(DEPLOYMENT_ID, 0, -1, 10);
+		Assert.assertTrue(events.getEvents().isEmpty());
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testGetEventsTimeoutIsCapped() throws Throwable {
+		final long start = System.currentTimeMillis();
+		final DeploymentEvents events = controller.getDeploymentEvents(DEPLOYMENT_ID, 0, -1, Integer.MAX_VALUE);
+		final long waited = System.currentTimeMillis() - start;
+
+		Assert.assertTrue(events.getEvents().isEmpty());
+		Assert.assertTrue("Waited " + waited + " ms", waited >= (MAX_EVENTS_WAIT_SECONDS - 1) * 1000L);
+		Assert.assertTrue("Waited " + waited + " ms", waited < (MAX_EVENTS_WAIT_SECONDS + 10) * 1000L);
+	}
+
+	@Test
+	public void testStreamOverWaiterLimitIsRejectedWithRetryAfter() throws Throwable {
+		final Semaphore waiters = (Semaphore) ReflectionTestUtils.getField(controller, "eventsWaiters");
+		waiters.drainPermits();
+
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.streamDeploymentEvents(DEPLOYMENT_ID, 0, 10, response);
+		Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+		Assert.assertNotNull(response.getHeader("Retry-After"));
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+
+		// the rejected request did not take a waiter's place.
+		waiters.release();
+		final MockHttpServletResponse accepted = new MockHttpServletResponse();
+		controller.streamDeploymentEvents(DEPLOYMENT_ID, 0, 1, accepted);
+		Assert.assertEquals(HttpServletResponse.SC_OK, accepted.getStatus());
+		Assert.assertEquals(1, waiters.availablePermits());
+	}
+
+	@Test
+	public void testStreamRestartsAfterTruncatedEvents() throws Throwable {
+		appendEvents(RETENTION + 5);
+		appendInBackground(500);
+
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.streamDeploymentEvents(DEPLOYMENT_ID, 0, 2, response);
+
+		final String[] lines = response.getContentAsString().split("\n");
+		Assert.assertEquals(2, lines.length);
+		final ObjectMapper mapper = new ObjectMapper();
+
+		// the first events were discarded, so the stream goes on from the oldest event still kept.
+		final DeploymentEvents first = mapper.readValue(lines[0], DeploymentEvents.class);
+		Assert.assertEquals(5, first.getTruncatedBeforeIndex());
+		Assert.assertEquals(RETENTION, first.getEvents().size());
+		Assert.assertEquals(5, first.getEvents().get(0).getIndex());
+
+		final DeploymentEvents second = mapper.readValue(lines[1], DeploymentEvents.class);
+		Assert.assertEquals(-1, second.getTruncatedBeforeIndex());
+		Assert.assertEquals(1, second.getEvents().size());
+		Assert.assertEquals(RETENTION + 5, second.getEvents().get(0).getIndex());
+	}
+
+	@Test
+	public void testStreamRejectsNegativeIndex() throws Throwable {
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			controller.streamDeploymentEvents(DEPLOYMENT_ID, -1, 10, response);
+			Assert.fail("A negative index was accepted");
+		} catch (final RestErrorException e) {
+			Assert.assertEquals(CloudifyErrorMessages.INVALID_EVENTS_INDEX.getName(),
+					e.getErrorDescription().get("error"));
+		}
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	private void appendEvents(final int numberOfEvents) {
+		for (int i = 0; i < numberOfEvents; i++) {
+			value.getEventsLog().append(createEvent());
+		}
+	}
+
+	private void appendInBackground(final long delayMillis) {
+		final Thread appender = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(delayMillis);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				value.getEventsLog().append(createEvent());
+			}
+		});
+		appender.setDaemon(true);
+		appender.start();
+	}
+
+	private static DeploymentEvent createEvent() {
+		final DeploymentEvent event = new DeploymentEvent();
+		event.setDescription("event");
+		return event;
+	}
+}
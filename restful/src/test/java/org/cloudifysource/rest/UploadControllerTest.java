@@ -20,6 +20,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,6 +28,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.time.DateUtils;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyMessageKeys;
+import org.cloudifysource.dsl.internal.UploadContentHash;
 import org.cloudifysource.dsl.rest.response.Response;
 import org.cloudifysource.dsl.rest.response.UploadResponse;
 import org.cloudifysource.rest.controllers.RestErrorException;
@@ -39,6 +41,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -213,6 +216,102 @@ public class UploadControllerTest extends ControllerTest {
 
     }
 
+    @Test
+    public void testGetContentUploadMissAndHit() throws Exception {
+        final File file = createUniqueFile();
+        try {
+            final String contentHash = UploadContentHash.compute(file);
+            final UploadResponse miss = controller.getContentUpload(contentHash);
+            Assert.assertNull(miss.getUploadKey());
+            Assert.assertEquals(0, miss.getUploadedBytes());
+
+            final UploadResponse uploaded = controller.uploadContent(contentHash, file.getName(),
+                    UploadRepoTest.createNewMultiFile(file));
+            Assert.assertEquals(contentHash, uploaded.getUploadKey());
+
+            final UploadResponse hit = controller.getContentUpload(contentHash);
+            Assert.assertEquals(contentHash, hit.getUploadKey());
+            assertUploadedContent(file, hit.getUploadKey());
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    @Test
+    public void testUploadContentChunkWithWrongOffset() throws Exception {
+        final File file = createUniqueFile();
+        try {
+            final String contentHash = UploadContentHash.compute(file);
+            final byte[] content = FileUtils.readFileToByteArray(file);
+            final int half = content.length / 2;
+
+            Assert.assertEquals(half, controller.uploadContentChunk(contentHash, file.getName(), 0,
+                    createChunk(content, 0, half)).getUploadedBytes());
+            try {
+                controller.uploadContentChunk(contentHash, file.getName(), 0,
+                        createChunk(content, half, content.length));
+                Assert.fail("a chunk that does not start where the previous chunk ended was accepted");
+            } catch (final RestErrorException e) {
+                Assert.assertEquals(CloudifyMessageKeys.UPLOAD_CHUNK_OFFSET_MISMATCH.getName(),
+                        e.getErrorDescription().get("error"));
+            }
+            // the rejected chunk was not stored, the upload resumes from the bytes received.
+            Assert.assertEquals(half, controller.getContentUpload(contentHash).getUploadedBytes());
+
+            Assert.assertEquals(content.length, controller.uploadContentChunk(contentHash, file.getName(), half,
+                    createChunk(content, half, content.length)).getUploadedBytes());
+            final String uploadKey = controller.completeContentUpload(contentHash, file.getName()).getUploadKey();
+            Assert.assertEquals(contentHash, uploadKey);
+            assertUploadedContent(file, uploadKey);
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    @Test
+    public void testCompleteContentUploadWithHashMismatch() throws Exception {
+        final File file = createUniqueFile();
+        final File otherFile = createUniqueFile();
+        try {
+            final String otherHash = UploadContentHash.compute(otherFile);
+            final byte[] content = FileUtils.readFileToByteArray(file);
+            controller.uploadContentChunk(otherHash, file.getName(), 0, createChunk(content, 0, content.length));
+            try {
+                controller.completeContentUpload(otherHash, file.getName());
+                Assert.fail("content that does not match its hash was accepted");
+            } catch (final RestErrorException e) {
+                Assert.assertEquals(CloudifyMessageKeys.UPLOAD_CONTENT_HASH_MISMATCH.getName(),
+                        e.getErrorDescription().get("error"));
+            }
+            // the received chunks were discarded.
+            final UploadResponse response = controller.getContentUpload(otherHash);
+            Assert.assertNull(response.getUploadKey());
+            Assert.assertEquals(0, response.getUploadedBytes());
+        } finally {
+            FileUtils.deleteQuietly(file);
+            FileUtils.deleteQuietly(otherFile);
+        }
+    }
+
+    private static File createUniqueFile() throws IOException {
+        final File file = File.createTempFile("uploadControllerTest", ".txt");
+        FileUtils.writeStringToFile(file, UUID.randomUUID().toString());
+        return file;
+    }
+
+    private static MultipartFile createChunk(final byte[] content, final int from, final int to) {
+        final byte[] chunk = new byte[to - from];
+        System.arraycopy(content, from, chunk, 0, chunk.length);
+        return new MockMultipartFile(CloudifyConstants.UPLOAD_FILE_PARAM_NAME, "chunk", "application/octet-stream",
+                chunk);
+    }
+
+    private void assertUploadedContent(final File expectedFile, final String uploadKey) throws IOException {
+        final File uploadedFile = uploadRepo.get(uploadKey);
+        Assert.assertNotNull(uploadedFile);
+        Assert.assertTrue(FileUtils.contentEquals(expectedFile, uploadedFile));
+    }
+
     private File assertUploadedFileExists(final File expectedFile, final String uploadKey)
             throws IOException {
         File restTempDir = new File(CloudifyConstants.REST_FOLDER);
@@ -24,6 +24,7 @@ import junit.framework.Assert;
 
 import org.apache.commons.io.FileUtils;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.internal.UploadContentHash;
 import org.cloudifysource.dsl.internal.packaging.ZipUtils;
 import org.cloudifysource.rest.controllers.RestErrorException;
 import org.cloudifysource.rest.repo.UploadRepo;
@@ -108,6 +109,98 @@ public class UploadRepoTest {
         putAndGetTest(new File(TXT_FILE_PATH));
     }
 
+    @Test
+    public void uploadContentTest() throws IOException, RestErrorException {
+        final File file = new File(ZIP_FILE_PATH);
+        final String contentHash = UploadContentHash.compute(file);
+        Assert.assertNull(repo.getContentKey(contentHash));
+
+        final String uploadKey = repo.putContent(contentHash, file.getName(), createNewMultiFile(file));
+        Assert.assertEquals(contentHash, uploadKey);
+        Assert.assertEquals(uploadKey, repo.getContentKey(contentHash));
+        assertUploadedFile(repo.get(uploadKey));
+
+        // uploading the same content again returns the same key.
+        Assert.assertEquals(uploadKey, repo.putContent(contentHash, "other.zip", createNewMultiFile(file)));
+    }
+
+    @Test
+    public void uploadContentChunksTest() throws IOException, RestErrorException {
+        final File file = new File(ZIP_FILE_PATH);
+        final byte[] content = FileUtils.readFileToByteArray(file);
+        final String contentHash = UploadContentHash.compute(file);
+        final int half = content.length / 2;
+
+        Assert.assertEquals(half, repo.putContentChunk(contentHash, 0, createChunk(content, 0, half)));
+        Assert.assertEquals(half, repo.getPartialContentSize(contentHash));
+        try {
+            repo.putContentChunk(contentHash, 0, createChunk(content, 0, half));
+            fail("a chunk that does not start where the previous chunk ended should be rejected");
+        } catch (final RestErrorException e) {
+            // expected
+        }
+        Assert.assertEquals(content.length,
+                repo.putContentChunk(contentHash, half, createChunk(content, half, content.length)));
+
+        final String uploadKey = repo.completeContent(contentHash, file.getName());
+        Assert.assertEquals(contentHash, uploadKey);
+        Assert.assertEquals(0, repo.getPartialContentSize(contentHash));
+        assertUploadedFile(repo.get(uploadKey));
+    }
+
+    @Test
+    public void uploadContentHashMismatchTest() throws IOException, RestErrorException {
+        final File file = new File(ZIP_FILE_PATH);
+        final String otherHash = UploadContentHash.compute(new File(TXT_FILE_PATH));
+        try {
+            repo.putContent(otherHash, file.getName(), createNewMultiFile(file));
+            fail("content that does not match its hash should be rejected");
+        } catch (final RestErrorException e) {
+            // expected
+        }
+        Assert.assertNull(repo.getContentKey(otherHash));
+        Assert.assertEquals(0, repo.getPartialContentSize(otherHash));
+    }
+
+    @Test
+    public void acquiredUploadIsKeptUntilReleasedTest() throws IOException, RestErrorException, InterruptedException {
+        final int cleanupTimeoutMillis = repo.getCleanupTimeoutMillis();
+        repo.resetTimeout(CLEANUP_TIMEOUT_MILLIS);
+        final File file = File.createTempFile("acquiredUpload", ".txt");
+        try {
+            FileUtils.writeStringToFile(file, UUID.randomUUID().toString());
+            final String contentHash = UploadContentHash.compute(file);
+            repo.putContent(contentHash, file.getName(), createNewMultiFile(file));
+
+            // an install of content the client found on the server, without uploading it again.
+            final String uploadKey = repo.getContentKey(contentHash);
+            Assert.assertNotNull(uploadKey);
+            Assert.assertTrue(repo.acquire(uploadKey));
+            Thread.sleep(CLEANUP_TIMEOUT_MILLIS * 3);
+            Assert.assertNotNull(repo.getContentKey(contentHash));
+
+            repo.release(uploadKey);
+            Thread.sleep(CLEANUP_TIMEOUT_MILLIS * 3);
+            Assert.assertNull(repo.get(uploadKey));
+            Assert.assertFalse(repo.acquire(uploadKey));
+        } finally {
+            FileUtils.deleteQuietly(file);
+            repo.resetTimeout(cleanupTimeoutMillis);
+        }
+    }
+
+    @Test(expected = RestErrorException.class)
+    public void invalidContentHashTest() throws RestErrorException {
+        repo.getContentKey(".." + File.separator + "test");
+    }
+
+    private static MultipartFile createChunk(final byte[] content, final int from, final int to) {
+        final byte[] chunk = new byte[to - from];
+        System.arraycopy(content, from, chunk, 0, chunk.length);
+        return new MockMultipartFile(CloudifyConstants.UPLOAD_FILE_PARAM_NAME, "chunk", "application/octet-stream",
+                chunk);
+    }
+
     public static MultipartFile createNewMultiFile(final File file) throws IOException {
         byte[] content = FileUtils.readFileToByteArray(file);
         final MockMultipartFile mockMultipartFile = new MockMultipartFile(
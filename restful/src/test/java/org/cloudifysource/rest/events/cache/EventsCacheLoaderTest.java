@@ -22,12 +22,14 @@ import com.gigaspaces.log.LogEntryMatcher;
 import com.google.common.util.concurrent.ListenableFuture;
 import junit.framework.Assert;
 import org.cloudifysource.dsl.rest.response.DeploymentEvent;
-import org.cloudifysource.rest.events.EventsUtils;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openspaces.admin.gsc.GridServiceContainer;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Created with IntelliJ IDEA.
@@ -51,9 +53,9 @@ public class EventsCacheLoaderTest {
         Assert.assertEquals(LOG_ENTRIES_BATCH_SIZE - 1, loadedValue.getLastEventIndex());
 
         // test all events are present and indexed correctly.
-        List<DeploymentEvent> events = loadedValue.getEvents().getEvents();
+        EventsLog events = loadedValue.getEventsLog();
         for (int i = 0; i < LOG_ENTRIES_BATCH_SIZE; i++) {
-            DeploymentEvent event = EventsUtils.retrieveEventWithIndex(i, events);
+            DeploymentEvent event = events.get(i);
             Assert.assertNotNull(event);
         }
 
@@ -80,12 +82,102 @@ public class EventsCacheLoaderTest {
 
         // test events were updated
         for (int i = 0; i < LOG_ENTRIES_BATCH_SIZE * 2; i++) {
-            DeploymentEvent event = EventsUtils.retrieveEventWithIndex(i, events.getEvents().getEvents());
+            DeploymentEvent event = events.getEventsLog().get(i);
             Assert.assertNotNull(event);
         }
 
     }
 
+    @Test
+    public void testLaggingContainer() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final GridServiceContainer slowContainer = Mockito.mock(GridServiceContainer.class);
+        final MockOneGridServiceContainerProvider provider = new MockOneGridServiceContainerProvider();
+        final LogEntries slowLogEntries = provider.createMockLogEntries();
+        Mockito.when(slowContainer.getUid()).thenReturn(UUID.randomUUID().toString());
+        Mockito.when(slowContainer.logEntries(Mockito.any(LogEntryMatcher.class)))
+                .thenAnswer(new Answer<LogEntries>() {
+                    @Override
+                    public LogEntries answer(final InvocationOnMock invocation) throws Throwable {
+                        release.await();
+                        return slowLogEntries;
+                    }
+                });
+
+        GridServiceContainerProvider containerProvider = new GridServiceContainerProvider() {
+            @Override
+            public Set<GridServiceContainer> getContainersForDeployment(final String deploymentId) {
+                Set<GridServiceContainer> containers = provider.getContainersForDeployment(deploymentId);
+                containers.add(slowContainer);
+                return containers;
+            }
+        };
+
+        EventsCacheLoader loader = new EventsCacheLoader(containerProvider);
+        loader.setLogRequestTimeoutMillis(100);
+
+        // the events of the responsive container are loaded even though the other container does not answer.
+        EventsCacheValue value = loader.load(new EventsCacheKey("deploymentId"));
+        Assert.assertEquals(LOG_ENTRIES_BATCH_SIZE - 1, value.getLastEventIndex());
+        Assert.assertTrue(value.getLaggingContainers().contains(slowContainer));
+
+        // a reload does not wait for the container while it lags.
+        loader.setLogRequestTimeoutMillis(5000);
+        final long start = System.currentTimeMillis();
+        loader.reload(new EventsCacheKey("deploymentId"), value).get();
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(2 * LOG_ENTRIES_BATCH_SIZE - 1, value.getLastEventIndex());
+        Assert.assertTrue(value.getLaggingContainers().contains(slowContainer));
+
+        // once the slow container answers, its events are added by the next reload.
+        release.countDown();
+        value.getPendingLogRequests().get(slowContainer).get();
+        loader.reload(new EventsCacheKey("deploymentId"), value).get();
+        Assert.assertEquals(4 * LOG_ENTRIES_BATCH_SIZE - 1, value.getLastEventIndex());
+        Assert.assertTrue(value.getLaggingContainers().isEmpty());
+        loader.close();
+    }
+
+    @Test
+    public void testRequestOfRemovedContainerIsDropped() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final GridServiceContainer slowContainer = Mockito.mock(GridServiceContainer.class);
+        Mockito.when(slowContainer.getUid()).thenReturn(UUID.randomUUID().toString());
+        Mockito.when(slowContainer.logEntries(Mockito.any(LogEntryMatcher.class)))
+                .thenAnswer(new Answer<LogEntries>() {
+                    @Override
+                    public LogEntries answer(final InvocationOnMock invocation) throws Throwable {
+                        release.await();
+                        return null;
+                    }
+                });
+        final MockOneGridServiceContainerProvider provider = new MockOneGridServiceContainerProvider();
+        final Set<GridServiceContainer> removed = new HashSet<GridServiceContainer>();
+        GridServiceContainerProvider containerProvider = new GridServiceContainerProvider() {
+            @Override
+            public Set<GridServiceContainer> getContainersForDeployment(final String deploymentId) {
+                Set<GridServiceContainer> containers = provider.getContainersForDeployment(deploymentId);
+                containers.add(slowContainer);
+                containers.removeAll(removed);
+                return containers;
+            }
+        };
+
+        EventsCacheLoader loader = new EventsCacheLoader(containerProvider);
+        loader.setLogRequestTimeoutMillis(100);
+        EventsCacheValue value = loader.load(new EventsCacheKey("deploymentId"));
+        Assert.assertTrue(value.getPendingLogRequests().containsKey(slowContainer));
+
+        // the container left the deployment, its request is cancelled and forgotten.
+        removed.add(slowContainer);
+        loader.reload(new EventsCacheKey("deploymentId"), value).get();
+        Assert.assertFalse(value.getPendingLogRequests().containsKey(slowContainer));
+        Assert.assertFalse(value.getLaggingContainers().contains(slowContainer));
+        loader.close();
+    }
+
     /**
      * This provider returns one container for each deployment id.
      * The returned container gives 10 different log line each time a call to
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.cloudifysource.rest.events.cache;
+
+import junit.framework.Assert;
+import org.cloudifysource.dsl.rest.response.DeploymentEvent;
+import org.cloudifysource.dsl.rest.response.DeploymentEvents;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EventsLog}.
+ */
+public class EventsLogTest {
+
+    private static final int CAPACITY = 10;
+
+    @Test
+    public void testAppendAssignsIndices() {
+
+        EventsLog log = new EventsLog(CAPACITY);
+        Assert.assertEquals(-1, log.getLastIndex());
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(i, log.append(createEvent(i)));
+        }
+        Assert.assertEquals(4, log.getLastIndex());
+        Assert.assertEquals(0, log.getFirstIndex());
+        Assert.assertEquals("event2", log.get(2).getDescription());
+        Assert.assertNull(log.get(5));
+    }
+
+    @Test
+    public void testGetRange() {
+
+        EventsLog log = createLog(5);
+
+        DeploymentEvents events = log.getRange(1, 3);
+        Assert.assertEquals(3, events.getEvents().size());
+        Assert.assertEquals(1, events.getEvents().get(0).getIndex());
+        Assert.assertEquals(3, events.getEvents().get(2).getIndex());
+        Assert.assertEquals(-1, events.getTruncatedBeforeIndex());
+
+        // events that were not appended yet are not returned.
+        events = log.getRange(3, 100);
+        Assert.assertEquals(2, events.getEvents().size());
+        Assert.assertEquals(-1, events.getTruncatedBeforeIndex());
+
+        Assert.assertTrue(log.contains(4));
+        Assert.assertFalse(log.contains(5));
+    }
+
+    @Test
+    public void testOldEventsAreTruncated() {
+
+        EventsLog log = createLog(CAPACITY + 5);
+        Assert.assertEquals(5, log.getFirstIndex());
+        Assert.assertNull(log.get(4));
+        Assert.assertEquals("event5", log.get(5).getDescription());
+
+        DeploymentEvents events = log.getRange(0, 7);
+        Assert.assertEquals(3, events.getEvents().size());
+        Assert.assertEquals(5, events.getEvents().get(0).getIndex());
+        Assert.assertEquals(5, events.getTruncatedBeforeIndex());
+
+        // nothing is left of the requested range.
+        events = log.getRange(0, 2);
+        Assert.assertTrue(events.getEvents().isEmpty());
+        Assert.assertEquals(5, events.getTruncatedBeforeIndex());
+
+        // the range starts after the truncated events.
+        events = log.getRange(5, 14);
+        Assert.assertEquals(CAPACITY, events.getEvents().size());
+        Assert.assertEquals(-1, events.getTruncatedBeforeIndex());
+    }
+
+    @Test
+    public void testLargeRangeIsNotCut() {
+
+        EventsLog log = new EventsLog(1000);
+        for (int i = 0; i < 500; i++) {
+            log.append(createEvent(i));
+        }
+
+        DeploymentEvents events = log.getRange(100, 399);
+        Assert.assertEquals(300, events.getEvents().size());
+        Assert.assertEquals(100, events.getEvents().get(0).getIndex());
+        Assert.assertEquals(-1, events.getTruncatedBeforeIndex());
+    }
+
+    @Test
+    public void testAwaitIndex() throws Exception {
+
+        final EventsLog log = createLog(2);
+        Assert.assertTrue(log.awaitIndex(1, 0));
+        Assert.assertFalse(log.awaitIndex(2, 10));
+
+        Thread appender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                log.append(createEvent(2));
+            }
+        });
+        appender.start();
+        Assert.assertTrue(log.awaitIndex(2, 10000));
+        appender.join();
+    }
+
+    private EventsLog createLog(final int numberOfEvents) {
+        EventsLog log = new EventsLog(CAPACITY);
+        for (int i = 0; i < numberOfEvents; i++) {
+            log.append(createEvent(i));
+        }
+        return log;
+    }
+
+    private DeploymentEvent createEvent(final int i) {
+        DeploymentEvent event = new DeploymentEvent();
+        event.setDescription("event" + i);
+        return event;
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for {@link GzipRequestFilter}.
+ *
+ * @since 2.7.0
+ */
+public class GzipRequestFilterTest {
+
+	private static final String BODY = "{\"name\":\"service\"}";
+	private static final int MAX_INFLATED_SIZE = 1024;
+
+	private final GzipRequestFilter filter = new GzipRequestFilter();
+
+	@Before
+	public void before() throws ServletException {
+		final MockFilterConfig config = new MockFilterConfig();
+		config.addInitParameter(GzipRequestFilter.MAX_INFLATED_SIZE_PARAM, Integer.toString(MAX_INFLATED_SIZE));
+		filter.init(config);
+	}
+
+	@Test
+	public void testCompressedBodyIsDecompressed() throws Exception {
+		final MockHttpServletRequest request = createRequest("/2.7.0/deployments/app/services/service", gzip(BODY));
+		final MockFilterChain chain = new MockFilterChain();
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+		final HttpServletRequest filtered = (HttpServletRequest) chain.getRequest();
+		Assert.assertEquals(BODY, IOUtils.toString(filtered.getInputStream(), "UTF-8"));
+		Assert.assertEquals(BODY.length(), filtered.getContentLength());
+		Assert.assertNull(filtered.getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void testBodyLargerThanLimitIsRejected() throws Exception {
+		final StringBuilder body = new StringBuilder();
+		while (body.length() <= MAX_INFLATED_SIZE) {
+			body.append(BODY);
+		}
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		final MockFilterChain chain = new MockFilterChain();
+		filter.doFilter(createRequest("/2.7.0/deployments/app", gzip(body.toString())), response, chain);
+
+		Assert.assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.getStatus());
+		Assert.assertNull(chain.getRequest());
+	}
+
+	@Test
+	public void testInvalidBodyIsRejected() throws Exception {
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		final MockFilterChain chain = new MockFilterChain();
+		filter.doFilter(createRequest("/2.7.0/templates", BODY.getBytes("UTF-8")), response, chain);
+
+		Assert.assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+		Assert.assertNull(chain.getRequest());
+	}
+
+	@Test
+	public void testOtherPathsAreNotDecompressed() throws Exception {
+		final MockHttpServletRequest request = createRequest("/service/applications/app/timeout/5", gzip(BODY));
+		final MockFilterChain chain = new MockFilterChain();
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+		Assert.assertSame(request, chain.getRequest());
+	}
+
+	private static MockHttpServletRequest createRequest(final String path, final byte[] body) {
+		final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest" + path);
+		request.setContextPath("/rest");
+		request.addHeader("Content-Encoding", "gzip");
+		request.setContent(body);
+		return request;
+	}
+
+	private static byte[] gzip(final String text) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openspaces.admin.gsc.GridServiceContainer;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+
+import com.gigaspaces.log.LogEntries;
+import com.gigaspaces.log.LogEntry;
+import com.gigaspaces.log.LogEntryMatcher;
+
+/**
+ * Tests for {@link LogTailFollower}.
+ *
+ * @since 2.7.0
+ */
+public class LogTailFollowerTest {
+
+	private final ProcessingUnit service = Mockito.mock(ProcessingUnit.class);
+
+	@Test
+	public void testFollowerContinuesFromItsCursor() {
+		final GridServiceContainer container = createContainer("gsc-1", "first", "second");
+		setInstances(createInstance(1, container));
+		final LogTailFollower tailFollower = new LogTailFollower();
+
+		final Map<String, Object> first = tailFollower.follow(service, null, 10, null);
+		Assert.assertEquals(Arrays.asList("[1] first", "[1] second"), first.get(CloudifyConstants.TAIL_LINES));
+		final String followId = (String) first.get(CloudifyConstants.TAIL_FOLLOW_ID);
+		final Map<String, Object> second = tailFollower.follow(service, followId, 10, null);
+		Assert.assertEquals(followId, second.get(CloudifyConstants.TAIL_FOLLOW_ID));
+
+		// the second request continues with the matcher holding the position of the first.
+		final ArgumentCaptor<LogEntryMatcher> matchers = ArgumentCaptor.forClass(LogEntryMatcher.class);
+		Mockito.verify(container, Mockito.times(2)).logEntries(matchers.capture());
+		Assert.assertSame(matchers.getAllValues().get(0), matchers.getAllValues().get(1));
+	}
+
+	@Test
+	public void testInstanceAddedLaterIsFollowed() {
+		final GridServiceContainer container1 = createContainer("gsc-1", "one");
+		final ProcessingUnitInstance instance1 = createInstance(1, container1);
+		setInstances(instance1);
+		final LogTailFollower tailFollower = new LogTailFollower();
+		final String followId = (String) tailFollower.follow(service, null, 10, null)
+				.get(CloudifyConstants.TAIL_FOLLOW_ID);
+
+		final GridServiceContainer container2 = createContainer("gsc-2", "two");
+		setInstances(createInstance(2, container2), instance1);
+		final Map<String, Object> result = tailFollower.follow(service, followId, 10, null);
+		Assert.assertEquals(Arrays.asList("[1] one", "[2] two"), result.get(CloudifyConstants.TAIL_LINES));
+
+		final ArgumentCaptor<LogEntryMatcher> matchers1 = ArgumentCaptor.forClass(LogEntryMatcher.class);
+		Mockito.verify(container1, Mockito.times(2)).logEntries(matchers1.capture());
+		final ArgumentCaptor<LogEntryMatcher> matchers2 = ArgumentCaptor.forClass(LogEntryMatcher.class);
+		Mockito.verify(container2).logEntries(matchers2.capture());
+		Assert.assertNotSame(matchers1.getValue(), matchers2.getValue());
+	}
+
+	@Test
+	public void testExpiredFollowerStartsOver() throws InterruptedException {
+		setInstances(createInstance(1, createContainer("gsc-1", "line")));
+		final LogTailFollower tailFollower = new LogTailFollower(50);
+		final String followId = (String) tailFollower.follow(service, null, 10, null)
+				.get(CloudifyConstants.TAIL_FOLLOW_ID);
+
+		Thread.sleep(200);
+		final Map<String, Object> result = tailFollower.follow(service, followId, 10, null);
+		Assert.assertFalse(followId.equals(result.get(CloudifyConstants.TAIL_FOLLOW_ID)));
+		Assert.assertEquals(Arrays.asList("[1] line"), result.get(CloudifyConstants.TAIL_LINES));
+	}
+
+	@Test
+	public void testRegexMatchesEntriesOfSeveralLines() {
+		final String entry = "SEVERE: failed\njava.lang.IllegalStateException: broken\n\tat Foo.bar(Foo.java:1)";
+		Assert.assertTrue(Pattern.matches(LogTailFollower.createRegex(null), entry));
+		Assert.assertTrue(Pattern.matches(LogTailFollower.createRegex("IllegalState"), entry));
+		Assert.assertTrue(Pattern.matches(LogTailFollower.createRegex("SEVERE|WARNING"), entry));
+		Assert.assertFalse(Pattern.matches(LogTailFollower.createRegex("WARNING"), entry));
+	}
+
+	private void setInstances(final ProcessingUnitInstance... instances) {
+		// the follower sorts the returned array.
+		Mockito.when(service.getInstances()).thenAnswer(new Answer<ProcessingUnitInstance[]>() {
+
+			@Override
+			public ProcessingUnitInstance[] answer(final InvocationOnMock invocation) {
+				return instances.clone();
+			}
+		});
+	}
+
+	private static ProcessingUnitInstance createInstance(final int instanceId, final GridServiceContainer container) {
+		final ProcessingUnitInstance instance = Mockito.mock(ProcessingUnitInstance.class);
+		Mockito.when(instance.getInstanceId()).thenReturn(instanceId);
+		Mockito.when(instance.getGridServiceContainer()).thenReturn(container);
+		return instance;
+	}
+
+	private static GridServiceContainer createContainer(final String uid, final String... lines) {
+		final List<LogEntry> entries = new ArrayList<LogEntry>();
+		for (final String line : lines) {
+			final LogEntry entry = Mockito.mock(LogEntry.class);
+			Mockito.when(entry.isLog()).thenReturn(true);
+			Mockito.when(entry.getText()).thenReturn(line);
+			entries.add(entry);
+		}
+		final LogEntries logEntries = Mockito.mock(LogEntries.class);
+		Mockito.when(logEntries.iterator()).thenAnswer(new Answer<Iterator<LogEntry>>() {
+
+			@Override
+			public Iterator<LogEntry> answer(final InvocationOnMock invocation) {
+				return entries.iterator();
+			}
+		});
+
+		final GridServiceContainer container = Mockito.mock(GridServiceContainer.class);
+		Mockito.when(container.getUid()).thenReturn(uid);
+		Mockito.when(container.logEntries(Mockito.any(LogEntryMatcher.class))).thenReturn(logEntries);
+		return container;
+	}
+}
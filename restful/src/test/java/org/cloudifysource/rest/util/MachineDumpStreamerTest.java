@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openspaces.admin.dump.DumpDownloadListener;
+import org.openspaces.admin.dump.DumpResult;
+import org.openspaces.admin.machine.Machine;
+
+/**
+ * Tests for {@link MachineDumpStreamer}.
+ *
+ * @since 2.7.0
+ */
+public class MachineDumpStreamerTest {
+
+	private static final String[] PROCESSORS = new String[] { "summary", "log" };
+	private static final long NO_LIMIT = Long.MAX_VALUE;
+
+	private ExecutorService executor;
+	private File tempFolder;
+	private MachineDumpStreamer streamer;
+
+	@Before
+	public void before() throws IOException {
+		executor = Executors.newFixedThreadPool(3);
+		tempFolder = File.createTempFile("machineDumpStreamerTest", "");
+		FileUtils.forceDelete(tempFolder);
+		FileUtils.forceMkdir(tempFolder);
+		streamer = new MachineDumpStreamer(executor, tempFolder, PROCESSORS);
+	}
+
+	@After
+	public void after() {
+		streamer.close();
+		executor.shutdownNow();
+		FileUtils.deleteQuietly(tempFolder);
+	}
+
+	@Test
+	public void testDumpsAreWrittenInMachineOrder() throws Exception {
+		// the first dump is the last one to be generated.
+		streamer.start(Arrays.asList(createMachine("10.0.0.1", 100, 500), createMachine("10.0.0.2", 200, 0),
+				createMachine("10.0.0.3", 300, 0)), NO_LIMIT);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(600, streamer.writeTo(out));
+
+		final Map<String, byte[]> entries = readEntries(out.toByteArray());
+		Assert.assertEquals(Arrays.asList("10.0.0.1.zip", "10.0.0.2.zip", "10.0.0.3.zip"),
+				Arrays.asList(entries.keySet().toArray()));
+		Assert.assertEquals(200, entries.get("10.0.0.2.zip").length);
+		Assert.assertEquals(0, tempFolder.list().length);
+	}
+
+	@Test
+	public void testFailedDumpIsListedInSummary() throws Exception {
+		final Machine failed = Mockito.mock(Machine.class);
+		Mockito.when(failed.getHostAddress()).thenReturn("10.0.0.2");
+		Mockito.when(failed.generateDump("Rest_API", null, PROCESSORS)).thenThrow(
+				new IllegalStateException("agent is down"));
+		streamer.start(Arrays.asList(createMachine("10.0.0.1", 100, 0), failed), NO_LIMIT);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(100, streamer.writeTo(out));
+
+		final Map<String, byte[]> entries = readEntries(out.toByteArray());
+		Assert.assertTrue(entries.containsKey("10.0.0.1.zip"));
+		Assert.assertFalse(entries.containsKey("10.0.0.2.zip"));
+		final String summary = new String(entries.get(MachineDumpStreamer.SUMMARY_ENTRY_NAME));
+		Assert.assertTrue(summary, summary.contains("10.0.0.2: failed"));
+		Assert.assertTrue(summary, summary.contains("agent is down"));
+	}
+
+	@Test
+	public void testDumpsOverSizeLimitAreSkipped() throws Exception {
+		// one dump at a time, so the size of the previous dumps is known when each one starts.
+		executor.shutdownNow();
+		executor = Executors.newSingleThreadExecutor();
+		streamer = new MachineDumpStreamer(executor, tempFolder, PROCESSORS);
+		final Machine notGenerated = createMachine("10.0.0.3", 100, 0);
+		streamer.start(Arrays.asList(createMachine("10.0.0.1", 100, 0), createMachine("10.0.0.2", 100, 0),
+				notGenerated), 150);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(100, streamer.writeTo(out));
+
+		final Map<String, byte[]> entries = readEntries(out.toByteArray());
+		Assert.assertEquals(Arrays.asList("10.0.0.1.zip", MachineDumpStreamer.SUMMARY_ENTRY_NAME),
+				Arrays.asList(entries.keySet().toArray()));
+		final String summary = new String(entries.get(MachineDumpStreamer.SUMMARY_ENTRY_NAME));
+		Assert.assertTrue(summary, summary.contains("10.0.0.2: skipped"));
+		Assert.assertTrue(summary, summary.contains("10.0.0.3: skipped"));
+		Mockito.verify(notGenerated, Mockito.never()).generateDump("Rest_API", null, PROCESSORS);
+		Assert.assertEquals(0, tempFolder.list().length);
+	}
+
+	@Test
+	public void testCloseDeletesTemporaryFiles() throws Exception {
+		streamer.start(Arrays.asList(createMachine("10.0.0.1", 100, 0), createMachine("10.0.0.2", 100, 0)),
+				NO_LIMIT);
+		streamer.getDump(0);
+		streamer.getDump(1);
+		Assert.assertEquals(2, tempFolder.list().length);
+
+		streamer.close();
+		Assert.assertEquals(0, tempFolder.list().length);
+	}
+
+	private static Machine createMachine(final String hostAddress, final int dumpSize, final long delayMillis)
+			throws IOException {
+		final DumpResult dump = Mockito.mock(DumpResult.class);
+		Mockito.doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) throws Exception {
+				Thread.sleep(delayMillis);
+				FileUtils.writeByteArrayToFile((File) invocation.getArguments()[0], new byte[dumpSize]);
+				return null;
+			}
+		}).when(dump).download(Mockito.any(File.class), Mockito.any(DumpDownloadListener.class));
+
+		final Machine machine = Mockito.mock(Machine.class);
+		Mockito.when(machine.getHostAddress()).thenReturn(hostAddress);
+		Mockito.when(machine.generateDump("Rest_API", null, PROCESSORS)).thenReturn(dump);
+		return machine;
+	}
+
+	private static Map<String, byte[]> readEntries(final byte[] zip) throws IOException {
+		final Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		final ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip));
+		try {
+			ZipEntry entry = zis.getNextEntry();
+			while (entry != null) {
+				entries.put(entry.getName(), IOUtils.toByteArray(zis));
+				entry = zis.getNextEntry();
+			}
+		} finally {
+			zis.close();
+		}
+		return entries;
+	}
+}
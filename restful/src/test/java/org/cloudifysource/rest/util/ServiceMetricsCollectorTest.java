@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsData;
+import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.pu.service.ServiceMonitors;
+
+/**
+ * Tests for {@link ServiceMetricsCollector}.
+ *
+ * @since 2.7.0
+ */
+public class ServiceMetricsCollectorTest {
+
+	private final CountDownLatch blocked = new CountDownLatch(1);
+	private ServiceMetricsCollector collector;
+
+	@After
+	public void after() {
+		blocked.countDown();
+		if (collector != null) {
+			collector.shutdown();
+		}
+	}
+
+	@Test
+	public void testStatusOfEachInstance() {
+		collector = new ServiceMetricsCollector(null, 0);
+		final ProcessingUnitInstance failed = createInstance(3);
+		Mockito.when(failed.getStatistics()).thenThrow(new IllegalStateException("not available"));
+		final ProcessingUnitInstance noMetrics = createInstance(2);
+		final ProcessingUnitInstance ok = createInstance(1, "cpu", 10, "memory", 20);
+		final ProcessingUnit service = createService(failed, noMetrics, ok);
+
+		final List<ServiceInstanceMetricsData> result = collector.collect(service, null, 5000);
+		Assert.assertEquals(3, result.size());
+		Assert.assertEquals(1, result.get(0).getInstanceId());
+		Assert.assertEquals(ServiceInstanceMetricsStatus.OK, result.get(0).getStatus());
+		Assert.assertEquals(2, result.get(0).getMetrics().size());
+		Assert.assertEquals(ServiceInstanceMetricsStatus.NO_METRICS, result.get(1).getStatus());
+		Assert.assertEquals(ServiceInstanceMetricsStatus.FAILED, result.get(2).getStatus());
+	}
+
+	@Test
+	public void testMetricsAreFilteredByName() {
+		collector = new ServiceMetricsCollector(null, 0);
+		final ProcessingUnit service = createService(createInstance(1, "cpu", 10, "memory", 20));
+
+		final List<ServiceInstanceMetricsData> result =
+				collector.collect(service, new HashSet<String>(Arrays.asList("cpu", "missing")), 5000);
+		final Map<String, Object> metrics = result.get(0).getMetrics();
+		Assert.assertEquals(1, metrics.size());
+		Assert.assertEquals(10, metrics.get("cpu"));
+	}
+
+	@Test
+	public void testInstanceThatDoesNotAnswerTimesOut() {
+		collector = new ServiceMetricsCollector(null, 0);
+		final ProcessingUnitInstance slow = createInstance(2);
+		Mockito.when(slow.getStatistics()).thenAnswer(new Answer<ProcessingUnitInstanceStatistics>() {
+
+			@Override
+			public ProcessingUnitInstanceStatistics answer(final InvocationOnMock invocation) throws Throwable {
+				blocked.await();
+				return null;
+			}
+		});
+		final ProcessingUnit service = createService(createInstance(1, "cpu", 10), slow);
+
+		final long start = System.currentTimeMillis();
+		final List<ServiceInstanceMetricsData> result = collector.collect(service, null, 200);
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		Assert.assertEquals(ServiceInstanceMetricsStatus.OK, result.get(0).getStatus());
+		Assert.assertEquals(ServiceInstanceMetricsStatus.TIMED_OUT, result.get(1).getStatus());
+	}
+
+	@Test
+	public void testResultsAreReusedWithinTtl() {
+		collector = new ServiceMetricsCollector(null, 60 * 1000);
+		final ProcessingUnitInstance instance = createInstance(1, "cpu", 10);
+		final ProcessingUnit service = createService(instance);
+
+		collector.collect(service, null, 5000);
+		collector.collect(service, null, 5000);
+		Mockito.verify(instance, Mockito.times(1)).getStatistics();
+
+		// another filter is another collection.
+		collector.collect(service, new HashSet<String>(Arrays.asList("cpu")), 5000);
+		Mockito.verify(instance, Mockito.times(2)).getStatistics();
+	}
+
+	@Test
+	public void testTimedOutResultsAreNotReused() {
+		collector = new ServiceMetricsCollector(null, 60 * 1000);
+		final ProcessingUnitInstance slow = createInstance(1);
+		final ProcessingUnitInstanceStatistics statistics = createInstance(1, "cpu", 10).getStatistics();
+		Mockito.when(slow.getStatistics()).thenAnswer(new Answer<ProcessingUnitInstanceStatistics>() {
+
+			@Override
+			public ProcessingUnitInstanceStatistics answer(final InvocationOnMock invocation) throws Throwable {
+				blocked.await();
+				return statistics;
+			}
+		});
+		final ProcessingUnit service = createService(slow);
+
+		Assert.assertEquals(ServiceInstanceMetricsStatus.TIMED_OUT, collector.collect(service, null, 200).get(0)
+				.getStatus());
+		// the instance answers now, the next request collects again.
+		blocked.countDown();
+		Assert.assertEquals(ServiceInstanceMetricsStatus.OK, collector.collect(service, null, 5000).get(0)
+				.getStatus());
+	}
+
+	private static ProcessingUnit createService(final ProcessingUnitInstance... instances) {
+		final ProcessingUnit service = Mockito.mock(ProcessingUnit.class);
+		Mockito.when(service.getName()).thenReturn("default.service");
+		Mockito.when(service.getInstances()).thenReturn(instances);
+		return service;
+	}
+
+	private static ProcessingUnitInstance createInstance(final int instanceId, final Object... metrics) {
+		final ProcessingUnitInstance instance = Mockito.mock(ProcessingUnitInstance.class);
+		Mockito.when(instance.getInstanceId()).thenReturn(instanceId);
+		if (metrics.length == 0) {
+			return instance;
+		}
+
+		final Map<String, Object> usmMonitors = new HashMap<String, Object>();
+		for (int i = 0; i < metrics.length; i += 2) {
+			usmMonitors.put((String) metrics[i], metrics[i + 1]);
+		}
+		final ServiceMonitors serviceMonitors = Mockito.mock(ServiceMonitors.class);
+		Mockito.when(serviceMonitors.getMonitors()).thenReturn(usmMonitors);
+		final Map<String, ServiceMonitors> monitors = new HashMap<String, ServiceMonitors>();
+		monitors.put(CloudifyConstants.USM_MONITORS_SERVICE_ID, serviceMonitors);
+		final ProcessingUnitInstanceStatistics statistics = Mockito.mock(ProcessingUnitInstanceStatistics.class);
+		Mockito.when(statistics.getMonitors()).thenReturn(monitors);
+		Mockito.when(instance.getStatistics()).thenReturn(statistics);
+		return instance;
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.internal.CloudifyConstants.USMState;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.admin.pu.ProcessingUnitType;
+import org.openspaces.admin.pu.events.ProcessingUnitAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEvent;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitRemovedEventListener;
+import org.openspaces.pu.service.ServiceMonitors;
+
+/**
+ * Tests for {@link UsmStateIndex}.
+ *
+ * @since 2.7.0
+ */
+public class UsmStateIndexTest {
+
+	private Admin admin;
+	private UsmStateIndex index;
+	private ProcessingUnitAddedEventListener addedListener;
+	private ProcessingUnitRemovedEventListener removedListener;
+	private ProcessingUnitInstanceStatisticsChangedEventListener statisticsListener;
+
+	@Before
+	public void before() {
+		admin = Mockito.mock(Admin.class, Mockito.RETURNS_DEEP_STUBS);
+		// every read is a direct read.
+		index = new UsmStateIndex(admin, -1);
+		index.start();
+
+		final ArgumentCaptor<ProcessingUnitAddedEventListener> added =
+				ArgumentCaptor.forClass(ProcessingUnitAddedEventListener.class);
+		Mockito.verify(admin.getProcessingUnits().getProcessingUnitAdded()).add(added.capture());
+		addedListener = added.getValue();
+		final ArgumentCaptor<ProcessingUnitRemovedEventListener> removed =
+				ArgumentCaptor.forClass(ProcessingUnitRemovedEventListener.class);
+		Mockito.verify(admin.getProcessingUnits().getProcessingUnitRemoved()).add(removed.capture());
+		removedListener = removed.getValue();
+		final ArgumentCaptor<ProcessingUnitInstanceStatisticsChangedEventListener> statistics =
+				ArgumentCaptor.forClass(ProcessingUnitInstanceStatisticsChangedEventListener.class);
+		Mockito.verify(admin.getProcessingUnits().getProcessingUnitInstanceStatisticsChanged())
+				.add(statistics.capture());
+		statisticsListener = statistics.getValue();
+	}
+
+	@After
+	public void after() {
+		index.stop();
+	}
+
+	@Test
+	public void testStopsOnlyMonitorsItStarted() {
+		final ProcessingUnit monitored = createProcessingUnit(true);
+		final ProcessingUnit notMonitored = createProcessingUnit(false);
+		addedListener.processingUnitAdded(monitored);
+		addedListener.processingUnitAdded(notMonitored);
+		Mockito.verify(monitored, Mockito.never()).startStatisticsMonitor();
+		Mockito.verify(notMonitored).startStatisticsMonitor();
+
+		removedListener.processingUnitRemoved(monitored);
+		Mockito.verify(monitored, Mockito.never()).stopStatisticsMonitor();
+		index.stop();
+		Mockito.verify(notMonitored).stopStatisticsMonitor();
+	}
+
+	@Test
+	public void testDirectReadDoesNotOverwriteNewerState() {
+		final ProcessingUnit processingUnit = createProcessingUnit(false);
+		addedListener.processingUnitAdded(processingUnit);
+		final ProcessingUnitInstance pui = createInstance(processingUnit);
+
+		// an event delivers newer statistics than those a direct read returns.
+		fireStatisticsChanged(pui, createStatistics(USMState.RUNNING, 2000));
+		Mockito.when(pui.getStatistics()).thenReturn(createStatistics(USMState.LAUNCHING, 1000));
+		Assert.assertEquals(USMState.RUNNING, index.getUsmState(pui));
+
+		// newer statistics from a direct read replace the indexed state.
+		Mockito.when(pui.getStatistics()).thenReturn(createStatistics(USMState.SHUTTING_DOWN, 3000));
+		Assert.assertEquals(USMState.SHUTTING_DOWN, index.getUsmState(pui));
+		Assert.assertEquals(3000, index.getInstanceState(pui).getStatisticsTimestamp());
+	}
+
+	@Test
+	public void testStatisticsArePublished() throws Exception {
+		final ProcessingUnit processingUnit = createProcessingUnit(false);
+		addedListener.processingUnitAdded(processingUnit);
+		final ProcessingUnitInstance pui = createInstance(processingUnit);
+		Mockito.when(pui.getStatistics()).thenReturn(createStatistics(USMState.RUNNING, 1000));
+		index.getUsmState(pui);
+
+		final ObjectName name = new ObjectName("org.cloudifysource:type=UsmStateIndex,name=\"rest\"");
+		Assert.assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "DirectReads"));
+		Assert.assertEquals(1, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Size"));
+		index.stop();
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	private void fireStatisticsChanged(final ProcessingUnitInstance pui,
+			final ProcessingUnitInstanceStatistics statistics) {
+		final ProcessingUnitInstanceStatisticsChangedEvent event =
+				Mockito.mock(ProcessingUnitInstanceStatisticsChangedEvent.class);
+		Mockito.when(event.getProcessingUnitInstance()).thenReturn(pui);
+		Mockito.when(event.getStatistics()).thenReturn(statistics);
+		statisticsListener.processingUnitInstanceStatisticsChanged(event);
+	}
+
+	private static ProcessingUnit createProcessingUnit(final boolean monitoring) {
+		final ProcessingUnit processingUnit = Mockito.mock(ProcessingUnit.class);
+		Mockito.when(processingUnit.getType()).thenReturn(ProcessingUnitType.UNIVERSAL);
+		Mockito.when(processingUnit.isMonitoring()).thenReturn(monitoring);
+		return processingUnit;
+	}
+
+	private static ProcessingUnitInstance createInstance(final ProcessingUnit processingUnit) {
+		final ProcessingUnitInstance pui = Mockito.mock(ProcessingUnitInstance.class);
+		Mockito.when(pui.getUid()).thenReturn("instance-1");
+		Mockito.when(pui.getProcessingUnit()).thenReturn(processingUnit);
+		return pui;
+	}
+
+	private static ProcessingUnitInstanceStatistics createStatistics(final USMState state, final long timestamp) {
+		final Map<String, Object> usmMonitors = new HashMap<String, Object>();
+		usmMonitors.put(CloudifyConstants.USM_MONITORS_STATE_ID, state.ordinal());
+		final ServiceMonitors serviceMonitors = Mockito.mock(ServiceMonitors.class);
+		Mockito.when(serviceMonitors.getMonitors()).thenReturn(usmMonitors);
+		final Map<String, ServiceMonitors> monitors = new HashMap<String, ServiceMonitors>();
+		monitors.put(CloudifyConstants.USM_MONITORS_SERVICE_ID, serviceMonitors);
+
+		final ProcessingUnitInstanceStatistics statistics = Mockito.mock(ProcessingUnitInstanceStatistics.class);
+		Mockito.when(statistics.getMonitors()).thenReturn(monitors);
+		Mockito.when(statistics.getTimestamp()).thenReturn(timestamp);
+		return statistics;
+	}
+}
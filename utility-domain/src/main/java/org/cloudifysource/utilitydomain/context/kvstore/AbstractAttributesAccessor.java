@@ -18,8 +18,12 @@ package org.cloudifysource.utilitydomain.context.kvstore;
 import groovy.lang.GroovyObjectSupport;
 import groovy.lang.MissingPropertyException;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.cloudifysource.domain.context.kvstorage.AttributesAccessor;
 import org.cloudifysource.domain.context.kvstorage.AttributesFacade;
+import org.cloudifysource.utilitydomain.kvstorage.AttributesSpaceOperations;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
 import org.openspaces.core.GigaSpace;
 
@@ -59,10 +63,64 @@ public abstract class AbstractAttributesAccessor extends GroovyObjectSupport imp
 	private Object put(final String key, final Object value) {
 		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
 		final AbstractCloudifyAttribute attributeEntry = prepareAttributeTemplate(key);
-		final AbstractCloudifyAttribute previousValue = managementSpace.take(attributeEntry);
 		attributeEntry.setValue(value);
-		managementSpace.write(attributeEntry);
-		return previousValue != null ? previousValue.getValue() : null;
+		final Object previousValue = AttributesSpaceOperations.put(managementSpace, attributeEntry);
+		invalidateCachedValue(attributeEntry);
+		return previousValue;
+	}
+
+	@Override
+	public boolean compareAndSet(final String key, final Object expectedValue, final Object newValue) {
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		final AbstractCloudifyAttribute attributeEntry = prepareAttributeTemplate(key);
+		attributeEntry.setValue(newValue);
+		final boolean set = AttributesSpaceOperations.compareAndSet(managementSpace, attributeEntry, expectedValue);
+		if (set) {
+			invalidateCachedValue(attributeEntry);
+		}
+		return set;
+	}
+
+	@Override
+	public Number increment(final String key, final Number delta) {
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		final AbstractCloudifyAttribute attributeEntry = prepareAttributeTemplate(key);
+		final Number value = AttributesSpaceOperations.increment(managementSpace, attributeEntry, delta);
+		invalidateCachedValue(attributeEntry);
+		return value;
+	}
+
+	@Override
+	public Map<String, Object> getAll(final Collection<String> keys) {
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		return AttributesSpaceOperations.getAll(managementSpace, prepareAttributeTemplate(null), keys);
+	}
+
+	@Override
+	public void putAll(final Map<String, Object> attributes) {
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		final AbstractCloudifyAttribute[] attributeEntries = new AbstractCloudifyAttribute[attributes.size()];
+		int i = 0;
+		for (final Map.Entry<String, Object> attribute : attributes.entrySet()) {
+			attributeEntries[i] = prepareAttributeTemplate(attribute.getKey());
+			attributeEntries[i].setValue(attribute.getValue());
+			i++;
+		}
+		AttributesSpaceOperations.putAll(managementSpace, attributeEntries);
+		for (final AbstractCloudifyAttribute attributeEntry : attributeEntries) {
+			invalidateCachedValue(attributeEntry);
+		}
+	}
+
+	@Override
+	public Map<String, Object> removeAll(final Collection<String> keys) {
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		final Map<String, Object> previousValues =
+				AttributesSpaceOperations.removeAll(managementSpace, prepareAttributeTemplate(null), keys);
+		for (final String key : keys) {
+			invalidateCachedValue(prepareAttributeTemplate(key));
+		}
+		return previousValues;
 	}
 
 	public Object getAt(final Object key) {
@@ -86,6 +144,7 @@ public abstract class AbstractAttributesAccessor extends GroovyObjectSupport imp
 		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
 		final AbstractCloudifyAttribute removeTemplate = prepareAttributeTemplate(key);
 		final AbstractCloudifyAttribute previousValue = managementSpace.take(removeTemplate);
+		invalidateCachedValue(removeTemplate);
 		return previousValue != null ? previousValue.getValue() : null;
 	}
 
@@ -93,21 +152,58 @@ public abstract class AbstractAttributesAccessor extends GroovyObjectSupport imp
 		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
 		final AbstractCloudifyAttribute clearTemplate = prepareAttributeTemplate(null);
 		managementSpace.clear(clearTemplate);
+		final AttributesNearCache nearCache = attributesFacade.getNearCache(attributesScope());
+		if (nearCache != null) {
+			nearCache.invalidateAll();
+		}
 	}
 
 	public Object get(final String key) {
-		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		final AttributesNearCache nearCache = attributesFacade.getNearCache(attributesScope());
 		final AbstractCloudifyAttribute propertyEntry = prepareAttributeTemplate(key);
+		if (nearCache != null) {
+			return readCachedValue(nearCache, propertyEntry).getValue();
+		}
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
 		final AbstractCloudifyAttribute valueEntry = managementSpace.read(propertyEntry);
 		return valueEntry != null ? valueEntry.getValue() : null;
 	}
 
 	public boolean containsKey(final String key) {
-		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
+		final AttributesNearCache nearCache = attributesFacade.getNearCache(attributesScope());
 		final AbstractCloudifyAttribute propertyEntry = prepareAttributeTemplate(key);
+		if (nearCache != null) {
+			return readCachedValue(nearCache, propertyEntry).isPresent();
+		}
+		final GigaSpace managementSpace = attributesFacade.getManagementSpace();
 		return managementSpace.count(propertyEntry) > 0;
 	}
 
+	private AttributesNearCache.CachedValue readCachedValue(final AttributesNearCache nearCache,
+			final AbstractCloudifyAttribute propertyEntry) {
+		final String cacheKey = AttributesNearCache.createKey(propertyEntry);
+		final AttributesNearCache.CachedValue cachedValue = nearCache.get(cacheKey);
+		if (cachedValue != null) {
+			return cachedValue;
+		}
+
+		// the version is read first, so a value changed while it is read is not cached.
+		final long version = nearCache.getVersion(cacheKey);
+		final AbstractCloudifyAttribute valueEntry = attributesFacade.getManagementSpace().read(propertyEntry);
+		final boolean present = valueEntry != null;
+		final Object value = present ? valueEntry.getValue() : null;
+		nearCache.put(cacheKey, present, value, version);
+		return new AttributesNearCache.CachedValue(present, value);
+	}
+
+	// called after the space operation completes, so the next read of this key by any thread reaches the space.
+	private void invalidateCachedValue(final AbstractCloudifyAttribute attributeEntry) {
+		final AttributesNearCache nearCache = attributesFacade.getNearCache(attributesScope());
+		if (nearCache != null) {
+			nearCache.invalidate(AttributesNearCache.createKey(attributeEntry));
+		}
+	}
+
 	private AbstractCloudifyAttribute prepareAttributeTemplate(final String key) {
 		final AbstractCloudifyAttribute propertyAttribute = prepareAttributeTemplate();
 		propertyAttribute.setApplicationName(applicationName);
@@ -121,4 +217,11 @@ public abstract class AbstractAttributesAccessor extends GroovyObjectSupport imp
 	 */
 	protected abstract AbstractCloudifyAttribute prepareAttributeTemplate();
 
+	/********
+	 * Returns the scope of the attributes accessed by this class, used to decide whether they are cached. Not named
+	 * as a getter, so it does not hide an attribute named 'scope' from recipes.
+	 * @return the scope.
+	 */
+	protected abstract AttributesNearCache.Scope attributesScope();
+
 }
\ No newline at end of file
@@ -33,4 +33,9 @@ public class ApplicationAttributesAccessor extends AbstractAttributesAccessor {
 		return new ApplicationCloudifyAttribute();
 	}
 
+	@Override
+	protected AttributesNearCache.Scope attributesScope() {
+		return AttributesNearCache.Scope.APPLICATION;
+	}
+
 }
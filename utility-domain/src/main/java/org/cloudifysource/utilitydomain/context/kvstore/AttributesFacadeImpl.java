@@ -48,6 +48,8 @@ public class AttributesFacadeImpl extends GroovyObjectSupport implements Attribu
 	private volatile GigaSpace managementSpace;
 	private final Object managementSpaceLock = new Object();
 	private final Admin admin;
+	// null unless enabled by system properties
+	private final AttributesNearCache nearCache = AttributesNearCache.createFromSystemProperties();
 
 	public AttributesFacadeImpl(final ServiceContext serviceContext, final Admin admin) {
 		this.serviceContext = serviceContext;
@@ -91,6 +93,45 @@ public class AttributesFacadeImpl extends GroovyObjectSupport implements Attribu
         }
     }
 
+	/**
+	 * Returns the near cache of attribute values, which exposes the cache hit and miss counters.
+	 *
+	 * @return the near cache, or null if attributes are not cached.
+	 */
+	public AttributesNearCache getNearCache() {
+		return nearCache;
+	}
+
+	/**
+	 * Returns the near cache, if attributes of the given scope are cached. The cache registers for space notifications
+	 * on first use.
+	 *
+	 * @param scope
+	 *            the attributes scope.
+	 * @return the near cache, or null if attributes of the given scope are not cached.
+	 */
+	AttributesNearCache getNearCache(final AttributesNearCache.Scope scope) {
+		if (nearCache == null) {
+			return null;
+		}
+		if (!nearCache.isCached(scope)) {
+			nearCache.start(getManagementSpace(), serviceContext.getApplicationName());
+			if (!nearCache.isCached(scope)) {
+				return null;
+			}
+		}
+		return nearCache;
+	}
+
+	/**
+	 * Releases the space notifications used by the near cache.
+	 */
+	public void close() {
+		if (nearCache != null) {
+			nearCache.close();
+		}
+	}
+
 	public GigaSpace getManagementSpace() {
 		if (managementSpace != null) {
 			return managementSpace;
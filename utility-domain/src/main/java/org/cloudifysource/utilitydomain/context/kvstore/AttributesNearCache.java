@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.context.kvstore;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.cloudifysource.dsl.utils.MBeanUtils;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.GlobalCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.events.SpaceDataEventListener;
+import org.openspaces.events.notify.SimpleNotifyContainerConfigurer;
+import org.openspaces.events.notify.SimpleNotifyEventListenerContainer;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * A bounded, least-recently-used local cache of attribute values, used by the attribute accessors to avoid a
+ * management space round trip for every read. Absent attributes are cached as well, so polling for an attribute that
+ * was not set yet is served locally.
+ *
+ * The cache is kept consistent by space notifications: any write, update, take or lease expiration of a cached
+ * attribute removes it from the cache. A value read from the space is only cached if no notification for its key
+ * arrived while it was read, so a late read never hides a newer write. Writes made through this cache's accessors
+ * remove the local entry before they return, so a reader always sees its own writes. As notifications may be lost when
+ * the connection to the space fails, entries also expire after a fixed age.
+ *
+ * Only values of immutable types are cached, since the same value object is returned to every reader.
+ *
+ * While started, the cache publishes its size and its hit, miss and invalidation counters as an MBean of type
+ * AttributesNearCache, named after the application.
+ *
+ * @since 2.7.0
+ */
+public class AttributesNearCache {
+
+	/**
+	 * System property used to set the maximum number of attributes kept in the cache. The cache is disabled when the
+	 * property is not set or is 0.
+	 */
+	public static final String MAX_SIZE_PROPERTY_NAME = "org.cloudifysource.attributes.near-cache-size";
+
+	/**
+	 * System property used to set the maximum age of a cached attribute, in milliseconds.
+	 */
+	public static final String MAX_AGE_PROPERTY_NAME = "org.cloudifysource.attributes.near-cache-max-age";
+
+	/**
+	 * System property used to set the comma separated list of cached scopes: global, application, service, instance.
+	 * All scopes are cached by default.
+	 */
+	public static final String SCOPES_PROPERTY_NAME = "org.cloudifysource.attributes.near-cache-scopes";
+
+	/**
+	 * Default maximum age of a cached attribute, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_AGE_MILLIS = 60 * 1000;
+
+	private static final Logger logger = Logger.getLogger(AttributesNearCache.class.getName());
+
+	// notifications are counted per stripe of keys, so a write of one key does not keep others out of the cache.
+	private static final int VERSION_STRIPES = 64;
+
+	/**
+	 * The attribute scopes that may be cached.
+	 */
+	public enum Scope {
+		/** Global attributes. */
+		GLOBAL,
+		/** Application attributes. */
+		APPLICATION,
+		/** Service attributes. */
+		SERVICE,
+		/** Service instance attributes. */
+		INSTANCE
+	}
+
+	private final int maxSize;
+	private final long maxAgeMillis;
+	private final Set<Scope> scopes;
+	private final Map<String, CachedValue> values;
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final List<SimpleNotifyEventListenerContainer> notifyContainers =
+			new ArrayList<SimpleNotifyEventListenerContainer>();
+	private volatile boolean started = false;
+	private volatile boolean closed = false;
+	private ObjectName mbeanName;
+
+	/**
+	 * The statistics published over JMX.
+	 */
+	public interface StatisticsMBean {
+
+		/** @return the number of cached attributes. */
+		int getSize();
+
+		/** @return the maximum number of cached attributes. */
+		int getMaxSize();
+
+		/** @return the number of reads served from the cache. */
+		long getHits();
+
+		/** @return the number of reads that went to the management space. */
+		long getMisses();
+
+		/** @return the number of cached attributes removed by notifications. */
+		long getInvalidations();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize
+	 *            the maximum number of attributes kept in the cache.
+	 * @param maxAgeMillis
+	 *            the maximum age of a cached attribute, in milliseconds.
+	 * @param scopes
+	 *            the cached scopes.
+	 */
+	public AttributesNearCache(final int maxSize, final long maxAgeMillis, final Set<Scope> scopes) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Attributes near cache size must be positive, got: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.maxAgeMillis = maxAgeMillis;
+		this.scopes = EnumSet.noneOf(Scope.class);
+		this.scopes.addAll(scopes);
+		this.values = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CachedValue> eldest) {
+				return size() > AttributesNearCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Creates a cache configured by system properties.
+	 *
+	 * @return the cache, or null if the cache is disabled.
+	 */
+	public static AttributesNearCache createFromSystemProperties() {
+		final int maxSize = Integer.getInteger(MAX_SIZE_PROPERTY_NAME, 0);
+		if (maxSize <= 0) {
+			return null;
+		}
+		final long maxAgeMillis = Long.getLong(MAX_AGE_PROPERTY_NAME, DEFAULT_MAX_AGE_MILLIS);
+		final String scopesProperty = System.getProperty(SCOPES_PROPERTY_NAME);
+		final Set<Scope> scopes = EnumSet.allOf(Scope.class);
+		if (scopesProperty != null && scopesProperty.trim().length() > 0) {
+			scopes.clear();
+			for (final String scope : scopesProperty.split(",")) {
+				scopes.add(Scope.valueOf(scope.trim().toUpperCase()));
+			}
+		}
+		return new AttributesNearCache(maxSize, maxAgeMillis, scopes);
+	}
+
+	/**
+	 * Registers for notifications of the cached scopes of the given application. Until this method succeeds, nothing
+	 * is cached. If registration fails, the cache stays disabled and registration is not retried.
+	 *
+	 * @param managementSpace
+	 *            the management space.
+	 * @param applicationName
+	 *            the application whose application, service and instance attributes are cached.
+	 */
+	public synchronized void start(final GigaSpace managementSpace, final String applicationName) {
+		if (started || closed) {
+			return;
+		}
+		try {
+			for (final Scope scope : scopes) {
+				final AbstractCloudifyAttribute template = createTemplate(scope);
+				template.setApplicationName(scope == Scope.GLOBAL ? null : applicationName);
+				notifyContainers.add(createNotifyContainer(managementSpace, template));
+			}
+			started = true;
+			mbeanName = MBeanUtils.register("AttributesNearCache", applicationName, new StatisticsMBean() {
+
+				@Override
+				public int getSize() {
+					return size();
+				}
+
+				@Override
+				public int getMaxSize() {
+					return AttributesNearCache.this.getMaxSize();
+				}
+
+				@Override
+				public long getHits() {
+					return AttributesNearCache.this.getHits();
+				}
+
+				@Override
+				public long getMisses() {
+					return AttributesNearCache.this.getMisses();
+				}
+
+				@Override
+				public long getInvalidations() {
+					return AttributesNearCache.this.getInvalidations();
+				}
+			}, StatisticsMBean.class);
+			logger.fine("Attributes near cache started for scopes " + scopes + " of application " + applicationName);
+		} catch (final RuntimeException e) {
+			logger.log(Level.WARNING, "Failed to register for attribute notifications, "
+					+ "attributes will be read from the management space", e);
+			destroyNotifyContainers();
+			closed = true;
+		}
+	}
+
+	/**
+	 * Unregisters from notifications and removes all cached attributes.
+	 */
+	public synchronized void close() {
+		closed = true;
+		started = false;
+		destroyNotifyContainers();
+		MBeanUtils.unregister(mbeanName);
+		mbeanName = null;
+		synchronized (values) {
+			values.clear();
+		}
+	}
+
+	/**
+	 * @param scope
+	 *            the scope.
+	 * @return true if attributes of the given scope are cached.
+	 */
+	public boolean isCached(final Scope scope) {
+		return started && scopes.contains(scope);
+	}
+
+	/**
+	 * Returns the version of a key, which changes whenever a notification for the key arrives. It should be read
+	 * before the key is read from the space, and passed to {@link #put(String, boolean, Object, long)}.
+	 *
+	 * @param key
+	 *            the cache key, created by {@link #createKey(AbstractCloudifyAttribute)}.
+	 * @return the version.
+	 */
+	public long getVersion(final String key) {
+		return versions.get(getStripe(key));
+	}
+
+	/**
+	 * Returns the cached value of an attribute.
+	 *
+	 * @param key
+	 *            the cache key, created by {@link #createKey(AbstractCloudifyAttribute)}.
+	 * @return the cached value, or null if the attribute is not cached.
+	 */
+	public CachedValue get(final String key) {
+		CachedValue value;
+		synchronized (values) {
+			value = values.get(key);
+			if (value != null && System.currentTimeMillis() - value.timestamp > maxAgeMillis) {
+				values.remove(key);
+				value = null;
+			}
+		}
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Caches the value of an attribute, unless a notification for its key arrived since the given version was read.
+	 *
+	 * @param key
+	 *            the cache key, created by {@link #createKey(AbstractCloudifyAttribute)}.
+	 * @param present
+	 *            true if the attribute exists.
+	 * @param value
+	 *            the attribute value.
+	 * @param version
+	 *            the key version, read by {@link #getVersion(String)} before the value was read.
+	 */
+	public void put(final String key, final boolean present, final Object value, final long version) {
+		if (!isImmutable(value)) {
+			return;
+		}
+		synchronized (values) {
+			// checked under the lock, as invalidate() advances the version before it removes the entry.
+			if (getVersion(key) == version) {
+				values.put(key, new CachedValue(present, value));
+			}
+		}
+	}
+
+	/**
+	 * Removes an attribute from the cache.
+	 *
+	 * @param key
+	 *            the cache key, created by {@link #createKey(AbstractCloudifyAttribute)}.
+	 */
+	public void invalidate(final String key) {
+		versions.incrementAndGet(getStripe(key));
+		synchronized (values) {
+			values.remove(key);
+		}
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Removes all attributes from the cache.
+	 */
+	public void invalidateAll() {
+		for (int i = 0; i < VERSION_STRIPES; i++) {
+			versions.incrementAndGet(i);
+		}
+		synchronized (values) {
+			values.clear();
+		}
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Creates the cache key of an attribute.
+	 *
+	 * @param attribute
+	 *            the attribute, or an attribute template.
+	 * @return the key.
+	 */
+	public static String createKey(final AbstractCloudifyAttribute attribute) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(attribute.getClass().getSimpleName()).append('|').append(attribute.getApplicationName());
+		if (attribute instanceof ServiceCloudifyAttribute) {
+			sb.append('|').append(((ServiceCloudifyAttribute) attribute).getServiceName());
+		} else if (attribute instanceof InstanceCloudifyAttribute) {
+			final InstanceCloudifyAttribute instanceAttribute = (InstanceCloudifyAttribute) attribute;
+			sb.append('|').append(instanceAttribute.getServiceName()).append('|')
+					.append(instanceAttribute.getInstanceId());
+		}
+		sb.append('|').append(attribute.getKey());
+		return sb.toString();
+	}
+
+	public int size() {
+		synchronized (values) {
+			return values.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	void onNotification(final AbstractCloudifyAttribute attribute) {
+		if (attribute.getKey() == null) {
+			invalidateAll();
+		} else {
+			invalidate(createKey(attribute));
+		}
+	}
+
+	private SimpleNotifyEventListenerContainer createNotifyContainer(final GigaSpace managementSpace,
+			final AbstractCloudifyAttribute template) {
+		return new SimpleNotifyContainerConfigurer(managementSpace)
+				.template(template)
+				.notifyWrite(true)
+				.notifyUpdate(true)
+				.notifyTake(true)
+				.notifyLease(true)
+				.eventListener(new SpaceDataEventListener<AbstractCloudifyAttribute>() {
+
+					@Override
+					public void onEvent(final AbstractCloudifyAttribute data, final GigaSpace gigaSpace,
+							final TransactionStatus txStatus, final Object source) {
+						onNotification(data);
+					}
+				})
+				.notifyContainer();
+	}
+
+	private void destroyNotifyContainers() {
+		for (final SimpleNotifyEventListenerContainer container : notifyContainers) {
+			try {
+				container.destroy();
+			} catch (final Exception e) {
+				logger.log(Level.FINE, "Failed to unregister attribute notifications", e);
+			}
+		}
+		notifyContainers.clear();
+	}
+
+	private static AbstractCloudifyAttribute createTemplate(final Scope scope) {
+		switch (scope) {
+		case GLOBAL:
+			return new GlobalCloudifyAttribute();
+		case APPLICATION:
+			return new ApplicationCloudifyAttribute();
+		case SERVICE:
+			return new ServiceCloudifyAttribute();
+		case INSTANCE:
+			return new InstanceCloudifyAttribute();
+		default:
+			throw new IllegalArgumentException("Unexpected attributes scope: " + scope);
+		}
+	}
+
+	private static int getStripe(final String key) {
+		return (key.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+	}
+
+	private static boolean isImmutable(final Object value) {
+		if (value == null || value instanceof String || value instanceof Boolean || value instanceof Character) {
+			return true;
+		}
+		// boxed primitives, but not mutable numbers such as AtomicLong.
+		return value instanceof Number && value.getClass().getPackage() == Integer.class.getPackage();
+	}
+
+	/**
+	 * A cached attribute.
+	 */
+	public static class CachedValue {
+
+		private final boolean present;
+		private final Object value;
+		private final long timestamp = System.currentTimeMillis();
+
+		CachedValue(final boolean present, final Object value) {
+			this.present = present;
+			this.value = value;
+		}
+
+		/**
+		 * @return true if the attribute exists in the space.
+		 */
+		public boolean isPresent() {
+			return present;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+	}
+}
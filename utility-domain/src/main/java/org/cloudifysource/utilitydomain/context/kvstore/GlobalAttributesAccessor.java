@@ -37,4 +37,9 @@ public class GlobalAttributesAccessor extends AbstractAttributesAccessor {
 		return new GlobalCloudifyAttribute();
 	}
 
+	@Override
+	protected AttributesNearCache.Scope attributesScope() {
+		return AttributesNearCache.Scope.GLOBAL;
+	}
+
 }
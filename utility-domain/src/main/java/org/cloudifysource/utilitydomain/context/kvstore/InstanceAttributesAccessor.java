@@ -43,4 +43,9 @@ public class InstanceAttributesAccessor extends AbstractAttributesAccessor {
 		return attribute;
 	}
 
+	@Override
+	protected AttributesNearCache.Scope attributesScope() {
+		return AttributesNearCache.Scope.INSTANCE;
+	}
+
 }
@@ -50,6 +50,11 @@ public class ServiceAttributesAccessor extends AbstractAttributesAccessor {
 		return attribute;
 	}
 
+	@Override
+	protected AttributesNearCache.Scope attributesScope() {
+		return AttributesNearCache.Scope.SERVICE;
+	}
+
 	public InstancesFacade getInstances() {
 		return instancesFacade;
 	}
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.kvstorage;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jini.core.lease.Lease;
+
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.GlobalCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
+import org.openspaces.core.EntryAlreadyInSpaceException;
+import org.openspaces.core.GigaSpace;
+
+import com.gigaspaces.client.ChangeModifiers;
+import com.gigaspaces.client.ChangeResult;
+import com.gigaspaces.client.ChangeSet;
+import com.gigaspaces.client.ChangedEntryDetails;
+import com.gigaspaces.client.ReadByIdsResult;
+import com.gigaspaces.client.TakeByIdsResult;
+import com.gigaspaces.client.WriteModifiers;
+import com.j_spaces.core.LeaseContext;
+
+/**
+ * Atomic operations on attributes stored in the management space. Each operation is a single space operation, as
+ * attributes are written with a space id derived from their scope and key (see
+ * {@link AbstractCloudifyAttribute#assignUid()}) and are therefore updated in place.
+ *
+ * Attributes written by older versions have an id generated by the space, and may remain in a persistent management
+ * space. The operations do not look for them; {@link #migrateLegacyAttributes(GigaSpace)} moves them to their derived
+ * ids once, when the management space is first used.
+ *
+ * @since 2.7.0
+ */
+public final class AttributesSpaceOperations {
+
+	private static final String VALUE_PROPERTY_NAME = "value";
+
+	private AttributesSpaceOperations() {
+		// utility class
+	}
+
+	/**
+	 * Writes an attribute, replacing its previous value.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @param attribute
+	 *            the attribute, with its key and new value.
+	 * @return the previous value, or null if the attribute did not exist.
+	 */
+	public static Object put(final GigaSpace space, final AbstractCloudifyAttribute attribute) {
+		attribute.assignUid();
+		final LeaseContext<AbstractCloudifyAttribute> leaseContext = space.write(attribute, Lease.FOREVER, 0,
+				WriteModifiers.UPDATE_OR_WRITE.add(WriteModifiers.RETURN_PREV_ON_UPDATE));
+		// the previous entry is only returned if an existing entry was updated.
+		final AbstractCloudifyAttribute previous = leaseContext == null ? null : leaseContext.getObject();
+		return previous != null ? previous.getValue() : null;
+	}
+
+	/**
+	 * Sets the value of an attribute only if its current value equals the expected value.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @param attribute
+	 *            the attribute, with its key and new value.
+	 * @param expectedValue
+	 *            the expected current value. If null, the attribute is only set if it does not exist.
+	 * @return true if the value was set.
+	 * @throws IllegalArgumentException
+	 *             if the expected value is not null, and the new value is not serializable.
+	 */
+	public static boolean compareAndSet(final GigaSpace space, final AbstractCloudifyAttribute attribute,
+			final Object expectedValue) {
+		attribute.assignUid();
+		if (expectedValue == null) {
+			try {
+				space.write(attribute, Lease.FOREVER, 0, WriteModifiers.WRITE_ONLY);
+				return true;
+			} catch (final EntryAlreadyInSpaceException e) {
+				return false;
+			}
+		}
+
+		final Object newValue = attribute.getValue();
+		if (newValue != null && !(newValue instanceof Serializable)) {
+			throw new IllegalArgumentException("Cannot compare and set attribute " + attribute.getKey()
+					+ ": the new value must be serializable, got an instance of " + newValue.getClass().getName());
+		}
+		attribute.setValue(expectedValue);
+		try {
+			final ChangeSet changeSet = new ChangeSet().set(VALUE_PROPERTY_NAME, (Serializable) newValue);
+			return space.change(attribute, changeSet).getNumberOfChangedEntries() > 0;
+		} finally {
+			attribute.setValue(newValue);
+		}
+	}
+
+	/**
+	 * Adds to the numeric value of an attribute. An attribute that does not exist is created with the given delta as
+	 * its value.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @param attribute
+	 *            the attribute, with its key.
+	 * @param delta
+	 *            the amount to add.
+	 * @return the new value.
+	 */
+	public static Number increment(final GigaSpace space, final AbstractCloudifyAttribute attribute,
+			final Number delta) {
+		attribute.assignUid();
+		attribute.setValue(null);
+		while (true) {
+			final ChangeResult<AbstractCloudifyAttribute> result = space.change(attribute,
+					new ChangeSet().increment(VALUE_PROPERTY_NAME, delta), ChangeModifiers.RETURN_DETAILED_RESULTS);
+			if (result.getNumberOfChangedEntries() > 0) {
+				final ChangedEntryDetails<AbstractCloudifyAttribute> details = result.getResults().iterator().next();
+				return (Number) details.getChangeOperationsResults().get(0).getResult();
+			}
+
+			attribute.setValue(delta);
+			try {
+				space.write(attribute, Lease.FOREVER, 0, WriteModifiers.WRITE_ONLY);
+				return delta;
+			} catch (final EntryAlreadyInSpaceException e) {
+				// created concurrently, increment it.
+				attribute.setValue(null);
+			}
+		}
+	}
+
+	/**
+	 * Reads several attributes of the same scope.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @param scope
+	 *            an attribute of the requested scope. Its key is ignored.
+	 * @param keys
+	 *            the attribute keys.
+	 * @return the values of the attributes that exist, by key.
+	 */
+	public static Map<String, Object> getAll(final GigaSpace space, final AbstractCloudifyAttribute scope,
+			final Collection<String> keys) {
+		final Map<String, Object> values = new LinkedHashMap<String, Object>();
+		if (keys.isEmpty()) {
+			return values;
+		}
+		final ReadByIdsResult<AbstractCloudifyAttribute> result = space.readByIds(getType(scope), toUids(scope, keys));
+		for (final AbstractCloudifyAttribute attribute : result) {
+			if (attribute != null) {
+				values.put(attribute.getKey(), attribute.getValue());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Writes several attributes, replacing their previous values.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @param attributes
+	 *            the attributes, with their keys and new values.
+	 */
+	public static void putAll(final GigaSpace space, final AbstractCloudifyAttribute[] attributes) {
+		if (attributes.length == 0) {
+			return;
+		}
+		for (final AbstractCloudifyAttribute attribute : attributes) {
+			attribute.assignUid();
+		}
+		space.writeMultiple(attributes, Lease.FOREVER, WriteModifiers.UPDATE_OR_WRITE);
+	}
+
+	/**
+	 * Removes several attributes of the same scope.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @param scope
+	 *            an attribute of the requested scope. Its key is ignored.
+	 * @param keys
+	 *            the attribute keys.
+	 * @return the previous values of the attributes that existed, by key.
+	 */
+	public static Map<String, Object> removeAll(final GigaSpace space, final AbstractCloudifyAttribute scope,
+			final Collection<String> keys) {
+		final Map<String, Object> values = new LinkedHashMap<String, Object>();
+		if (keys.isEmpty()) {
+			return values;
+		}
+		final TakeByIdsResult<AbstractCloudifyAttribute> result = space.takeByIds(getType(scope), toUids(scope, keys));
+		for (final AbstractCloudifyAttribute attribute : result) {
+			if (attribute != null) {
+				values.put(attribute.getKey(), attribute.getValue());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Moves the attributes written by older versions, whose space id was generated by the space, to the id derived from
+	 * their scope and key. An attribute is dropped if an attribute was already written with its derived id, as that
+	 * one is newer. Meant to run once when the management space is first used; running it again is harmless.
+	 *
+	 * @param space
+	 *            the management space.
+	 * @return the number of attributes moved.
+	 */
+	public static int migrateLegacyAttributes(final GigaSpace space) {
+		// templates matching all attributes of each scope.
+		final AbstractCloudifyAttribute[] templates = new AbstractCloudifyAttribute[] {
+				new GlobalCloudifyAttribute(), new ApplicationCloudifyAttribute(), new ServiceCloudifyAttribute(),
+				new InstanceCloudifyAttribute() };
+		int migrated = 0;
+		for (final AbstractCloudifyAttribute template : templates) {
+			for (final AbstractCloudifyAttribute entry : space.readMultiple(template)) {
+				final String legacyUid = entry.getUid();
+				if (entry.createUid(entry.getKey()).equals(legacyUid)) {
+					continue;
+				}
+				final AbstractCloudifyAttribute legacy = space.takeById(getType(template), legacyUid);
+				if (legacy == null) {
+					// migrated concurrently by another process.
+					continue;
+				}
+				legacy.assignUid();
+				try {
+					space.write(legacy, Lease.FOREVER, 0, WriteModifiers.WRITE_ONLY);
+					migrated++;
+				} catch (final EntryAlreadyInSpaceException e) {
+					// written meanwhile with the derived id, which is newer.
+				}
+			}
+		}
+		return migrated;
+	}
+
+	private static Object[] toUids(final AbstractCloudifyAttribute scope, final Collection<String> keys) {
+		final Object[] uids = new Object[keys.size()];
+		int i = 0;
+		for (final String key : keys) {
+			uids[i++] = scope.createUid(key);
+		}
+		return uids;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<AbstractCloudifyAttribute> getType(final AbstractCloudifyAttribute scope) {
+		return (Class<AbstractCloudifyAttribute>) scope.getClass();
+	}
+}
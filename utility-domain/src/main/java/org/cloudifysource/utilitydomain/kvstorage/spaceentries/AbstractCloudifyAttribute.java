@@ -28,6 +28,13 @@ import com.gigaspaces.annotation.pojo.SpaceIndex;
 @SpaceClass
 public abstract class AbstractCloudifyAttribute {
 
+	/**
+	 * Separates the scope properties and the key in the space id.
+	 */
+	protected static final char UID_SEPARATOR = '|';
+	// stands for a scope property that is not set. Set properties start with their length, so never look like this.
+	private static final String UNSET_UID_PART = "-";
+
 	protected AbstractCloudifyAttribute() {
 	}
 
@@ -42,8 +49,19 @@ public abstract class AbstractCloudifyAttribute {
 	private Object value;
 	private String uid;
 
-	@SpaceId(autoGenerate = true)
+	/**
+	 * The space id of an attribute is derived from its scope and key, see {@link #assignUid()}, so an attribute can be
+	 * updated in place. If no id was set, the id is derived from the key, so writers that do not call
+	 * {@link #assignUid()} still write a valid id. A template without a key, or with a scope property that is not set,
+	 * has no id, and is matched by its other properties.
+	 * 
+	 * @return the space id, or null if the id is not set and the key or a scope property are not set.
+	 */
+	@SpaceId(autoGenerate = false)
 	public String getUid() {
+		if (uid == null && key != null && isScopeSet()) {
+			return createUid(key);
+		}
 		return uid;
 	}
 
@@ -51,6 +69,72 @@ public abstract class AbstractCloudifyAttribute {
 		this.uid = uid;
 	}
 
+	/**
+	 * Sets the space id of this attribute from its scope and key. Must be called before the attribute is written.
+	 */
+	public void assignUid() {
+		if (key == null) {
+			throw new IllegalStateException("Attribute key is not set");
+		}
+		if (!isScopeSet()) {
+			throw new IllegalStateException("Attribute scope is not set: " + this.getClass().getSimpleName());
+		}
+		this.uid = createUid(key);
+	}
+
+	/**
+	 * Creates the space id of the attribute with the given key in the scope of this attribute. Each part of the id is
+	 * prefixed with its length, so scopes and keys that include the separator do not share ids.
+	 * 
+	 * @param attributeKey
+	 *            the attribute key.
+	 * @return the space id.
+	 */
+	public String createUid(final String attributeKey) {
+		final StringBuilder sb = new StringBuilder();
+		appendScope(sb);
+		sb.append(UID_SEPARATOR);
+		appendUidPart(sb, attributeKey);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the properties that identify the scope of this attribute, each with {@link #appendUidPart}.
+	 * 
+	 * @param sb
+	 *            the builder of the space id.
+	 */
+	protected void appendScope(final StringBuilder sb) {
+		appendUidPart(sb, applicationName);
+	}
+
+	/**
+	 * Checks that the properties that identify the scope of this attribute are set. A template that leaves one of
+	 * them unset matches attributes of any value of that property, so it has no id.
+	 * 
+	 * @return true if all scope properties are set.
+	 */
+	protected boolean isScopeSet() {
+		return applicationName != null;
+	}
+
+	/**
+	 * Appends a part of the space id, as its length, a colon and its text.
+	 * 
+	 * @param sb
+	 *            the builder of the space id.
+	 * @param part
+	 *            the part, may be null.
+	 */
+	protected static void appendUidPart(final StringBuilder sb, final Object part) {
+		if (part == null) {
+			sb.append(UNSET_UID_PART);
+			return;
+		}
+		final String text = part.toString();
+		sb.append(text.length()).append(':').append(text);
+	}
+
 	public void setApplicationName(final String applicationName) {
 		this.applicationName = applicationName;
 	}
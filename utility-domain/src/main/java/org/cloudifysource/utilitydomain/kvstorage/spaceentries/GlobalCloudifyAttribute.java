@@ -27,4 +27,10 @@ public class GlobalCloudifyAttribute extends AbstractCloudifyAttribute {
 
 	public GlobalCloudifyAttribute() {
 	}
+
+	@Override
+	protected boolean isScopeSet() {
+		// global attributes have no scope.
+		return true;
+	}
 }
@@ -53,4 +53,18 @@ public class InstanceCloudifyAttribute extends AbstractCloudifyAttribute {
 		return instanceId;
 	}
 
+	@Override
+	protected void appendScope(final StringBuilder sb) {
+		super.appendScope(sb);
+		sb.append(UID_SEPARATOR);
+		appendUidPart(sb, serviceName);
+		sb.append(UID_SEPARATOR);
+		appendUidPart(sb, instanceId);
+	}
+
+	@Override
+	protected boolean isScopeSet() {
+		return super.isScopeSet() && serviceName != null && instanceId != null;
+	}
+
 }
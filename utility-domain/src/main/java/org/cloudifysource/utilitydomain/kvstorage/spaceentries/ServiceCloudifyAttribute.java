@@ -42,4 +42,16 @@ public class ServiceCloudifyAttribute extends AbstractCloudifyAttribute {
 		return serviceName;
 	}
 
+	@Override
+	protected void appendScope(final StringBuilder sb) {
+		super.appendScope(sb);
+		sb.append(UID_SEPARATOR);
+		appendUidPart(sb, serviceName);
+	}
+
+	@Override
+	protected boolean isScopeSet() {
+		return super.isScopeSet() && serviceName != null;
+	}
+
 }
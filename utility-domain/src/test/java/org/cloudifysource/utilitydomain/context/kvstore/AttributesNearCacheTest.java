@@ -0,0 +1,71 @@
+package org.cloudifysource.utilitydomain.context.kvstore;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AttributesNearCache}.
+ *
+ *
+ */
+public class AttributesNearCacheTest {
+
+	private final AttributesNearCache cache = new AttributesNearCache(2, AttributesNearCache.DEFAULT_MAX_AGE_MILLIS,
+			EnumSet.allOf(AttributesNearCache.Scope.class));
+
+	@Test
+	public void testHitsAndMisses() {
+		final String key = AttributesNearCache.createKey(new ServiceCloudifyAttribute("app", "tomcat", "port", null));
+		Assert.assertNull(cache.get(key));
+		cache.put(key, true, 8080, cache.getVersion(key));
+		Assert.assertEquals(8080, cache.get(key).getValue());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testAbsentAttributeIsCached() {
+		final String key = AttributesNearCache.createKey(new ServiceCloudifyAttribute("app", "tomcat", "port", null));
+		cache.put(key, false, null, cache.getVersion(key));
+		Assert.assertFalse(cache.get(key).isPresent());
+	}
+
+	@Test
+	public void testNotificationDuringReadIsNotHidden() {
+		final InstanceCloudifyAttribute attribute = new InstanceCloudifyAttribute("app", "tomcat", 1, "ready", true);
+		final String key = AttributesNearCache.createKey(attribute);
+		final long version = cache.getVersion(key);
+		cache.onNotification(attribute);
+		cache.put(key, true, false, version);
+		Assert.assertNull(cache.get(key));
+		Assert.assertEquals(1, cache.getInvalidations());
+	}
+
+	@Test
+	public void testInstancesHaveSeparateKeys() {
+		final String first = AttributesNearCache.createKey(new InstanceCloudifyAttribute("app", "tomcat", 1, "k", null));
+		final String second = AttributesNearCache.createKey(new InstanceCloudifyAttribute("app", "tomcat", 2, "k", null));
+		Assert.assertFalse(first.equals(second));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		cache.put("a", true, "1", cache.getVersion("a"));
+		cache.put("b", true, "2", cache.getVersion("b"));
+		Assert.assertNotNull(cache.get("a"));
+		cache.put("c", true, "3", cache.getVersion("c"));
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.get("b"));
+	}
+
+	@Test
+	public void testMutableValueIsNotCached() {
+		cache.put("a", true, new AtomicLong(), cache.getVersion("a"));
+		Assert.assertNull(cache.get("a"));
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.kvstorage;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.GlobalCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.core.GigaSpaceConfigurer;
+import org.openspaces.core.space.UrlSpaceConfigurer;
+
+/**
+ * Tests for {@link AttributesSpaceOperations}, against an embedded space.
+ *
+ * @since 2.7.0
+ */
+public class AttributesSpaceOperationsTest {
+
+	private UrlSpaceConfigurer spaceConfigurer;
+	private GigaSpace space;
+
+	@Before
+	public void before() {
+		spaceConfigurer = new UrlSpaceConfigurer("/./attributesSpaceOperationsTest");
+		space = new GigaSpaceConfigurer(spaceConfigurer.space()).gigaSpace();
+	}
+
+	@After
+	public void after() throws Exception {
+		spaceConfigurer.destroy();
+	}
+
+	@Test
+	public void testPutReturnsPreviousValue() {
+		Assert.assertNull(AttributesSpaceOperations.put(space, new GlobalCloudifyAttribute("key", "first")));
+		Assert.assertEquals("first",
+				AttributesSpaceOperations.put(space, new GlobalCloudifyAttribute("key", "second")));
+		Assert.assertEquals(1, space.count(new GlobalCloudifyAttribute()));
+	}
+
+	@Test
+	public void testCompareAndSet() {
+		// null expects the attribute not to exist.
+		Assert.assertTrue(AttributesSpaceOperations.compareAndSet(space, new GlobalCloudifyAttribute("key", "v1"),
+				null));
+		Assert.assertFalse(AttributesSpaceOperations.compareAndSet(space, new GlobalCloudifyAttribute("key", "v2"),
+				null));
+
+		Assert.assertFalse(AttributesSpaceOperations.compareAndSet(space, new GlobalCloudifyAttribute("key", "v2"),
+				"wrong"));
+		Assert.assertTrue(AttributesSpaceOperations.compareAndSet(space, new GlobalCloudifyAttribute("key", "v2"),
+				"v1"));
+		Assert.assertEquals("v2", getValue(new GlobalCloudifyAttribute("key", null)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompareAndSetRejectsValueThatIsNotSerializable() {
+		AttributesSpaceOperations.put(space, new GlobalCloudifyAttribute("key", "v1"));
+		AttributesSpaceOperations.compareAndSet(space, new GlobalCloudifyAttribute("key", new Object()), "v1");
+	}
+
+	@Test
+	public void testIncrement() {
+		final InstanceCloudifyAttribute counter = new InstanceCloudifyAttribute("app", "service", 1, "counter", null);
+		Assert.assertEquals(5, AttributesSpaceOperations.increment(space, counter, 5).intValue());
+		Assert.assertEquals(8, AttributesSpaceOperations.increment(space, counter, 3).intValue());
+		// the same key in another instance is a different attribute.
+		Assert.assertEquals(1, AttributesSpaceOperations.increment(space,
+				new InstanceCloudifyAttribute("app", "service", 2, "counter", null), 1).intValue());
+	}
+
+	@Test
+	public void testGetAllAndRemoveAll() {
+		AttributesSpaceOperations.putAll(space, new AbstractCloudifyAttribute[] {
+				new GlobalCloudifyAttribute("a", "1"), new GlobalCloudifyAttribute("b", "2") });
+
+		final Map<String, Object> values = AttributesSpaceOperations.getAll(space, new GlobalCloudifyAttribute(),
+				Arrays.asList("a", "b", "missing"));
+		Assert.assertEquals(2, values.size());
+		Assert.assertEquals("1", values.get("a"));
+		Assert.assertEquals("2", values.get("b"));
+
+		final Map<String, Object> removed = AttributesSpaceOperations.removeAll(space, new GlobalCloudifyAttribute(),
+				Arrays.asList("a", "missing"));
+		Assert.assertEquals(1, removed.size());
+		Assert.assertEquals("1", removed.get("a"));
+		Assert.assertEquals(1, space.count(new GlobalCloudifyAttribute()));
+	}
+
+	@Test
+	public void testWriteWithoutAssignedUid() {
+		// writers that do not call assignUid() get the derived id.
+		space.write(new GlobalCloudifyAttribute("key", "v1"));
+		Assert.assertEquals("v1", getValue(new GlobalCloudifyAttribute("key", null)));
+		Assert.assertEquals("v1", AttributesSpaceOperations.put(space, new GlobalCloudifyAttribute("key", "v2")));
+		Assert.assertEquals(1, space.count(new GlobalCloudifyAttribute()));
+	}
+
+	@Test
+	public void testScopeAndKeyWithSeparatorDoNotShareId() {
+		AttributesSpaceOperations.put(space, new ApplicationCloudifyAttribute("a", "b|c", "first"));
+		Assert.assertNull(AttributesSpaceOperations.put(space, new ApplicationCloudifyAttribute("a|b", "c", "second")));
+
+		Assert.assertEquals(2, space.count(new ApplicationCloudifyAttribute()));
+		Assert.assertEquals("first", AttributesSpaceOperations.getAll(space, new ApplicationCloudifyAttribute("a",
+				null, null), Arrays.asList("b|c")).get("b|c"));
+	}
+
+	@Test
+	public void testTemplateWithUnsetScopeMatchesAnyScope() {
+		AttributesSpaceOperations.put(space, new InstanceCloudifyAttribute("app", "service", 1, "key", "v1"));
+		AttributesSpaceOperations.put(space, new InstanceCloudifyAttribute("app", "service", 2, "key", "v2"));
+
+		final InstanceCloudifyAttribute template = new InstanceCloudifyAttribute("app", "service", null, "key", null);
+		Assert.assertNull(template.getUid());
+		Assert.assertEquals(2, space.readMultiple(template).length);
+	}
+
+	@Test
+	public void testMigrateLegacyAttributes() {
+		writeLegacy(new GlobalCloudifyAttribute("a", "1"));
+		writeLegacy(new InstanceCloudifyAttribute("app", "service", 1, "b", 2));
+		// an attribute already written with the derived id is newer than the legacy one.
+		writeLegacy(new GlobalCloudifyAttribute("c", "old"));
+		AttributesSpaceOperations.put(space, new GlobalCloudifyAttribute("c", "new"));
+
+		Assert.assertEquals(2, AttributesSpaceOperations.migrateLegacyAttributes(space));
+		Assert.assertEquals(0, AttributesSpaceOperations.migrateLegacyAttributes(space));
+
+		Assert.assertEquals(2, space.count(new GlobalCloudifyAttribute()));
+		Assert.assertEquals("1", AttributesSpaceOperations.getAll(space, new GlobalCloudifyAttribute(),
+				Arrays.asList("a")).get("a"));
+		Assert.assertEquals("new", getValue(new GlobalCloudifyAttribute("c", null)));
+		Assert.assertEquals(3, AttributesSpaceOperations.increment(space,
+				new InstanceCloudifyAttribute("app", "service", 1, "b", null), 1).intValue());
+	}
+
+	private void writeLegacy(final AbstractCloudifyAttribute attribute) {
+		// attributes written by older versions have an id generated by the space.
+		attribute.setUid("generated-" + attribute.getKey());
+		space.write(attribute);
+	}
+
+	private Object getValue(final AbstractCloudifyAttribute attribute) {
+		attribute.assignUid();
+		return space.readById(GlobalCloudifyAttribute.class, attribute.getUid()).getValue();
+	}
+}